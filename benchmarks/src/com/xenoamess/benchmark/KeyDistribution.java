@@ -0,0 +1,70 @@
+package com.xenoamess.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * KeyDistribution draws the keys a benchmark thread operates on. the keys are
+ * drawn into an array before measuring,so drawing costs nothing while
+ * measuring.
+ */
+public enum KeyDistribution {
+	UNIFORM {
+		@Override
+		public int[] sample(int keySpace, int count, long seed) {
+			SplittableRandom random = new SplittableRandom(seed);
+			int[] res = new int[count];
+			for (int i = 0; i < count; i++) {
+				res[i] = random.nextInt(keySpace);
+			}
+			return res;
+		}
+	},
+	ZIPF {
+		@Override
+		public int[] sample(int keySpace, int count, long seed) {
+			double[] cdf = new double[keySpace];
+			double sum = 0;
+			for (int i = 0; i < keySpace; i++) {
+				sum += 1.0 / Math.pow(i + 1, ZIPF_CONSTANT);
+				cdf[i] = sum;
+			}
+
+			SplittableRandom random = new SplittableRandom(seed);
+			int[] res = new int[count];
+			for (int i = 0; i < count; i++) {
+				double u = random.nextDouble() * sum;
+				int low = 0;
+				int high = keySpace - 1;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (cdf[middle] < u) {
+						low = middle + 1;
+					} else {
+						high = middle;
+					}
+				}
+				res[i] = scramble(low, keySpace);
+			}
+			return res;
+		}
+	};
+
+	/**
+	 * the skew of ZIPF,the same as YCSB's
+	 */
+	public static final double ZIPF_CONSTANT = 0.99;
+
+	/**
+	 * spread the ranks over the key space,so the hot keys are not neighbours.
+	 */
+	static int scramble(int rank, int keySpace) {
+		int h = rank * 0x9e3779b9;
+		h ^= h >>> 16;
+		return Integer.remainderUnsigned(h, keySpace);
+	}
+
+	/**
+	 * @return count keys in [0,keySpace)
+	 */
+	public abstract int[] sample(int keySpace, int count, long seed);
+}
@@ -0,0 +1,301 @@
+package com.xenoamess.benchmark;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LatencyHarness measures the latency of a map under a constant load,to find
+ * the resize stalls and spin-wait tails that throughput numbers average away.
+ * <p>
+ * it is open-loop:each thread sends its operations at fixed intended times
+ * (rate/threads per second) whatever how long the previous ones took. latency
+ * is measured from the intended start time,so an operation delayed by a stall
+ * of the one before it counts the stall too,which corrects coordinated
+ * omission. the service time measured from the actual start time is reported
+ * too,to show how much the uncorrected numbers hide.
+ * <p>
+ * the arguments are scenario,map type,rate(ops per second),seconds and
+ * threads,for example
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.xenoamess.benchmark.LatencyHarness RESIZE HASH_TABLE 200000 30 4
+ * </pre>
+ *
+ * scenario can be ALL to run every scenario. the first WARMUP_SECONDS of each
+ * run are not recorded.
+ */
+public class LatencyHarness {
+	public static int WARMUP_SECONDS = 5;
+	public static double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99, 99.999 };
+
+	/**
+	 * if a thread has to wait longer than it,it parks instead of spinning.
+	 */
+	static final long PARK_THRESHOLD_NANOS = 100_000;
+
+	enum Operation {
+		GET, PUT, REMOVE, CLEAR
+	}
+
+	enum Scenario {
+		/**
+		 * 90% get,9% put and 1% remove on a prefilled map of STEADY_KEYS keys.
+		 */
+		STEADY {
+			@Override
+			void prefill(Map<Integer, Integer> map) {
+				for (int i = 0; i < STEADY_KEYS; i++) {
+					map.put(i, i);
+				}
+			}
+
+			@Override
+			Operation run(Map<Integer, Integer> map, SplittableRandom random, AtomicLong counter) {
+				int key = random.nextInt(STEADY_KEYS);
+				int dice = random.nextInt(100);
+				if (dice < 90) {
+					map.get(key);
+					return Operation.GET;
+				}
+				if (dice < 99) {
+					map.put(key, key);
+					return Operation.PUT;
+				}
+				map.remove(key);
+				return Operation.REMOVE;
+			}
+		},
+		/**
+		 * half of the operations put new keys,so the pool keeps growing and
+		 * resize() runs during the measurement. the other half get keys put
+		 * before. every RESIZE_CYCLE puts the map is cleared,which shrinks the pool
+		 * back,so the resizes start over.
+		 */
+		RESIZE {
+			@Override
+			Operation run(Map<Integer, Integer> map, SplittableRandom random, AtomicLong counter) {
+				if (random.nextBoolean()) {
+					long n = counter.get();
+					map.get((int) (random.nextLong(n + 1) % RESIZE_CYCLE));
+					return Operation.GET;
+				}
+				long n = counter.getAndIncrement();
+				int key = (int) (n % RESIZE_CYCLE);
+				if (key == RESIZE_CYCLE - 1) {
+					map.clear();
+					return Operation.CLEAR;
+				}
+				map.put(key, key);
+				return Operation.PUT;
+			}
+		},
+		/**
+		 * the puts go to TRANSFORM_BUCKETS buckets in turn,with Integer keys whose
+		 * spread hashcodes all have the same low 16 bits in a bucket,so they
+		 * collide for any pool size. every bucket passes TRANSFORM_LIMIT and
+		 * transform() runs during the measurement,then the puts go on into the
+		 * skiplists. every TRANSFORM_CYCLE puts the map is cleared,so the tables
+		 * are lists again and transform over.
+		 */
+		TRANSFORM {
+			@Override
+			Operation run(Map<Integer, Integer> map, SplittableRandom random, AtomicLong counter) {
+				int dice = random.nextInt(10);
+				if (dice < 3) {
+					long n = counter.get() % TRANSFORM_CYCLE;
+					int bucket = random.nextInt(TRANSFORM_BUCKETS);
+					map.get(collidingKey(bucket, random.nextInt((int) (n / TRANSFORM_BUCKETS) + 1)));
+					return Operation.GET;
+				}
+				long n = counter.getAndIncrement() % TRANSFORM_CYCLE;
+				if (n == TRANSFORM_CYCLE - 1) {
+					map.clear();
+					return Operation.CLEAR;
+				}
+				int key = collidingKey((int) (n % TRANSFORM_BUCKETS), (int) (n / TRANSFORM_BUCKETS));
+				if (dice < 9) {
+					map.put(key, key);
+					return Operation.PUT;
+				}
+				map.remove(key);
+				return Operation.REMOVE;
+			}
+		};
+
+		void prefill(Map<Integer, Integer> map) {
+		}
+
+		/**
+		 * run one operation of the scenario.
+		 *
+		 * @param counter
+		 *            shared by the threads of a run
+		 * @return the operation run
+		 */
+		abstract Operation run(Map<Integer, Integer> map, SplittableRandom random, AtomicLong counter);
+	}
+
+	static final int STEADY_KEYS = 1 << 16;
+	static final int RESIZE_CYCLE = 1 << 17;
+	static final int TRANSFORM_BUCKETS = 1 << 10;
+	static final int TRANSFORM_CYCLE = TRANSFORM_BUCKETS * 32;
+
+	/**
+	 * @return the j-th key of bucket.its spread hashcode is (j<<16)|bucket.
+	 */
+	static int collidingKey(int bucket, int j) {
+		return (j << 16) | (j ^ bucket);
+	}
+
+	static class Recorder {
+		final LatencyHistogram[] corrected = new LatencyHistogram[Operation.values().length];
+		final LatencyHistogram[] uncorrected = new LatencyHistogram[Operation.values().length];
+
+		Recorder() {
+			for (int i = 0; i < corrected.length; i++) {
+				corrected[i] = new LatencyHistogram();
+				uncorrected[i] = new LatencyHistogram();
+			}
+		}
+
+		void add(Recorder other) {
+			for (int i = 0; i < corrected.length; i++) {
+				corrected[i].add(other.corrected[i]);
+				uncorrected[i].add(other.uncorrected[i]);
+			}
+		}
+	}
+
+	static void waitUntil(long deadline) {
+		for (;;) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return;
+			}
+			if (remaining > PARK_THRESHOLD_NANOS) {
+				LockSupport.parkNanos(remaining - PARK_THRESHOLD_NANOS / 2);
+			} else {
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	/**
+	 * run scenario on a new map of mapType.
+	 *
+	 * @return the latencies of all the threads
+	 */
+	static Recorder run(Scenario scenario, MapType mapType, long rate, int seconds, int threads)
+			throws InterruptedException {
+		Map<Integer, Integer> map = mapType.create();
+		scenario.prefill(map);
+		AtomicLong counter = new AtomicLong();
+		Recorder[] recorders = new Recorder[threads];
+		Thread[] workers = new Thread[threads];
+		long interval = TimeUnit.SECONDS.toNanos(1) * threads / rate;
+		CountDownLatch ready = new CountDownLatch(threads);
+		long[] start = new long[1];
+		CountDownLatch go = new CountDownLatch(1);
+
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			recorders[t] = new Recorder();
+			workers[t] = new Thread(() -> {
+				Recorder recorder = recorders[index];
+				SplittableRandom random = new SplittableRandom(index);
+				ready.countDown();
+				try {
+					go.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long recordFrom = start[0] + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+				long end = recordFrom + TimeUnit.SECONDS.toNanos(seconds);
+				// the threads are staggered,so the map gets one operation every
+				// interval/threads
+				long intended = start[0] + interval * index / threads;
+				while (intended < end) {
+					waitUntil(intended);
+					long actualStart = System.nanoTime();
+					Operation operation = scenario.run(map, random, counter);
+					long done = System.nanoTime();
+					if (intended >= recordFrom) {
+						recorder.corrected[operation.ordinal()].recordValue(done - intended);
+						recorder.uncorrected[operation.ordinal()].recordValue(done - actualStart);
+					}
+					intended += interval;
+				}
+			}, "LatencyHarness-" + t);
+			workers[t].start();
+		}
+		ready.await();
+		start[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+		go.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		Recorder res = new Recorder();
+		for (Recorder recorder : recorders) {
+			res.add(recorder);
+		}
+		return res;
+	}
+
+	static void print(String name, LatencyHistogram histogram) {
+		if (histogram.getTotalCount() == 0) {
+			return;
+		}
+		StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-20s %10d", name,
+				histogram.getTotalCount()));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(Locale.ROOT, " %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+		}
+		line.append(String.format(Locale.ROOT, " %10.1f", histogram.getMaxValue() / 1000.0));
+		System.out.println(line);
+	}
+
+	static void report(Scenario scenario, MapType mapType, long rate, int seconds, int threads, Recorder recorder) {
+		LatencyHistogram allCorrected = new LatencyHistogram();
+		LatencyHistogram allUncorrected = new LatencyHistogram();
+		for (Operation operation : Operation.values()) {
+			allCorrected.add(recorder.corrected[operation.ordinal()]);
+			allUncorrected.add(recorder.uncorrected[operation.ordinal()]);
+		}
+		System.out.printf(Locale.ROOT, "%s %s %d ops/s %d threads : %d ops in %ds,%.0f ops/s%n", scenario, mapType,
+				rate, threads, allCorrected.getTotalCount(), seconds, allCorrected.getTotalCount() / (double) seconds);
+		StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-20s %10s", "latency(us)", "count"));
+		for (double percentile : PERCENTILES) {
+			String label = percentile == Math.rint(percentile) ? String.valueOf((long) percentile)
+					: String.valueOf(percentile);
+			header.append(String.format(Locale.ROOT, " %10s", "p" + label));
+		}
+		header.append(String.format(Locale.ROOT, " %10s", "max"));
+		System.out.println(header);
+		for (Operation operation : Operation.values()) {
+			print(operation.name().toLowerCase(Locale.ROOT), recorder.corrected[operation.ordinal()]);
+		}
+		print("all", allCorrected);
+		print("all(uncorrected)", allUncorrected);
+		System.out.println();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String scenarioName = args.length > 0 ? args[0] : "ALL";
+		MapType mapType = args.length > 1 ? MapType.valueOf(args[1]) : MapType.HASH_TABLE;
+		long rate = args.length > 2 ? Long.parseLong(args[2]) : 200_000;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+		Scenario[] scenarios = "ALL".equals(scenarioName) ? Scenario.values()
+				: new Scenario[] { Scenario.valueOf(scenarioName) };
+		for (Scenario scenario : scenarios) {
+			Recorder recorder = run(scenario, mapType, rate, seconds, threads);
+			report(scenario, mapType, rate, seconds, threads, recorder);
+		}
+	}
+}
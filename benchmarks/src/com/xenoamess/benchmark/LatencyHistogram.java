@@ -0,0 +1,121 @@
+package com.xenoamess.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram is a log-linear histogram of latencies like HdrHistogram.
+ * values below 2^SUB_BUCKET_BITS are counted exactly,and larger values are
+ * counted in buckets whose width is at most 1/2^(SUB_BUCKET_BITS-1) of their
+ * value,so every recorded value keeps about 3 significant digits. values up to
+ * 2^VALUE_BITS(about 18 minutes in nanoseconds) are counted,larger ones are
+ * counted as 2^VALUE_BITS-1 but still kept as max. recording is a few shifts
+ * and one array increment.
+ * <p>
+ * it is not thread-safe.give each thread its own histogram and add them at the
+ * end.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 11;
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >>> 1;
+	static final int VALUE_BITS = 40;
+	static final long HIGHEST_TRACKABLE_VALUE = (1L << VALUE_BITS) - 1;
+	static final int COUNTS_LENGTH = SUB_BUCKET_COUNT + (VALUE_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+	final long[] counts = new long[COUNTS_LENGTH];
+	long totalCount = 0;
+	long totalValue = 0;
+	long maxValue = 0;
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int mantissa = (int) (value >>> shift);
+		return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (mantissa - HALF_SUB_BUCKET_COUNT);
+	}
+
+	/**
+	 * @return the largest value counted at index
+	 */
+	static long highestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int i = index - SUB_BUCKET_COUNT;
+		int shift = i / HALF_SUB_BUCKET_COUNT + 1;
+		long mantissa = i % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+		return (mantissa << shift) + (1L << shift) - 1;
+	}
+
+	public void recordValue(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[indexOf(Math.min(value, HIGHEST_TRACKABLE_VALUE))]++;
+		totalCount++;
+		totalValue += value;
+		if (value > maxValue) {
+			maxValue = value;
+		}
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < COUNTS_LENGTH; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		totalValue += other.totalValue;
+		if (other.maxValue > maxValue) {
+			maxValue = other.maxValue;
+		}
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		totalValue = 0;
+		maxValue = 0;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return mean of the recorded values,or 0 if none is recorded
+	 */
+	public double getMean() {
+		return totalCount == 0 ? 0 : totalValue / (double) totalCount;
+	}
+
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	/**
+	 * @param percentile
+	 *            in [0,100]
+	 * @return the value that percentile of the recorded values are not larger
+	 *         than,in the precision of the histogram
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < COUNTS_LENGTH; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValueAt(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+}
@@ -0,0 +1,32 @@
+package com.xenoamess.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * run the benchmarks once for each thread count,since jmh cannot take the
+ * thread count as a @Param. the arguments are passed to jmh,for example
+ * 
+ * <pre>
+ * java -cp benchmarks.jar com.xenoamess.benchmark.MapBenchmarkRunner MapMixedBenchmark -p mapSize=65536
+ * </pre>
+ */
+public class MapBenchmarkRunner {
+	public static int[] THREADS = { 1, 2, 4, 8, 16 };
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		for (int threads : THREADS) {
+			if (threads > 1 && threads > 2 * Runtime.getRuntime().availableProcessors()) {
+				break;
+			}
+			new Runner(new OptionsBuilder().parent(commandLineOptions).threads(threads)
+					.result("jmh-result-" + threads + "-threads.csv")
+					.resultFormat(ResultFormatType.CSV).build()).run();
+		}
+	}
+}
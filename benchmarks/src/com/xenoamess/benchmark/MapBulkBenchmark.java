@@ -0,0 +1,78 @@
+package com.xenoamess.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * whole-map operations: putAll,iteration of entrySet,and filling a map from its
+ * default size,which resizes it again and again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapBulkBenchmark {
+
+	@Param({ "HASH_TABLE", "CONCURRENT_HASH_MAP", "SYNCHRONIZED_MAP", "HASHTABLE" })
+	MapType mapType;
+
+	@Param({ "1024", "65536", "1048576" })
+	int mapSize;
+
+	HashMap<Integer, Integer> source;
+	Map<Integer, Integer> filled;
+	Integer[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = new Integer[mapSize];
+		source = new HashMap<Integer, Integer>();
+		filled = mapType.create();
+		for (int i = 0; i < mapSize; i++) {
+			keys[i] = KeyDistribution.scramble(i, Integer.MAX_VALUE);
+			source.put(keys[i], i);
+			filled.put(keys[i], i);
+		}
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> putAll() {
+		Map<Integer, Integer> res = mapType.create();
+		res.putAll(source);
+		return res;
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> resizeHeavyPut() {
+		Map<Integer, Integer> res = mapType.create();
+		for (int i = 0; i < keys.length; i++) {
+			res.put(keys[i], i);
+		}
+		return res;
+	}
+
+	@Benchmark
+	public long entrySetIteration() {
+		long res = 0;
+		for (Map.Entry<Integer, Integer> entry : filled.entrySet()) {
+			res += entry.getKey() ^ entry.getValue();
+		}
+		return res;
+	}
+}
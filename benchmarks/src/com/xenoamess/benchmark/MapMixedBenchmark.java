@@ -0,0 +1,98 @@
+package com.xenoamess.benchmark;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * a mix of get,put and remove on a prefilled map. readPercent of the
+ * operations are gets,and the rest are puts and removes in equal parts,so the
+ * size of the map stays about the same.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapMixedBenchmark {
+
+	static final int SAMPLES = 1 << 16;
+
+	@Param({ "HASH_TABLE", "CONCURRENT_HASH_MAP", "SYNCHRONIZED_MAP", "HASHTABLE" })
+	MapType mapType;
+
+	@Param({ "1024", "65536", "1048576" })
+	int mapSize;
+
+	@Param({ "UNIFORM", "ZIPF" })
+	KeyDistribution distribution;
+
+	@Param({ "50", "90", "99" })
+	int readPercent;
+
+	Map<Integer, Integer> map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		map = mapType.create();
+		for (int i = 0; i < mapSize; i++) {
+			map.put(i << 1, i);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadOperations {
+		int[] keys;
+
+		/**
+		 * 0 get,1 put,2 remove
+		 */
+		byte[] operations;
+		int cursor = 0;
+
+		@Setup(Level.Trial)
+		public void setUp(MapMixedBenchmark benchmark, ThreadParams threadParams) {
+			keys = benchmark.distribution.sample(benchmark.mapSize << 1, SAMPLES, threadParams.getThreadIndex());
+			operations = new byte[SAMPLES];
+			SplittableRandom random = new SplittableRandom(~threadParams.getThreadIndex());
+			for (int i = 0; i < SAMPLES; i++) {
+				int dice = random.nextInt(100);
+				if (dice < benchmark.readPercent) {
+					operations[i] = 0;
+				} else {
+					operations[i] = (byte) (1 + (dice & 1));
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public Integer mixed(ThreadOperations threadOperations) {
+		int cursor = threadOperations.cursor;
+		threadOperations.cursor = (cursor + 1) & (SAMPLES - 1);
+		Integer key = threadOperations.keys[cursor];
+		switch (threadOperations.operations[cursor]) {
+		case 0:
+			return map.get(key);
+		case 1:
+			return map.put(key, key);
+		default:
+			return map.remove(key);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.xenoamess.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * single-key operations on a prefilled map. the key space is twice mapSize and
+ * the even keys are prefilled,so about half of the uniform gets hit.
+ * <p>
+ * thread count is not a @Param of jmh,run it with -t or by
+ * MapBenchmarkRunner.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapOperationBenchmark {
+
+	/**
+	 * number of keys drawn for each thread
+	 */
+	static final int SAMPLES = 1 << 16;
+
+	@Param({ "HASH_TABLE", "CONCURRENT_HASH_MAP", "SYNCHRONIZED_MAP", "HASHTABLE" })
+	MapType mapType;
+
+	@Param({ "1024", "65536", "1048576" })
+	int mapSize;
+
+	@Param({ "UNIFORM", "ZIPF" })
+	KeyDistribution distribution;
+
+	Map<Integer, Integer> map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		map = mapType.create();
+		for (int i = 0; i < mapSize; i++) {
+			map.put(i << 1, i);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadKeys {
+		int[] keys;
+		int cursor = 0;
+
+		@Setup(Level.Trial)
+		public void setUp(MapOperationBenchmark benchmark, ThreadParams threadParams) {
+			keys = benchmark.distribution.sample(benchmark.mapSize << 1, SAMPLES, threadParams.getThreadIndex());
+		}
+
+		final Integer next() {
+			int res = keys[cursor];
+			cursor = (cursor + 1) & (SAMPLES - 1);
+			return res;
+		}
+	}
+
+	@Benchmark
+	public Integer get(ThreadKeys threadKeys) {
+		return map.get(threadKeys.next());
+	}
+
+	@Benchmark
+	public Integer put(ThreadKeys threadKeys) {
+		Integer key = threadKeys.next();
+		return map.put(key, key);
+	}
+
+	/**
+	 * remove a key and put it back,so the size of the map does not drift.
+	 */
+	@Benchmark
+	public Integer removeAndPut(ThreadKeys threadKeys) {
+		Integer key = threadKeys.next();
+		Integer res = map.remove(key);
+		if (res != null) {
+			map.put(key, res);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,54 @@
+package com.xenoamess.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.xenoamess.HashTable;
+
+/**
+ * the maps compared by the benchmarks.
+ */
+public enum MapType {
+	HASH_TABLE {
+		@Override
+		public <K, V> Map<K, V> create() {
+			return new HashTable<K, V>();
+		}
+	},
+	/**
+	 * HashTable in parking mode,locked by ReentrantLocks
+	 */
+	HASH_TABLE_PARKING {
+		@Override
+		public <K, V> Map<K, V> create() {
+			// a pool size below the minimum is raised to it
+			return new HashTable<K, V>(0, true);
+		}
+	},
+	CONCURRENT_HASH_MAP {
+		@Override
+		public <K, V> Map<K, V> create() {
+			return new ConcurrentHashMap<K, V>();
+		}
+	},
+	SYNCHRONIZED_MAP {
+		@Override
+		public <K, V> Map<K, V> create() {
+			return Collections.synchronizedMap(new HashMap<K, V>());
+		}
+	},
+	HASHTABLE {
+		@Override
+		public <K, V> Map<K, V> create() {
+			return new Hashtable<K, V>();
+		}
+	};
+
+	/**
+	 * @return a new empty map of the type,with its default initial size.
+	 */
+	public abstract <K, V> Map<K, V> create();
+}
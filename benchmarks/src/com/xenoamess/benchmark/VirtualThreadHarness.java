@@ -0,0 +1,131 @@
+package com.xenoamess.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.xenoamess.HashTable;
+
+/**
+ * VirtualThreadHarness runs one task for each of many virtual threads(100000
+ * by default) against one HashTable,in the default mode and in parking mode.
+ * the map starts empty,so it resizes while the tasks run,and writers wait for
+ * the resizes and for each other.
+ * <p>
+ * a HashTable in the default mode waits by spinning inside synchronized
+ * methods,which pins the carrier threads of virtual threads,so a few spinning
+ * tasks can hold every carrier. in parking mode the waiters park and give the
+ * carriers away. a run which does not finish in the timeout is reported as
+ * stuck.
+ * <p>
+ * the arguments are map type(HASH_TABLE,HASH_TABLE_PARKING or ALL),tasks,
+ * operations of each task,keys and timeout seconds,for example
+ *
+ * <pre>
+ * java -Djdk.tracePinnedThreads=short -cp benchmarks.jar com.xenoamess.benchmark.VirtualThreadHarness ALL 100000 100
+ * </pre>
+ *
+ * virtual threads are made by reflection,so the harness builds for java 11.
+ * on a jdk without them it falls back to a pool of platform threads,and says
+ * so.
+ */
+public class VirtualThreadHarness {
+
+	/**
+	 * the platform threads of the fallback pool for each processor
+	 */
+	static final int FALLBACK_THREADS_PER_PROCESSOR = 4;
+
+	/**
+	 * @return an executor starting a virtual thread for each task,or null if
+	 *         the jdk has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	static ExecutorService newExecutor() {
+		ExecutorService res = newVirtualThreadExecutor();
+		if (res != null) {
+			return res;
+		}
+		int threads = Runtime.getRuntime().availableProcessors() * FALLBACK_THREADS_PER_PROCESSOR;
+		System.out.println("no virtual threads in java " + System.getProperty("java.version")
+				+ ",falling back to " + threads + " platform threads");
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * 80% get,15% put and 5% remove of random keys.
+	 */
+	static void runTask(HashTable<Integer, Integer> map, int taskIndex, int operations, int keys) {
+		SplittableRandom random = new SplittableRandom(taskIndex);
+		for (int i = 0; i < operations; i++) {
+			int key = random.nextInt(keys);
+			int dice = random.nextInt(100);
+			if (dice < 80) {
+				map.get(key);
+			} else if (dice < 95) {
+				map.put(key, taskIndex);
+			} else {
+				map.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @return if the run finished in the timeout
+	 */
+	static boolean run(MapType mapType, int tasks, int operations, int keys, int timeoutSeconds)
+			throws InterruptedException {
+		Map<Integer, Integer> created = mapType.create();
+		HashTable<Integer, Integer> map = (HashTable<Integer, Integer>) created;
+		map.enableStats();
+		ExecutorService executor = newExecutor();
+		long start = System.nanoTime();
+		for (int t = 0; t < tasks; t++) {
+			final int index = t;
+			executor.execute(() -> runTask(map, index, operations, keys));
+		}
+		executor.shutdown();
+		boolean finished = executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		if (!finished) {
+			executor.shutdownNow();
+			System.out.printf(Locale.ROOT, "%s : stuck,not finished in %d s%n", mapType, timeoutSeconds);
+			return false;
+		}
+		System.out.printf(Locale.ROOT, "%s : %d tasks,%d operations in %.3f s,%.0f ops/s,size %d,"
+				+ "pool %d,resizes %d,spin iterations %d%n", mapType, tasks, (long) tasks * operations, seconds,
+				tasks * (double) operations / seconds, map.size(), map.getNowPoolSize(),
+				map.getStats().getResizeCount(), map.getStats().getSpinIterations());
+		return true;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String mapName = args.length > 0 ? args[0] : "ALL";
+		int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+		int operations = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int keys = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 20;
+		int timeoutSeconds = args.length > 4 ? Integer.parseInt(args[4]) : 60;
+
+		MapType[] mapTypes = "ALL".equals(mapName) ? new MapType[] { MapType.HASH_TABLE, MapType.HASH_TABLE_PARKING }
+				: new MapType[] { MapType.valueOf(mapName) };
+		for (MapType mapType : mapTypes) {
+			if (!run(mapType, tasks, operations, keys, timeoutSeconds)) {
+				// the stuck tasks spin without checking interrupts,and would hold
+				// the carriers of the next runs
+				System.exit(1);
+			}
+		}
+	}
+}
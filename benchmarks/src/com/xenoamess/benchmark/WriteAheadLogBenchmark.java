@@ -0,0 +1,125 @@
+package com.xenoamess.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.xenoamess.DurableHashTable;
+import com.xenoamess.KeyValueCodec;
+
+/**
+ * WriteAheadLogBenchmark measures the throughput of a DurableHashTable and the
+ * fsyncs of its log for each of COMMIT_INTERVALS,and the time to replay the
+ * log written.
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.xenoamess.benchmark.WriteAheadLogBenchmark
+ * </pre>
+ */
+public class WriteAheadLogBenchmark {
+	public static int TEST_THREADS = 16;
+	public static int TEST_MAX = (1 << 16);
+	public static int VALUE_SIZE = 128;
+	public static long TEST_MILLIS = 2000;
+
+	/**
+	 * commit intervals to test,in microseconds
+	 */
+	public static long[] COMMIT_INTERVALS = { 0, 100, 1000, 5000, 20000 };
+
+	static class IntegerBytesCodec implements KeyValueCodec<Integer, byte[]> {
+		@Override
+		public int keySize(Integer key) {
+			return 4;
+		}
+
+		@Override
+		public void writeKey(Integer key, ByteBuffer buffer) {
+			buffer.putInt(key);
+		}
+
+		@Override
+		public Integer readKey(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int valueSize(byte[] value) {
+			return value.length;
+		}
+
+		@Override
+		public void writeValue(byte[] value, ByteBuffer buffer) {
+			buffer.put(value);
+		}
+
+		@Override
+		public byte[] readValue(ByteBuffer buffer, int size) {
+			byte[] res = new byte[size];
+			buffer.get(res);
+			return res;
+		}
+	}
+
+	static void deleteRecursively(Path path) throws IOException {
+		try (Stream<Path> paths = Files.walk(path)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	static void benchmark(long commitIntervalMicros) throws Exception {
+		Path directory = Files.createTempDirectory("wal-benchmark");
+		DurableHashTable<Integer, byte[]> tested = DurableHashTable.open(directory, new IntegerBytesCodec(),
+				commitIntervalMicros, TimeUnit.MICROSECONDS);
+		LongAdder operations = new LongAdder();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TEST_MILLIS);
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int i = 0; i < TEST_THREADS; i++) {
+			threads[i] = new Thread(() -> {
+				byte[] value = new byte[VALUE_SIZE];
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.nanoTime() < deadline) {
+					int key = random.nextInt(TEST_MAX);
+					if (random.nextInt(4) == 0) {
+						tested.remove(key);
+					} else {
+						tested.put(key, value);
+					}
+					operations.increment();
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long commits = tested.getWriteAheadLog().getCommitCount();
+		tested.close();
+
+		long replayStart = System.nanoTime();
+		DurableHashTable<Integer, byte[]> replayed = DurableHashTable.open(directory, new IntegerBytesCodec(),
+				commitIntervalMicros, TimeUnit.MICROSECONDS);
+		long replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - replayStart);
+		boolean same = replayed.size() == tested.size();
+		replayed.close();
+		deleteRecursively(directory);
+
+		System.out.printf("commitInterval %6d us : %10.0f ops/s , %7d fsyncs , %8.1f ops/fsync , replay %d ms%s\n",
+				commitIntervalMicros, operations.sum() * 1000.0 / TEST_MILLIS, commits,
+				commits == 0 ? 0.0 : operations.sum() / (double) commits, replayMillis,
+				same ? "" : " , suspicious error found : replayed size differs");
+	}
+
+	public static void main(String args[]) throws Exception {
+		System.out.println("threads: " + TEST_THREADS + " , value size: " + VALUE_SIZE);
+		for (long commitInterval : COMMIT_INTERVALS) {
+			benchmark(commitInterval);
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package com.xenoamess.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xenoamess.benchmark.YcsbKeyChooser.Distribution;
+import com.xenoamess.benchmark.YcsbWorkload.Operation;
+
+/**
+ * YcsbDriver runs the YCSB core workloads on a map in process. like YCSB it
+ * first loads recordcount records,then runs operationcount operations of the
+ * workload with threads threads,and measures the latency of every operation.
+ * the keys are "user" followed by the hashed record number,and a record is one
+ * field of fieldlength bytes.
+ * <p>
+ * the arguments are name=value properties,all optional:
+ *
+ * <pre>
+ * workload=A,B,...|ALL  map=HASH_TABLE  recordcount=100000  operationcount=1000000
+ * threads=4  distribution=UNIFORM|ZIPFIAN|LATEST  fieldlength=100  output=ycsb-result.csv
+ * </pre>
+ *
+ * distribution replaces the request distribution of the workloads if it is
+ * given. the results are printed and appended to output as csv,one row for
+ * each operation of each phase,so runs of different versions of the map can be
+ * compared.
+ * <p>
+ * the map has no order,so a scan of workload E reads its records by get one by
+ * one,from the chosen record number on.
+ */
+public class YcsbDriver {
+
+	public static final String CSV_HEADER = "workload,map,distribution,recordcount,operationcount,threads,phase,"
+			+ "operation,count,throughput_ops_s,mean_us,p50_us,p95_us,p99_us,p99.9_us,max_us";
+
+	final YcsbWorkload workload;
+	final MapType mapType;
+	final Distribution distribution;
+	final long recordCount;
+	final long operationCount;
+	final int threads;
+	final int fieldLength;
+
+	Map<String, byte[]> map;
+
+	/**
+	 * number of records inserted.the records in [0,inserted) can be chosen.
+	 */
+	final AtomicLong inserted = new AtomicLong();
+
+	/**
+	 * the next record number to insert
+	 */
+	final AtomicLong nextInsert = new AtomicLong();
+
+	public YcsbDriver(YcsbWorkload workload, MapType mapType, Distribution distribution, long recordCount,
+			long operationCount, int threads, int fieldLength) {
+		this.workload = workload;
+		this.mapType = mapType;
+		this.distribution = distribution;
+		this.recordCount = recordCount;
+		this.operationCount = operationCount;
+		this.threads = threads;
+		this.fieldLength = fieldLength;
+	}
+
+	static String keyOf(long recordNumber) {
+		return "user" + YcsbKeyChooser.fnvhash64(recordNumber);
+	}
+
+	byte[] newValue(SplittableRandom random) {
+		byte[] res = new byte[fieldLength];
+		Arrays.fill(res, (byte) (' ' + random.nextInt(95)));
+		return res;
+	}
+
+	/**
+	 * the latencies of one phase
+	 */
+	static class PhaseResult {
+		final String phase;
+		final LatencyHistogram[] histograms = new LatencyHistogram[YcsbWorkload.OPERATIONS.length];
+		long nanos;
+
+		PhaseResult(String phase) {
+			this.phase = phase;
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+
+		synchronized void add(LatencyHistogram[] other) {
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i].add(other[i]);
+			}
+		}
+	}
+
+	interface PhaseWork {
+		void run(int threadIndex, LatencyHistogram[] histograms);
+	}
+
+	PhaseResult runPhase(String phase, PhaseWork work) throws InterruptedException {
+		PhaseResult res = new PhaseResult(phase);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			workers[t] = new Thread(() -> {
+				LatencyHistogram[] histograms = new LatencyHistogram[YcsbWorkload.OPERATIONS.length];
+				for (int i = 0; i < histograms.length; i++) {
+					histograms[i] = new LatencyHistogram();
+				}
+				work.run(index, histograms);
+				res.add(histograms);
+			}, "YcsbDriver-" + phase + "-" + t);
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		res.nanos = System.nanoTime() - start;
+		return res;
+	}
+
+	/**
+	 * insert recordCount records.
+	 */
+	PhaseResult load() throws InterruptedException {
+		map = mapType.create();
+		nextInsert.set(0);
+		inserted.set(0);
+		return runPhase("load", (threadIndex, histograms) -> {
+			SplittableRandom random = new SplittableRandom(threadIndex);
+			LatencyHistogram histogram = histograms[Operation.INSERT.ordinal()];
+			for (long n = nextInsert.getAndIncrement(); n < recordCount; n = nextInsert.getAndIncrement()) {
+				String key = keyOf(n);
+				byte[] value = newValue(random);
+				long start = System.nanoTime();
+				map.put(key, value);
+				histogram.recordValue(System.nanoTime() - start);
+			}
+		});
+	}
+
+	/**
+	 * run operationCount operations of the workload on the loaded map.
+	 */
+	PhaseResult run() throws InterruptedException {
+		nextInsert.set(recordCount);
+		inserted.set(recordCount);
+		return runPhase("run", (threadIndex, histograms) -> {
+			SplittableRandom random = new SplittableRandom(~threadIndex);
+			YcsbKeyChooser chooser = distribution.newChooser(threadIndex);
+			long count = operationCount / threads + (threadIndex < operationCount % threads ? 1 : 0);
+			for (long i = 0; i < count; i++) {
+				Operation operation = workload.operation(random.nextInt(100));
+				long start = System.nanoTime();
+				switch (operation) {
+				case READ:
+					map.get(keyOf(chooser.next(inserted.get())));
+					break;
+				case UPDATE:
+					map.put(keyOf(chooser.next(inserted.get())), newValue(random));
+					break;
+				case INSERT:
+					map.put(keyOf(nextInsert.getAndIncrement()), newValue(random));
+					inserted.incrementAndGet();
+					break;
+				case SCAN:
+					scan(chooser.next(inserted.get()), 1 + random.nextInt(YcsbWorkload.MAX_SCAN_LENGTH));
+					break;
+				default:
+					readModifyWrite(keyOf(chooser.next(inserted.get())), random);
+					break;
+				}
+				histograms[operation.ordinal()].recordValue(System.nanoTime() - start);
+			}
+		});
+	}
+
+	void scan(long from, int length) {
+		long to = Math.min(from + length, inserted.get());
+		for (long n = from; n < to; n++) {
+			map.get(keyOf(n));
+		}
+	}
+
+	void readModifyWrite(String key, SplittableRandom random) {
+		byte[] value = map.get(key);
+		byte[] modified = value == null ? newValue(random) : value.clone();
+		modified[random.nextInt(modified.length)] = (byte) (' ' + random.nextInt(95));
+		map.put(key, modified);
+	}
+
+	List<String> report(PhaseResult result) {
+		List<String> rows = new ArrayList<String>();
+		double seconds = result.nanos / 1e9;
+		LatencyHistogram all = new LatencyHistogram();
+		for (Operation operation : YcsbWorkload.OPERATIONS) {
+			LatencyHistogram histogram = result.histograms[operation.ordinal()];
+			all.add(histogram);
+			if (histogram.getTotalCount() > 0) {
+				rows.add(row(result.phase, operation.name(), histogram, seconds));
+			}
+		}
+		rows.add(row(result.phase, "ALL", all, seconds));
+		return rows;
+	}
+
+	String row(String phase, String operation, LatencyHistogram histogram, double seconds) {
+		return String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%s,%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f", workload,
+				mapType, distribution, recordCount, operationCount, threads, phase, operation,
+				histogram.getTotalCount(), histogram.getTotalCount() / seconds, histogram.getMean() / 1000.0,
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(95) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0);
+	}
+
+	static void append(Path output, List<String> rows) throws IOException {
+		boolean exists = Files.exists(output);
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			if (!exists) {
+				writer.println(CSV_HEADER);
+			}
+			for (String row : rows) {
+				writer.println(row);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("argument is not name=value: " + arg);
+			}
+			properties.put(arg.substring(0, equals).toLowerCase(Locale.ROOT), arg.substring(equals + 1));
+		}
+		String workloads = properties.getOrDefault("workload", "ALL");
+		MapType mapType = MapType.valueOf(properties.getOrDefault("map", "HASH_TABLE"));
+		long recordCount = Long.parseLong(properties.getOrDefault("recordcount", "100000"));
+		long operationCount = Long.parseLong(properties.getOrDefault("operationcount", "1000000"));
+		int threads = Integer.parseInt(properties.getOrDefault("threads", "4"));
+		int fieldLength = Integer.parseInt(properties.getOrDefault("fieldlength", "100"));
+		String distributionName = properties.get("distribution");
+		Path output = Paths.get(properties.getOrDefault("output", "ycsb-result.csv"));
+		if (recordCount < 1) {
+			throw new IllegalArgumentException("recordcount must be positive");
+		}
+
+		List<YcsbWorkload> selected = new ArrayList<YcsbWorkload>();
+		if ("ALL".equalsIgnoreCase(workloads)) {
+			selected.addAll(Arrays.asList(YcsbWorkload.values()));
+		} else {
+			for (String name : workloads.split(",")) {
+				selected.add(YcsbWorkload.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+			}
+		}
+
+		System.out.println(CSV_HEADER);
+		for (YcsbWorkload workload : selected) {
+			Distribution distribution = distributionName == null ? workload.getDistribution()
+					: Distribution.valueOf(distributionName.toUpperCase(Locale.ROOT));
+			YcsbDriver driver = new YcsbDriver(workload, mapType, distribution, recordCount, operationCount,
+					threads, fieldLength);
+			List<String> rows = new ArrayList<String>();
+			rows.addAll(driver.report(driver.load()));
+			rows.addAll(driver.report(driver.run()));
+			for (String row : rows) {
+				System.out.println(row);
+			}
+			append(output, rows);
+		}
+	}
+}
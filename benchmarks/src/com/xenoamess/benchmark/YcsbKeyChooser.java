@@ -0,0 +1,201 @@
+package com.xenoamess.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * YcsbKeyChooser chooses the record an operation of a YCSB workload reads or
+ * updates,among the itemCount records inserted so far. it works like the
+ * request distributions of YCSB's core workload,so the numbers can be compared
+ * with YCSB's.
+ * <p>
+ * a chooser is used by one thread only.
+ */
+public abstract class YcsbKeyChooser {
+
+	public enum Distribution {
+		UNIFORM {
+			@Override
+			public YcsbKeyChooser newChooser(long seed) {
+				return new UniformChooser(seed);
+			}
+		},
+		/**
+		 * scrambled zipfian:a few records are hot,and they are spread over all
+		 * the records.
+		 */
+		ZIPFIAN {
+			@Override
+			public YcsbKeyChooser newChooser(long seed) {
+				return new ScrambledZipfianChooser(seed);
+			}
+		},
+		/**
+		 * the most recently inserted records are hot.
+		 */
+		LATEST {
+			@Override
+			public YcsbKeyChooser newChooser(long seed) {
+				return new LatestChooser(seed);
+			}
+		};
+
+		public abstract YcsbKeyChooser newChooser(long seed);
+	}
+
+	public static final double ZIPFIAN_CONSTANT = 0.99;
+
+	final SplittableRandom random;
+
+	YcsbKeyChooser(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * @return a record number in [0,itemCount)
+	 */
+	public abstract long next(long itemCount);
+
+	static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+	static final long FNV_PRIME_64 = 1099511628211L;
+
+	/**
+	 * 64-bit FNV-1a hash of the 8 bytes of value,as YCSB's Utils.fnvhash64.
+	 *
+	 * @return a non-negative hash
+	 */
+	public static long fnvhash64(long value) {
+		long hash = FNV_OFFSET_BASIS_64;
+		for (int i = 0; i < 8; i++) {
+			long octet = value & 0xff;
+			value = value >> 8;
+			hash = hash ^ octet;
+			hash = hash * FNV_PRIME_64;
+		}
+		return Math.abs(hash);
+	}
+
+	static class UniformChooser extends YcsbKeyChooser {
+		UniformChooser(long seed) {
+			super(seed);
+		}
+
+		@Override
+		public long next(long itemCount) {
+			return random.nextLong(itemCount);
+		}
+	}
+
+	/**
+	 * zipfian over a huge fixed item count,hashed into [0,itemCount). the zeta
+	 * of the huge count is a constant,so it costs nothing when records are
+	 * inserted.
+	 */
+	static class ScrambledZipfianChooser extends YcsbKeyChooser {
+		static final long ITEM_COUNT = 10_000_000_000L;
+
+		/**
+		 * zeta(ITEM_COUNT,0.99),the same constant as YCSB's
+		 */
+		static final double ZETAN = 26.46902820178302;
+
+		final ZipfianGenerator zipfian;
+
+		ScrambledZipfianChooser(long seed) {
+			super(seed);
+			zipfian = new ZipfianGenerator(ITEM_COUNT, ZIPFIAN_CONSTANT, ZETAN);
+		}
+
+		@Override
+		public long next(long itemCount) {
+			return fnvhash64(zipfian.next(random, ITEM_COUNT)) % itemCount;
+		}
+	}
+
+	/**
+	 * zipfian over the age of the records,so the last inserted one is the
+	 * hottest.
+	 */
+	static class LatestChooser extends YcsbKeyChooser {
+		ZipfianGenerator zipfian = null;
+
+		LatestChooser(long seed) {
+			super(seed);
+		}
+
+		@Override
+		public long next(long itemCount) {
+			if (zipfian == null) {
+				zipfian = new ZipfianGenerator(itemCount, ZIPFIAN_CONSTANT);
+			}
+			return itemCount - 1 - zipfian.next(random, itemCount);
+		}
+	}
+
+	/**
+	 * the zipfian generator of Gray et al,"Quickly Generating Billion-Record
+	 * Synthetic Databases",which YCSB uses. it draws in O(1),but zeta of the
+	 * item count must be known. when the item count grows,zeta is extended from
+	 * the old count instead of computed again.
+	 */
+	static class ZipfianGenerator {
+		final double theta;
+		final double zeta2theta;
+		final double alpha;
+		long countForZeta;
+		double zetan;
+		double eta;
+
+		ZipfianGenerator(long itemCount, double theta) {
+			this(itemCount, theta, zeta(0, itemCount, theta, 0));
+		}
+
+		ZipfianGenerator(long itemCount, double theta, double zetan) {
+			this.theta = theta;
+			this.zeta2theta = zeta(0, 2, theta, 0);
+			this.alpha = 1.0 / (1.0 - theta);
+			this.countForZeta = itemCount;
+			this.zetan = zetan;
+			this.eta = eta(itemCount);
+		}
+
+		/**
+		 * @return sum of 1/i^theta for i in (from,to],added to initial
+		 */
+		static double zeta(long from, long to, double theta, double initial) {
+			double sum = initial;
+			for (long i = from; i < to; i++) {
+				sum += 1 / Math.pow(i + 1, theta);
+			}
+			return sum;
+		}
+
+		double eta(long itemCount) {
+			return (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta2theta / zetan);
+		}
+
+		/**
+		 * @return a rank in [0,itemCount),0 the most popular
+		 */
+		long next(SplittableRandom random, long itemCount) {
+			if (itemCount != countForZeta) {
+				if (itemCount > countForZeta) {
+					zetan = zeta(countForZeta, itemCount, theta, zetan);
+				} else {
+					zetan = zeta(0, itemCount, theta, 0);
+				}
+				countForZeta = itemCount;
+				eta = eta(itemCount);
+			}
+			double u = random.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1.0) {
+				return 0;
+			}
+			if (uz < 1.0 + Math.pow(0.5, theta)) {
+				return Math.min(1, itemCount - 1);
+			}
+			long res = (long) (itemCount * Math.pow(eta * u - eta + 1, alpha));
+			return Math.min(res, itemCount - 1);
+		}
+	}
+}
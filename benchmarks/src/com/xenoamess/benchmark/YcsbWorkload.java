@@ -0,0 +1,72 @@
+package com.xenoamess.benchmark;
+
+import com.xenoamess.benchmark.YcsbKeyChooser.Distribution;
+
+/**
+ * the core workloads of YCSB. the proportions are of read,update,insert,scan
+ * and read-modify-write,in percent.
+ */
+public enum YcsbWorkload {
+	/**
+	 * update heavy
+	 */
+	A(50, 50, 0, 0, 0, Distribution.ZIPFIAN),
+	/**
+	 * read mostly
+	 */
+	B(95, 5, 0, 0, 0, Distribution.ZIPFIAN),
+	/**
+	 * read only
+	 */
+	C(100, 0, 0, 0, 0, Distribution.ZIPFIAN),
+	/**
+	 * read latest
+	 */
+	D(95, 0, 5, 0, 0, Distribution.LATEST),
+	/**
+	 * short ranges
+	 */
+	E(0, 0, 5, 95, 0, Distribution.ZIPFIAN),
+	/**
+	 * read-modify-write
+	 */
+	F(50, 0, 0, 0, 50, Distribution.ZIPFIAN);
+
+	public enum Operation {
+		READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE
+	}
+
+	static final Operation[] OPERATIONS = Operation.values();
+
+	/**
+	 * a scan reads up to it records
+	 */
+	public static final int MAX_SCAN_LENGTH = 100;
+
+	final int[] proportions;
+	final Distribution distribution;
+
+	YcsbWorkload(int read, int update, int insert, int scan, int readModifyWrite, Distribution distribution) {
+		this.proportions = new int[] { read, update, insert, scan, readModifyWrite };
+		this.distribution = distribution;
+	}
+
+	public Distribution getDistribution() {
+		return distribution;
+	}
+
+	/**
+	 * @param dice
+	 *            in [0,100)
+	 * @return the operation of dice
+	 */
+	public Operation operation(int dice) {
+		for (int i = 0; i < proportions.length; i++) {
+			dice -= proportions[i];
+			if (dice < 0) {
+				return OPERATIONS[i];
+			}
+		}
+		return Operation.READ;
+	}
+}
@@ -0,0 +1,409 @@
+package com.xenoamess;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import com.xenoamess.HashTable.Table;
+
+/**
+ * AsyncHashTable gives a HashTable an asynchronous api:getAsync,putAsync,
+ * removeAsync and computeAsync return CompletableFutures,and the calling thread
+ * never waits for a lock or a resize,so it can be an event-loop thread.
+ * <p>
+ * the calls are queued by hash into STRIPES queues,and each queue is drained by
+ * one task at a time on the executor. a drain takes up to MAX_BATCH calls,sorts
+ * them by their tables(keeping the order of the calls of a table) and runs the
+ * calls of a table holding its lock once,so many small calls cost a few locked
+ * batches. the futures are completed after the locks are released.
+ * <p>
+ * the map of a subclass,like a DurableHashTable,has its own put and remove,so
+ * its calls are batched on the executor but run one by one by the methods of
+ * the map.
+ */
+public class AsyncHashTable<K, V> implements Closeable {
+
+	/**
+	 * number of queues.must be a power of 2
+	 */
+	static final int STRIPES = 64;
+
+	/**
+	 * most calls in a batch
+	 */
+	static final int MAX_BATCH = 256;
+
+	static final int GET = 0;
+	static final int PUT = 1;
+	static final int REMOVE = 2;
+	static final int COMPUTE = 3;
+
+	/**
+	 * a queued call
+	 */
+	static final class Call<K, V> {
+		final int type;
+		final K key;
+		final V value;
+		final BiFunction<? super K, ? super V, ? extends V> function;
+		final CompletableFuture<V> future = new CompletableFuture<V>();
+
+		/**
+		 * index of the table in the pool of the batch,which is hashed by the seed
+		 * of that pool
+		 */
+		int tableIndex;
+
+		/**
+		 * if the table was moved by a resize,so the call is run by the map
+		 */
+		boolean moved;
+
+		V result;
+		Object[] previous = new Object[1];
+		Throwable failure;
+
+		Call(int type, K key, V value, BiFunction<? super K, ? super V, ? extends V> function) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+			this.function = function;
+		}
+	}
+
+	static final Comparator<Call<?, ?>> BY_TABLE = (a, b) -> Integer.compare(a.tableIndex, b.tableIndex);
+
+	final class Stripe implements Runnable {
+		final ConcurrentLinkedQueue<Call<K, V>> queue = new ConcurrentLinkedQueue<Call<K, V>>();
+
+		/**
+		 * if a drain of the queue is submitted or running
+		 */
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		void add(Call<K, V> call) {
+			queue.add(call);
+			if (scheduled.compareAndSet(false, true)) {
+				submit(this);
+			}
+		}
+
+		/**
+		 * drain one batch,and submit the drain again if there are more,so the
+		 * stripes share the executor fairly. if the batch fails,its calls not
+		 * completed fail with it,and the stripe goes on.
+		 */
+		@Override
+		public void run() {
+			ArrayList<Call<K, V>> batch = new ArrayList<Call<K, V>>();
+			try {
+				Call<K, V> call;
+				while (batch.size() < MAX_BATCH && (call = queue.poll()) != null) {
+					batch.add(call);
+				}
+				if (!batch.isEmpty()) {
+					runBatch(batch);
+				}
+			} catch (Throwable e) {
+				for (Call<K, V> failed : batch) {
+					failed.future.completeExceptionally(e);
+				}
+				throw e;
+			} finally {
+				next();
+			}
+		}
+
+		/**
+		 * submit the drain again if there are calls,or unset scheduled.
+		 */
+		void next() {
+			if (!queue.isEmpty()) {
+				submit(this);
+				return;
+			}
+			scheduled.set(false);
+			// a call added after the poll and before the set saw scheduled and did
+			// not submit
+			if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+				submit(this);
+			}
+		}
+	}
+
+	final HashTable<K, V> map;
+	final Executor executor;
+
+	/**
+	 * the executor if it is created by this,so close() shuts it down
+	 */
+	final ExecutorService ownExecutor;
+
+	/**
+	 * if the calls can run on the tables directly.false for subclasses of
+	 * HashTable.
+	 */
+	final boolean direct;
+
+	final Stripe[] stripes;
+
+	/**
+	 * run the calls of map on a dedicated pool of daemon threads,one for each
+	 * processor.
+	 */
+	public AsyncHashTable(HashTable<K, V> map) {
+		this(map, newDedicatedExecutor());
+	}
+
+	/**
+	 * @param executor
+	 *            the executor to run the batches on
+	 */
+	public AsyncHashTable(HashTable<K, V> map, Executor executor) {
+		super();
+		if (map == null || executor == null) {
+			throw new NullPointerException();
+		}
+		this.map = map;
+		this.executor = executor;
+		this.ownExecutor = executor instanceof DedicatedExecutor ? ((DedicatedExecutor) executor).service : null;
+		this.direct = map.getClass() == HashTable.class;
+		@SuppressWarnings("unchecked")
+		Stripe[] newStripes = (Stripe[]) new AsyncHashTable<?, ?>.Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			newStripes[i] = new Stripe();
+		}
+		this.stripes = newStripes;
+	}
+
+	/**
+	 * the executor of the default constructor,which close() shuts down.
+	 */
+	static final class DedicatedExecutor implements Executor {
+		final ExecutorService service;
+
+		DedicatedExecutor(ExecutorService service) {
+			this.service = service;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			service.execute(command);
+		}
+	}
+
+	static DedicatedExecutor newDedicatedExecutor() {
+		AtomicInteger count = new AtomicInteger();
+		return new DedicatedExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r, "AsyncHashTable-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	public HashTable<K, V> getMap() {
+		return map;
+	}
+
+	void submit(Stripe stripe) {
+		try {
+			executor.execute(stripe);
+		} catch (RuntimeException e) {
+			// the executor is shut down or full,so the calls queued fail
+			stripe.scheduled.set(false);
+			Call<K, V> call;
+			while ((call = stripe.queue.poll()) != null) {
+				call.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	CompletableFuture<V> enqueue(int type, K k, V v, BiFunction<? super K, ? super V, ? extends V> function) {
+		if (k == null) {
+			throw new NullPointerException();
+		}
+		Call<K, V> call = new Call<K, V>(type, k, v, function);
+		stripes[map.hash(k) & (STRIPES - 1)].add(call);
+		return call.future;
+	}
+
+	/**
+	 * @return a future of the value of k,or null if absent
+	 */
+	public CompletableFuture<V> getAsync(K k) {
+		return enqueue(GET, k, null, null);
+	}
+
+	/**
+	 * @return a future of the old value of k
+	 */
+	public CompletableFuture<V> putAsync(K k, V v) {
+		if (v == null) {
+			throw new NullPointerException();
+		}
+		return enqueue(PUT, k, v, null);
+	}
+
+	/**
+	 * @return a future of the removed value of k
+	 */
+	public CompletableFuture<V> removeAsync(K k) {
+		return enqueue(REMOVE, k, null, null);
+	}
+
+	/**
+	 * function runs on the executor holding the lock of the table of k,so it
+	 * must be short and must not change the map.
+	 *
+	 * @return a future of the new value of k
+	 * @see HashTable#compute(Object, BiFunction)
+	 */
+	public CompletableFuture<V> computeAsync(K k, BiFunction<? super K, ? super V, ? extends V> function) {
+		if (function == null) {
+			throw new NullPointerException();
+		}
+		return enqueue(COMPUTE, k, null, function);
+	}
+
+	void runBatch(ArrayList<Call<K, V>> batch) {
+		if (direct) {
+			map.awaitResize();
+			Table<K, V>[] nowPool = map.pool;
+			for (Call<K, V> call : batch) {
+				call.tableIndex = map.indexIn(call.key, nowPool);
+			}
+			batch.sort(BY_TABLE);
+			int start = 0;
+			while (start < batch.size()) {
+				int end = start + 1;
+				while (end < batch.size() && batch.get(end).tableIndex == batch.get(start).tableIndex) {
+					end++;
+				}
+				runOnTable(nowPool[batch.get(start).tableIndex], batch, start, end);
+				start = end;
+			}
+		}
+		for (Call<K, V> call : batch) {
+			try {
+				if (!direct || call.moved) {
+					runOnMap(call);
+				} else {
+					afterRun(call);
+				}
+			} catch (Throwable e) {
+				// the call is done on the table,but its bookkeeping failed
+				call.failure = e;
+			}
+			if (call.failure != null) {
+				call.future.completeExceptionally(call.failure);
+			} else {
+				call.future.complete(call.result);
+			}
+		}
+	}
+
+	/**
+	 * run batch[start,end),which are calls of table,holding its lock once. if
+	 * table is moved,which is only done holding its lock,all of them are moved.
+	 */
+	@SuppressWarnings("unchecked")
+	void runOnTable(Table<K, V> table, ArrayList<Call<K, V>> batch, int start, int end) {
+		table.runLocked(() -> {
+			boolean moved = table.moved;
+			for (int i = start; i < end; i++) {
+				Call<K, V> call = batch.get(i);
+				if (moved) {
+					call.moved = true;
+					continue;
+				}
+				try {
+					switch (call.type) {
+					case GET:
+						call.result = table.get(call.key);
+						break;
+					case PUT:
+						call.previous[0] = table.put(call.key, call.value);
+						break;
+					case REMOVE:
+						call.result = table.remove(call.key);
+						break;
+					default:
+						call.result = table.compute(call.key, call.function, call.previous);
+						break;
+					}
+				} catch (Throwable e) {
+					call.failure = e;
+				}
+			}
+		});
+	}
+
+	/**
+	 * the bookkeeping of HashTable after a call ran on a table.
+	 */
+	@SuppressWarnings("unchecked")
+	void afterRun(Call<K, V> call) {
+		if (call.failure != null) {
+			return;
+		}
+		switch (call.type) {
+		case PUT:
+			map.afterPut(call.key, call.value, (V) call.previous[0]);
+			call.result = (V) call.previous[0];
+			break;
+		case REMOVE:
+			map.afterRemove(call.key, call.result);
+			break;
+		case COMPUTE:
+			if (call.result != null) {
+				map.afterPut(call.key, call.result, (V) call.previous[0]);
+			} else {
+				map.afterRemove(call.key, (V) call.previous[0]);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	void runOnMap(Call<K, V> call) {
+		call.failure = null;
+		try {
+			switch (call.type) {
+			case GET:
+				call.result = map.get(call.key);
+				break;
+			case PUT:
+				call.result = map.put(call.key, call.value);
+				break;
+			case REMOVE:
+				call.result = map.remove(call.key);
+				break;
+			default:
+				call.result = map.compute(call.key, call.function);
+				break;
+			}
+		} catch (Throwable e) {
+			call.failure = e;
+		}
+	}
+
+	/**
+	 * shut down the executor if it is created by this.calls queued after it
+	 * fail with RejectedExecutionException.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+}
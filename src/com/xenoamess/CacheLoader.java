@@ -0,0 +1,60 @@
+package com.xenoamess;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CacheLoader computes the values of a LoadingHashTable.
+ *
+ * @see LoadingHashTable
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+	/**
+	 * @param key
+	 *            the key to load
+	 * @return the value of key,or null if key has no value
+	 * @throws Exception
+	 *             if the value cannot be loaded
+	 */
+	V load(K key) throws Exception;
+
+	/**
+	 * load values of many keys in one call. override it if the backend supports
+	 * bulk loading,otherwise it calls load for each key.
+	 * 
+	 * @param keys
+	 *            the keys to load
+	 * @return a map from keys to their values.keys without values can be absent
+	 * @throws Exception
+	 *             if the values cannot be loaded
+	 */
+	default Map<K, V> loadAll(Collection<? extends K> keys) throws Exception {
+		Map<K, V> res = new HashMap<K, V>();
+		for (K key : keys) {
+			V value = load(key);
+			if (value != null) {
+				res.put(key, value);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * compute a new value of a key which already has oldValue.it is called by
+	 * refresh-ahead,and by default it calls load.
+	 * 
+	 * @param key
+	 *            the key to reload
+	 * @param oldValue
+	 *            the present value of key
+	 * @return the new value of key,or null if key has no value any more
+	 * @throws Exception
+	 *             if the value cannot be loaded
+	 */
+	default V reload(K key, V oldValue) throws Exception {
+		return load(key);
+	}
+}
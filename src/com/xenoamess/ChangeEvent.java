@@ -0,0 +1,73 @@
+package com.xenoamess;
+
+/**
+ * ChangeEvent is a change of a HashTable,published by HashTable.changes().
+ *
+ * @see HashTable#changes()
+ */
+public final class ChangeEvent<K, V> {
+
+	public enum Type {
+		/**
+		 * a value is put by put,putIfAbsent or compute.oldValue is null if the
+		 * key was absent.
+		 */
+		PUT,
+		/**
+		 * a key is removed by remove or compute.newValue is null.
+		 */
+		REMOVE,
+		/**
+		 * a key is evicted by the weight bound of the map.newValue is null.
+		 */
+		EVICT,
+		/**
+		 * the map is cleared.key,oldValue and newValue are null.
+		 */
+		CLEAR
+	}
+
+	final long sequence;
+	final Type type;
+	final K key;
+	final V oldValue;
+	final V newValue;
+
+	ChangeEvent(long sequence, Type type, K key, V oldValue, V newValue) {
+		this.sequence = sequence;
+		this.type = type;
+		this.key = key;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	/**
+	 * @return the number of the change in the map,taken under the lock of the
+	 *         table of the key(of the map for CLEAR). a later change of a key
+	 *         has a larger sequence,and the sequences of a map are distinct.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public K getKey() {
+		return key;
+	}
+
+	public V getOldValue() {
+		return oldValue;
+	}
+
+	public V getNewValue() {
+		return newValue;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + type + " " + key + " : " + oldValue + " -> " + newValue;
+	}
+}
@@ -0,0 +1,473 @@
+package com.xenoamess;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChangePublisher is the publisher of HashTable.changes().
+ * <p>
+ * a writer puts its events into a ring of its own thread while it holds the
+ * lock of the table,with a sequence number of the map,so it never waits for
+ * another writer or a subscriber,and the sequences of the changes of a key are
+ * in their order. a ring is a chain of segments:a writer whose segment is full
+ * links a new one and goes on in it,and leaves the full one to the drainer,so
+ * a writer never drains. one drain task at a time runs on the executor:it moves
+ * the events of all the rings into a batch sorted by sequence,and hands it to
+ * every subscription,which delivers it to its subscriber as much as it
+ * requested. a writer marks the sequence it is taking until its event is in
+ * its ring,and the drainer only hands on the events before the lowest sequence
+ * still in flight,so the subscribers get the events in the order of their
+ * sequences. a writer only waits when the writers are MAX_BACKLOG segments
+ * ahead of the drainer,so the rings stay bounded.
+ * <p>
+ * a subscription buffers at most SUBSCRIPTION_BUFFER_SIZE events. a subscriber
+ * so slow that it overflows is cancelled with an IllegalStateException,so the
+ * writers are never slowed down by it and it never misses an event silently.
+ */
+final class ChangePublisher<K, V> implements Flow.Publisher<ChangeEvent<K, V>> {
+
+	/**
+	 * events in the ring of a thread.must be a power of 2
+	 */
+	static final int RING_SIZE = 1024;
+
+	/**
+	 * most events a subscription buffers
+	 */
+	static final int SUBSCRIPTION_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * most events delivered by one run of a subscription,so the subscriptions
+	 * share the executor fairly
+	 */
+	static final int MAX_DELIVERY = 1024;
+
+	/**
+	 * most segments linked and not drained yet
+	 */
+	static final int MAX_BACKLOG = SUBSCRIPTION_BUFFER_SIZE / RING_SIZE;
+
+	/**
+	 * RING_SIZE events of a ring.only the writer writes events,count and next.
+	 */
+	static final class Segment {
+		final Object[] events = new Object[RING_SIZE];
+		volatile int count = 0;
+		volatile Segment next = null;
+	}
+
+	/**
+	 * the events of one writer thread.segment is only used by the writer,
+	 * drained and drainedCount only by the drainer.
+	 */
+	static final class Ring {
+		Segment segment = new Segment();
+		Segment drained = segment;
+		int drainedCount = 0;
+
+		/**
+		 * no more than the sequence the writer is taking,or Long.MAX_VALUE if it
+		 * is not publishing
+		 */
+		volatile long floor = Long.MAX_VALUE;
+
+		/**
+		 * if the thread is evicting,so its removes are EVICT events
+		 */
+		boolean evicting = false;
+
+		final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+
+		boolean isEmpty() {
+			return drainedCount == drained.count && drained.next == null;
+		}
+
+		boolean isDead() {
+			Thread thread = owner.get();
+			return thread == null || !thread.isAlive();
+		}
+	}
+
+	/**
+	 * the executor of the publishers by default.a drain or a subscription has
+	 * a thread of its own while it runs,so a slow subscriber does not keep the
+	 * others waiting,and the idle threads die after a minute.
+	 */
+	static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
+
+	static Executor newDefaultExecutor() {
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "HashTable-changes-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	final Executor executor;
+
+	final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<Ring>();
+
+	final ThreadLocal<Ring> ring = ThreadLocal.withInitial(() -> {
+		Ring res = new Ring();
+		rings.add(res);
+		return res;
+	});
+
+	/**
+	 * the sequence of the last change
+	 */
+	final AtomicLong sequence = new AtomicLong();
+
+	final CopyOnWriteArrayList<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<ChangeSubscription>();
+
+	/**
+	 * if a drain is submitted or running
+	 */
+	final AtomicBoolean draining = new AtomicBoolean();
+
+	/**
+	 * segments linked and not drained yet
+	 */
+	final AtomicInteger backlog = new AtomicInteger();
+
+	/**
+	 * events taken and not handed on yet,as an event of a smaller sequence may
+	 * still be in flight.only the drainer uses it.
+	 */
+	final ArrayList<ChangeEvent<K, V>> held = new ArrayList<ChangeEvent<K, V>>();
+
+	ChangePublisher() {
+		this(DEFAULT_EXECUTOR);
+	}
+
+	ChangePublisher(Executor executor) {
+		super();
+		this.executor = executor;
+	}
+
+	boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * the ring of the present thread
+	 */
+	Ring ring() {
+		return ring.get();
+	}
+
+	/**
+	 * publish a change.it is called by the writer holding the lock of the table
+	 * (of the map for CLEAR),and only waits if the drainer is MAX_BACKLOG
+	 * segments behind.
+	 */
+	void publish(ChangeEvent.Type type, K k, V oldValue, V newValue) {
+		if (subscriptions.isEmpty()) {
+			return;
+		}
+		Ring nowRing = ring.get();
+		if (type == ChangeEvent.Type.REMOVE && nowRing.evicting) {
+			type = ChangeEvent.Type.EVICT;
+		}
+		Segment nowSegment = nowRing.segment;
+		int nowCount = nowSegment.count;
+		if (nowCount == RING_SIZE) {
+			// leave the full segment to the drainer
+			Segment newSegment = new Segment();
+			nowSegment.next = newSegment;
+			nowRing.segment = nowSegment = newSegment;
+			nowCount = 0;
+			if (backlog.incrementAndGet() > MAX_BACKLOG) {
+				awaitDrainer();
+			}
+		}
+		// set before the sequence is taken,so the drainer sees either the floor
+		// or the event
+		nowRing.floor = sequence.get() + 1;
+		nowSegment.events[nowCount] = new ChangeEvent<K, V>(sequence.incrementAndGet(), type, k, oldValue, newValue);
+		nowSegment.count = nowCount + 1;
+		nowRing.floor = Long.MAX_VALUE;
+		if (!draining.get() && draining.compareAndSet(false, true)) {
+			submit(this::drainAll);
+		}
+	}
+
+	/**
+	 * the writers are MAX_BACKLOG segments ahead of the drainer:give it the cpu
+	 * till it catches up.the drainer takes no lock of the map,so it always
+	 * does.
+	 */
+	void awaitDrainer() {
+		while (backlog.get() > MAX_BACKLOG && !subscriptions.isEmpty()) {
+			if (!draining.get() && draining.compareAndSet(false, true)) {
+				submit(this::drainAll);
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * move the events of nowRing into batch.only the drainer calls it.
+	 */
+	@SuppressWarnings("unchecked")
+	void take(Ring nowRing, ArrayList<ChangeEvent<K, V>> batch) {
+		while (true) {
+			Segment nowSegment = nowRing.drained;
+			int nowCount = nowSegment.count;
+			for (int i = nowRing.drainedCount; i < nowCount; i++) {
+				batch.add((ChangeEvent<K, V>) nowSegment.events[i]);
+			}
+			nowRing.drainedCount = nowCount;
+			Segment next = nowSegment.next;
+			// next is linked only after the segment is full
+			if (next == null) {
+				return;
+			}
+			nowRing.drained = next;
+			nowRing.drainedCount = 0;
+			backlog.decrementAndGet();
+		}
+	}
+
+	/**
+	 * hand batch,sorted by sequence,to every subscription
+	 */
+	void offer(ArrayList<ChangeEvent<K, V>> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		for (ChangeSubscription subscription : subscriptions) {
+			subscription.offer(batch);
+		}
+	}
+
+	static final Comparator<ChangeEvent<?, ?>> BY_SEQUENCE = (a, b) -> Long.compare(a.sequence, b.sequence);
+
+	void drainAll() {
+		// the sequence is read before the floors,so an event of a sequence up
+		// to it is either taken below or held back by its floor
+		long watermark = sequence.get() + 1;
+		for (Ring nowRing : rings) {
+			watermark = Math.min(watermark, nowRing.floor);
+		}
+		for (Ring nowRing : rings) {
+			if (!nowRing.isEmpty()) {
+				take(nowRing, held);
+			} else if (nowRing.isDead()) {
+				rings.remove(nowRing);
+			}
+		}
+		held.sort(BY_SEQUENCE);
+		int released = 0;
+		while (released < held.size() && held.get(released).sequence < watermark) {
+			released++;
+		}
+		ArrayList<ChangeEvent<K, V>> batch = new ArrayList<ChangeEvent<K, V>>(held.subList(0, released));
+		held.subList(0, released).clear();
+		offer(batch);
+		// the held events wait for the next drain,and an event put after its
+		// ring was drained saw draining and did not submit
+		boolean pending = !held.isEmpty();
+		draining.set(false);
+		for (Ring nowRing : rings) {
+			pending = pending || !nowRing.isEmpty();
+		}
+		if (pending && draining.compareAndSet(false, true)) {
+			submit(this::drainAll);
+		}
+	}
+
+	void submit(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			// the executor rejected it,so the subscribers would never get more
+			// events
+			draining.set(false);
+			for (ChangeSubscription subscription : subscriptions) {
+				subscription.fail(e);
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ChangeEvent<K, V>> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		ChangeSubscription subscription = new ChangeSubscription(subscriber);
+		for (ChangeSubscription present : subscriptions) {
+			if (present.subscriber == subscriber) {
+				subscription.cancelled = true;
+				subscriber.onSubscribe(subscription);
+				subscriber.onError(new IllegalStateException("already subscribed"));
+				return;
+			}
+		}
+		subscriber.onSubscribe(subscription);
+		if (!subscription.cancelled) {
+			subscriptions.add(subscription);
+		}
+	}
+
+	/**
+	 * the batches of events of one subscriber.it is run on the executor by one
+	 * thread at a time,which is the only one calling the subscriber after
+	 * onSubscribe.
+	 */
+	final class ChangeSubscription implements Flow.Subscription, Runnable {
+		final Flow.Subscriber<? super ChangeEvent<K, V>> subscriber;
+
+		final ConcurrentLinkedQueue<ArrayList<ChangeEvent<K, V>>> batches = new ConcurrentLinkedQueue<ArrayList<ChangeEvent<K, V>>>();
+
+		/**
+		 * number of events in batches and batch
+		 */
+		final AtomicInteger buffered = new AtomicInteger();
+
+		/**
+		 * events requested and not delivered yet
+		 */
+		final AtomicLong demand = new AtomicLong();
+
+		/**
+		 * if a run is submitted or running
+		 */
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		volatile boolean cancelled = false;
+
+		/**
+		 * the error to signal,which ends the subscription
+		 */
+		volatile Throwable failure = null;
+
+		/**
+		 * the batch being delivered and the index of its next event.only the run
+		 * uses them.
+		 */
+		ArrayList<ChangeEvent<K, V>> batch = null;
+		int index = 0;
+
+		ChangeSubscription(Flow.Subscriber<? super ChangeEvent<K, V>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(ArrayList<ChangeEvent<K, V>> newBatch) {
+			if (cancelled || failure != null) {
+				return;
+			}
+			if (buffered.addAndGet(newBatch.size()) > SUBSCRIPTION_BUFFER_SIZE) {
+				fail(new IllegalStateException(
+						"subscriber is too slow,more than " + SUBSCRIPTION_BUFFER_SIZE + " events buffered"));
+				return;
+			}
+			batches.add(newBatch);
+			if (demand.get() > 0) {
+				schedule();
+			}
+		}
+
+		void fail(Throwable e) {
+			if (failure == null) {
+				failure = e;
+			}
+			schedule();
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					scheduled.set(false);
+					end();
+				}
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("request " + n + " is not positive"));
+				return;
+			}
+			long nowDemand;
+			long newDemand;
+			do {
+				nowDemand = demand.get();
+				newDemand = nowDemand + n < 0 ? Long.MAX_VALUE : nowDemand + n;
+			} while (!demand.compareAndSet(nowDemand, newDemand));
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			end();
+		}
+
+		void end() {
+			cancelled = true;
+			subscriptions.remove(this);
+			batches.clear();
+		}
+
+		@Override
+		public void run() {
+			try {
+				deliver();
+			} finally {
+				scheduled.set(false);
+			}
+			// an offer or request after deliver saw scheduled and did not submit
+			if (!cancelled && (failure != null || (demand.get() > 0 && (batch != null || !batches.isEmpty())))) {
+				schedule();
+			}
+		}
+
+		void deliver() {
+			int delivered = 0;
+			while (!cancelled) {
+				// a failure ends the subscription before the events buffered
+				Throwable nowFailure = failure;
+				if (nowFailure != null) {
+					end();
+					subscriber.onError(nowFailure);
+					break;
+				}
+				if (delivered == MAX_DELIVERY || demand.get() <= 0) {
+					return;
+				}
+				if (batch == null || index == batch.size()) {
+					batch = batches.poll();
+					index = 0;
+					if (batch == null) {
+						return;
+					}
+				}
+				ChangeEvent<K, V> event = batch.get(index++);
+				demand.getAndDecrement();
+				buffered.getAndDecrement();
+				delivered++;
+				try {
+					subscriber.onNext(event);
+				} catch (Throwable e) {
+					end();
+					subscriber.onError(e);
+					break;
+				}
+			}
+			batch = null;
+		}
+	}
+}
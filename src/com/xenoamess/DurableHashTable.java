@@ -0,0 +1,348 @@
+package com.xenoamess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * DurableHashTable is a HashTable whose puts and removes are logged to a
+ * WriteAheadLog before they return. the log is group committed,so a put waits
+ * at most about one commitInterval for its fsync,and concurrent puts share
+ * fsyncs. when it is opened,the existing log is replayed to rebuild the map.
+ * <p>
+ * a change is appended to the log and applied to the map under the same lock
+ * stripe of its key,so the order of the changes of a key in the log is the
+ * order they are applied.
+ * <p>
+ * checkpoint() saves the map without stopping writers. it rotates the log,then
+ * copies the tables one by one,each in its own short workBegin/workEnd section,
+ * while the changes made meanwhile go to the log segments after the rotation.
+ * the checkpoint file is fuzzy,but replaying those segments on it gives the
+ * exact map,so older segments are deleted.
+ */
+public class DurableHashTable<K, V> extends HashTable<K, V> implements Closeable {
+
+	/**
+	 * number of lock stripes.must be a power of 2
+	 */
+	static final int LOCK_STRIPES = 64;
+
+	final Object[] locks = new Object[LOCK_STRIPES];
+
+	/**
+	 * the log.it is null while the map is being replayed,so replayed changes are
+	 * not logged again.
+	 */
+	WriteAheadLog<K, V> wal = null;
+
+	static final String CHECKPOINT_PREFIX = "checkpoint-";
+	static final String CHECKPOINT_SUFFIX = ".snap";
+	static final String TEMP_SUFFIX = ".tmp";
+
+	Path directory;
+	KeyValueCodec<K, V> codec;
+
+	/**
+	 * serializes checkpoints.
+	 */
+	final Object checkpointLock = new Object();
+
+	ScheduledExecutorService checkpointer = null;
+
+	volatile IOException checkpointFailure = null;
+
+	DurableHashTable(int initPoolSize) {
+		super(initPoolSize);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	public static <K, V> DurableHashTable<K, V> open(Path directory, KeyValueCodec<K, V> codec,
+			long commitInterval, TimeUnit unit) throws IOException {
+		return open(directory, codec, commitInterval, unit, WriteAheadLog.DEFAULT_SEGMENT_SIZE, MIN_POOL_SIZE);
+	}
+
+	/**
+	 * load the latest checkpoint in directory and replay the log after it to a
+	 * new map,then log the changes of the map to a new segment.
+	 *
+	 * @param commitInterval
+	 *            the max time a put waits for the group commit
+	 * @param segmentSize
+	 *            a log segment larger than it is rotated
+	 */
+	public static <K, V> DurableHashTable<K, V> open(Path directory, KeyValueCodec<K, V> codec,
+			long commitInterval, TimeUnit unit, long segmentSize, int initPoolSize) throws IOException {
+		DurableHashTable<K, V> res = new DurableHashTable<K, V>(initPoolSize);
+		res.directory = directory;
+		res.codec = codec;
+		Files.createDirectories(directory);
+
+		long fromSegmentId = 0;
+		List<Long> checkpoints = WriteAheadLog.fileIds(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+		if (!checkpoints.isEmpty()) {
+			fromSegmentId = checkpoints.get(checkpoints.size() - 1);
+			try (SnapshotFile.Reader<K, V> reader = new SnapshotFile.Reader<K, V>(
+					checkpointPath(directory, fromSegmentId), codec)) {
+				res.load(reader);
+			}
+		}
+		for (long id : WriteAheadLog.fileIds(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX + TEMP_SUFFIX)) {
+			Files.deleteIfExists(directory.resolve(checkpointName(id) + TEMP_SUFFIX));
+		}
+		WriteAheadLog.replay(directory, codec, res, fromSegmentId);
+		res.wal = WriteAheadLog.open(directory, codec, commitInterval, unit, segmentSize);
+		return res;
+	}
+
+	static String checkpointName(long segmentId) {
+		return String.format("%s%016x%s", CHECKPOINT_PREFIX, segmentId, CHECKPOINT_SUFFIX);
+	}
+
+	static Path checkpointPath(Path directory, long segmentId) {
+		return directory.resolve(checkpointName(segmentId));
+	}
+
+	/**
+	 * save a checkpoint of the map,then delete the older checkpoints and the log
+	 * segments before it. writers are only stopped while the rotation of the log
+	 * is marked,and then one table at a time while it is copied. the segment is
+	 * forced after they are released.
+	 *
+	 * @return id of the first log segment to replay on the checkpoint
+	 */
+	public long checkpoint() throws IOException {
+		synchronized (checkpointLock) {
+			// no change is between its log record and the map at the mark,so
+			// every change not in the older segments is in the new ones
+			withAllLocks(0, () -> wal.markRotation());
+			long fromSegmentId = wal.finishRotation();
+
+			Path temp = directory.resolve(checkpointName(fromSegmentId) + TEMP_SUFFIX);
+			Table<K, V>[] oldPool = pool;
+			try (SnapshotFile.Writer<K, V> writer = new SnapshotFile.Writer<K, V>(temp, codec, oldPool.length,
+					hashSeed)) {
+				ArrayList<Object> pairs = new ArrayList<Object>();
+				for (int i = 0; i < oldPool.length; i++) {
+					oldPool[i].copyPairs(pairs);
+					writer.writeTable(pairs);
+					pairs.clear();
+				}
+				writer.finish();
+			}
+			Files.move(temp, checkpointPath(directory, fromSegmentId), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+
+			for (long id : WriteAheadLog.fileIds(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX)) {
+				if (id < fromSegmentId) {
+					Files.deleteIfExists(checkpointPath(directory, id));
+				}
+			}
+			wal.deleteSegmentsBefore(fromSegmentId);
+			return fromSegmentId;
+		}
+	}
+
+	/**
+	 * run checkpoint() in a background thread every interval.
+	 */
+	public synchronized void startCheckpointing(long interval, TimeUnit unit) {
+		if (checkpointer != null) {
+			throw new IllegalStateException("checkpointing is started already");
+		}
+		checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "DurableHashTable-checkpointer " + directory);
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkpointer.scheduleWithFixedDelay(() -> {
+			try {
+				checkpoint();
+			} catch (IOException | RuntimeException e) {
+				checkpointFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * @return the exception of the last failed background checkpoint,or null
+	 */
+	public IOException getCheckpointFailure() {
+		return checkpointFailure;
+	}
+
+	public WriteAheadLog<K, V> getWriteAheadLog() {
+		return wal;
+	}
+
+	final Object lockFor(Object k) {
+		return locks[spread(rawHash(k)) & (LOCK_STRIPES - 1)];
+	}
+
+	@Override
+	public V put(K k, V v) {
+		if (wal == null) {
+			return super.put(k, v);
+		}
+		long sequence;
+		V res;
+		synchronized (lockFor(k)) {
+			sequence = v == null ? wal.appendRemove(k) : wal.appendPut(k, v);
+			res = super.put(k, v);
+		}
+		wal.awaitDurable(sequence);
+		return res;
+	}
+
+	@Override
+	public V putIfAbsent(K k, V v) {
+		if (wal == null || v == null) {
+			return super.putIfAbsent(k, v);
+		}
+		long sequence;
+		V res;
+		synchronized (lockFor(k)) {
+			res = lookup(k);
+			if (res != null) {
+				return res;
+			}
+			sequence = wal.appendPut(k, v);
+			super.put(k, v);
+		}
+		wal.awaitDurable(sequence);
+		return null;
+	}
+
+	@Override
+	public V compute(K k, BiFunction<? super K, ? super V, ? extends V> function) {
+		if (wal == null) {
+			return super.compute(k, function);
+		}
+		long sequence;
+		V res;
+		synchronized (lockFor(k)) {
+			V present = lookup(k);
+			res = function.apply(k, present);
+			if (res != null) {
+				sequence = wal.appendPut(k, res);
+				super.put(k, res);
+			} else if (present != null) {
+				sequence = wal.appendRemove(k);
+				super.remove(k);
+			} else {
+				return null;
+			}
+		}
+		wal.awaitDurable(sequence);
+		return res;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object o) {
+		if (wal == null || o == null) {
+			return super.remove(o);
+		}
+		long sequence;
+		V res;
+		synchronized (lockFor(o)) {
+			if (lookup(o) == null) {
+				return null;
+			}
+			sequence = wal.appendRemove((K) o);
+			res = super.remove(o);
+		}
+		wal.awaitDurable(sequence);
+		return res;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o, Object v) {
+		if (wal == null || o == null || v == null) {
+			return super.remove(o, v);
+		}
+		long sequence;
+		synchronized (lockFor(o)) {
+			if (!v.equals(lookup(o))) {
+				return false;
+			}
+			sequence = wal.appendRemove((K) o);
+			super.remove(o);
+		}
+		wal.awaitDurable(sequence);
+		return true;
+	}
+
+	/**
+	 * the log record and the clear are done holding all the lock stripes,and
+	 * not the lock of the map:a writer holding a stripe takes the lock of the
+	 * map when its put resizes,so clear takes the lock of the map(in
+	 * super.clear) only after all the stripes.
+	 */
+	@Override
+	public void clear() {
+		if (wal == null) {
+			super.clear();
+			return;
+		}
+		long sequence = withAllLocks(0, () -> {
+			long res = wal.appendClear();
+			super.clear();
+			return res;
+		});
+		wal.awaitDurable(sequence);
+	}
+
+	interface LockedAction {
+		long run() throws IOException;
+	}
+
+	/**
+	 * run action while holding all the lock stripes from index,so no put or
+	 * remove is between its log record and its change of the map.
+	 */
+	final long withAllLocks(int index, LockedAction action) {
+		if (index == LOCK_STRIPES) {
+			try {
+				return action.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		synchronized (locks[index]) {
+			return withAllLocks(index + 1, action);
+		}
+	}
+
+	/**
+	 * stop checkpointing,force the log and close it.the map can still be read.
+	 */
+	@Override
+	public void close() throws IOException {
+		ScheduledExecutorService nowCheckpointer;
+		synchronized (this) {
+			nowCheckpointer = checkpointer;
+			checkpointer = null;
+		}
+		if (nowCheckpointer != null) {
+			nowCheckpointer.shutdown();
+			try {
+				nowCheckpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		wal.close();
+	}
+}
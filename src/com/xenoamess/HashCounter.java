@@ -0,0 +1,142 @@
+package com.xenoamess;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HashCounter counts occurrences of keys,like the first milestone of HashTable
+ * did,but concurrently. the count of a key is a LongAdder in a HashTable:the
+ * Table lock is only taken when a key is counted the first time,by
+ * putIfAbsent,and after that an increment is a get and an add to a cell of the
+ * LongAdder,so threads counting the same heavy-hitter key add to different
+ * cells instead of waiting for each other.
+ */
+public class HashCounter<K> {
+
+	static final Comparator<Entry<?, Long>> BY_COUNT = (a, b) -> Long.compare(a.getValue(), b.getValue());
+
+	final HashTable<K, LongAdder> table;
+
+	public HashCounter() {
+		this(HashTable.MIN_POOL_SIZE);
+	}
+
+	/**
+	 * @param initPoolSize
+	 *            init size of the pool of the HashTable
+	 */
+	public HashCounter(int initPoolSize) {
+		this(new HashTableOptions<K, Object>().initPoolSize(initPoolSize));
+	}
+
+	/**
+	 * @param options
+	 *            the options of the HashTable.the weigher is given the LongAdder
+	 *            of a key,whose count changes after it is weighed,so it should
+	 *            weigh the key. an increment racing the eviction of its key can
+	 *            be lost,like one racing remove.
+	 */
+	public HashCounter(HashTableOptions<K, Object> options) {
+		super();
+		this.table = new HashTable<K, LongAdder>(options.adapt((k, adder) -> adder));
+	}
+
+	/**
+	 * @return the LongAdder of k,put if k is not counted yet.
+	 */
+	final LongAdder adderOf(K k) {
+		LongAdder res = table.lookup(k);
+		if (res != null) {
+			return res;
+		}
+		LongAdder adder = new LongAdder();
+		res = table.putIfAbsent(k, adder);
+		return res == null ? adder : res;
+	}
+
+	public void increment(K k) {
+		adderOf(k).increment();
+	}
+
+	public void add(K k, long x) {
+		adderOf(k).add(x);
+	}
+
+	/**
+	 * @return the count of k,0 if it is not counted.
+	 */
+	public long get(K k) {
+		LongAdder adder = table.get(k);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * remove the count of k. an increment of k racing it can be added to the
+	 * removed count,and lost.
+	 *
+	 * @return the removed count,0 if it is not counted.
+	 */
+	public long remove(K k) {
+		LongAdder adder = table.remove(k);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * @return number of counted keys
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * @return sum of the counts of all the keys
+	 */
+	public long sum() {
+		long res = 0;
+		for (LongAdder adder : table.values()) {
+			res += adder.sum();
+		}
+		return res;
+	}
+
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * the counts are read one by one while other threads may count,so they are
+	 * not a snapshot of one moment.
+	 *
+	 * @return the n keys of the biggest counts with their counts,biggest first.
+	 */
+	public List<Entry<K, Long>> topK(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n must not be negative");
+		}
+		List<Entry<K, Long>> res = new ArrayList<Entry<K, Long>>();
+		if (n == 0) {
+			return res;
+		}
+		// a min-heap of the biggest n seen,sized by the keys,so a big n neither
+		// allocates nor overflows
+		PriorityQueue<Entry<K, Long>> heap = new PriorityQueue<Entry<K, Long>>(Math.min(n, size()) + 1, BY_COUNT);
+		for (Entry<K, LongAdder> entry : table.entrySet()) {
+			long count = entry.getValue().sum();
+			if (heap.size() < n) {
+				heap.add(new AbstractMap.SimpleImmutableEntry<K, Long>(entry.getKey(), count));
+			} else if (count > heap.peek().getValue()) {
+				heap.poll();
+				heap.add(new AbstractMap.SimpleImmutableEntry<K, Long>(entry.getKey(), count));
+			}
+		}
+		res.addAll(heap);
+		res.sort(Collections.reverseOrder(BY_COUNT));
+		return res;
+	}
+}
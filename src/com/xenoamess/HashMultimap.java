@@ -0,0 +1,243 @@
+package com.xenoamess;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HashMultimap maps a key to a set of values. the values of a key are kept in
+ * one compact array in the entry of the key in a HashTable,without a node for
+ * each value,and put(k,v)/remove(k,v) change it by HashTable.compute,so they
+ * are atomic under the Table of the key without locking outside.
+ * <p>
+ * the arrays are never changed where a reader can see them:a put appends
+ * after the values of the present array if it has room,and a remove copies the
+ * values left into a new array. so get(k) returns the values without locking
+ * or copying.
+ */
+public class HashMultimap<K, V> {
+
+	static final int MIN_CAPACITY = 4;
+
+	/**
+	 * the values of a key:values[0,size). values[size,values.length) is room
+	 * for puts,which no other Values sees.
+	 */
+	static final class Values<V> extends AbstractList<V> implements RandomAccess {
+		final Object[] values;
+		final int size;
+
+		Values(Object[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("index " + index + " size " + size);
+			}
+			return (V) values[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		int indexOf(Object v, int from) {
+			for (int i = from; i < size; i++) {
+				if (values[i].equals(v)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int indexOf(Object v) {
+			return v == null ? -1 : indexOf(v, 0);
+		}
+
+		/**
+		 * @return Values with v added,this if it is present
+		 */
+		Values<V> plus(V v) {
+			if (indexOf(v, 0) >= 0) {
+				return this;
+			}
+			Object[] newValues = values;
+			if (size == values.length) {
+				newValues = new Object[size + (size >>> 1) + 1];
+				System.arraycopy(values, 0, newValues, 0, size);
+			}
+			newValues[size] = v;
+			return new Values<V>(newValues, size + 1);
+		}
+
+		/**
+		 * @return Values without v,this if it is absent,or null if v is the only
+		 *         value
+		 */
+		Values<V> minus(Object v) {
+			int index = indexOf(v, 0);
+			if (index < 0) {
+				return this;
+			}
+			if (size == 1) {
+				return null;
+			}
+			Object[] newValues = new Object[Math.max(MIN_CAPACITY, size - 1)];
+			System.arraycopy(values, 0, newValues, 0, index);
+			System.arraycopy(values, index + 1, newValues, index, size - 1 - index);
+			return new Values<V>(newValues, size - 1);
+		}
+	}
+
+	/**
+	 * the HashTable of the values,which takes evicted values off size
+	 */
+	final class ValuesTable extends HashTable<K, Values<V>> {
+		ValuesTable(HashTableOptions<K, Values<V>> options) {
+			super(options);
+		}
+
+		@Override
+		void evicted(K k, Values<V> v) {
+			size.getAndAdd(-v.size);
+		}
+	}
+
+	final HashTable<K, Values<V>> table;
+
+	/**
+	 * number of key-value pairs
+	 */
+	final AtomicInteger size = new AtomicInteger();
+
+	public HashMultimap() {
+		this(new HashTableOptions<K, List<V>>());
+	}
+
+	/**
+	 * @param options
+	 *            the options of the HashTable.the weigher is given all the
+	 *            values of a key,and the whole key is evicted.
+	 */
+	public HashMultimap(HashTableOptions<K, List<V>> options) {
+		super();
+		this.table = new ValuesTable(options.adapt((k, values) -> values));
+	}
+
+	/**
+	 * add v to the values of k.
+	 *
+	 * @return if v is added,false if it is present
+	 */
+	public boolean put(K k, V v) {
+		if (k == null || v == null) {
+			throw new NullPointerException();
+		}
+		boolean[] added = new boolean[1];
+		table.compute(k, (key, present) -> {
+			if (present == null) {
+				Object[] values = new Object[MIN_CAPACITY];
+				values[0] = v;
+				added[0] = true;
+				return new Values<V>(values, 1);
+			}
+			Values<V> res = present.plus(v);
+			added[0] = res != present;
+			return res;
+		});
+		if (added[0]) {
+			size.getAndIncrement();
+		}
+		return added[0];
+	}
+
+	/**
+	 * remove v from the values of k.
+	 *
+	 * @return if v is removed
+	 */
+	public boolean remove(K k, Object v) {
+		if (k == null || v == null || table.lookup(k) == null) {
+			return false;
+		}
+		boolean[] removed = new boolean[1];
+		table.compute(k, (key, present) -> {
+			if (present == null) {
+				return null;
+			}
+			Values<V> res = present.minus(v);
+			removed[0] = res != present;
+			return res;
+		});
+		if (removed[0]) {
+			size.getAndDecrement();
+		}
+		return removed[0];
+	}
+
+	/**
+	 * remove k with all its values.
+	 *
+	 * @return the removed values
+	 */
+	public List<V> removeAll(K k) {
+		Values<V> res = table.remove(k);
+		if (res == null) {
+			return Collections.emptyList();
+		}
+		size.getAndAdd(-res.size);
+		return res;
+	}
+
+	/**
+	 * @return the values of k when it is called,unmodifiable. it is not changed
+	 *         by later puts and removes.
+	 */
+	public List<V> get(K k) {
+		Values<V> res = table.get(k);
+		if (res == null) {
+			return Collections.emptyList();
+		}
+		return res;
+	}
+
+	public boolean containsKey(K k) {
+		return table.get(k) != null;
+	}
+
+	public boolean containsEntry(K k, Object v) {
+		Values<V> values = table.get(k);
+		return values != null && values.indexOf(v) >= 0;
+	}
+
+	/**
+	 * @return number of key-value pairs
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int keySize() {
+		return table.size();
+	}
+
+	public boolean isEmpty() {
+		return table.size() == 0;
+	}
+
+	public void clear() {
+		table.clear();
+		size.set(0);
+	}
+}
@@ -1,12 +1,31 @@
 package com.xenoamess;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.xenoamess.HashTableEvents.ResizeEvent;
+import com.xenoamess.HashTableEvents.SkipListRebuildEvent;
+import com.xenoamess.HashTableEvents.SpinWaitEvent;
+import com.xenoamess.HashTableEvents.TransformEvent;
 
 public class HashTable<K, V> implements Map<K, V> {
 
@@ -27,6 +46,17 @@ public class HashTable<K, V> implements Map<K, V> {
 	 */
 	static final int MIN_POOL_SIZE = (1 << 8);
 
+	/**
+	 * spins of a waiter in parking mode before it yields,and turns it yields
+	 * before it parks
+	 */
+	static final int SPIN_LIMIT = 64;
+
+	/**
+	 * the longest park of a waiter in parking mode
+	 */
+	static final long MAX_PARK_NANOS = 1L << 20;
+
 	/**
 	 * transform limit of the table.A table is initially a linked-list.when a
 	 * table's tableNodeSize increace to TRANSFORM_LIMIT (and the key class of the
@@ -34,6 +64,24 @@ public class HashTable<K, V> implements Map<K, V> {
 	 */
 	static final int TRANSFORM_LIMIT = 8;
 
+	/**
+	 * maximumWeight of a map which is not weight-bounded
+	 */
+	public static final long UNBOUNDED_WEIGHT = Long.MAX_VALUE;
+
+	/**
+	 * a list table(whose keys cannot be transformed) with at least so many nodes
+	 * asks the map to turn on seeded hashing,if its chain is also far longer than
+	 * the average.
+	 */
+	static final int REHASH_THRESHOLD = 64;
+
+	/**
+	 * returned by the writing methods of a Table which has been moved to a new
+	 * pool by resize or rehash,so the caller looks the table up again.
+	 */
+	static final Object MOVED = new Object();
+
 	/**
 	 * the method to get an object's hashcode.for more details please lookat
 	 * 
@@ -43,7 +91,79 @@ public class HashTable<K, V> implements Map<K, V> {
 	 * 
 	 */
 	final int getHashCode(Object k) {
-		return spread(k.hashCode()) & nowPoolSize_1;
+		return hash(k) & nowPoolSize_1;
+	}
+
+	/**
+	 * @return k's hash before masked by the poolSize
+	 */
+	final int hash(Object k) {
+		return mix(rawHash(k), hashSeed);
+	}
+
+	/**
+	 * @return hash of k by the strategy of the map
+	 */
+	@SuppressWarnings("unchecked")
+	final int rawHash(Object k) {
+		if (strategy == null) {
+			return k.hashCode();
+		}
+		return ((HashingStrategy<Object>) strategy).hash(k);
+	}
+
+	/**
+	 * @return if the keys are equivalent by the strategy of the map
+	 */
+	@SuppressWarnings("unchecked")
+	final boolean keyEquals(Object a, Object b) {
+		if (strategy == null) {
+			return a.equals(b);
+		}
+		return ((HashingStrategy<Object>) strategy).equivalent(a, b);
+	}
+
+	/**
+	 * @return if a table of k can transform into a skiplist
+	 */
+	final boolean transformable(Object k) {
+		return strategy == null && Comparable.class.isAssignableFrom(k.getClass());
+	}
+
+	/**
+	 * @return the table of k in the current pool
+	 */
+	final Table<K, V> tableFor(Object k) {
+		Table<K, V>[] nowPool = pool;
+		return nowPool[indexIn(k, nowPool)];
+	}
+
+	/**
+	 * @return the index of the table of k in nowPool. the hash is mixed with the
+	 *         seed of the tables of nowPool,not hashSeed,so a writer reading
+	 *         hashSeed and pool across a rehash can not pair the old seed with
+	 *         the new pool.
+	 */
+	final int indexIn(Object k, Table<K, V>[] nowPool) {
+		return mix(rawHash(k), nowPool[0].seed) & (nowPool.length - 1);
+	}
+
+	/**
+	 * mix h with seed by the finalizer of murmur3,so which keys share a table
+	 * cannot be guessed without the seed. seed 0 means not seeded,and then h is
+	 * only spread.
+	 */
+	static final int mix(int h, int seed) {
+		if (seed == 0) {
+			return spread(h);
+		}
+		h ^= seed;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
 	}
 
 	/**
@@ -93,6 +213,30 @@ public class HashTable<K, V> implements Map<K, V> {
 
 	}
 
+	/*
+	 * Entry of a weight-bounded hashtable,which keeps the weight it is counted
+	 * by in totalWeight.the weight is changed holding the lock of its table.
+	 */
+	static class WeightedEntry<K, V> extends HashTableEntry<K, V> {
+		long weight = 0;
+
+		WeightedEntry(K key, V value) {
+			super(key, value);
+		}
+	}
+
+	/**
+	 * @return a new entry of k and v. a map which keeps its entries in another
+	 *         way overrides it.the entries of a table must be comparable to each
+	 *         other if its keys are,so it can transform.
+	 */
+	Entry<K, V> newEntry(K k, V v) {
+		if (weigher != null) {
+			return new WeightedEntry<K, V>(k, v);
+		}
+		return new HashTableEntry<K, V>(k, v);
+	}
+
 	/*
 	 * Node of Table.(list form,before transform)
 	 */
@@ -142,11 +286,8 @@ public class HashTable<K, V> implements Map<K, V> {
 			 * @return wait untill table.condition=0 then return heads
 			 */
 			protected SkipedListNode<K, V>[] getHeads() {
-				while (true) {
-					if (condition.get() == 0) {
-						return heads;
-					}
-				}
+				awaitIdle();
+				return heads;
 			}
 
 			SkipedListMap() {
@@ -191,8 +332,15 @@ public class HashTable<K, V> implements Map<K, V> {
 			@SuppressWarnings("unchecked")
 			@Override
 			public V get(Object o) {
-				K k = (K) o;
-				SkipedListNode<K, V>[] nowHeads = getHeads();
+				return find(getHeads(), (K) o);
+			}
+
+			/**
+			 * get from nowHeads without waiting for condition,so the writer holding
+			 * it can read.
+			 */
+			@SuppressWarnings("unchecked")
+			V find(SkipedListNode<K, V>[] nowHeads, K k) {
 				SkipedListNode<K, V> nowNode = nowHeads[layer.get() - 1];
 				SkipedListNode<K, V> nextNode = null;
 				int cmpNow = ((Comparable<K>) nowNode.pair.getKey()).compareTo(k);
@@ -231,9 +379,16 @@ public class HashTable<K, V> implements Map<K, V> {
 			 * 
 			 * @see java.util.Map#put(java.lang.Object, java.lang.Object)
 			 */
-			@SuppressWarnings("unchecked")
 			@Override
 			public V put(K k, V v) {
+				return put(k, v, 0);
+			}
+
+			/**
+			 * put,and count the entry of k by weight,the weight of v.
+			 */
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			V put(K k, V v, long weight) {
 				V res = null;
 
 				SkipedListNode<K, V> nowNode = heads[layer.get() - 1];
@@ -252,6 +407,7 @@ public class HashTable<K, V> implements Map<K, V> {
 				if (cmpNow == 0) {
 					res = nowNode.pair.getValue();
 					nowNode.pair.setValue(v);
+					((HashTable) owner).reweigh(nowNode.pair, weight);
 					return res;
 				}
 
@@ -268,6 +424,7 @@ public class HashTable<K, V> implements Map<K, V> {
 					if (cmpNext == 0) {
 						res = nextNode.pair.getValue();
 						nextNode.pair.setValue(v);
+						((HashTable) owner).reweigh(nextNode.pair, weight);
 						return res;
 					} else if (cmpNext < 0) {
 						nowNode = (SkipedListNode<K, V>) nowNode.nextNode;
@@ -275,12 +432,14 @@ public class HashTable<K, V> implements Map<K, V> {
 						newHeads[nowLayer] = (SkipedListNode<K, V>) nowNode.nextNode;
 						if (nowNode.downNode == null) {
 							ArrayList<Entry<K, V>> pairs = new ArrayList<Entry<K, V>>();
+							int droppedTombstones = 0;
 							for (@SuppressWarnings("rawtypes")
 							Node ni = heads[0]; ni != nowNode; ni = ni.nextNode) {
 								if (ni.pair.getValue() != null) {
 									pairs.add(ni.pair);
 								} else {
 									tableNodeSize.getAndDecrement();
+									droppedTombstones++;
 								}
 							}
 
@@ -288,10 +447,13 @@ public class HashTable<K, V> implements Map<K, V> {
 								pairs.add(nowNode.pair);
 							} else {
 								tableNodeSize.getAndDecrement();
+								droppedTombstones++;
 							}
 
 							if (v != null) {
-								pairs.add(new HashTableEntry<K, V>(k, v));
+								Entry<K, V> pair = (Entry<K, V>) ((HashTable) owner).newEntry(k, v);
+								((HashTable) owner).reweigh(pair, weight);
+								pairs.add(pair);
 							} else {
 								tableNodeSize.getAndDecrement();
 							}
@@ -302,6 +464,8 @@ public class HashTable<K, V> implements Map<K, V> {
 							// System.out.println(pair.getKey() + " " + pair.getValue());
 							// }
 
+							SkipListRebuildEvent event = new SkipListRebuildEvent();
+							event.begin();
 							SkipedListNode<K, V>[] lastHeads = new SkipedListNode[pairs.size()];
 
 							for (int i = 0; i < newLayer; i++) {
@@ -311,6 +475,12 @@ public class HashTable<K, V> implements Map<K, V> {
 									lastHeads[j << i] = newHeads[i];
 								}
 							}
+							if (event.shouldCommit()) {
+								event.nodeCount = pairs.size();
+								event.droppedTombstones = droppedTombstones;
+								event.layers = newLayer;
+								event.commit();
+							}
 							pairs.clear();
 							heads = newHeads;
 							layer.set(newLayer);
@@ -427,34 +597,104 @@ public class HashTable<K, V> implements Map<K, V> {
 		 */
 		protected SkipedListMap<K, V> skipedListMap = null;
 
+		/**
+		 * the map the table belongs to
+		 */
+		protected final HashTable<K, V> owner;
+
+		/**
+		 * if the nodes of the table has been copied to a new pool by resize or
+		 * rehash. the table is still read by gets which got it before,but it
+		 * shall not be changed any more.
+		 */
+		protected volatile boolean moved = false;
+
+		/**
+		 * the lock of the table in parking mode.it is null in the default mode,in
+		 * which the monitor of the table is the lock.
+		 */
+		protected final ReentrantLock lock;
+
+		/**
+		 * the seed the keys of the table are hashed with
+		 */
+		protected final int seed;
+
+		Table(HashTable<K, V> owner) {
+			this(owner, owner.hashSeed);
+		}
+
+		Table(HashTable<K, V> owner, int seed) {
+			this.owner = owner;
+			this.seed = seed;
+			this.lock = owner.parking ? new ReentrantLock() : null;
+		}
+
+		/**
+		 * run action holding the lock of the table,whichever it is.
+		 */
+		protected void runLocked(Runnable action) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					action.run();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			synchronized (this) {
+				action.run();
+			}
+		}
+
 		/**
 		 * @return return a Node who is the head of the list,wether it is transformed.
 		 */
 		protected Node<K, V> getHead() {
 			if (transformed.get() && skipedListMap != null) {
-				while (true) {
-					if (condition.get() == 0) {
-						return skipedListMap.getHeads()[0];
-					}
-				}
+				return skipedListMap.getHeads()[0];
 			} else {
-				while (true) {
-					if (condition.get() == 0) {
-						return head;
-					}
-				}
+				awaitIdle();
+				return head;
 			}
 		}
 
-		protected synchronized void workBegin() {
-			while (true) {
-				if (condition.compareAndSet(0, 1)) {
-					return;
-				}
+		/**
+		 * spin untill condition=0.the spins are counted in the stats of owner.
+		 */
+		protected void awaitIdle() {
+			if (condition.get() == 0) {
+				return;
+			}
+			SpinWaitEvent event = new SpinWaitEvent();
+			event.begin();
+			long spins = 0;
+			do {
+				spins++;
+				owner.pause(spins);
+			} while (condition.get() != 0);
+			owner.recordSpins(spins, event, "table");
+		}
+
+		/**
+		 * begin a change of the table.it is called holding the lock of the table.
+		 */
+		protected void workBegin() {
+			if (condition.compareAndSet(0, 1)) {
+				return;
 			}
+			SpinWaitEvent event = new SpinWaitEvent();
+			event.begin();
+			long spins = 1;
+			while (!condition.compareAndSet(0, 1)) {
+				spins++;
+				owner.pause(spins);
+			}
+			owner.recordSpins(spins, event, "table");
 		}
 
-		protected synchronized void workEnd() {
+		protected void workEnd() {
 			condition.set(0);
 		}
 
@@ -462,7 +702,7 @@ public class HashTable<K, V> implements Map<K, V> {
 			if (!transformed.get()) {
 				Node<K, V> nowNode = this.getHead();
 				while (nowNode != null) {
-					if (nowNode.pair.getKey().equals(k)) {
+					if (owner.keyEquals(nowNode.pair.getKey(), k)) {
 						return nowNode.pair.getValue();
 					}
 					nowNode = nowNode.nextNode;
@@ -474,7 +714,37 @@ public class HashTable<K, V> implements Map<K, V> {
 			}
 		}
 
-		protected synchronized V put(K k, V v) {
+		protected V put(K k, V v) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					return putLocked(k, v);
+				} finally {
+					lock.unlock();
+				}
+			}
+			synchronized (this) {
+				return putLocked(k, v);
+			}
+		}
+
+		/**
+		 * put,weighing v before the table is changed,so a weigher which throws
+		 * leaves the table as it was.
+		 */
+		V putLocked(K k, V v) {
+			return putLocked(k, v, owner.weightOf(k, v));
+		}
+
+		/**
+		 * @param weight
+		 *            the weight of v,which the entry of k is counted by
+		 */
+		@SuppressWarnings("unchecked")
+		V putLocked(K k, V v, long weight) {
+			if (moved) {
+				return (V) MOVED;
+			}
 			V res = null;
 			this.workBegin();
 			if (!transformed.get()) {
@@ -482,32 +752,173 @@ public class HashTable<K, V> implements Map<K, V> {
 				Node<K, V> nowNode = this.head;
 
 				while (nowNode != null) {
-					if (nowNode.pair.getKey().equals(k)) {
+					if (owner.keyEquals(nowNode.pair.getKey(), k)) {
 						res = nowNode.pair.getValue();
 						nowNode.pair.setValue(v);
+						owner.reweigh(nowNode.pair, weight);
 						this.workEnd();
+						owner.changed(k, res, v);
 						return res;
 					}
 					nowNode = nowNode.nextNode;
 				}
 
-				this.head = new Node<K, V>(this.head, new HashTableEntry<K, V>(k, v));
+				Entry<K, V> pair = owner.newEntry(k, v);
+				owner.reweigh(pair, weight);
+				this.head = new Node<K, V>(this.head, pair);
 
 				tableNodeSize.getAndIncrement();
 
-				if (!transformed.get() && Comparable.class.isAssignableFrom(k.getClass())
-						&& tableNodeSize.get() >= TRANSFORM_LIMIT) {
+				if (!transformed.get() && owner.transformable(k) && tableNodeSize.get() >= TRANSFORM_LIMIT) {
 					this.transform();
 				}
+				if (!transformed.get() && tableNodeSize.get() >= REHASH_THRESHOLD && owner.hashSeed == 0
+						&& tableNodeSize.get() > 8 * (owner.nodeSize.get() / owner.pool.length + 1)) {
+					owner.rehashRequested = true;
+				}
+			} else {
+				res = skipedListMap.put(k, v, weight);
+			}
+			this.workEnd();
+			owner.changed(k, res, v);
+			return res;
+
+		}
+
+		/**
+		 * put v only if k has no value in the table. it is done in the same
+		 * workBegin/workEnd section,so only one of concurrent callers wins.
+		 * 
+		 * @return the present value,or null if v is put.
+		 */
+		protected V putIfAbsent(K k, V v) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					return putIfAbsentLocked(k, v);
+				} finally {
+					lock.unlock();
+				}
+			}
+			synchronized (this) {
+				return putIfAbsentLocked(k, v);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		V putIfAbsentLocked(K k, V v) {
+			if (moved) {
+				return (V) MOVED;
+			}
+			long weight = owner.weightOf(k, v);
+			V res = null;
+			this.workBegin();
+			if (!transformed.get()) {
+				Node<K, V> nowNode = this.head;
+
+				while (nowNode != null) {
+					if (owner.keyEquals(nowNode.pair.getKey(), k)) {
+						res = nowNode.pair.getValue();
+						if (res == null) {
+							nowNode.pair.setValue(v);
+							owner.reweigh(nowNode.pair, weight);
+						}
+						this.workEnd();
+						if (res == null) {
+							owner.changed(k, null, v);
+						}
+						return res;
+					}
+					nowNode = nowNode.nextNode;
+				}
+			} else {
+				res = skipedListMap.find(skipedListMap.heads, k);
+				if (res != null) {
+					this.workEnd();
+					return res;
+				}
+			}
+			this.workEnd();
+			return this.putLocked(k, v, weight);
+		}
+
+		/**
+		 * compute the new value of k from its present value,null if absent.a null
+		 * new value removes k. the table is locked by its monitor from reading the
+		 * present value to writing the new one,so it is atomic to other writers of
+		 * the table,while readers are only blocked by the workBegin/workEnd
+		 * sections of the read and the write.
+		 * 
+		 * @param previous
+		 *            previous[0] is set to the present value
+		 * @return the new value
+		 */
+		protected V compute(K k, BiFunction<? super K, ? super V, ? extends V> function,
+				Object[] previous) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					return computeLocked(k, function, previous);
+				} finally {
+					lock.unlock();
+				}
+			}
+			synchronized (this) {
+				return computeLocked(k, function, previous);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		V computeLocked(K k, BiFunction<? super K, ? super V, ? extends V> function,
+				Object[] previous) {
+			if (moved) {
+				return (V) MOVED;
+			}
+			V present = null;
+			this.workBegin();
+			if (!transformed.get()) {
+				Node<K, V> nowNode = this.head;
+				while (nowNode != null) {
+					if (owner.keyEquals(nowNode.pair.getKey(), k)) {
+						present = nowNode.pair.getValue();
+						break;
+					}
+					nowNode = nowNode.nextNode;
+				}
 			} else {
-				res = skipedListMap.put(k, v);
+				present = skipedListMap.find(skipedListMap.heads, k);
 			}
 			this.workEnd();
+			previous[0] = present;
+
+			V res = function.apply(k, present);
+			if (res != null) {
+				this.putLocked(k, res);
+			} else if (present != null) {
+				this.removeLocked(k);
+			}
 			return res;
+		}
 
+		protected V remove(K k) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					return removeLocked(k);
+				} finally {
+					lock.unlock();
+				}
+			}
+			synchronized (this) {
+				return removeLocked(k);
+			}
 		}
 
-		protected synchronized V remove(K k) {
+		@SuppressWarnings("unchecked")
+		V removeLocked(K k) {
+			if (moved) {
+				return (V) MOVED;
+			}
 			V res = null;
 			this.workBegin();
 			if (!transformed.get()) {
@@ -520,7 +931,7 @@ public class HashTable<K, V> implements Map<K, V> {
 				}
 
 				while (nowNode != null) {
-					if (nowNode.pair.getKey().equals(k)) {
+					if (owner.keyEquals(nowNode.pair.getKey(), k)) {
 						res = nowNode.pair.getValue();
 						Node<K, V> newNode = nowNode.nextNode;
 						while (oldNode != nowNode) {
@@ -529,7 +940,9 @@ public class HashTable<K, V> implements Map<K, V> {
 						}
 						this.head = newNode;
 						tableNodeSize.getAndDecrement();
+						owner.reweigh(nowNode.pair, 0);
 						this.workEnd();
+						owner.changed(k, res, null);
 						return res;
 					}
 					nowNode = nowNode.nextNode;
@@ -538,12 +951,99 @@ public class HashTable<K, V> implements Map<K, V> {
 				res = skipedListMap.remove(k);
 			}
 			this.workEnd();
+			owner.changed(k, res, null);
 			return res;
 		}
 
-		protected synchronized void resizeSplit(int nowHashcode, Table<K, V>[] newPool, int newPoolSize) {
-			Table<K, V> bigger = new Table<K, V>();
-			Table<K, V> smaller = new Table<K, V>();
+		/**
+		 * remove k only if its value equals v.
+		 * 
+		 * @return the removed value,or null if nothing is removed
+		 */
+		protected V remove(K k, Object v) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					return removeLocked(k, v);
+				} finally {
+					lock.unlock();
+				}
+			}
+			synchronized (this) {
+				return removeLocked(k, v);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		V removeLocked(K k, Object v) {
+			if (moved) {
+				return (V) MOVED;
+			}
+			V res = this.get(k);
+			if (res == null || !res.equals(v)) {
+				return null;
+			}
+			return this.removeLocked(k);
+		}
+
+		/**
+		 * copy the keys and values of the table in one workBegin/workEnd section.
+		 * 
+		 * @param pairs
+		 *            keys and values are added to it,as k0,v0,k1,v1...
+		 */
+		protected void copyPairs(ArrayList<Object> pairs) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					copyPairsLocked(pairs);
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			synchronized (this) {
+				copyPairsLocked(pairs);
+			}
+		}
+
+		void copyPairsLocked(ArrayList<Object> pairs) {
+			this.workBegin();
+			Node<K, V> nowNode;
+			if (!transformed.get()) {
+				nowNode = this.head;
+			} else {
+				nowNode = this.skipedListMap.heads[0];
+			}
+			while (nowNode != null) {
+				V v = nowNode.pair.getValue();
+				if (v != null) {
+					pairs.add(nowNode.pair.getKey());
+					pairs.add(v);
+				}
+				nowNode = nowNode.nextNode;
+			}
+			this.workEnd();
+		}
+
+		protected void resizeSplit(int nowHashcode, Table<K, V>[] newPool, int newPoolSize) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					resizeSplitLocked(nowHashcode, newPool, newPoolSize);
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			synchronized (this) {
+				resizeSplitLocked(nowHashcode, newPool, newPoolSize);
+			}
+		}
+
+		void resizeSplitLocked(int nowHashcode, Table<K, V>[] newPool, int newPoolSize) {
+			Table<K, V> bigger = new Table<K, V>(owner);
+			Table<K, V> smaller = new Table<K, V>(owner);
 			this.workBegin();
 
 			Node<K, V> nowNode;
@@ -554,7 +1054,7 @@ public class HashTable<K, V> implements Map<K, V> {
 			}
 
 			while (nowNode != null) {
-				int hashCode = spread(nowNode.pair.getKey().hashCode());
+				int hashCode = owner.hash(nowNode.pair.getKey());
 				hashCode &= (newPoolSize - 1);
 
 				if (hashCode == nowHashcode) {
@@ -568,31 +1068,168 @@ public class HashTable<K, V> implements Map<K, V> {
 			}
 			newPool[nowHashcode] = smaller;
 			newPool[nowHashcode + (newPoolSize >>> 1)] = bigger;
+			moved = true;
 
 			this.workEnd();
 			return;
 		}
 
-		protected synchronized void transform() {
-			if (transformed.get())
+		/**
+		 * copy the nodes of the table into the tables of newPool by hashes mixed
+		 * with seed.removed nodes are dropped.
+		 */
+		protected void rehashInto(Table<K, V>[] newPool, int seed) {
+			if (lock != null) {
+				lock.lock();
+				try {
+					rehashIntoLocked(newPool, seed);
+				} finally {
+					lock.unlock();
+				}
 				return;
-			skipedListMap = new SkipedListMap<K, V>();
-			transformed.set(true);
-			this.head = null;
+			}
+			synchronized (this) {
+				rehashIntoLocked(newPool, seed);
+			}
 		}
 
-	}
-
-	public Table<K, V>[] pool;
+		void rehashIntoLocked(Table<K, V>[] newPool, int seed) {
+			this.workBegin();
 
-	volatile int nowPoolSize = 0;
-	volatile int nowPoolSize_1 = 0;
-	AtomicInteger nodeSize = new AtomicInteger();
-	AtomicInteger condition = new AtomicInteger();
+			Node<K, V> nowNode;
+			if (!transformed.get()) {
+				nowNode = this.head;
+			} else {
+				nowNode = this.skipedListMap.heads[0];
+			}
 
-	public int getNowPoolSize() {
-		return nowPoolSize;
-	}
+			while (nowNode != null) {
+				if (nowNode.pair.getValue() != null) {
+					Table<K, V> target = newPool[mix(owner.rawHash(nowNode.pair.getKey()), seed)
+							& (newPool.length - 1)];
+					target.head = new Node<K, V>(target.head, nowNode.pair);
+					target.tableNodeSize.getAndIncrement();
+				}
+				nowNode = nowNode.nextNode;
+			}
+			moved = true;
+
+			this.workEnd();
+		}
+
+		protected void transform() {
+			if (transformed.get())
+				return;
+			TransformEvent event = new TransformEvent();
+			event.begin();
+			skipedListMap = new SkipedListMap<K, V>();
+			transformed.set(true);
+			if (event.shouldCommit()) {
+				// by the seed of the table,not of the map:a rehash transforms the
+				// tables of its new pool before it sets it
+				event.bucketIndex = mix(owner.rawHash(this.head.pair.getKey()), seed) & (owner.pool.length - 1);
+				event.nodeCount = tableNodeSize.get();
+				event.commit();
+			}
+			this.head = null;
+		}
+
+	}
+
+	public Table<K, V>[] pool;
+
+	volatile int nowPoolSize = 0;
+	volatile int nowPoolSize_1 = 0;
+	AtomicInteger nodeSize = new AtomicInteger();
+	AtomicInteger condition = new AtomicInteger();
+
+	/**
+	 * the weight budget of the map. when totalWeight exceeds it,entries would be
+	 * evicted.
+	 */
+	long maximumWeight = UNBOUNDED_WEIGHT;
+
+	/**
+	 * the weigher of the entries. if it is null then the map is not
+	 * weight-bounded.
+	 */
+	Weigher<? super K, ? super V> weigher = null;
+
+	/**
+	 * sum of weights of all entries.it is striped so that puts on different
+	 * tables do not fight for one counter.
+	 */
+	final LongAdder totalWeight = new LongAdder();
+
+	/**
+	 * the index of the table that the next eviction starts from.
+	 */
+	final AtomicInteger evictionCursor = new AtomicInteger();
+
+	/**
+	 * the counters of the stats.it is null untill enableStats() is called,so a
+	 * map without stats only pays a null check.
+	 */
+	volatile StatsCounters stats = null;
+
+	/**
+	 * the seed of mix.0 means the map is not seeded. it is written after pool
+	 * when the map is rehashed,so a get which reads the new seed sees the new
+	 * pool too.
+	 */
+	volatile int hashSeed = 0;
+
+	/**
+	 * how the keys are hashed and compared.null means by hashCode and equals,so
+	 * the common case does not call through the interface.
+	 */
+	HashingStrategy<? super K> strategy = null;
+
+	/**
+	 * if the map runs in parking mode:the tables and the map are locked by
+	 * ReentrantLocks instead of monitors,and waiters yield and park instead of
+	 * spinning,so virtual threads do not pin their carriers.
+	 */
+	boolean parking = false;
+
+	/**
+	 * the lock of the map in parking mode,null in the default mode.
+	 */
+	ReentrantLock mapLock = null;
+
+	/**
+	 * set by a table whose chain is too long,so the next put rehashes the map.
+	 */
+	volatile boolean rehashRequested = false;
+
+	/**
+	 * the keys in their order.it is null untill enableOrderedIndex() is
+	 * called,and a key is added and removed under the lock of its table,so it
+	 * has the keys of the map.
+	 */
+	volatile ConcurrentSkipListSet<K> orderedIndex = null;
+
+	/**
+	 * the publisher of changes().it is null untill changes() is called,so a map
+	 * without it only pays a null check for each change.
+	 */
+	volatile ChangePublisher<K, V> changes = null;
+
+	/**
+	 * counters of the stats.they are striped,so counting does not make threads
+	 * fight for a cache line.
+	 */
+	static final class StatsCounters {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder resizes = new LongAdder();
+		final LongAdder resizeNanos = new LongAdder();
+		final LongAdder spins = new LongAdder();
+	}
+
+	public int getNowPoolSize() {
+		return nowPoolSize;
+	}
 
 	public HashTable() {
 		super();
@@ -604,6 +1241,97 @@ public class HashTable<K, V> implements Map<K, V> {
 		init(initPoolSize);
 	}
 
+	/**
+	 * create a HashTable whose keys are hashed and compared by strategy,for
+	 * example HashingStrategy.byteArray() for byte[] keys by content.
+	 * 
+	 * @param initPoolSize
+	 *            init poolSize of the map
+	 * @param strategy
+	 *            hash and equivalence of the keys
+	 */
+	public HashTable(int initPoolSize, HashingStrategy<? super K> strategy) {
+		this(new HashTableOptions<K, V>().initPoolSize(initPoolSize).hashingStrategy(strategy));
+	}
+
+	/**
+	 * create a HashTable in parking mode if parking is true. a map in parking
+	 * mode locks its tables with ReentrantLocks and parks waiters,so it can be
+	 * used by many virtual threads without pinning their carrier threads. the
+	 * default mode uses monitors and spins,which is faster on platform threads.
+	 * 
+	 * @param initPoolSize
+	 *            init poolSize of the map
+	 * @param parking
+	 *            if the map runs in parking mode
+	 */
+	public HashTable(int initPoolSize, boolean parking) {
+		this(new HashTableOptions<K, V>().initPoolSize(initPoolSize).parking(parking));
+	}
+
+	/**
+	 * @return if the map runs in parking mode
+	 */
+	public boolean isParking() {
+		return parking;
+	}
+
+	/**
+	 * @return the strategy of the keys
+	 */
+	public HashingStrategy<? super K> getHashingStrategy() {
+		return strategy == null ? HashingStrategy.natural() : strategy;
+	}
+
+	/**
+	 * create a weight-bounded HashTable.
+	 * 
+	 * @param initPoolSize
+	 *            init poolSize of the map
+	 * @param maximumWeight
+	 *            the max total weight of the entries in the map
+	 * @param weigher
+	 *            the weigher of the entries
+	 */
+	public HashTable(int initPoolSize, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		this(new HashTableOptions<K, V>().initPoolSize(initPoolSize).maximumWeight(maximumWeight, weigher));
+	}
+
+	/**
+	 * create a HashTable of options,which may combine a hashing strategy,
+	 * parking mode and a weight bound.
+	 * 
+	 * @param options
+	 *            the options of the map
+	 */
+	public HashTable(HashTableOptions<K, V> options) {
+		super();
+		if (options.strategy != HashingStrategy.natural()) {
+			this.strategy = options.strategy;
+		}
+		if (options.parking) {
+			this.parking = true;
+			this.mapLock = new ReentrantLock();
+		}
+		if (options.weigher != null) {
+			this.maximumWeight = options.maximumWeight;
+			this.weigher = options.weigher;
+		}
+		init(options.initPoolSize);
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/**
+	 * @return sum of weights of all entries in the map.if the map is not
+	 *         weight-bounded then it is 0.
+	 */
+	public long getTotalWeight() {
+		return totalWeight.sum();
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private void init(int initPoolSize) {
 		if (initPoolSize < MIN_POOL_SIZE) {
@@ -613,21 +1341,49 @@ public class HashTable<K, V> implements Map<K, V> {
 		}
 
 		++initPoolSize;
-		this.nowPoolSize = 1;
-		while (this.nowPoolSize < initPoolSize) {
-			this.nowPoolSize = this.nowPoolSize << 1;
+		int newPoolSize = 1;
+		while (newPoolSize < initPoolSize) {
+			newPoolSize = newPoolSize << 1;
 		}
-		this.nowPoolSize_1 = this.nowPoolSize - 1;
-		this.pool = new HashTable.Table[this.nowPoolSize];
-		this.nodeSize.set(0);
-		for (int i = 0; i < this.nowPoolSize; i++) {
-			pool[i] = new HashTable.Table();
+		// the new pool is filled before it is set,as in resize,since clear
+		// inits the map while writers read the pool.
+		Table<K, V>[] newPool = new HashTable.Table[newPoolSize];
+		for (int i = 0; i < newPoolSize; i++) {
+			newPool[i] = new HashTable.Table(this);
 		}
+		this.pool = newPool;
+		this.nowPoolSize = newPoolSize;
+		this.nowPoolSize_1 = newPoolSize - 1;
+		this.nodeSize.set(0);
+		this.totalWeight.reset();
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public V get(Object o) {
+		V res = lookup(o);
+		StatsCounters nowStats = stats;
+		if (nowStats != null) {
+			if (res != null) {
+				nowStats.hits.increment();
+			} else {
+				nowStats.misses.increment();
+			}
+		}
+		return res;
+	}
+
+	@Override
+	public V getOrDefault(Object o, V defaultValue) {
+		V res = get(o);
+		return res == null ? defaultValue : res;
+	}
+
+	/**
+	 * the value of o,not counted by the stats.the probes of the map and its
+	 * wrappers use it,so hits and misses are only the lookups of the users.
+	 */
+	@SuppressWarnings("unchecked")
+	final V lookup(Object o) {
 		if (o == null) {
 			return null;
 		}
@@ -638,34 +1394,187 @@ public class HashTable<K, V> implements Map<K, V> {
 			return null;
 		}
 
-		int nowHashCode = getHashCode(k);
-
-		// System.out.println(nowPoolSize + " " + nowHashCode + " " +
-		// pool[nowHashCode]);
-
-		Table<K, V> nowTable = pool[nowHashCode];
-		return nowTable.get(k);
+		V res;
+		int nowSeed;
+		do {
+			// a miss with a seed changed meanwhile may be of a stale pool
+			nowSeed = hashSeed;
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.get(k);
+		} while (res == null && nowSeed != hashSeed);
+		return res;
 	}
 
 	@Override
 	public V put(K k, V v) {
-		while (condition.get() != 0) {
-		}
-
-		int nowHashCode = getHashCode(k);
+		V res;
+		do {
+			awaitResize();
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.put(k, v);
+		} while (res == MOVED);
+		afterPut(k, v, res);
+		return res;
+	}
 
-		// System.out.println(nowPoolSize + " " + nowHashCode + " " +
-		// pool[nowHashCode]);
+	/**
+	 * put v only if k has no value in the map. concurrent putIfAbsent of the same
+	 * key are serialized by the key's table,so exactly one of them wins.
+	 * 
+	 * @see java.util.Map#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V putIfAbsent(K k, V v) {
+		if (v == null) {
+			return lookup(k);
+		}
+		V res;
+		do {
+			awaitResize();
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.putIfAbsent(k, v);
+		} while (res == MOVED);
+		if (res == null) {
+			afterPut(k, v, null);
+		}
+		return res;
+	}
 
-		Table<K, V> nowTable = pool[nowHashCode];
-		V res = nowTable.put(k, v);
+	/**
+	 * compute the new value of k from its present value,null if absent,and put
+	 * it,or remove k if it is null. it is done inside the key's table,so it is
+	 * atomic to other writers of the key. function must not change the map.
+	 * 
+	 * @see java.util.Map#compute(java.lang.Object, java.util.function.BiFunction)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public V compute(K k, BiFunction<? super K, ? super V, ? extends V> function) {
+		if (function == null) {
+			throw new NullPointerException();
+		}
+		Object[] previous = new Object[1];
+		V res;
+		do {
+			awaitResize();
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.compute(k, function, previous);
+		} while (res == MOVED);
+		if (res != null) {
+			afterPut(k, res, (V) previous[0]);
+		} else {
+			afterRemove(k, (V) previous[0]);
+		}
+		return res;
+	}
 
+	/**
+	 * bookkeeping after a value is put into a table: nodeSize,eviction and
+	 * resize.the weight is counted by the table.
+	 * 
+	 * @param res
+	 *            the old value of k
+	 */
+	final void afterPut(K k, V v, V res) {
 		if (res == null)
 			nodeSize.getAndIncrement();
+		if (weigher != null && totalWeight.sum() > maximumWeight) {
+			evict();
+		}
 		if (nodeSize.get() >= nowPoolSize - (nowPoolSize >>> 2)) {
 			resize();
 		}
-		return res;
+		if (rehashRequested) {
+			rehashIfRequested();
+		}
+	}
+
+	/**
+	 * @return weight of the entry.null value weighs 0,and so does every value if
+	 *         the map is not weight-bounded.it is called before a table is
+	 *         changed,so a bad weight leaves the map as it was.
+	 */
+	final long weightOf(K k, V v) {
+		if (weigher == null || v == null) {
+			return 0;
+		}
+		int weight = weigher.weigh(k, v);
+		if (weight < 0) {
+			throw new IllegalStateException("weigher returned negative weight " + weight + " for key " + k);
+		}
+		return weight;
+	}
+
+	/**
+	 * count pair by weight in totalWeight,instead of the weight it was counted
+	 * by.it is called holding the lock of the table of pair,and does nothing if
+	 * the map is not weight-bounded.
+	 */
+	final void reweigh(Entry<K, V> pair, long weight) {
+		if (pair instanceof WeightedEntry) {
+			WeightedEntry<K, V> weighted = (WeightedEntry<K, V>) pair;
+			totalWeight.add(weight - weighted.weight);
+			weighted.weight = weight;
+		}
+	}
+
+	/**
+	 * evict entries untill totalWeight is no more than maximumWeight. tables are
+	 * swept like a clock from evictionCursor,and in each table the entry at the
+	 * tail is removed:the oldest of a list table,or the largest key of a table
+	 * transformed into a skiplist,whose list is in key order. so evictions
+	 * spread over the whole map.
+	 */
+	void evict() {
+		ChangePublisher<K, V> nowChanges = changes;
+		if (nowChanges == null || !nowChanges.hasSubscribers()) {
+			evictLoop();
+			return;
+		}
+		// the removes of this thread are published as EVICT
+		ChangePublisher.Ring ring = nowChanges.ring();
+		ring.evicting = true;
+		try {
+			evictLoop();
+		} finally {
+			ring.evicting = false;
+		}
+	}
+
+	final void evictLoop() {
+		int misses = 0;
+		while (totalWeight.sum() > maximumWeight && nodeSize.get() > 0) {
+			Table<K, V>[] nowPool = pool;
+			if (misses > nowPool.length) {
+				return;
+			}
+			int index = evictionCursor.getAndIncrement() & (nowPool.length - 1);
+
+			Node<K, V> victim = null;
+			Node<K, V> nowNode = nowPool[index].getHead();
+			while (nowNode != null) {
+				if (nowNode.pair.getValue() != null) {
+					victim = nowNode;
+				}
+				nowNode = nowNode.nextNode;
+			}
+
+			K victimKey = victim == null ? null : victim.pair.getKey();
+			V evictedValue = victim == null ? null : this.remove(victimKey);
+			if (evictedValue == null) {
+				misses++;
+			} else {
+				misses = 0;
+				evicted(victimKey, evictedValue);
+			}
+		}
+	}
+
+	/**
+	 * called after v of k is evicted.a wrapper which counts the values in them
+	 * overrides it.
+	 */
+	void evicted(K k, V v) {
 	}
 
 	@SuppressWarnings("unchecked")
@@ -685,16 +1594,55 @@ public class HashTable<K, V> implements Map<K, V> {
 			return null;
 		}
 
-		while (condition.get() != 0) {
+		V res;
+		do {
+			awaitResize();
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.remove(k);
+		} while (res == MOVED);
+		afterRemove(k, res);
+		return res;
+	}
+
+	/**
+	 * remove k only if its value equals v. it is done inside the key's table,so
+	 * it is atomic to other writers of the key.
+	 * 
+	 * @see java.util.Map#remove(java.lang.Object, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o, Object v) {
+		if (o == null || v == null) {
+			return false;
+		}
+		K k = null;
+		try {
+			k = (K) (o);
+		} catch (java.lang.ClassCastException e) {
+			return false;
 		}
 
-		int nowHashCode = getHashCode(k);
-		Table<K, V> nowTable = pool[nowHashCode];
-		V res = nowTable.remove(k);
+		V res;
+		do {
+			awaitResize();
+			Table<K, V> nowTable = tableFor(k);
+			res = nowTable.remove(k, v);
+		} while (res == MOVED);
+		afterRemove(k, res);
+		return res != null;
+	}
+
+	/**
+	 * bookkeeping after a value is removed from a table.
+	 * 
+	 * @param res
+	 *            the removed value,or null if nothing is removed
+	 */
+	final void afterRemove(K k, V res) {
 		if (res != null) {
 			nodeSize.getAndDecrement();
 		}
-		return res;
 	}
 
 	@Override
@@ -705,7 +1653,11 @@ public class HashTable<K, V> implements Map<K, V> {
 	/**
 	 * resize means enlarge the HashTable's size to two times
 	 */
-	public synchronized void resize() {
+	public void resize() {
+		mapLocked(this::resizeLocked);
+	}
+
+	final void resizeLocked() {
 		if (condition.get() == 1) {
 			return;
 		}
@@ -719,6 +1671,10 @@ public class HashTable<K, V> implements Map<K, V> {
 		}
 
 		condition.set(1);
+		ResizeEvent event = new ResizeEvent();
+		event.begin();
+		StatsCounters nowStats = stats;
+		long start = nowStats != null ? System.nanoTime() : 0;
 		int newPoolSize = (nowPoolSize << 1);
 		Table<K, V>[] oldPool = pool;
 		@SuppressWarnings("unchecked")
@@ -731,16 +1687,422 @@ public class HashTable<K, V> implements Map<K, V> {
 		nowPoolSize = newPoolSize;
 		nowPoolSize_1 = nowPoolSize - 1;
 		condition.set(0);
+		if (event.shouldCommit()) {
+			event.oldPoolSize = oldPool.length;
+			event.newPoolSize = newPoolSize;
+			event.size = nodeSize.get();
+			event.commit();
+		}
+		if (nowStats != null) {
+			nowStats.resizes.increment();
+			nowStats.resizeNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * turn on seeded hashing with a new random seed,and rehash the map online:
+	 * like resize,writers wait while every table is copied into a new pool of
+	 * the same size by the new hashes,and readers go on reading the old tables.
+	 * if the map is seeded already,it is seeded again.
+	 * <p>
+	 * a map rehashes itself once when a list table gets far longer than the
+	 * others,which happens when keys(not Comparable,so not transformed) are
+	 * crafted to collide. keys with the same hashCode collide whatever the seed.
+	 */
+	public void enableSeededHashing() {
+		mapLocked(this::enableSeededHashingLocked);
+	}
+
+	@SuppressWarnings("unchecked")
+	final void enableSeededHashingLocked() {
+		int newSeed;
+		do {
+			newSeed = SEED_RANDOM.nextInt();
+		} while (newSeed == 0);
+
+		condition.set(1);
+		Table<K, V>[] oldPool = pool;
+		Table<K, V>[] newPool = (Table<K, V>[]) new Table<?, ?>[oldPool.length];
+		for (int i = 0; i < newPool.length; i++) {
+			newPool[i] = new Table<K, V>(this, newSeed);
+		}
+		for (int i = 0; i < oldPool.length; i++) {
+			oldPool[i].rehashInto(newPool, newSeed);
+		}
+		for (int i = 0; i < newPool.length; i++) {
+			Table<K, V> table = newPool[i];
+			if (table.head != null && transformable(table.head.pair.getKey())
+					&& table.tableNodeSize.get() >= TRANSFORM_LIMIT) {
+				table.transform();
+			}
+		}
+		pool = newPool;
+		hashSeed = newSeed;
+		rehashRequested = false;
+		condition.set(0);
+	}
+
+	static final SecureRandom SEED_RANDOM = new SecureRandom();
+
+	/**
+	 * @return if the hashes are mixed with a seed of the map
+	 */
+	public boolean isSeededHashing() {
+		return hashSeed != 0;
+	}
+
+	final void rehashIfRequested() {
+		mapLocked(this::rehashIfRequestedLocked);
+	}
+
+	final void rehashIfRequestedLocked() {
+		if (rehashRequested && hashSeed == 0) {
+			enableSeededHashing();
+		}
+		rehashRequested = false;
+	}
+
+	/**
+	 * run action holding the lock of the map:its monitor,or mapLock in parking
+	 * mode.
+	 */
+	final void mapLocked(Runnable action) {
+		ReentrantLock nowLock = mapLock;
+		if (nowLock != null) {
+			nowLock.lock();
+			try {
+				action.run();
+			} finally {
+				nowLock.unlock();
+			}
+			return;
+		}
+		synchronized (this) {
+			action.run();
+		}
+	}
+
+	/**
+	 * called at each turn of a spin wait. in the default mode it does nothing,so
+	 * the waiter spins. in parking mode the waiter spins SPIN_LIMIT turns,then
+	 * yields SPIN_LIMIT turns,then parks for doubling times up to
+	 * MAX_PARK_NANOS,so a virtual thread gives its carrier away.
+	 */
+	final void pause(long spins) {
+		if (!parking) {
+			return;
+		}
+		if (spins < SPIN_LIMIT) {
+			Thread.onSpinWait();
+		} else if (spins < (SPIN_LIMIT << 1)) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1L << Math.min(62, spins - (SPIN_LIMIT << 1))));
+		}
+	}
+
+	/**
+	 * spin untill the resize in progress ends.
+	 */
+	final void awaitResize() {
+		if (condition.get() == 0) {
+			return;
+		}
+		SpinWaitEvent event = new SpinWaitEvent();
+		event.begin();
+		long spins = 0;
+		do {
+			spins++;
+			pause(spins);
+		} while (condition.get() != 0);
+		recordSpins(spins, event, "resize");
+	}
+
+	/**
+	 * count the spins of a finished spin wait in the stats,and commit its event
+	 * if it is longer than the threshold.
+	 */
+	final void recordSpins(long spins, SpinWaitEvent event, String waitingFor) {
+		StatsCounters nowStats = stats;
+		if (nowStats != null) {
+			nowStats.spins.add(spins);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.spins = spins;
+			event.waitingFor = waitingFor;
+			event.commit();
+		}
+	}
+
+	/**
+	 * keep orderedIndex in step with k changed from oldValue to newValue,and
+	 * publish the change to changes().it is called holding the lock of the
+	 * table of k,so the sequence of the change is in the order of the changes
+	 * of k.
+	 */
+	final void changed(K k, V oldValue, V newValue) {
+		ChangePublisher<K, V> nowChanges = changes;
+		if (nowChanges != null && (oldValue != null || newValue != null)) {
+			nowChanges.publish(newValue == null ? ChangeEvent.Type.REMOVE : ChangeEvent.Type.PUT, k, oldValue,
+					newValue);
+		}
+		ConcurrentSkipListSet<K> nowIndex = orderedIndex;
+		if (nowIndex == null) {
+			return;
+		}
+		if (newValue == null) {
+			if (oldValue != null) {
+				nowIndex.remove(k);
+			}
+		} else if (oldValue == null) {
+			nowIndex.add(k);
+		}
+	}
+
+	/**
+	 * start keeping the keys in order too,for subMap,headMap,tailMap and
+	 * ceilingKey. gets still go by hash. a put or remove of a new key then costs
+	 * one more O(log n) change of a ConcurrentSkipListSet.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the map has a HashingStrategy,whose equivalence the order
+	 *             of the keys may not agree with
+	 * @throws ClassCastException
+	 *             if the keys are not Comparable to each other
+	 */
+	public void enableOrderedIndex() {
+		mapLocked(this::enableOrderedIndexLocked);
+	}
+
+	final void enableOrderedIndexLocked() {
+		if (orderedIndex != null) {
+			return;
+		}
+		if (strategy != null) {
+			throw new IllegalStateException("ordered index needs keys of natural equality");
+		}
+		// it is set before the tables are read,so a change of a table read is
+		// either read or done to the index too. resize is kept out by the lock
+		// of the map.
+		ConcurrentSkipListSet<K> newIndex = new ConcurrentSkipListSet<K>();
+		orderedIndex = newIndex;
+		ArrayList<Object> pairs = new ArrayList<Object>();
+		try {
+			for (Table<K, V> table : pool) {
+				table.runLocked(() -> {
+					table.copyPairs(pairs);
+					for (int i = 0; i < pairs.size(); i += 2) {
+						@SuppressWarnings("unchecked")
+						K k = (K) pairs.get(i);
+						newIndex.add(k);
+					}
+				});
+				pairs.clear();
+			}
+		} catch (ClassCastException e) {
+			orderedIndex = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the publisher of the changes of the map:puts,removes and computes,
+	 *         evictions and clears. each event is put into a ring buffer of the
+	 *         writer thread with a sequence number taken under the lock of its
+	 *         table,and delivered in batches on a pool of daemon threads as the
+	 *         subscribers request them. the events are delivered in the order
+	 *         of their sequences,and a later change of a key always has a
+	 *         larger sequence,so a subscriber sees the changes of a key in
+	 *         their order. a writer never waits for the delivery:a subscriber
+	 *         more than 65536
+	 *         events behind is cancelled with onError,so slow subscribers never
+	 *         slow the writers. it never calls onComplete.
+	 */
+	public Flow.Publisher<ChangeEvent<K, V>> changes() {
+		if (changes == null) {
+			mapLocked(() -> {
+				if (changes == null) {
+					changes = new ChangePublisher<K, V>();
+				}
+			});
+		}
+		return changes;
+	}
+
+	public boolean isOrderedIndexEnabled() {
+		return orderedIndex != null;
+	}
+
+	final ConcurrentSkipListSet<K> orderedIndex() {
+		ConcurrentSkipListSet<K> res = orderedIndex;
+		if (res == null) {
+			throw new IllegalStateException("ordered index is not enabled");
+		}
+		return res;
+	}
+
+	/**
+	 * @return a view of all the entries in the order of the keys
+	 */
+	public SortedMap<K, V> orderedMap() {
+		return new OrderedView<K, V>(this, orderedIndex());
+	}
+
+	/**
+	 * @return a view of the entries whose keys are in [from,to),in order. it is
+	 *         weakly consistent like the views of ConcurrentSkipListMap,and an
+	 *         iteration costs O(log n + k).
+	 */
+	public SortedMap<K, V> subMap(K from, K to) {
+		return new OrderedView<K, V>(this, orderedIndex().subSet(from, true, to, false));
+	}
+
+	/**
+	 * @return a view of the entries whose keys are less than to,in order.
+	 */
+	public SortedMap<K, V> headMap(K to) {
+		return new OrderedView<K, V>(this, orderedIndex().headSet(to, false));
+	}
+
+	/**
+	 * @return a view of the entries whose keys are not less than from,in order.
+	 */
+	public SortedMap<K, V> tailMap(K from) {
+		return new OrderedView<K, V>(this, orderedIndex().tailSet(from, true));
+	}
+
+	/**
+	 * @return the least key not less than k,or null. a key of the index without
+	 *         a value,left by a clear racing a put,is skipped.
+	 */
+	public K ceilingKey(K k) {
+		ConcurrentSkipListSet<K> nowIndex = orderedIndex();
+		for (K res = nowIndex.ceiling(k); res != null; res = nowIndex.higher(res)) {
+			if (lookup(res) != null) {
+				return res;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the greatest key not greater than k,or null
+	 */
+	public K floorKey(K k) {
+		ConcurrentSkipListSet<K> nowIndex = orderedIndex();
+		for (K res = nowIndex.floor(k); res != null; res = nowIndex.lower(res)) {
+			if (lookup(res) != null) {
+				return res;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * start counting hits,misses,resizes and spins.the counters start from 0.
+	 */
+	public void enableStats() {
+		mapLocked(this::enableStatsLocked);
+	}
+
+	final void enableStatsLocked() {
+		if (stats == null) {
+			stats = new StatsCounters();
+		}
+	}
+
+	/**
+	 * stop counting and drop the counters.
+	 */
+	public void disableStats() {
+		mapLocked(this::disableStatsLocked);
+	}
+
+	final void disableStatsLocked() {
+		stats = null;
+	}
+
+	public boolean isStatsEnabled() {
+		return stats != null;
+	}
+
+	/**
+	 * take a snapshot of the stats. the counters are read as they are,and the
+	 * tables are walked one by one for the chain lengths,transformed tables and
+	 * tombstones,so it costs O(size) but does not stop writers.
+	 */
+	public HashTableStats getStats() {
+		StatsCounters nowStats = stats;
+		Table<K, V>[] nowPool = pool;
+		long[] chainLengths = new long[HashTableStats.CHAIN_LENGTH_BUCKETS];
+		int maxChainLength = 0;
+		int transformedTables = 0;
+		long tombstones = 0;
+		for (int i = 0; i < nowPool.length; i++) {
+			Table<K, V> table = nowPool[i];
+			if (table.transformed.get()) {
+				transformedTables++;
+			}
+			int length = 0;
+			Node<K, V> nowNode = table.getHead();
+			while (nowNode != null) {
+				length++;
+				if (nowNode.pair.getValue() == null) {
+					tombstones++;
+				}
+				nowNode = nowNode.nextNode;
+			}
+			chainLengths[Math.min(length, HashTableStats.CHAIN_LENGTH_BUCKETS - 1)]++;
+			maxChainLength = Math.max(maxChainLength, length);
+		}
+		if (nowStats == null) {
+			return new HashTableStats(false, nowPool.length, nodeSize.get(), chainLengths, maxChainLength,
+					transformedTables, tombstones, 0, 0, 0, 0, 0);
+		}
+		return new HashTableStats(true, nowPool.length, nodeSize.get(), chainLengths, maxChainLength,
+				transformedTables, tombstones, nowStats.hits.sum(), nowStats.misses.sum(), nowStats.resizes.sum(),
+				nowStats.resizeNanos.sum(), nowStats.spins.sum());
+	}
+
+	/**
+	 * enable the stats and register an MXBean of them to the platform
+	 * MBeanServer,as com.xenoamess:type=HashTable,name=name. the MBeanServer
+	 * keeps the map alive untill the bean is unregistered.
+	 *
+	 * @return name of the registered bean
+	 */
+	public ObjectName registerStatsMXBean(String name) throws JMException {
+		enableStats();
+		ObjectName objectName = new ObjectName("com.xenoamess:type=HashTable,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new HashTableStatsBean(this), objectName);
+		return objectName;
 	}
 
 	@Override
-	public synchronized void clear() {
+	public void clear() {
+		mapLocked(this::clearLocked);
+	}
+
+	final void clearLocked() {
+		// published before the new pool is set,so the changes of the new pool
+		// are after it
+		ChangePublisher<K, V> nowChanges = changes;
+		if (nowChanges != null) {
+			nowChanges.publish(ChangeEvent.Type.CLEAR, null, null, null);
+		}
+		// the new index is set before the new pool,so a key put into the new
+		// pool is in it. a key put into the old pool meanwhile may be in it
+		// too,and is skipped by the views,since it has no value.
+		if (orderedIndex != null) {
+			orderedIndex = new ConcurrentSkipListSet<K>();
+		}
 		init(MIN_POOL_SIZE);
 	}
 
 	@Override
 	public boolean containsKey(Object o) {
-		if (this.get(o) == null) {
+		if (this.lookup(o) == null) {
 			return false;
 		}
 		return true;
@@ -760,7 +2122,7 @@ public class HashTable<K, V> implements Map<K, V> {
 		}
 
 		Table<K, V>[] oldPool = pool;
-		for (int i = 0; i < nowPoolSize; i++) {
+		for (int i = 0; i < oldPool.length; i++) {
 			Node<K, V> nowNode = oldPool[i].getHead();
 
 			while (nowNode != null) {
@@ -784,12 +2146,140 @@ public class HashTable<K, V> implements Map<K, V> {
 		}
 	}
 
+	/**
+	 * save the map to a file. the tables are written one by one in the order of
+	 * pool,with the hash seed,so readFrom can rebuild each table directly. it does not stop
+	 * writers,so a concurrent change may or may not be saved.
+	 * 
+	 * @param path
+	 *            the file to write.it is overwritten if it exists
+	 * @param codec
+	 *            the codec of keys and values
+	 */
+	public void writeTo(Path path, KeyValueCodec<K, V> codec) throws IOException {
+		Table<K, V>[] oldPool = pool;
+		try (SnapshotFile.Writer<K, V> writer = new SnapshotFile.Writer<K, V>(path, codec, oldPool.length,
+				hashSeed)) {
+			ArrayList<Object> pairs = new ArrayList<Object>();
+			for (int i = 0; i < oldPool.length; i++) {
+				Node<K, V> nowNode = oldPool[i].getHead();
+				while (nowNode != null) {
+					V v = nowNode.pair.getValue();
+					if (v != null) {
+						pairs.add(nowNode.pair.getKey());
+						pairs.add(v);
+					}
+					nowNode = nowNode.nextNode;
+				}
+				writer.writeTable(pairs);
+				pairs.clear();
+			}
+			writer.finish();
+		}
+	}
+
+	/**
+	 * load a map saved by writeTo. the pool is created with the saved size and
+	 * every table is rebuilt from its saved entries(and transformed if it is big
+	 * enough) without calling put. an entry whose key hashes to another table
+	 * now,for example a key using identity hashcode,is put normally.
+	 * 
+	 * @param path
+	 *            the file to read
+	 * @param codec
+	 *            the codec of keys and values
+	 * @return the loaded map
+	 */
+	public static <K, V> HashTable<K, V> readFrom(Path path, KeyValueCodec<K, V> codec) throws IOException {
+		return readFrom(path, codec, HashingStrategy.natural());
+	}
+
+	/**
+	 * load a map saved by writeTo,whose keys are hashed and compared by strategy.
+	 * it must be the strategy of the saved map,or the entries are put again.
+	 */
+	public static <K, V> HashTable<K, V> readFrom(Path path, KeyValueCodec<K, V> codec,
+			HashingStrategy<? super K> strategy) throws IOException {
+		try (SnapshotFile.Reader<K, V> reader = new SnapshotFile.Reader<K, V>(path, codec)) {
+			HashTable<K, V> res = new HashTable<K, V>(MIN_POOL_SIZE, strategy);
+			res.load(reader);
+			return res;
+		}
+	}
+
+	/**
+	 * replace the content of the map by a snapshot.it shall be called before the
+	 * map is shared with other threads.
+	 */
+	final void load(SnapshotFile.Reader<K, V> reader) throws IOException {
+		int poolSize = reader.poolSize;
+		// init rounds the size up past it,so the pools of a map are from
+		// MIN_POOL_SIZE << 1 to MAX_POOL_SIZE << 1
+		if (poolSize < (MIN_POOL_SIZE << 1) || poolSize > (MAX_POOL_SIZE << 1) || Integer.bitCount(poolSize) != 1) {
+			throw new IOException("corrupt snapshot: poolSize " + poolSize);
+		}
+		// the tables take the seed when they are created
+		hashSeed = reader.hashSeed;
+		init(poolSize - 1);
+
+		ArrayList<Object> pairs = new ArrayList<Object>();
+		ArrayList<Object> misplaced = new ArrayList<Object>();
+		long loaded = 0;
+		for (int i = 0; i < poolSize; i++) {
+			reader.readTable(pairs);
+			loaded += pairs.size() >>> 1;
+			rebuildTable(i, pairs, misplaced);
+			pairs.clear();
+		}
+		if (loaded != reader.nodeSize) {
+			throw new IOException("corrupt snapshot: " + loaded + " entries but nodeSize is " + reader.nodeSize);
+		}
+		putPairs(misplaced);
+	}
+
+	/**
+	 * fill an empty table with pairs directly.
+	 * 
+	 * @param pairs
+	 *            keys and values as k0,v0,k1,v1... in list order
+	 * @param misplaced
+	 *            pairs whose key does not belong to the table are added to it
+	 */
+	@SuppressWarnings("unchecked")
+	final void rebuildTable(int index, ArrayList<Object> pairs, ArrayList<Object> misplaced) {
+		Table<K, V> table = pool[index];
+		for (int i = pairs.size() - 2; i >= 0; i -= 2) {
+			K k = (K) pairs.get(i);
+			if (getHashCode(k) != index) {
+				misplaced.add(k);
+				misplaced.add(pairs.get(i + 1));
+				continue;
+			}
+			Entry<K, V> pair = newEntry(k, (V) pairs.get(i + 1));
+			reweigh(pair, weightOf(k, pair.getValue()));
+			table.head = new Node<K, V>(table.head, pair);
+			table.tableNodeSize.getAndIncrement();
+			nodeSize.getAndIncrement();
+		}
+		if (table.head != null && transformable(table.head.pair.getKey())
+				&& table.tableNodeSize.get() >= TRANSFORM_LIMIT) {
+			table.transform();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	final void putPairs(ArrayList<Object> pairs) {
+		for (int i = 0; i < pairs.size(); i += 2) {
+			this.put((K) pairs.get(i), (V) pairs.get(i + 1));
+		}
+	}
+
 	@Override
 	public Set<Entry<K, V>> entrySet() {
 		HashSet<Entry<K, V>> entrySet = new HashSet<Entry<K, V>>();
 
 		Table<K, V>[] oldPool = pool;
-		for (int i = 0; i < nowPoolSize; i++) {
+		for (int i = 0; i < oldPool.length; i++) {
 			Node<K, V> nowNode = oldPool[i].getHead();
 			while (nowNode != null) {
 				if (nowNode.pair.getValue() != null) {
@@ -807,7 +2297,7 @@ public class HashTable<K, V> implements Map<K, V> {
 		HashSet<K> keySet = new HashSet<K>();
 
 		Table<K, V>[] oldPool = pool;
-		for (int i = 0; i < nowPoolSize; i++) {
+		for (int i = 0; i < oldPool.length; i++) {
 			Node<K, V> nowNode = oldPool[i].getHead();
 
 			while (nowNode != null) {
@@ -826,7 +2316,7 @@ public class HashTable<K, V> implements Map<K, V> {
 		ArrayList<V> values = new ArrayList<V>();
 
 		Table<K, V>[] oldPool = pool;
-		for (int i = 0; i < nowPoolSize; i++) {
+		for (int i = 0; i < oldPool.length; i++) {
 			Node<K, V> nowNode = oldPool[i].getHead();
 
 			while (nowNode != null) {
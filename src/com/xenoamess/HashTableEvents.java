@@ -0,0 +1,85 @@
+package com.xenoamess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * the Java Flight Recorder events of HashTable. they are created and committed
+ * where the things happen,and when no recording has them enabled,commit() does
+ * nothing and the jit drops the events,so they cost nothing.
+ * <p>
+ * they are in the "XenoAmess/HashTable" category of a recording,for example
+ * 
+ * <pre>
+ * java -XX:StartFlightRecording=filename=map.jfr,settings=profile ...
+ * jfr print --categories HashTable map.jfr
+ * </pre>
+ */
+final class HashTableEvents {
+
+	private HashTableEvents() {
+	}
+
+	@Name("com.xenoamess.HashTable.Resize")
+	@Label("HashTable Resize")
+	@Category({ "XenoAmess", "HashTable" })
+	@Description("the pool of a HashTable is doubled")
+	static final class ResizeEvent extends Event {
+		@Label("Old Pool Size")
+		int oldPoolSize;
+
+		@Label("New Pool Size")
+		int newPoolSize;
+
+		@Label("Map Size")
+		int size;
+	}
+
+	@Name("com.xenoamess.HashTable.Transform")
+	@Label("HashTable Table Transform")
+	@Category({ "XenoAmess", "HashTable" })
+	@Description("a table of a HashTable is transformed from a list into a skiplist")
+	static final class TransformEvent extends Event {
+		@Label("Bucket Index")
+		int bucketIndex;
+
+		@Label("Node Count")
+		int nodeCount;
+	}
+
+	@Name("com.xenoamess.HashTable.SkipListRebuild")
+	@Label("HashTable Skiplist Rebuild")
+	@Category({ "XenoAmess", "HashTable" })
+	@Description("a put into a transformed table rebuilds the bottom of its skiplist")
+	@StackTrace(false)
+	static final class SkipListRebuildEvent extends Event {
+		@Label("Node Count")
+		@Description("nodes in the rebuilt part")
+		int nodeCount;
+
+		@Label("Dropped Tombstones")
+		int droppedTombstones;
+
+		@Label("Layers")
+		int layers;
+	}
+
+	@Name("com.xenoamess.HashTable.SpinWait")
+	@Label("HashTable Spin Wait")
+	@Category({ "XenoAmess", "HashTable" })
+	@Description("a thread spins waiting for a table or a resize")
+	@Threshold("100 us")
+	static final class SpinWaitEvent extends Event {
+		@Label("Spins")
+		long spins;
+
+		@Label("Waiting For")
+		@Description("table or resize")
+		String waitingFor;
+	}
+}
@@ -0,0 +1,123 @@
+package com.xenoamess;
+
+import java.util.function.BiFunction;
+
+/**
+ * HashTableOptions are the options of a HashTable which can be combined:the
+ * init pool size,the hashing strategy,parking mode and the weight bound. the
+ * setters return the options,so they can be chained:
+ *
+ * <pre>
+ * new HashTable&lt;byte[], String&gt;(new HashTableOptions&lt;byte[], String&gt;()
+ * 		.hashingStrategy(HashingStrategy.byteArray()).parking(true)
+ * 		.maximumWeight(1 &lt;&lt; 20, (k, v) -&gt; k.length + v.length()));
+ * </pre>
+ *
+ * HashCounter,HashMultimap,HashTableSet and LoadingHashTable take them too,
+ * for the HashTable they are built on.
+ */
+public final class HashTableOptions<K, V> {
+	int initPoolSize = HashTable.MIN_POOL_SIZE;
+	HashingStrategy<? super K> strategy = HashingStrategy.natural();
+	boolean parking = false;
+	long maximumWeight = HashTable.UNBOUNDED_WEIGHT;
+	Weigher<? super K, ? super V> weigher = null;
+
+	/**
+	 * @param initPoolSize
+	 *            init poolSize of the map
+	 */
+	public HashTableOptions<K, V> initPoolSize(int initPoolSize) {
+		this.initPoolSize = initPoolSize;
+		return this;
+	}
+
+	/**
+	 * @param strategy
+	 *            hash and equivalence of the keys
+	 * @see HashTable#HashTable(int, HashingStrategy)
+	 */
+	public HashTableOptions<K, V> hashingStrategy(HashingStrategy<? super K> strategy) {
+		if (strategy == null) {
+			throw new NullPointerException("strategy");
+		}
+		this.strategy = strategy;
+		return this;
+	}
+
+	/**
+	 * @param parking
+	 *            if the map runs in parking mode
+	 * @see HashTable#HashTable(int, boolean)
+	 */
+	public HashTableOptions<K, V> parking(boolean parking) {
+		this.parking = parking;
+		return this;
+	}
+
+	/**
+	 * @param maximumWeight
+	 *            the max total weight of the entries in the map
+	 * @param weigher
+	 *            the weigher of the entries
+	 * @see HashTable#HashTable(int, long, Weigher)
+	 */
+	public HashTableOptions<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("maximumWeight must not be negative");
+		}
+		if (weigher == null) {
+			throw new NullPointerException("weigher");
+		}
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		return this;
+	}
+
+	public int getInitPoolSize() {
+		return initPoolSize;
+	}
+
+	public HashingStrategy<? super K> getHashingStrategy() {
+		return strategy;
+	}
+
+	public boolean isParking() {
+		return parking;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public Weigher<? super K, ? super V> getWeigher() {
+		return weigher;
+	}
+
+	/**
+	 * @return the options of a map whose values are W,which are weighed by the
+	 *         weigher as the V valueOf gives.a wrapper builds its HashTable by
+	 *         them.
+	 */
+	<W> HashTableOptions<K, W> adapt(BiFunction<? super K, ? super W, ? extends V> valueOf) {
+		HashTableOptions<K, W> res = unweighted();
+		Weigher<? super K, ? super V> nowWeigher = weigher;
+		if (nowWeigher != null) {
+			res.maximumWeight = maximumWeight;
+			res.weigher = (k, w) -> nowWeigher.weigh(k, valueOf.apply(k, w));
+		}
+		return res;
+	}
+
+	/**
+	 * @return the options without the weight bound,for a map of other values
+	 *         built by a wrapper
+	 */
+	<W> HashTableOptions<K, W> unweighted() {
+		HashTableOptions<K, W> res = new HashTableOptions<K, W>();
+		res.initPoolSize = initPoolSize;
+		res.strategy = strategy;
+		res.parking = parking;
+		return res;
+	}
+}
@@ -0,0 +1,289 @@
+package com.xenoamess;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+/**
+ * HashTableSet is a concurrent set on the tables of a HashTable,so it has the
+ * same buckets,transform to skiplists and resize. its entries keep only the
+ * key:there is no value field and no value object for each key.
+ * <p>
+ * addAll and retainAll work bucket by bucket:they take the lock of a Table once
+ * for all the keys of it,instead of once for each key.
+ */
+public class HashTableSet<K> extends AbstractSet<K> {
+
+	/**
+	 * the value of every key of the HashTable
+	 */
+	static final Object PRESENT = Boolean.TRUE;
+
+	/**
+	 * the key of a removed KeyEntry.
+	 */
+	static final class Removed {
+		final Object key;
+
+		Removed(Object key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * an entry of only a key. its value is PRESENT,and when it is removed(by a
+	 * skiplist,which keeps removed entries untill it is rebuilt) the key is
+	 * wrapped into a Removed,so the value is null.
+	 */
+	static final class KeyEntry<K> implements Entry<K, Object>, Comparable<KeyEntry<K>> {
+		volatile Object key;
+
+		KeyEntry(K key) {
+			this.key = key;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public K getKey() {
+			Object nowKey = key;
+			return (K) (nowKey instanceof Removed ? ((Removed) nowKey).key : nowKey);
+		}
+
+		@Override
+		public Object getValue() {
+			return key instanceof Removed ? null : PRESENT;
+		}
+
+		@Override
+		public synchronized Object setValue(Object newValue) {
+			Object oldValue = getValue();
+			K k = getKey();
+			key = newValue == null ? new Removed(k) : k;
+			return oldValue;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compareTo(KeyEntry<K> a) {
+			return ((Comparable) (this.getKey())).compareTo((Comparable) (a.getKey()));
+		}
+	}
+
+	/**
+	 * the HashTable whose entries are KeyEntrys
+	 */
+	static final class KeyTable<K> extends HashTable<K, Object> {
+		KeyTable(HashTableOptions<K, Object> options) {
+			super(options);
+		}
+
+		/**
+		 * a KeyEntry,or a weighted entry if the set is weight-bounded
+		 */
+		@Override
+		Entry<K, Object> newEntry(K k, Object v) {
+			if (weigher != null) {
+				return super.newEntry(k, v);
+			}
+			return new KeyEntry<K>(k);
+		}
+	}
+
+	final KeyTable<K> table;
+
+	public HashTableSet() {
+		this(HashTable.MIN_POOL_SIZE);
+	}
+
+	/**
+	 * @param initPoolSize
+	 *            init size of the pool of the HashTable
+	 */
+	public HashTableSet(int initPoolSize) {
+		this(new HashTableOptions<K, Object>().initPoolSize(initPoolSize));
+	}
+
+	/**
+	 * @param options
+	 *            the options of the HashTable.the weigher is given Boolean.TRUE
+	 *            as the value of every key.
+	 */
+	public HashTableSet(HashTableOptions<K, Object> options) {
+		super();
+		this.table = new KeyTable<K>(options.adapt((k, present) -> present));
+	}
+
+	public HashTableSet(Collection<? extends K> c) {
+		this(c.size() + (c.size() >>> 1));
+		addAll(c);
+	}
+
+	@Override
+	public boolean add(K k) {
+		return table.putIfAbsent(k, PRESENT) == null;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return table.get(o) != null;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return table.remove(o) != null;
+	}
+
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return table.size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * the keys of c are sorted by their tables in the present pool,and the keys
+	 * of a table are added holding its lock once. if the table is moved by a
+	 * resize meanwhile,the keys left are added one by one.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean addAll(Collection<? extends K> c) {
+		Object[] keys = c.toArray();
+		if (keys.length == 0) {
+			return false;
+		}
+		table.awaitResize();
+		HashTable.Table<K, Object>[] nowPool = table.pool;
+		// table index in the high bits,key index in the low bits
+		long[] order = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null) {
+				throw new NullPointerException();
+			}
+			order[i] = ((long) table.indexIn(keys[i], nowPool) << 32) | i;
+		}
+		Arrays.sort(order);
+
+		boolean res = false;
+		ArrayList<K> added = new ArrayList<K>();
+		// the index of the next key in order
+		int[] cursor = new int[1];
+		int i = 0;
+		while (i < order.length) {
+			HashTable.Table<K, Object> nowTable = nowPool[(int) (order[i] >>> 32)];
+			cursor[0] = i;
+			nowTable.runLocked(() -> {
+				while (cursor[0] < order.length && nowPool[(int) (order[cursor[0]] >>> 32)] == nowTable) {
+					K k = (K) keys[(int) order[cursor[0]]];
+					Object present = nowTable.putIfAbsent(k, PRESENT);
+					if (present == HashTable.MOVED) {
+						break;
+					}
+					if (present == null) {
+						added.add(k);
+					}
+					cursor[0]++;
+				}
+			});
+			i = cursor[0];
+			// bookkeeping and resize are out of the table lock,since resize takes
+			// the locks of all the tables
+			for (K k : added) {
+				table.afterPut(k, PRESENT, null);
+			}
+			res |= !added.isEmpty();
+			added.clear();
+			for (; i < order.length && nowPool[(int) (order[i] >>> 32)] == nowTable; i++) {
+				res |= add((K) keys[(int) order[i]]);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * the tables of the present pool are swept one by one,and the keys of a
+	 * table which are not in c are removed holding its lock once. a table moved
+	 * by a resize meanwhile is done key by key.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		table.awaitResize();
+		HashTable.Table<K, Object>[] nowPool = table.pool;
+		boolean res = false;
+		ArrayList<Object> pairs = new ArrayList<Object>();
+		ArrayList<K> removed = new ArrayList<K>();
+		boolean[] moved = new boolean[1];
+		for (HashTable.Table<K, Object> nowTable : nowPool) {
+			nowTable.runLocked(() -> {
+				nowTable.copyPairs(pairs);
+				moved[0] = nowTable.moved;
+				if (!moved[0]) {
+					for (int i = 0; i < pairs.size(); i += 2) {
+						K k = (K) pairs.get(i);
+						if (!c.contains(k) && nowTable.remove(k) != null) {
+							removed.add(k);
+						}
+					}
+				}
+			});
+			if (moved[0]) {
+				for (int i = 0; i < pairs.size(); i += 2) {
+					if (!c.contains(pairs.get(i))) {
+						res |= remove(pairs.get(i));
+					}
+				}
+			}
+			for (K k : removed) {
+				table.afterRemove(k, PRESENT);
+			}
+			res |= !removed.isEmpty();
+			removed.clear();
+			pairs.clear();
+		}
+		return res;
+	}
+
+	/**
+	 * @return an iterator of a snapshot of the keys.its remove removes the key
+	 *         from the set.
+	 */
+	@Override
+	public Iterator<K> iterator() {
+		Iterator<K> snapshot = table.keySet().iterator();
+		return new Iterator<K>() {
+			K last = null;
+
+			@Override
+			public boolean hasNext() {
+				return snapshot.hasNext();
+			}
+
+			@Override
+			public K next() {
+				last = snapshot.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				HashTableSet.this.remove(last);
+				last = null;
+			}
+		};
+	}
+}
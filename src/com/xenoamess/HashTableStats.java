@@ -0,0 +1,132 @@
+package com.xenoamess;
+
+import java.util.Arrays;
+
+/**
+ * HashTableStats is a snapshot of the stats of a HashTable,taken by
+ * HashTable.getStats(). the chain lengths,transformed tables and tombstones are
+ * always filled. the hits,misses,resizes and spins are counted only while the
+ * stats of the map are enabled,otherwise they are 0.
+ */
+public final class HashTableStats {
+
+	/**
+	 * chainLengthHistogram[i] is the number of tables of i nodes,and the last
+	 * one is of CHAIN_LENGTH_BUCKETS-1 nodes or more.
+	 */
+	public static final int CHAIN_LENGTH_BUCKETS = 17;
+
+	final boolean enabled;
+	final int poolSize;
+	final int size;
+	final long[] chainLengthHistogram;
+	final int maxChainLength;
+	final int transformedTables;
+	final long tombstones;
+	final long hits;
+	final long misses;
+	final long resizeCount;
+	final long resizeNanos;
+	final long spinIterations;
+
+	HashTableStats(boolean enabled, int poolSize, int size, long[] chainLengthHistogram, int maxChainLength,
+			int transformedTables, long tombstones, long hits, long misses, long resizeCount, long resizeNanos,
+			long spinIterations) {
+		this.enabled = enabled;
+		this.poolSize = poolSize;
+		this.size = size;
+		this.chainLengthHistogram = chainLengthHistogram;
+		this.maxChainLength = maxChainLength;
+		this.transformedTables = transformedTables;
+		this.tombstones = tombstones;
+		this.hits = hits;
+		this.misses = misses;
+		this.resizeCount = resizeCount;
+		this.resizeNanos = resizeNanos;
+		this.spinIterations = spinIterations;
+	}
+
+	/**
+	 * @return if the counters were enabled when the snapshot is taken
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return a copy of the histogram of the nodes per table,tombstones included
+	 */
+	public long[] getChainLengthHistogram() {
+		return chainLengthHistogram.clone();
+	}
+
+	public int getMaxChainLength() {
+		return maxChainLength;
+	}
+
+	/**
+	 * @return number of tables that are skiplists
+	 */
+	public int getTransformedTables() {
+		return transformedTables;
+	}
+
+	/**
+	 * @return number of nodes whose value is null,which are removed keys not yet
+	 *         dropped by a skiplist rebuild
+	 */
+	public long getTombstones() {
+		return tombstones;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return hits/(hits+misses),or 0 if nothing is got
+	 */
+	public double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	public long getResizeCount() {
+		return resizeCount;
+	}
+
+	/**
+	 * @return total time of the resizes,in nanoseconds
+	 */
+	public long getResizeNanos() {
+		return resizeNanos;
+	}
+
+	/**
+	 * @return number of iterations threads spun waiting for a condition to be 0
+	 */
+	public long getSpinIterations() {
+		return spinIterations;
+	}
+
+	@Override
+	public String toString() {
+		return "HashTableStats[enabled=" + enabled + ", poolSize=" + poolSize + ", size=" + size
+				+ ", chainLengthHistogram=" + Arrays.toString(chainLengthHistogram) + ", maxChainLength="
+				+ maxChainLength + ", transformedTables=" + transformedTables + ", tombstones=" + tombstones
+				+ ", hits=" + hits + ", misses=" + misses + ", resizeCount=" + resizeCount + ", resizeNanos="
+				+ resizeNanos + ", spinIterations=" + spinIterations + "]";
+	}
+}
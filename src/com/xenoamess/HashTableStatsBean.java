@@ -0,0 +1,103 @@
+package com.xenoamess;
+
+/**
+ * HashTableStatsBean is the HashTableStatsMXBean of a map. a JMX client reads
+ * the attributes one by one,so a snapshot is reused for SNAPSHOT_NANOS instead
+ * of walking the map for each attribute.
+ */
+final class HashTableStatsBean implements HashTableStatsMXBean {
+
+	static final long SNAPSHOT_NANOS = 1_000_000_000L;
+
+	final HashTable<?, ?> map;
+
+	HashTableStats snapshot = null;
+	long snapshotTime = 0;
+
+	HashTableStatsBean(HashTable<?, ?> map) {
+		this.map = map;
+	}
+
+	synchronized HashTableStats snapshot() {
+		long now = System.nanoTime();
+		if (snapshot == null || now - snapshotTime > SNAPSHOT_NANOS) {
+			snapshot = map.getStats();
+			snapshotTime = now;
+		}
+		return snapshot;
+	}
+
+	@Override
+	public int getPoolSize() {
+		return snapshot().getPoolSize();
+	}
+
+	@Override
+	public int getSize() {
+		return snapshot().getSize();
+	}
+
+	@Override
+	public long[] getChainLengthHistogram() {
+		return snapshot().getChainLengthHistogram();
+	}
+
+	@Override
+	public int getMaxChainLength() {
+		return snapshot().getMaxChainLength();
+	}
+
+	@Override
+	public int getTransformedTables() {
+		return snapshot().getTransformedTables();
+	}
+
+	@Override
+	public long getTombstones() {
+		return snapshot().getTombstones();
+	}
+
+	@Override
+	public long getHits() {
+		return snapshot().getHits();
+	}
+
+	@Override
+	public long getMisses() {
+		return snapshot().getMisses();
+	}
+
+	@Override
+	public double getHitRate() {
+		return snapshot().getHitRate();
+	}
+
+	@Override
+	public long getResizeCount() {
+		return snapshot().getResizeCount();
+	}
+
+	@Override
+	public long getResizeNanos() {
+		return snapshot().getResizeNanos();
+	}
+
+	@Override
+	public long getSpinIterations() {
+		return snapshot().getSpinIterations();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return map.isStatsEnabled();
+	}
+
+	@Override
+	public synchronized void resetCounters() {
+		map.mapLocked(() -> {
+			map.disableStats();
+			map.enableStats();
+		});
+		snapshot = null;
+	}
+}
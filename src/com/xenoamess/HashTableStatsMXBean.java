@@ -0,0 +1,38 @@
+package com.xenoamess;
+
+/**
+ * the JMX view of HashTableStats.register it by
+ * HashTable.registerStatsMXBean(name).
+ */
+public interface HashTableStatsMXBean {
+	int getPoolSize();
+
+	int getSize();
+
+	long[] getChainLengthHistogram();
+
+	int getMaxChainLength();
+
+	int getTransformedTables();
+
+	long getTombstones();
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRate();
+
+	long getResizeCount();
+
+	long getResizeNanos();
+
+	long getSpinIterations();
+
+	boolean isEnabled();
+
+	/**
+	 * restart the counters from 0.
+	 */
+	void resetCounters();
+}
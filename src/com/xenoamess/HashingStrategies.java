@@ -0,0 +1,60 @@
+package com.xenoamess;
+
+import java.util.Arrays;
+
+/**
+ * the strategies of HashingStrategy's factory methods.
+ */
+final class HashingStrategies {
+
+	private HashingStrategies() {
+	}
+
+	static final HashingStrategy<Object> NATURAL = new HashingStrategy<Object>() {
+		@Override
+		public int hash(Object k) {
+			return k.hashCode();
+		}
+
+		@Override
+		public boolean equivalent(Object a, Object b) {
+			return a.equals(b);
+		}
+	};
+
+	static final HashingStrategy<Object> IDENTITY = new HashingStrategy<Object>() {
+		@Override
+		public int hash(Object k) {
+			return System.identityHashCode(k);
+		}
+
+		@Override
+		public boolean equivalent(Object a, Object b) {
+			return a == b;
+		}
+	};
+
+	static final HashingStrategy<byte[]> BYTE_ARRAY = new HashingStrategy<byte[]>() {
+		@Override
+		public int hash(byte[] k) {
+			return Arrays.hashCode(k);
+		}
+
+		@Override
+		public boolean equivalent(byte[] a, byte[] b) {
+			return Arrays.equals(a, b);
+		}
+	};
+
+	static final HashingStrategy<char[]> CHAR_ARRAY = new HashingStrategy<char[]>() {
+		@Override
+		public int hash(char[] k) {
+			return Arrays.hashCode(k);
+		}
+
+		@Override
+		public boolean equivalent(char[] a, char[] b) {
+			return Arrays.equals(a, b);
+		}
+	};
+}
@@ -0,0 +1,47 @@
+package com.xenoamess;
+
+/**
+ * HashingStrategy is how a HashTable hashes and compares its keys,instead of
+ * their hashCode and equals. so arrays can be keys by content without a
+ * wrapper,and a faster hash of the domain of the keys can be used.
+ * <p>
+ * hash must be consistent with equivalent:equivalent keys must have the same
+ * hash. the keys of a map with a strategy other than natural() are never
+ * transformed into skiplists,since the skiplist orders keys by compareTo.
+ */
+public interface HashingStrategy<K> {
+
+	int hash(K k);
+
+	boolean equivalent(K a, K b);
+
+	/**
+	 * @return the strategy of hashCode and equals
+	 */
+	@SuppressWarnings("unchecked")
+	static <K> HashingStrategy<K> natural() {
+		return (HashingStrategy<K>) HashingStrategies.NATURAL;
+	}
+
+	/**
+	 * @return the strategy of System.identityHashCode and ==
+	 */
+	@SuppressWarnings("unchecked")
+	static <K> HashingStrategy<K> identity() {
+		return (HashingStrategy<K>) HashingStrategies.IDENTITY;
+	}
+
+	/**
+	 * @return the strategy of Arrays.hashCode and Arrays.equals of byte[]
+	 */
+	static HashingStrategy<byte[]> byteArray() {
+		return HashingStrategies.BYTE_ARRAY;
+	}
+
+	/**
+	 * @return the strategy of Arrays.hashCode and Arrays.equals of char[]
+	 */
+	static HashingStrategy<char[]> charArray() {
+		return HashingStrategies.CHAR_ARRAY;
+	}
+}
@@ -0,0 +1,34 @@
+package com.xenoamess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * KeyValueCodec converts keys and values of a HashTable to bytes and back.it is
+ * used when a HashTable is saved to or loaded from a file.
+ * <p>
+ * writeKey/writeValue must write exactly keySize/valueSize bytes,and
+ * readKey/readValue must read exactly the given number of bytes.
+ *
+ * @see HashTable#writeTo(java.nio.file.Path, KeyValueCodec)
+ * @see HashTable#readFrom(java.nio.file.Path, KeyValueCodec)
+ */
+public interface KeyValueCodec<K, V> {
+
+	/**
+	 * @return number of bytes of the encoded key
+	 */
+	int keySize(K key);
+
+	void writeKey(K key, ByteBuffer buffer);
+
+	K readKey(ByteBuffer buffer, int size);
+
+	/**
+	 * @return number of bytes of the encoded value
+	 */
+	int valueSize(V value);
+
+	void writeValue(V value, ByteBuffer buffer);
+
+	V readValue(ByteBuffer buffer, int size);
+}
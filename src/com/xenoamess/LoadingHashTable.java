@@ -0,0 +1,306 @@
+package com.xenoamess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadingHashTable is a cache over a HashTable whose misses are filled by a
+ * CacheLoader. concurrent misses of the same key share one in-flight
+ * CompletableFuture,so the loader runs only once per key at a time. entries
+ * older than refreshAfterWrite are reloaded asynchronously while the old value
+ * is still returned,and entries older than expireAfterWrite are loaded again
+ * before returning.
+ */
+public class LoadingHashTable<K, V> {
+
+	/**
+	 * refreshAfterWrite/expireAfterWrite of a cache that never refreshes/expires
+	 */
+	public static final long NEVER = Long.MAX_VALUE;
+
+	/*
+	 * a loaded value and the time it was written.
+	 */
+	static final class Loaded<V> {
+		final V value;
+		final long writeTime;
+
+		Loaded(V value, long writeTime) {
+			this.value = value;
+			this.writeTime = writeTime;
+		}
+	}
+
+	/**
+	 * the loaded values.
+	 */
+	final HashTable<K, Loaded<V>> table;
+
+	/**
+	 * the in-flight loads. a key is in it only while one load of it is running,so
+	 * its putIfAbsent decides which thread runs the loader.
+	 */
+	final HashTable<K, CompletableFuture<V>> loading;
+
+	final CacheLoader<K, V> loader;
+	final long refreshAfterWriteNanos;
+	final long expireAfterWriteNanos;
+
+	/**
+	 * the executor of asynchronous loads and refreshes.
+	 */
+	final Executor executor;
+
+	public LoadingHashTable(CacheLoader<K, V> loader) {
+		this(loader, NEVER, NEVER, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param loader
+	 *            the loader of the values
+	 * @param refreshAfterWrite
+	 *            an entry older than it is reloaded asynchronously when read
+	 * @param expireAfterWrite
+	 *            an entry older than it is not returned any more,but loaded again
+	 * @param unit
+	 *            the unit of refreshAfterWrite and expireAfterWrite
+	 * @param executor
+	 *            the executor of asynchronous loads and refreshes
+	 */
+	public LoadingHashTable(CacheLoader<K, V> loader, long refreshAfterWrite, long expireAfterWrite,
+			TimeUnit unit, Executor executor) {
+		this(loader, refreshAfterWrite, expireAfterWrite, unit, executor, new HashTableOptions<K, V>());
+	}
+
+	/**
+	 * @param options
+	 *            the options of the HashTable of the values.a weight-bounded
+	 *            cache evicts values,which are loaded again when got.
+	 * @see #LoadingHashTable(CacheLoader, long, long, TimeUnit, Executor)
+	 */
+	public LoadingHashTable(CacheLoader<K, V> loader, long refreshAfterWrite, long expireAfterWrite,
+			TimeUnit unit, Executor executor, HashTableOptions<K, V> options) {
+		super();
+		if (loader == null || unit == null || executor == null || options == null) {
+			throw new NullPointerException();
+		}
+		if (refreshAfterWrite <= 0 || expireAfterWrite <= 0) {
+			throw new IllegalArgumentException("refreshAfterWrite and expireAfterWrite must be positive");
+		}
+		this.table = new HashTable<K, Loaded<V>>(options.adapt((k, loaded) -> loaded.value));
+		this.loading = new HashTable<K, CompletableFuture<V>>(options.unweighted());
+		this.loader = loader;
+		this.refreshAfterWriteNanos = unit.toNanos(refreshAfterWrite);
+		this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the value of k,loading it in the calling thread if it is absent or
+	 *         expired.
+	 * @throws CompletionException
+	 *             if the loader failed
+	 */
+	public V get(K k) {
+		V res = getIfPresent(k);
+		if (res != null) {
+			return res;
+		}
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> present = loading.putIfAbsent(k, future);
+		if (present != null) {
+			return present.join();
+		}
+		runLoad(k, future);
+		return future.join();
+	}
+
+	/**
+	 * @return a future of the value of k.if k is absent or expired it is loaded
+	 *         by the executor.
+	 */
+	public CompletableFuture<V> getAsync(K k) {
+		V res = getIfPresent(k);
+		if (res != null) {
+			return CompletableFuture.completedFuture(res);
+		}
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> present = loading.putIfAbsent(k, future);
+		if (present != null) {
+			return present;
+		}
+		executor.execute(() -> runLoad(k, future));
+		return future;
+	}
+
+	/**
+	 * get the values of many keys.the keys which are absent and not being loaded
+	 * by other threads are loaded together by one CacheLoader.loadAll call.
+	 *
+	 * @return a map from keys to their values.keys without values are absent
+	 * @throws CompletionException
+	 *             if the loader failed
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		Map<K, V> res = new HashMap<K, V>();
+		Map<K, CompletableFuture<V>> waiting = new HashMap<K, CompletableFuture<V>>();
+		Map<K, CompletableFuture<V>> owned = new HashMap<K, CompletableFuture<V>>();
+
+		for (K k : keys) {
+			if (res.containsKey(k) || waiting.containsKey(k) || owned.containsKey(k)) {
+				continue;
+			}
+			V v = getIfPresent(k);
+			if (v != null) {
+				res.put(k, v);
+				continue;
+			}
+			CompletableFuture<V> future = new CompletableFuture<V>();
+			CompletableFuture<V> present = loading.putIfAbsent(k, future);
+			if (present != null) {
+				waiting.put(k, present);
+			} else {
+				owned.put(k, future);
+			}
+		}
+
+		if (!owned.isEmpty()) {
+			Map<K, Loaded<V>> from = new HashMap<K, Loaded<V>>();
+			for (K k : owned.keySet()) {
+				from.put(k, table.lookup(k));
+			}
+			try {
+				Map<K, V> loaded = loader.loadAll(new ArrayList<K>(owned.keySet()));
+				for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+					finish(entry.getKey(), entry.getValue(), from.get(entry.getKey()), loaded.get(entry.getKey()));
+				}
+			} catch (Throwable e) {
+				for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+					fail(entry.getKey(), entry.getValue(), e);
+				}
+			}
+			waiting.putAll(owned);
+		}
+
+		for (Map.Entry<K, CompletableFuture<V>> entry : waiting.entrySet()) {
+			V v = entry.getValue().join();
+			if (v != null) {
+				res.put(entry.getKey(), v);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return the value of k if it is present and not expired,otherwise null.it
+	 *         never loads,but it starts a refresh if the value is old enough.
+	 */
+	public V getIfPresent(K k) {
+		Loaded<V> loaded = table.get(k);
+		if (loaded == null) {
+			return null;
+		}
+		long age = System.nanoTime() - loaded.writeTime;
+		if (age >= expireAfterWriteNanos) {
+			return null;
+		}
+		if (age >= refreshAfterWriteNanos) {
+			refresh(k);
+		}
+		return loaded.value;
+	}
+
+	/**
+	 * reload k asynchronously by CacheLoader.reload.the old value is kept until
+	 * the reload completes,and kept too if the reload failed. a put or an
+	 * invalidate of k during the reload wins over the reloaded value. if k is
+	 * being loaded already,it does nothing.
+	 *
+	 * @return the future of the load of k
+	 */
+	public CompletableFuture<V> refresh(K k) {
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> present = loading.putIfAbsent(k, future);
+		if (present != null) {
+			return present;
+		}
+		executor.execute(() -> {
+			Loaded<V> old = table.lookup(k);
+			try {
+				V v;
+				if (old == null) {
+					v = loader.load(k);
+				} else {
+					v = loader.reload(k, old.value);
+				}
+				finish(k, future, old, v);
+			} catch (Throwable e) {
+				fail(k, future, e);
+			}
+		});
+		return future;
+	}
+
+	public void put(K k, V v) {
+		table.put(k, new Loaded<V>(v, System.nanoTime()));
+	}
+
+	public void invalidate(K k) {
+		table.remove(k);
+	}
+
+	public void invalidateAll() {
+		table.clear();
+	}
+
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * run the loader for k whose in-flight future is owned by this thread.
+	 */
+	void runLoad(K k, CompletableFuture<V> future) {
+		Loaded<V> loaded = table.lookup(k);
+		if (loaded != null && System.nanoTime() - loaded.writeTime < expireAfterWriteNanos) {
+			// another load finished between the miss and the putIfAbsent
+			loading.remove(k);
+			future.complete(loaded.value);
+			return;
+		}
+		try {
+			finish(k, future, loaded, loader.load(k));
+		} catch (Throwable e) {
+			fail(k, future, e);
+		}
+	}
+
+	/**
+	 * store the loaded value if the entry of k is still from,the one the load
+	 * started from,then end the in-flight load and wake the waiters. an entry
+	 * put or invalidated during the load is newer than the loaded value,so the
+	 * loaded value is dropped.
+	 */
+	void finish(K k, CompletableFuture<V> future, Loaded<V> from, V v) {
+		table.compute(k, (key, present) -> {
+			if (present != from) {
+				return present;
+			}
+			return v == null ? null : new Loaded<V>(v, System.nanoTime());
+		});
+		loading.remove(k);
+		future.complete(v);
+	}
+
+	void fail(K k, CompletableFuture<V> future, Throwable e) {
+		loading.remove(k);
+		future.completeExceptionally(e);
+	}
+}
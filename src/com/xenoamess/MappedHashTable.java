@@ -0,0 +1,438 @@
+package com.xenoamess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MappedHashTable is a HashTable living in a memory-mapped file. the bucket
+ * array and the entries are all in the file,so reopening it is only a mmap and
+ * a header check,and a part of the file never read costs no page-in.
+ * <p>
+ * the file is
+ *
+ * <pre>
+ * header  : magic(int) version(int) bucketCount(int) reserved(int) size(long) slabEnd(long) deadBytes(long)
+ * buckets : bucketCount offsets(long) of the first record of each bucket,0 means empty
+ * slab    : records of [ next(long) hash(int) keySize(int) valueSize(int) key value ],8-byte aligned
+ * </pre>
+ *
+ * buckets are addressed by HashTable.spread(k.hashCode()) like the heap map,so
+ * keys must have a hashCode stable between runs(String,Integer...). the bucket
+ * count is fixed when the file is created,and the map never resizes:past
+ * bucketCount keys the chains only grow,and a get walks size/bucketCount
+ * records on average,so the bucket count shall be chosen for the largest size
+ * expected. a put appends a new record and unlinks the old one,so the space of
+ * replaced and removed records is not reused(see getDeadBytes),not even by
+ * clear.
+ * <p>
+ * writers are serialized by the map,while readers never lock. a record is
+ * written before it is linked,and the links(the bucket offsets and the next of
+ * the records) are written with release and read with acquire,so a reader
+ * finding a record sees all of it. changes are written to the mapping at once,
+ * and force() makes them durable.
+ */
+public class MappedHashTable<K, V> extends AbstractMap<K, V> implements Closeable {
+
+	/**
+	 * "XAMT"
+	 */
+	static final int MAGIC = 0x58414d54;
+	static final int VERSION = 1;
+
+	static final int BUCKET_COUNT_POSITION = 8;
+	static final int SIZE_POSITION = 16;
+	static final int SLAB_END_POSITION = 24;
+	static final int DEAD_BYTES_POSITION = 32;
+	static final int HEADER_SIZE = 64;
+
+	static final int RECORD_HEADER_SIZE = 8 + 4 + 4 + 4;
+	static final int NEXT_OFFSET = 0;
+	static final int HASH_OFFSET = 8;
+	static final int KEY_SIZE_OFFSET = 12;
+	static final int VALUE_SIZE_OFFSET = 16;
+
+	public static final int DEFAULT_BUCKET_COUNT = 1 << 16;
+	public static final long DEFAULT_CAPACITY = 1 << 24;
+
+	/**
+	 * a single mapping cannot be larger than it.
+	 */
+	static final long MAX_CAPACITY = Integer.MAX_VALUE & ~7L;
+
+	/**
+	 * the links in the mapping,as big-endian longs like getLong.they are 8-byte
+	 * aligned,as the mapping starts at a page.
+	 */
+	static final VarHandle LINK = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	final FileChannel channel;
+	final KeyValueCodec<K, V> codec;
+	final int bucketCount;
+
+	/**
+	 * the mapping of the whole file.it is replaced by a larger one when the slab
+	 * is full.
+	 */
+	volatile MappedByteBuffer mapped;
+
+	MappedHashTable(FileChannel channel, KeyValueCodec<K, V> codec, int bucketCount, MappedByteBuffer mapped) {
+		super();
+		this.channel = channel;
+		this.codec = codec;
+		this.bucketCount = bucketCount;
+		this.mapped = mapped;
+	}
+
+	public static <K, V> MappedHashTable<K, V> open(Path path, KeyValueCodec<K, V> codec) throws IOException {
+		return open(path, codec, DEFAULT_BUCKET_COUNT, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * open the map of a file,or create it if the file is empty or absent.
+	 *
+	 * @param bucketCount
+	 *            bucket count of a new file,rounded up to a power of 2.ignored if
+	 *            the file exists
+	 * @param initCapacity
+	 *            size of a new file.ignored if the file exists
+	 */
+	public static <K, V> MappedHashTable<K, V> open(Path path, KeyValueCodec<K, V> codec, int bucketCount,
+			long initCapacity) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long fileSize = channel.size();
+			if (fileSize == 0) {
+				int nowBucketCount = 1;
+				while (nowBucketCount < bucketCount) {
+					nowBucketCount <<= 1;
+				}
+				long slabStart = HEADER_SIZE + 8L * nowBucketCount;
+				long capacity = Math.min(MAX_CAPACITY, Math.max(initCapacity, slabStart << 1));
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+				mapped.putInt(0, MAGIC);
+				mapped.putInt(4, VERSION);
+				mapped.putInt(BUCKET_COUNT_POSITION, nowBucketCount);
+				mapped.putLong(SIZE_POSITION, 0);
+				mapped.putLong(SLAB_END_POSITION, slabStart);
+				mapped.putLong(DEAD_BYTES_POSITION, 0);
+				return new MappedHashTable<K, V>(channel, codec, nowBucketCount, mapped);
+			}
+
+			if (fileSize < HEADER_SIZE || fileSize > MAX_CAPACITY) {
+				throw new IOException("not a MappedHashTable file: " + path);
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException("not a MappedHashTable file: " + path);
+			}
+			if (mapped.getInt(4) != VERSION) {
+				throw new IOException("unsupported MappedHashTable version " + mapped.getInt(4) + ": " + path);
+			}
+			int nowBucketCount = mapped.getInt(BUCKET_COUNT_POSITION);
+			long slabEnd = mapped.getLong(SLAB_END_POSITION);
+			if (nowBucketCount <= 0 || Integer.bitCount(nowBucketCount) != 1
+					|| slabEnd < HEADER_SIZE + 8L * nowBucketCount || slabEnd > fileSize) {
+				throw new IOException("corrupt MappedHashTable header: " + path);
+			}
+			return new MappedHashTable<K, V>(channel, codec, nowBucketCount, mapped);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	final int bucketPosition(int hash) {
+		return HEADER_SIZE + ((hash & (bucketCount - 1)) << 3);
+	}
+
+	/**
+	 * @return a mapping containing [0,end).a reader may hold an old mapping
+	 *         while a writer grows the file,then it takes the new one.
+	 */
+	final MappedByteBuffer mappingFor(MappedByteBuffer buffer, long end) {
+		if (end <= buffer.capacity()) {
+			return buffer;
+		}
+		return mapped;
+	}
+
+	/**
+	 * @return the link at index.the record it points to is seen as it was
+	 *         written before the link.
+	 */
+	static long getLink(ByteBuffer buffer, int index) {
+		return (long) LINK.getAcquire(buffer, index);
+	}
+
+	/**
+	 * link offset at index,after the record at offset is written.
+	 */
+	static void setLink(ByteBuffer buffer, int index, long offset) {
+		LINK.setRelease(buffer, index, offset);
+	}
+
+	final byte[] encodeKey(K k) {
+		byte[] res = new byte[codec.keySize(k)];
+		codec.writeKey(k, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	/**
+	 * @return offset of the record of k,or 0 if k is absent
+	 */
+	final long find(MappedByteBuffer buffer, int hash, byte[] key) {
+		long offset = getLink(buffer, bucketPosition(hash));
+		while (offset != 0) {
+			buffer = mappingFor(buffer, offset + RECORD_HEADER_SIZE);
+			int index = (int) offset;
+			if (buffer.getInt(index + HASH_OFFSET) == hash && buffer.getInt(index + KEY_SIZE_OFFSET) == key.length) {
+				buffer = mappingFor(buffer, offset + RECORD_HEADER_SIZE + key.length);
+				int keyStart = index + RECORD_HEADER_SIZE;
+				int i = 0;
+				while (i < key.length && buffer.get(keyStart + i) == key[i]) {
+					i++;
+				}
+				if (i == key.length) {
+					return offset;
+				}
+			}
+			offset = getLink(buffer, index + NEXT_OFFSET);
+		}
+		return 0;
+	}
+
+	final V readValue(long offset) {
+		int index = (int) offset;
+		MappedByteBuffer buffer = mapped;
+		int keySize = buffer.getInt(index + KEY_SIZE_OFFSET);
+		int valueSize = buffer.getInt(index + VALUE_SIZE_OFFSET);
+		ByteBuffer view = buffer.duplicate();
+		int start = index + RECORD_HEADER_SIZE + keySize;
+		view.limit(start + valueSize).position(start);
+		return codec.readValue(view, valueSize);
+	}
+
+	final K readKey(long offset) {
+		int index = (int) offset;
+		MappedByteBuffer buffer = mapped;
+		int keySize = buffer.getInt(index + KEY_SIZE_OFFSET);
+		ByteBuffer view = buffer.duplicate();
+		int start = index + RECORD_HEADER_SIZE;
+		view.limit(start + keySize).position(start);
+		return codec.readKey(view, keySize);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object o) {
+		if (o == null) {
+			return null;
+		}
+		K k = (K) o;
+		long offset = find(mapped, HashTable.spread(k.hashCode()), encodeKey(k));
+		if (offset == 0) {
+			return null;
+		}
+		return readValue(offset);
+	}
+
+	@Override
+	public boolean containsKey(Object o) {
+		return get(o) != null;
+	}
+
+	@Override
+	public synchronized V put(K k, V v) {
+		if (k == null || v == null) {
+			throw new NullPointerException();
+		}
+		int hash = HashTable.spread(k.hashCode());
+		byte[] key = encodeKey(k);
+		int valueSize = codec.valueSize(v);
+		long recordSize = (RECORD_HEADER_SIZE + key.length + (long) valueSize + 7) & ~7L;
+
+		MappedByteBuffer buffer = mapped;
+		long offset = buffer.getLong(SLAB_END_POSITION);
+		buffer = ensureCapacity(offset + recordSize);
+
+		int index = (int) offset;
+		int bucketPosition = bucketPosition(hash);
+		long oldOffset = find(buffer, hash, key);
+		V res = oldOffset == 0 ? null : readValue(oldOffset);
+
+		buffer.putInt(index + HASH_OFFSET, hash);
+		buffer.putInt(index + KEY_SIZE_OFFSET, key.length);
+		buffer.putInt(index + VALUE_SIZE_OFFSET, valueSize);
+		for (int i = 0; i < key.length; i++) {
+			buffer.put(index + RECORD_HEADER_SIZE + i, key[i]);
+		}
+		ByteBuffer view = buffer.duplicate();
+		int valueStart = index + RECORD_HEADER_SIZE + key.length;
+		view.limit(valueStart + valueSize).position(valueStart);
+		codec.writeValue(v, view);
+		if (view.position() != valueStart + valueSize) {
+			throw new IllegalStateException("codec wrote " + (view.position() - valueStart) + " bytes of value but said "
+					+ valueSize);
+		}
+		buffer.putLong(index + NEXT_OFFSET, buffer.getLong(bucketPosition));
+		buffer.putLong(SLAB_END_POSITION, offset + recordSize);
+
+		// publish the new record before unlinking the old one,so a reader always
+		// finds k
+		setLink(buffer, bucketPosition, offset);
+		if (oldOffset != 0) {
+			unlink(buffer, offset, oldOffset);
+		} else {
+			buffer.putLong(SIZE_POSITION, buffer.getLong(SIZE_POSITION) + 1);
+		}
+		return res;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized V remove(Object o) {
+		if (o == null) {
+			return null;
+		}
+		K k = (K) o;
+		int hash = HashTable.spread(k.hashCode());
+		MappedByteBuffer buffer = mapped;
+		long offset = find(buffer, hash, encodeKey(k));
+		if (offset == 0) {
+			return null;
+		}
+		V res = readValue(offset);
+		unlink(buffer, buffer.getLong(bucketPosition(hash)), offset);
+		buffer.putLong(SIZE_POSITION, buffer.getLong(SIZE_POSITION) - 1);
+		return res;
+	}
+
+	/**
+	 * unlink the record at offset from the chain starting at from.
+	 */
+	final void unlink(MappedByteBuffer buffer, long from, long offset) {
+		int index = (int) offset;
+		long next = buffer.getLong(index + NEXT_OFFSET);
+		int hash = buffer.getInt(index + HASH_OFFSET);
+		int bucketPosition = bucketPosition(hash);
+		if (buffer.getLong(bucketPosition) == offset) {
+			setLink(buffer, bucketPosition, next);
+		} else {
+			long previous = from;
+			while (buffer.getLong((int) previous + NEXT_OFFSET) != offset) {
+				previous = buffer.getLong((int) previous + NEXT_OFFSET);
+			}
+			setLink(buffer, (int) previous + NEXT_OFFSET, next);
+		}
+		long recordSize = (RECORD_HEADER_SIZE + buffer.getInt(index + KEY_SIZE_OFFSET)
+				+ (long) buffer.getInt(index + VALUE_SIZE_OFFSET) + 7) & ~7L;
+		buffer.putLong(DEAD_BYTES_POSITION, buffer.getLong(DEAD_BYTES_POSITION) + recordSize);
+	}
+
+	/**
+	 * grow the file and the mapping to at least end bytes.
+	 */
+	final MappedByteBuffer ensureCapacity(long end) {
+		MappedByteBuffer buffer = mapped;
+		if (end <= buffer.capacity()) {
+			return buffer;
+		}
+		if (end > MAX_CAPACITY) {
+			throw new IllegalStateException("MappedHashTable file cannot be larger than " + MAX_CAPACITY + " bytes");
+		}
+		long capacity = buffer.capacity();
+		while (capacity < end) {
+			capacity = Math.min(MAX_CAPACITY, capacity << 1);
+		}
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot grow MappedHashTable file", e);
+		}
+		mapped = buffer;
+		return buffer;
+	}
+
+	@Override
+	public int size() {
+		return (int) mapped.getLong(SIZE_POSITION);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return bytes of the records replaced,removed or cleared.they are not
+	 *         reused.
+	 */
+	public long getDeadBytes() {
+		return mapped.getLong(DEAD_BYTES_POSITION);
+	}
+
+	public int getBucketCount() {
+		return bucketCount;
+	}
+
+	/**
+	 * force all the changes to the disk.when it returns the changes before it
+	 * survive a crash.
+	 */
+	public synchronized void force() {
+		mapped.force();
+	}
+
+	/**
+	 * unlink all the records.the slab is not rewound,as a reader may still walk
+	 * the records,so all of them become dead bytes.
+	 */
+	@Override
+	public synchronized void clear() {
+		MappedByteBuffer buffer = mapped;
+		for (int i = 0; i < bucketCount; i++) {
+			setLink(buffer, HEADER_SIZE + (i << 3), 0);
+		}
+		buffer.putLong(SIZE_POSITION, 0);
+		buffer.putLong(DEAD_BYTES_POSITION, buffer.getLong(SLAB_END_POSITION) - (HEADER_SIZE + 8L * bucketCount));
+	}
+
+	/**
+	 * @return a snapshot of the entries.it reads the whole file.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		HashSet<Entry<K, V>> entrySet = new HashSet<Entry<K, V>>();
+		MappedByteBuffer buffer = mapped;
+		for (int i = 0; i < bucketCount; i++) {
+			long offset = getLink(buffer, HEADER_SIZE + (i << 3));
+			while (offset != 0) {
+				buffer = mappingFor(buffer, offset + RECORD_HEADER_SIZE);
+				entrySet.add(new AbstractMap.SimpleImmutableEntry<K, V>(readKey(offset), readValue(offset)));
+				offset = getLink(buffer, (int) offset + NEXT_OFFSET);
+			}
+		}
+		return entrySet;
+	}
+
+	/**
+	 * force the changes and close the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		mapped.force();
+		channel.close();
+	}
+}
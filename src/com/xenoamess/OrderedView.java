@@ -0,0 +1,143 @@
+package com.xenoamess;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * OrderedView is a read-only view of the entries of a HashTable whose keys are
+ * in a range of its ordered index. the keys are walked in the index and their
+ * values are got by hash,so the view is weakly consistent:it never throws
+ * ConcurrentModificationException,and a key removed meanwhile is skipped.
+ */
+class OrderedView<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+	final HashTable<K, V> map;
+
+	/**
+	 * the keys of the range in the ordered index
+	 */
+	final NavigableSet<K> keys;
+
+	OrderedView(HashTable<K, V> map, NavigableSet<K> keys) {
+		super();
+		this.map = map;
+		this.keys = keys;
+	}
+
+	@Override
+	public Comparator<? super K> comparator() {
+		return null;
+	}
+
+	@Override
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return new OrderedView<K, V>(map, keys.subSet(fromKey, true, toKey, false));
+	}
+
+	@Override
+	public SortedMap<K, V> headMap(K toKey) {
+		return new OrderedView<K, V>(map, keys.headSet(toKey, false));
+	}
+
+	@Override
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return new OrderedView<K, V>(map, keys.tailSet(fromKey, true));
+	}
+
+	@Override
+	public K firstKey() {
+		for (K k : keys) {
+			if (map.lookup(k) != null) {
+				return k;
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	@Override
+	public K lastKey() {
+		for (Iterator<K> iterator = keys.descendingIterator(); iterator.hasNext();) {
+			K k = iterator.next();
+			if (map.lookup(k) != null) {
+				return k;
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	@Override
+	public V get(Object o) {
+		try {
+			if (o == null || !keys.contains(o)) {
+				return null;
+			}
+		} catch (ClassCastException e) {
+			return null;
+		}
+		return map.get(o);
+	}
+
+	@Override
+	public boolean containsKey(Object o) {
+		return get(o) != null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !entrySet().iterator().hasNext();
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				Iterator<K> keyIterator = keys.iterator();
+				return new Iterator<Entry<K, V>>() {
+					Entry<K, V> next = advance();
+
+					Entry<K, V> advance() {
+						while (keyIterator.hasNext()) {
+							K k = keyIterator.next();
+							V v = map.lookup(k);
+							if (v != null) {
+								return new AbstractMap.SimpleImmutableEntry<K, V>(k, v);
+							}
+						}
+						return null;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next != null;
+					}
+
+					@Override
+					public Entry<K, V> next() {
+						if (next == null) {
+							throw new NoSuchElementException();
+						}
+						Entry<K, V> res = next;
+						next = advance();
+						return res;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				int res = 0;
+				for (Iterator<Entry<K, V>> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+					res++;
+				}
+				return res;
+			}
+		};
+	}
+}
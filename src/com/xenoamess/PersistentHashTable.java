@@ -0,0 +1,455 @@
+package com.xenoamess;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PersistentHashTable is a concurrent map based on a persistent hash array
+ * mapped trie. a write never changes a node,but copies the path from the root
+ * to the changed node and shares all the other nodes with the old version, then
+ * swaps the root by compareAndSet. so snapshot() only needs to take the root,
+ * and a snapshot can be read and iterated without any lock while writers keep
+ * changing the live map.
+ * <p>
+ * null keys and null values are not supported.
+ */
+public class PersistentHashTable<K, V> extends AbstractMap<K, V> {
+
+	/**
+	 * bits of hash used by one level of the trie
+	 */
+	static final int LEVEL_BITS = 5;
+
+	static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+
+	/**
+	 * max depth of the trie:7 levels of BitmapNode and a CollisionNode
+	 */
+	static final int MAX_DEPTH = 8;
+
+	static final int hash(Object k) {
+		return HashTable.spread(k.hashCode());
+	}
+
+	/*
+	 * Node of the trie. array holds pairs of key and value. in a BitmapNode a
+	 * pair whose key is null holds a child node as its value.
+	 */
+	static abstract class TrieNode<K, V> {
+		final Object[] array;
+
+		TrieNode(Object[] array) {
+			this.array = array;
+		}
+
+		abstract V find(int shift, int hash, Object k);
+
+		/**
+		 * @return the new node with k mapped to v,or this if nothing changed
+		 */
+		abstract TrieNode<K, V> assoc(int shift, int hash, K k, V v, boolean[] added);
+
+		/**
+		 * @return the new node without k,this if k is not in it,or null if the new
+		 *         node is empty
+		 */
+		abstract TrieNode<K, V> without(int shift, int hash, Object k);
+	}
+
+	static final class BitmapNode<K, V> extends TrieNode<K, V> {
+		final int bitmap;
+
+		BitmapNode(int bitmap, Object[] array) {
+			super(array);
+			this.bitmap = bitmap;
+		}
+
+		final int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1)) << 1;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		V find(int shift, int hash, Object k) {
+			int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+			if ((bitmap & bit) == 0) {
+				return null;
+			}
+			int index = index(bit);
+			Object nowKey = array[index];
+			if (nowKey == null) {
+				return ((TrieNode<K, V>) array[index + 1]).find(shift + LEVEL_BITS, hash, k);
+			}
+			if (nowKey.equals(k)) {
+				return (V) array[index + 1];
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		TrieNode<K, V> assoc(int shift, int hash, K k, V v, boolean[] added) {
+			int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+			int index = index(bit);
+			if ((bitmap & bit) == 0) {
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, index);
+				newArray[index] = k;
+				newArray[index + 1] = v;
+				System.arraycopy(array, index, newArray, index + 2, array.length - index);
+				added[0] = true;
+				return new BitmapNode<K, V>(bitmap | bit, newArray);
+			}
+
+			Object nowKey = array[index];
+			Object nowValue = array[index + 1];
+			if (nowKey == null) {
+				TrieNode<K, V> child = (TrieNode<K, V>) nowValue;
+				TrieNode<K, V> newChild = child.assoc(shift + LEVEL_BITS, hash, k, v, added);
+				if (newChild == child) {
+					return this;
+				}
+				return new BitmapNode<K, V>(bitmap, cloneAndSet(array, index + 1, newChild));
+			}
+			if (nowKey.equals(k)) {
+				if (nowValue == v) {
+					return this;
+				}
+				return new BitmapNode<K, V>(bitmap, cloneAndSet(array, index + 1, v));
+			}
+			added[0] = true;
+			TrieNode<K, V> newChild = createNode(shift + LEVEL_BITS, (K) nowKey, (V) nowValue, hash(nowKey), k, v,
+					hash);
+			Object[] newArray = cloneAndSet(array, index, null);
+			newArray[index + 1] = newChild;
+			return new BitmapNode<K, V>(bitmap, newArray);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		TrieNode<K, V> without(int shift, int hash, Object k) {
+			int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			int index = index(bit);
+			Object nowKey = array[index];
+			if (nowKey == null) {
+				TrieNode<K, V> child = (TrieNode<K, V>) array[index + 1];
+				TrieNode<K, V> newChild = child.without(shift + LEVEL_BITS, hash, k);
+				if (newChild == child) {
+					return this;
+				}
+				if (newChild != null) {
+					return new BitmapNode<K, V>(bitmap, cloneAndSet(array, index + 1, newChild));
+				}
+			} else if (!nowKey.equals(k)) {
+				return this;
+			}
+			if (bitmap == bit) {
+				return null;
+			}
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new BitmapNode<K, V>(bitmap ^ bit, newArray);
+		}
+	}
+
+	/*
+	 * node of keys whose hashes are all the same.
+	 */
+	static final class CollisionNode<K, V> extends TrieNode<K, V> {
+		final int hash;
+
+		CollisionNode(int hash, Object[] array) {
+			super(array);
+			this.hash = hash;
+		}
+
+		int indexOf(Object k) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (array[i].equals(k)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		V find(int shift, int hash, Object k) {
+			int index = indexOf(k);
+			return index < 0 ? null : (V) array[index + 1];
+		}
+
+		@Override
+		TrieNode<K, V> assoc(int shift, int hash, K k, V v, boolean[] added) {
+			if (hash != this.hash) {
+				Object[] array = new Object[] { null, this };
+				return new BitmapNode<K, V>(1 << ((this.hash >>> shift) & LEVEL_MASK), array).assoc(shift, hash,
+						k, v, added);
+			}
+			int index = indexOf(k);
+			if (index >= 0) {
+				if (array[index + 1] == v) {
+					return this;
+				}
+				return new CollisionNode<K, V>(hash, cloneAndSet(array, index + 1, v));
+			}
+			Object[] newArray = new Object[array.length + 2];
+			System.arraycopy(array, 0, newArray, 0, array.length);
+			newArray[array.length] = k;
+			newArray[array.length + 1] = v;
+			added[0] = true;
+			return new CollisionNode<K, V>(hash, newArray);
+		}
+
+		@Override
+		TrieNode<K, V> without(int shift, int hash, Object k) {
+			int index = indexOf(k);
+			if (index < 0) {
+				return this;
+			}
+			if (array.length == 2) {
+				return null;
+			}
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new CollisionNode<K, V>(hash, newArray);
+		}
+	}
+
+	static Object[] cloneAndSet(Object[] array, int index, Object o) {
+		Object[] res = array.clone();
+		res[index] = o;
+		return res;
+	}
+
+	static <K, V> TrieNode<K, V> createNode(int shift, K k1, V v1, int hash1, K k2, V v2, int hash2) {
+		if (hash1 == hash2) {
+			return new CollisionNode<K, V>(hash1, new Object[] { k1, v1, k2, v2 });
+		}
+		boolean[] added = new boolean[1];
+		return new BitmapNode<K, V>(0, new Object[0]).assoc(shift, hash1, k1, v1, added).assoc(shift, hash2, k2,
+				v2, added);
+	}
+
+	/*
+	 * a version of the map. it never changes.
+	 */
+	static final class Root<K, V> {
+		final TrieNode<K, V> node;
+		final int size;
+
+		Root(TrieNode<K, V> node, int size) {
+			this.node = node;
+			this.size = size;
+		}
+
+		V get(Object k) {
+			if (k == null || node == null) {
+				return null;
+			}
+			return node.find(0, hash(k), k);
+		}
+	}
+
+	/*
+	 * iterate entries of a version by a stack of node arrays.
+	 */
+	static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+		final Object[][] arrays = new Object[MAX_DEPTH][];
+		final int[] positions = new int[MAX_DEPTH];
+		int depth = -1;
+		Entry<K, V> next;
+
+		EntryIterator(Root<K, V> root) {
+			if (root.node != null) {
+				push(root.node);
+			}
+			advance();
+		}
+
+		void push(TrieNode<?, ?> node) {
+			depth++;
+			arrays[depth] = node.array;
+			positions[depth] = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		void advance() {
+			next = null;
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int position = positions[depth];
+				if (position >= array.length) {
+					arrays[depth] = null;
+					depth--;
+					continue;
+				}
+				positions[depth] = position + 2;
+				if (array[position] == null) {
+					push((TrieNode<?, ?>) array[position + 1]);
+				} else {
+					next = new AbstractMap.SimpleImmutableEntry<K, V>((K) array[position], (V) array[position + 1]);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Entry<K, V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Entry<K, V> res = next;
+			advance();
+			return res;
+		}
+	}
+
+	/**
+	 * Snapshot is a frozen version of a PersistentHashTable.it is read-only.
+	 */
+	public static final class Snapshot<K, V> extends AbstractMap<K, V> {
+		final Root<K, V> root;
+
+		Snapshot(Root<K, V> root) {
+			this.root = root;
+		}
+
+		@Override
+		public V get(Object k) {
+			return root.get(k);
+		}
+
+		@Override
+		public boolean containsKey(Object k) {
+			return root.get(k) != null;
+		}
+
+		@Override
+		public int size() {
+			return root.size;
+		}
+
+		@Override
+		public Set<Entry<K, V>> entrySet() {
+			return new AbstractSet<Entry<K, V>>() {
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return new EntryIterator<K, V>(root);
+				}
+
+				@Override
+				public int size() {
+					return root.size;
+				}
+			};
+		}
+	}
+
+	/**
+	 * the live version.
+	 */
+	final AtomicReference<Root<K, V>> root = new AtomicReference<Root<K, V>>(new Root<K, V>(null, 0));
+
+	/**
+	 * @return a frozen version of the map in O(1).
+	 */
+	public Snapshot<K, V> snapshot() {
+		return new Snapshot<K, V>(root.get());
+	}
+
+	@Override
+	public V get(Object k) {
+		return root.get().get(k);
+	}
+
+	@Override
+	public boolean containsKey(Object k) {
+		return get(k) != null;
+	}
+
+	@Override
+	public int size() {
+		return root.get().size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public V put(K k, V v) {
+		if (k == null || v == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(k);
+		while (true) {
+			Root<K, V> oldRoot = root.get();
+			boolean[] added = new boolean[1];
+			TrieNode<K, V> newNode;
+			if (oldRoot.node == null) {
+				newNode = new BitmapNode<K, V>(0, new Object[0]).assoc(0, hash, k, v, added);
+			} else {
+				newNode = oldRoot.node.assoc(0, hash, k, v, added);
+			}
+			if (newNode == oldRoot.node) {
+				return v;
+			}
+			V res = added[0] ? null : oldRoot.node.find(0, hash, k);
+			if (root.compareAndSet(oldRoot, new Root<K, V>(newNode, oldRoot.size + (added[0] ? 1 : 0)))) {
+				return res;
+			}
+		}
+	}
+
+	@Override
+	public V remove(Object k) {
+		if (k == null) {
+			return null;
+		}
+		int hash = hash(k);
+		while (true) {
+			Root<K, V> oldRoot = root.get();
+			if (oldRoot.node == null) {
+				return null;
+			}
+			TrieNode<K, V> newNode = oldRoot.node.without(0, hash, k);
+			if (newNode == oldRoot.node) {
+				return null;
+			}
+			V res = oldRoot.node.find(0, hash, k);
+			if (root.compareAndSet(oldRoot, new Root<K, V>(newNode, oldRoot.size - 1))) {
+				return res;
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		root.set(new Root<K, V>(null, 0));
+	}
+
+	/**
+	 * @return the entries of the version at the time it is called.it does not
+	 *         see later writes,and removing from it is not supported.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return snapshot().entrySet();
+	}
+}
@@ -0,0 +1,322 @@
+package com.xenoamess;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReferenceHashTable is a HashTable whose keys can be weakly referenced and
+ * whose values can be weakly or softly referenced. an entry disappears when its
+ * key or value is reclaimed by the gc.
+ * <p>
+ * weak keys are compared by identity(==) and hashed by
+ * System.identityHashCode,since an equal key cannot be made after the key is
+ * reclaimed. strong keys use equals and hashCode as usual.
+ * <p>
+ * reclaimed references are enqueued to a ReferenceQueue,and every put/remove
+ * purges at most PURGE_LIMIT of them,so stale entries are removed bit by bit
+ * without scanning the pool. size() counts stale entries not purged yet.
+ */
+public class ReferenceHashTable<K, V> extends AbstractMap<K, V> {
+
+	/**
+	 * how a key or value is referenced by the map.
+	 */
+	public enum Strength {
+		STRONG, WEAK, SOFT
+	}
+
+	/**
+	 * max number of stale references purged by one put/remove.
+	 */
+	static final int PURGE_LIMIT = 16;
+
+	/*
+	 * a weakly referenced key.
+	 */
+	static final class WeakKey<K> extends WeakReference<K> {
+		final int hash;
+
+		WeakKey(K key, ReferenceQueue<Object> queue) {
+			super(key, queue);
+			this.hash = System.identityHashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			Object key = this.get();
+			if (key == null) {
+				return false;
+			}
+			if (o instanceof WeakKey) {
+				return ((WeakKey<?>) o).get() == key;
+			}
+			if (o instanceof LookupKey) {
+				return ((LookupKey) o).key == key;
+			}
+			return false;
+		}
+	}
+
+	/*
+	 * the key used to find a WeakKey in the table.it is never stored.
+	 */
+	static final class LookupKey {
+		final Object key;
+		final int hash;
+
+		LookupKey(Object key) {
+			this.key = key;
+			this.hash = System.identityHashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof WeakKey) {
+				return ((WeakKey<?>) o).get() == key;
+			}
+			return o instanceof LookupKey && ((LookupKey) o).key == key;
+		}
+	}
+
+	/*
+	 * a weakly or softly referenced value.it remembers its stored key,so it can
+	 * be purged when it is reclaimed.
+	 */
+	interface ValueReference {
+		Object storedKey();
+	}
+
+	static final class WeakValue<V> extends WeakReference<V> implements ValueReference {
+		final Object storedKey;
+
+		WeakValue(Object storedKey, V value, ReferenceQueue<Object> queue) {
+			super(value, queue);
+			this.storedKey = storedKey;
+		}
+
+		@Override
+		public Object storedKey() {
+			return storedKey;
+		}
+	}
+
+	static final class SoftValue<V> extends SoftReference<V> implements ValueReference {
+		final Object storedKey;
+
+		SoftValue(Object storedKey, V value, ReferenceQueue<Object> queue) {
+			super(value, queue);
+			this.storedKey = storedKey;
+		}
+
+		@Override
+		public Object storedKey() {
+			return storedKey;
+		}
+	}
+
+	/**
+	 * the table of stored keys and stored values. a stored key is K or WeakKey,and
+	 * a stored value is V,WeakValue or SoftValue.
+	 */
+	final HashTable<Object, Object> table;
+
+	final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	final Strength keyStrength;
+	final Strength valueStrength;
+
+	/**
+	 * @param keyStrength
+	 *            STRONG or WEAK
+	 * @param valueStrength
+	 *            STRONG,WEAK or SOFT
+	 */
+	public ReferenceHashTable(Strength keyStrength, Strength valueStrength) {
+		this(HashTable.MIN_POOL_SIZE, keyStrength, valueStrength);
+	}
+
+	public ReferenceHashTable(int initPoolSize, Strength keyStrength, Strength valueStrength) {
+		super();
+		if (keyStrength == null || valueStrength == null) {
+			throw new NullPointerException();
+		}
+		if (keyStrength == Strength.SOFT) {
+			throw new IllegalArgumentException("soft keys are not supported");
+		}
+		this.keyStrength = keyStrength;
+		this.valueStrength = valueStrength;
+		this.table = new HashTable<Object, Object>(initPoolSize);
+	}
+
+	public Strength getKeyStrength() {
+		return keyStrength;
+	}
+
+	public Strength getValueStrength() {
+		return valueStrength;
+	}
+
+	Object lookupKey(Object k) {
+		if (keyStrength == Strength.WEAK) {
+			return new LookupKey(k);
+		}
+		return k;
+	}
+
+	Object storeKey(K k) {
+		if (keyStrength == Strength.WEAK) {
+			return new WeakKey<K>(k, queue);
+		}
+		return k;
+	}
+
+	Object storeValue(Object storedKey, V v) {
+		switch (valueStrength) {
+		case WEAK:
+			return new WeakValue<V>(storedKey, v, queue);
+		case SOFT:
+			return new SoftValue<V>(storedKey, v, queue);
+		default:
+			return v;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	K loadKey(Object storedKey) {
+		if (keyStrength == Strength.WEAK) {
+			return ((WeakKey<K>) storedKey).get();
+		}
+		return (K) storedKey;
+	}
+
+	@SuppressWarnings("unchecked")
+	V loadValue(Object storedValue) {
+		if (storedValue == null) {
+			return null;
+		}
+		if (valueStrength == Strength.STRONG) {
+			return (V) storedValue;
+		}
+		return ((Reference<V>) storedValue).get();
+	}
+
+	@Override
+	public V get(Object o) {
+		if (o == null) {
+			return null;
+		}
+		return loadValue(table.get(lookupKey(o)));
+	}
+
+	@Override
+	public boolean containsKey(Object o) {
+		return get(o) != null;
+	}
+
+	@Override
+	public V put(K k, V v) {
+		if (k == null || v == null) {
+			throw new NullPointerException();
+		}
+		purgeStale(PURGE_LIMIT);
+		Object storedKey = storeKey(k);
+		return loadValue(table.put(storedKey, storeValue(storedKey, v)));
+	}
+
+	@Override
+	public V remove(Object o) {
+		if (o == null) {
+			return null;
+		}
+		purgeStale(PURGE_LIMIT);
+		return loadValue(table.remove(lookupKey(o)));
+	}
+
+	/**
+	 * @return number of entries,including the stale entries not purged yet.
+	 */
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return table.size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		table.clear();
+		while (queue.poll() != null) {
+		}
+	}
+
+	/**
+	 * purge all stale entries whose references are enqueued.
+	 */
+	public void cleanUp() {
+		purgeStale(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * remove at most limit stale entries whose references are enqueued. a stale
+	 * key is removed by itself,and a stale value is removed only if it is still
+	 * the value of its key.
+	 */
+	void purgeStale(int limit) {
+		Reference<?> reference;
+		for (int i = 0; i < limit && (reference = queue.poll()) != null; i++) {
+			if (reference instanceof ValueReference) {
+				table.remove(((ValueReference) reference).storedKey(), reference);
+			} else {
+				table.remove(reference);
+			}
+		}
+	}
+
+	/**
+	 * @return a snapshot of the live entries.entries whose key or value has been
+	 *         reclaimed are skipped.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		HashSet<Entry<K, V>> entrySet = new HashSet<Entry<K, V>>();
+		for (Entry<Object, Object> entry : table.entrySet()) {
+			K k = loadKey(entry.getKey());
+			V v = loadValue(entry.getValue());
+			if (k != null && v != null) {
+				entrySet.add(new AbstractMap.SimpleImmutableEntry<K, V>(k, v));
+			}
+		}
+		return entrySet;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		HashSet<K> keySet = new HashSet<K>();
+		for (Map.Entry<K, V> entry : entrySet()) {
+			keySet.add(entry.getKey());
+		}
+		return keySet;
+	}
+}
@@ -0,0 +1,243 @@
+package com.xenoamess;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * SnapshotFile is the binary file format of a saved HashTable. it is
+ *
+ * <pre>
+ * header : magic(int) version(int) poolSize(int) nodeSize(long) hashSeed(int)
+ * tables : poolSize times of [ entryCount(int) entries ]
+ * entry  : keySize(int) key valueSize(int) value
+ * </pre>
+ *
+ * tables are written in the order of pool,so a table can be rebuilt at its own
+ * index when loading,with the same hashSeed. version 1 files have no hashSeed
+ * and are read as not seeded. the file is written and read through a large direct
+ * buffer,so most bytes go to the FileChannel in big chunks.
+ */
+final class SnapshotFile {
+
+	/**
+	 * "XAHT"
+	 */
+	static final int MAGIC = 0x58414854;
+
+	static final int VERSION = 2;
+
+	/**
+	 * the first version,whose header has no hashSeed
+	 */
+	static final int VERSION_UNSEEDED = 1;
+
+	/**
+	 * position of nodeSize in the header
+	 */
+	static final int NODE_SIZE_POSITION = 12;
+
+	static final int BUFFER_SIZE = 1 << 20;
+
+	private SnapshotFile() {
+	}
+
+	static final class Writer<K, V> implements Closeable {
+		final FileChannel channel;
+		final KeyValueCodec<K, V> codec;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		long nodeSize = 0;
+
+		Writer(Path path, KeyValueCodec<K, V> codec, int poolSize, int hashSeed) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.codec = codec;
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(poolSize).putLong(0).putInt(hashSeed);
+		}
+
+		/**
+		 * write one table.
+		 *
+		 * @param pairs
+		 *            keys and values of the table,as k0,v0,k1,v1...
+		 */
+		@SuppressWarnings("unchecked")
+		void writeTable(ArrayList<Object> pairs) throws IOException {
+			reserve(4);
+			buffer.putInt(pairs.size() >>> 1);
+			for (int i = 0; i < pairs.size(); i += 2) {
+				K k = (K) pairs.get(i);
+				V v = (V) pairs.get(i + 1);
+				int keySize = codec.keySize(k);
+				int valueSize = codec.valueSize(v);
+				ByteBuffer target = reserve(8 + keySize + valueSize);
+				target.putInt(keySize);
+				int start = target.position();
+				codec.writeKey(k, target);
+				check(target.position() - start, keySize, "key");
+				target.putInt(valueSize);
+				start = target.position();
+				codec.writeValue(v, target);
+				check(target.position() - start, valueSize, "value");
+				if (target != buffer) {
+					target.flip();
+					writeFully(target);
+				}
+			}
+			nodeSize += pairs.size() >>> 1;
+		}
+
+		static void check(int written, int size, String what) throws IOException {
+			if (written != size) {
+				throw new IOException("codec wrote " + written + " bytes of " + what + " but said " + size);
+			}
+		}
+
+		/**
+		 * @return a buffer with at least size bytes remaining.it is buffer unless
+		 *         size is larger than BUFFER_SIZE.
+		 */
+		ByteBuffer reserve(int size) throws IOException {
+			if (buffer.remaining() >= size) {
+				return buffer;
+			}
+			flush();
+			if (size <= buffer.capacity()) {
+				return buffer;
+			}
+			return ByteBuffer.allocate(size);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			writeFully(buffer);
+			buffer.clear();
+		}
+
+		void writeFully(ByteBuffer source) throws IOException {
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+		}
+
+		/**
+		 * flush the buffer,fill nodeSize of the header and force the file to disk.
+		 */
+		void finish() throws IOException {
+			flush();
+			ByteBuffer nodeSizeBuffer = ByteBuffer.allocate(8);
+			nodeSizeBuffer.putLong(nodeSize).flip();
+			long position = NODE_SIZE_POSITION;
+			while (nodeSizeBuffer.hasRemaining()) {
+				position += channel.write(nodeSizeBuffer, position);
+			}
+			channel.force(true);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	static final class Reader<K, V> implements Closeable {
+		final FileChannel channel;
+		final KeyValueCodec<K, V> codec;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		final int poolSize;
+		final long nodeSize;
+		final int hashSeed;
+
+		Reader(Path path, KeyValueCodec<K, V> codec) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.codec = codec;
+			buffer.flip();
+			require(20);
+			if (buffer.getInt() != MAGIC) {
+				channel.close();
+				throw new IOException("not a HashTable snapshot: " + path);
+			}
+			int version = buffer.getInt();
+			if (version != VERSION && version != VERSION_UNSEEDED) {
+				channel.close();
+				throw new IOException("unsupported snapshot version " + version + ": " + path);
+			}
+			this.poolSize = buffer.getInt();
+			this.nodeSize = buffer.getLong();
+			if (version == VERSION_UNSEEDED) {
+				this.hashSeed = 0;
+			} else {
+				require(4);
+				this.hashSeed = buffer.getInt();
+			}
+		}
+
+		/**
+		 * read one table.
+		 *
+		 * @param pairs
+		 *            keys and values are added to it,as k0,v0,k1,v1...
+		 */
+		void readTable(ArrayList<Object> pairs) throws IOException {
+			require(4);
+			int entryCount = buffer.getInt();
+			for (int i = 0; i < entryCount; i++) {
+				require(4);
+				int keySize = buffer.getInt();
+				require(keySize + 4);
+				pairs.add(read(keySize, true));
+				int valueSize = buffer.getInt();
+				require(valueSize);
+				pairs.add(read(valueSize, false));
+			}
+		}
+
+		Object read(int size, boolean key) throws IOException {
+			int limit = buffer.limit();
+			int end = buffer.position() + size;
+			buffer.limit(end);
+			Object res = key ? codec.readKey(buffer, size) : codec.readValue(buffer, size);
+			if (buffer.position() != end) {
+				throw new IOException("codec read " + (buffer.position() + size - end) + " bytes but size is " + size);
+			}
+			buffer.limit(limit);
+			return res;
+		}
+
+		/**
+		 * make sure at least size bytes are remaining in buffer.the buffer grows if
+		 * size is larger than it.
+		 */
+		void require(int size) throws IOException {
+			if (size < 0) {
+				throw new IOException("corrupt snapshot: negative size " + size);
+			}
+			if (buffer.remaining() >= size) {
+				return;
+			}
+			if (size > buffer.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(size);
+				bigger.put(buffer);
+				buffer = bigger;
+			} else {
+				buffer.compact();
+			}
+			while (buffer.position() < size) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException("snapshot is truncated");
+				}
+			}
+			buffer.flip();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,494 @@
+package com.xenoamess;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * StringKeyHashTable is a concurrent map of String keys which stores the keys
+ * as UTF-8 bytes inline in the arrays of its buckets,with their hashes cached,
+ * instead of a String,a byte[],a Node and an entry for each key.
+ * <p>
+ * a key can be looked up by any CharSequence,or by a slice of a byte[] holding
+ * its UTF-8 bytes,for example straight from a network buffer,without creating
+ * a String. the hash is computed over the UTF-8 bytes,and a CharSequence is
+ * encoded char by char while hashing and comparing,so both give the same
+ * result. unpaired surrogates are encoded as '?',like String.getBytes does.
+ * <p>
+ * a bucket is immutable:a writer copies it with the change under the lock
+ * stripe of the hash and replaces it,so readers never lock. the map resizes
+ * holding all the lock stripes,so no writer is between its read and its
+ * replacement of a bucket.
+ */
+public class StringKeyHashTable<V> extends AbstractMap<String, V> {
+
+	/**
+	 * number of lock stripes.must be a power of 2
+	 */
+	static final int LOCK_STRIPES = 64;
+
+	static final int MIN_CAPACITY = 1 << 8;
+	static final int MAX_CAPACITY = 1 << 30;
+
+	static final int FNV_BASIS = 0x811c9dc5;
+	static final int FNV_PRIME = 0x01000193;
+
+	/**
+	 * a bucket:the keys are keys[offsets[i],offsets[i+1]).
+	 */
+	static final class Bucket {
+		final int[] hashes;
+		final int[] offsets;
+		final byte[] keys;
+		final Object[] values;
+
+		Bucket(int[] hashes, int[] offsets, byte[] keys, Object[] values) {
+			this.hashes = hashes;
+			this.offsets = offsets;
+			this.keys = keys;
+			this.values = values;
+		}
+
+		int size() {
+			return hashes.length;
+		}
+
+		int indexOf(int hash, byte[] key, int offset, int length) {
+			for (int i = 0; i < hashes.length; i++) {
+				if (hashes[i] == hash && offsets[i + 1] - offsets[i] == length
+						&& rangeEquals(keys, offsets[i], key, offset, length)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int indexOf(int hash, CharSequence key) {
+			for (int i = 0; i < hashes.length; i++) {
+				if (hashes[i] == hash && keyEquals(i, key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		boolean keyEquals(int i, CharSequence key) {
+			int position = offsets[i];
+			int end = offsets[i + 1];
+			int length = key.length();
+			for (int j = 0; j < length;) {
+				long encoded = encode(key, j);
+				int count = byteCount(encoded);
+				if (position + count > end) {
+					return false;
+				}
+				for (int b = 0; b < count; b++) {
+					if (keys[position++] != (byte) (encoded >>> (b << 3))) {
+						return false;
+					}
+				}
+				j += charCount(encoded);
+			}
+			return position == end;
+		}
+
+		String keyAt(int i) {
+			return new String(keys, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return a copy whose value at i is value
+		 */
+		Bucket withValue(int i, Object value) {
+			Object[] newValues = values.clone();
+			newValues[i] = value;
+			return new Bucket(hashes, offsets, keys, newValues);
+		}
+
+		/**
+		 * @return a copy of bucket(which can be null) with the key added
+		 */
+		static Bucket plus(Bucket bucket, int hash, byte[] key, int offset, int length, Object value) {
+			if (bucket == null) {
+				byte[] newKeys = new byte[length];
+				System.arraycopy(key, offset, newKeys, 0, length);
+				return new Bucket(new int[] { hash }, new int[] { 0, length }, newKeys, new Object[] { value });
+			}
+			int size = bucket.size();
+			int[] newHashes = new int[size + 1];
+			System.arraycopy(bucket.hashes, 0, newHashes, 0, size);
+			newHashes[size] = hash;
+			int[] newOffsets = new int[size + 2];
+			System.arraycopy(bucket.offsets, 0, newOffsets, 0, size + 1);
+			int used = bucket.offsets[size];
+			newOffsets[size + 1] = used + length;
+			byte[] newKeys = new byte[used + length];
+			System.arraycopy(bucket.keys, 0, newKeys, 0, used);
+			System.arraycopy(key, offset, newKeys, used, length);
+			Object[] newValues = new Object[size + 1];
+			System.arraycopy(bucket.values, 0, newValues, 0, size);
+			newValues[size] = value;
+			return new Bucket(newHashes, newOffsets, newKeys, newValues);
+		}
+
+		/**
+		 * @return a copy without the key at i,or null if it is the only one
+		 */
+		Bucket minus(int i) {
+			int size = size();
+			if (size == 1) {
+				return null;
+			}
+			int keyLength = offsets[i + 1] - offsets[i];
+			int[] newHashes = new int[size - 1];
+			int[] newOffsets = new int[size];
+			byte[] newKeys = new byte[offsets[size] - keyLength];
+			Object[] newValues = new Object[size - 1];
+			System.arraycopy(hashes, 0, newHashes, 0, i);
+			System.arraycopy(hashes, i + 1, newHashes, i, size - 1 - i);
+			System.arraycopy(values, 0, newValues, 0, i);
+			System.arraycopy(values, i + 1, newValues, i, size - 1 - i);
+			System.arraycopy(keys, 0, newKeys, 0, offsets[i]);
+			System.arraycopy(keys, offsets[i + 1], newKeys, offsets[i], offsets[size] - offsets[i + 1]);
+			for (int j = 0; j <= size - 1; j++) {
+				newOffsets[j] = j <= i ? offsets[j] : offsets[j + 1] - keyLength;
+			}
+			return new Bucket(newHashes, newOffsets, newKeys, newValues);
+		}
+	}
+
+	volatile AtomicReferenceArray<Bucket> buckets;
+
+	final Object[] locks = new Object[LOCK_STRIPES];
+
+	final AtomicInteger size = new AtomicInteger();
+
+	public StringKeyHashTable() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param initCapacity
+	 *            init number of buckets,rounded up to a power of 2
+	 */
+	public StringKeyHashTable(int initCapacity) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < initCapacity && capacity < MAX_CAPACITY) {
+			capacity <<= 1;
+		}
+		buckets = new AtomicReferenceArray<Bucket>(capacity);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * encode the char at index of s,and the low surrogate after it if it is a
+	 * high one,into UTF-8.
+	 *
+	 * @return the bytes packed from the low byte,the number of bytes at bit 32
+	 *         and the number of chars at bit 40
+	 */
+	static long encode(CharSequence s, int index) {
+		char c = s.charAt(index);
+		if (c < 0x80) {
+			return (1L << 40) | (1L << 32) | c;
+		}
+		if (c < 0x800) {
+			return (1L << 40) | (2L << 32) | ((0x80 | (c & 0x3f)) << 8) | (0xc0 | (c >>> 6));
+		}
+		if (Character.isSurrogate(c)) {
+			if (Character.isHighSurrogate(c) && index + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(index + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(index + 1));
+				long packed = (0xf0 | (codePoint >>> 18)) | ((0x80 | ((codePoint >>> 12) & 0x3f)) << 8)
+						| ((0x80 | ((codePoint >>> 6) & 0x3f)) << 16) | ((long) (0x80 | (codePoint & 0x3f)) << 24);
+				return (2L << 40) | (4L << 32) | packed;
+			}
+			return (1L << 40) | (1L << 32) | '?';
+		}
+		return (1L << 40) | (3L << 32) | ((0x80 | (c & 0x3f)) << 16) | ((0x80 | ((c >>> 6) & 0x3f)) << 8)
+				| (0xe0 | (c >>> 12));
+	}
+
+	static int byteCount(long encoded) {
+		return (int) (encoded >>> 32) & 0xff;
+	}
+
+	static int charCount(long encoded) {
+		return (int) (encoded >>> 40);
+	}
+
+	/**
+	 * @return UTF-8 bytes of s
+	 */
+	static byte[] toUtf8(CharSequence s) {
+		int length = 0;
+		int charLength = s.length();
+		for (int i = 0; i < charLength;) {
+			long encoded = encode(s, i);
+			length += byteCount(encoded);
+			i += charCount(encoded);
+		}
+		byte[] res = new byte[length];
+		int position = 0;
+		for (int i = 0; i < charLength;) {
+			long encoded = encode(s, i);
+			int count = byteCount(encoded);
+			for (int b = 0; b < count; b++) {
+				res[position++] = (byte) (encoded >>> (b << 3));
+			}
+			i += charCount(encoded);
+		}
+		return res;
+	}
+
+	static boolean rangeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[aOffset + i] != b[bOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return hash of UTF-8 bytes,FNV-1a spread like HashTable's
+	 */
+	static int hash(byte[] key, int offset, int length) {
+		int h = FNV_BASIS;
+		for (int i = offset; i < offset + length; i++) {
+			h = (h ^ (key[i] & 0xff)) * FNV_PRIME;
+		}
+		return HashTable.spread(h);
+	}
+
+	/**
+	 * @return hash of the UTF-8 bytes of key,the same as hash(toUtf8(key))
+	 */
+	static int hash(CharSequence key) {
+		int h = FNV_BASIS;
+		int length = key.length();
+		for (int i = 0; i < length;) {
+			long encoded = encode(key, i);
+			int count = byteCount(encoded);
+			for (int b = 0; b < count; b++) {
+				h = (h ^ (int) ((encoded >>> (b << 3)) & 0xff)) * FNV_PRIME;
+			}
+			i += charCount(encoded);
+		}
+		return HashTable.spread(h);
+	}
+
+	final Object lockFor(int hash) {
+		return locks[hash & (LOCK_STRIPES - 1)];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(CharSequence key) {
+		int hash = hash(key);
+		AtomicReferenceArray<Bucket> nowBuckets = buckets;
+		Bucket bucket = nowBuckets.get(hash & (nowBuckets.length() - 1));
+		if (bucket == null) {
+			return null;
+		}
+		int i = bucket.indexOf(hash, key);
+		return i < 0 ? null : (V) bucket.values[i];
+	}
+
+	/**
+	 * @return value of the key whose UTF-8 bytes are key[offset,offset+length)
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(byte[] key, int offset, int length) {
+		int hash = hash(key, offset, length);
+		AtomicReferenceArray<Bucket> nowBuckets = buckets;
+		Bucket bucket = nowBuckets.get(hash & (nowBuckets.length() - 1));
+		if (bucket == null) {
+			return null;
+		}
+		int i = bucket.indexOf(hash, key, offset, length);
+		return i < 0 ? null : (V) bucket.values[i];
+	}
+
+	@Override
+	public V get(Object o) {
+		if (!(o instanceof CharSequence)) {
+			return null;
+		}
+		return get((CharSequence) o);
+	}
+
+	@Override
+	public boolean containsKey(Object o) {
+		return get(o) != null;
+	}
+
+	public boolean containsKey(byte[] key, int offset, int length) {
+		return get(key, offset, length) != null;
+	}
+
+	@Override
+	public V put(String key, V value) {
+		return put((CharSequence) key, value);
+	}
+
+	/**
+	 * put value.
+	 *
+	 * @throws NullPointerException
+	 *             if value is null
+	 */
+	public V put(CharSequence key, V value) {
+		byte[] bytes = toUtf8(key);
+		return put(bytes, 0, bytes.length, value);
+	}
+
+	/**
+	 * put value for the key whose UTF-8 bytes are key[offset,offset+length). the
+	 * bytes are copied.
+	 *
+	 * @throws NullPointerException
+	 *             if value is null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(byte[] key, int offset, int length, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(key, offset, length);
+		synchronized (lockFor(hash)) {
+			AtomicReferenceArray<Bucket> nowBuckets = buckets;
+			int index = hash & (nowBuckets.length() - 1);
+			Bucket bucket = nowBuckets.get(index);
+			int i = bucket == null ? -1 : bucket.indexOf(hash, key, offset, length);
+			if (i >= 0) {
+				V res = (V) bucket.values[i];
+				nowBuckets.set(index, bucket.withValue(i, value));
+				return res;
+			}
+			nowBuckets.set(index, Bucket.plus(bucket, hash, key, offset, length, value));
+		}
+		int nowSize = size.incrementAndGet();
+		AtomicReferenceArray<Bucket> nowBuckets = buckets;
+		if (nowSize >= nowBuckets.length() - (nowBuckets.length() >>> 2) && nowBuckets.length() < MAX_CAPACITY) {
+			resize();
+		}
+		return null;
+	}
+
+	@Override
+	public V remove(Object o) {
+		if (!(o instanceof CharSequence)) {
+			return null;
+		}
+		byte[] bytes = toUtf8((CharSequence) o);
+		return remove(bytes, 0, bytes.length);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(byte[] key, int offset, int length) {
+		int hash = hash(key, offset, length);
+		V res;
+		synchronized (lockFor(hash)) {
+			AtomicReferenceArray<Bucket> nowBuckets = buckets;
+			int index = hash & (nowBuckets.length() - 1);
+			Bucket bucket = nowBuckets.get(index);
+			int i = bucket == null ? -1 : bucket.indexOf(hash, key, offset, length);
+			if (i < 0) {
+				return null;
+			}
+			res = (V) bucket.values[i];
+			nowBuckets.set(index, bucket.minus(i));
+		}
+		size.decrementAndGet();
+		return res;
+	}
+
+	/**
+	 * double the buckets,holding all the lock stripes.
+	 */
+	synchronized void resize() {
+		withAllLocks(0, () -> {
+			AtomicReferenceArray<Bucket> oldBuckets = buckets;
+			int oldCapacity = oldBuckets.length();
+			if (size.get() < oldCapacity - (oldCapacity >>> 2) || oldCapacity >= MAX_CAPACITY) {
+				return;
+			}
+			buckets = rehash(oldBuckets, oldCapacity << 1);
+		});
+	}
+
+	/**
+	 * @return buckets with the keys of oldBuckets,split into capacity buckets
+	 */
+	static AtomicReferenceArray<Bucket> rehash(AtomicReferenceArray<Bucket> oldBuckets, int capacity) {
+		AtomicReferenceArray<Bucket> newBuckets = new AtomicReferenceArray<Bucket>(capacity);
+		for (int index = 0; index < oldBuckets.length(); index++) {
+			Bucket bucket = oldBuckets.get(index);
+			if (bucket == null) {
+				continue;
+			}
+			for (int i = 0; i < bucket.size(); i++) {
+				int newIndex = bucket.hashes[i] & (capacity - 1);
+				newBuckets.set(newIndex, Bucket.plus(newBuckets.get(newIndex), bucket.hashes[i], bucket.keys,
+						bucket.offsets[i], bucket.offsets[i + 1] - bucket.offsets[i], bucket.values[i]));
+			}
+		}
+		return newBuckets;
+	}
+
+	/**
+	 * run action while holding all the lock stripes from index.
+	 */
+	final void withAllLocks(int index, Runnable action) {
+		if (index == LOCK_STRIPES) {
+			action.run();
+			return;
+		}
+		synchronized (locks[index]) {
+			withAllLocks(index + 1, action);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	@Override
+	public synchronized void clear() {
+		withAllLocks(0, () -> {
+			buckets = new AtomicReferenceArray<Bucket>(MIN_CAPACITY);
+			size.set(0);
+		});
+	}
+
+	/**
+	 * @return a snapshot of the entries.the keys are decoded into Strings.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Set<Entry<String, V>> entrySet() {
+		HashSet<Entry<String, V>> entrySet = new HashSet<Entry<String, V>>();
+		AtomicReferenceArray<Bucket> nowBuckets = buckets;
+		for (int index = 0; index < nowBuckets.length(); index++) {
+			Bucket bucket = nowBuckets.get(index);
+			if (bucket == null) {
+				continue;
+			}
+			for (int i = 0; i < bucket.size(); i++) {
+				entrySet.add(new AbstractMap.SimpleImmutableEntry<String, V>(bucket.keyAt(i), (V) bucket.values[i]));
+			}
+		}
+		return entrySet;
+	}
+}
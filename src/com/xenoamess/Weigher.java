@@ -0,0 +1,22 @@
+package com.xenoamess;
+
+/**
+ * Weigher calculates the weight of an entry of a weight-bounded HashTable.
+ * the weight is a relative size (for example the byte size of the value). an
+ * entry is weighed once when its value is put,before the map is changed,and
+ * keeps the weight untill its value is replaced or removed.
+ *
+ * @see HashTable#HashTable(int, long, Weigher)
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+	/**
+	 * @param key
+	 *            the key of the entry
+	 * @param value
+	 *            the value of the entry
+	 * @return the weight of the entry.must not be negative
+	 */
+	int weigh(K key, V value);
+}
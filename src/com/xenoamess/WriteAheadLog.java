@@ -0,0 +1,563 @@
+package com.xenoamess;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog is an append-only log of the puts and removes of a map. it is
+ * written to segment files in a directory,and a segment is rotated to a new one
+ * when it is larger than segmentSize.
+ * <p>
+ * append only copies the record to a buffer in memory. a flusher thread writes
+ * the buffer and forces it to the disk at most every commitInterval,so all the
+ * records appended during an interval share one fsync(group commit).
+ * awaitDurable blocks untill a record is forced.
+ * <p>
+ * a segment is
+ *
+ * <pre>
+ * records : [ payloadSize(int) crc32(int) payload ]
+ * payload : PUT keySize(int) key valueSize(int) value | REMOVE keySize(int) key | CLEAR
+ * </pre>
+ *
+ * a record torn by a crash fails its crc,and replay stops there.
+ */
+public class WriteAheadLog<K, V> implements Closeable {
+
+	static final byte PUT = 1;
+	static final byte REMOVE = 2;
+	static final byte CLEAR = 3;
+
+	static final int RECORD_HEADER_SIZE = 8;
+
+	static final String SEGMENT_PREFIX = "wal-";
+	static final String SEGMENT_SUFFIX = ".log";
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+	final Path directory;
+	final KeyValueCodec<K, V> codec;
+	final long commitIntervalNanos;
+	final long segmentSize;
+
+	/**
+	 * records appended but not written yet.guarded by this.
+	 */
+	ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+	/**
+	 * the buffer being written by the flusher.guarded by channelLock.
+	 */
+	ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+
+	/**
+	 * sequence of the last appended record.guarded by this.
+	 */
+	long appendedSequence = 0;
+
+	/**
+	 * position in pending where the segment ends,or -1 if no rotation is
+	 * marked.guarded by this.
+	 */
+	int rotationMark = -1;
+
+	/**
+	 * sequence of the last forced record.
+	 */
+	volatile long durableSequence = 0;
+
+	/**
+	 * the first IOException of the flusher.once it is set the log is broken.
+	 */
+	volatile IOException failure = null;
+
+	volatile boolean closed = false;
+
+	final CRC32 crc = new CRC32();
+
+	/**
+	 * guards the segment channel.it is always taken before this.
+	 */
+	final Object channelLock = new Object();
+	FileChannel channel;
+	long segmentId;
+
+	/**
+	 * id of the segment started at the last rotation mark.guarded by
+	 * channelLock.
+	 */
+	long rotatedSegmentId;
+
+	final Object durableMonitor = new Object();
+	long commitCount = 0;
+
+	final Thread flusher;
+
+	WriteAheadLog(Path directory, KeyValueCodec<K, V> codec, long commitIntervalNanos, long segmentSize,
+			long segmentId) throws IOException {
+		super();
+		this.directory = directory;
+		this.codec = codec;
+		this.commitIntervalNanos = commitIntervalNanos;
+		this.segmentSize = segmentSize;
+		this.segmentId = segmentId;
+		this.channel = openSegment(segmentId);
+		this.flusher = new Thread(this::flushLoop, "WriteAheadLog-flusher " + directory);
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * open a log in directory.new records are written to a new segment after
+	 * the existing ones,which are kept for replay.
+	 *
+	 * @param commitInterval
+	 *            the max time a record waits for its fsync.0 means fsync as soon
+	 *            as the last one ends
+	 * @param segmentSize
+	 *            a segment larger than it is rotated
+	 */
+	public static <K, V> WriteAheadLog<K, V> open(Path directory, KeyValueCodec<K, V> codec, long commitInterval,
+			TimeUnit unit, long segmentSize) throws IOException {
+		if (commitInterval < 0 || segmentSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		Files.createDirectories(directory);
+		List<Long> segments = segmentIds(directory);
+		long segmentId = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+		return new WriteAheadLog<K, V>(directory, codec, unit.toNanos(commitInterval), segmentSize, segmentId);
+	}
+
+	static Path segmentPath(Path directory, long segmentId) {
+		return directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return ids of the segments in directory,ascending
+	 */
+	static List<Long> segmentIds(Path directory) throws IOException {
+		return fileIds(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return ids of the files named prefix + hex id + suffix in
+	 *         directory,ascending
+	 */
+	static List<Long> fileIds(Path directory, String prefix, String suffix) throws IOException {
+		ArrayList<Long> res = new ArrayList<Long>();
+		if (!Files.isDirectory(directory)) {
+			return res;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				try {
+					res.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()), 16));
+				} catch (NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		Collections.sort(res);
+		return res;
+	}
+
+	FileChannel openSegment(long segmentId) throws IOException {
+		return FileChannel.open(segmentPath(directory, segmentId), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * @return sequence of the record.pass it to awaitDurable.
+	 */
+	public long appendPut(K k, V v) {
+		int keySize = codec.keySize(k);
+		int valueSize = codec.valueSize(v);
+		synchronized (this) {
+			int start = beginRecord(1 + 4 + keySize + 4 + valueSize);
+			try {
+				pending.put(PUT);
+				pending.putInt(keySize);
+				codec.writeKey(k, pending);
+				pending.putInt(valueSize);
+				codec.writeValue(v, pending);
+				return endRecord(start);
+			} catch (RuntimeException e) {
+				pending.position(start);
+				throw e;
+			}
+		}
+	}
+
+	public long appendRemove(K k) {
+		int keySize = codec.keySize(k);
+		synchronized (this) {
+			int start = beginRecord(1 + 4 + keySize);
+			try {
+				pending.put(REMOVE);
+				pending.putInt(keySize);
+				codec.writeKey(k, pending);
+				return endRecord(start);
+			} catch (RuntimeException e) {
+				pending.position(start);
+				throw e;
+			}
+		}
+	}
+
+	public long appendClear() {
+		synchronized (this) {
+			int start = beginRecord(1);
+			pending.put(CLEAR);
+			return endRecord(start);
+		}
+	}
+
+	/**
+	 * reserve space for a record in pending.
+	 *
+	 * @return start position of the record
+	 */
+	private int beginRecord(int payloadSize) {
+		if (closed) {
+			throw new IllegalStateException("WriteAheadLog is closed");
+		}
+		if (pending.remaining() < RECORD_HEADER_SIZE + payloadSize) {
+			int capacity = pending.capacity();
+			while (capacity - pending.position() < RECORD_HEADER_SIZE + payloadSize) {
+				capacity <<= 1;
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(capacity);
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+		int start = pending.position();
+		pending.putInt(payloadSize);
+		pending.putInt(0);
+		return start;
+	}
+
+	private long endRecord(int start) {
+		int payloadSize = pending.getInt(start);
+		if (pending.position() != start + RECORD_HEADER_SIZE + payloadSize) {
+			throw new IllegalStateException("codec wrote a wrong number of bytes");
+		}
+		crc.reset();
+		crc.update(pending.array(), start + RECORD_HEADER_SIZE, payloadSize);
+		pending.putInt(start + 4, (int) crc.getValue());
+		if (commitIntervalNanos == 0 && appendedSequence == durableSequence) {
+			this.notifyAll();
+		}
+		return ++appendedSequence;
+	}
+
+	/**
+	 * block untill the record of sequence is forced to the disk.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the log failed to write
+	 */
+	public void awaitDurable(long sequence) {
+		if (durableSequence >= sequence) {
+			return;
+		}
+		boolean interrupted = false;
+		synchronized (durableMonitor) {
+			while (durableSequence < sequence) {
+				if (failure != null) {
+					throw new UncheckedIOException("WriteAheadLog failed", failure);
+				}
+				if (closed && !flusher.isAlive()) {
+					throw new IllegalStateException("WriteAheadLog is closed");
+				}
+				try {
+					durableMonitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	void flushLoop() {
+		while (true) {
+			synchronized (this) {
+				if (commitIntervalNanos == 0) {
+					while (!closed && appendedSequence == durableSequence) {
+						try {
+							this.wait();
+						} catch (InterruptedException e) {
+							// closed is checked
+						}
+					}
+				}
+			}
+			if (commitIntervalNanos > 0 && !closed) {
+				long deadline = System.nanoTime() + commitIntervalNanos;
+				long remaining;
+				while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(this, remaining);
+				}
+			}
+			try {
+				flush();
+			} catch (IOException e) {
+				failure = e;
+				synchronized (durableMonitor) {
+					durableMonitor.notifyAll();
+				}
+				return;
+			}
+			if (closed) {
+				synchronized (this) {
+					if (appendedSequence == durableSequence) {
+						break;
+					}
+				}
+			}
+		}
+		synchronized (durableMonitor) {
+			durableMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * write and force the pending records. the records before the rotation
+	 * mark,if any,are forced to the segment before a new one is started for the
+	 * rest. a segment larger than segmentSize is rotated too.
+	 *
+	 * @return id of the segment written after the flush
+	 */
+	long flush() throws IOException {
+		synchronized (channelLock) {
+			long batchSequence;
+			int mark;
+			synchronized (this) {
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				pending.clear();
+				batchSequence = appendedSequence;
+				mark = rotationMark;
+				rotationMark = -1;
+			}
+			writing.flip();
+			if (mark >= 0) {
+				int limit = writing.limit();
+				writing.limit(mark);
+				write();
+				channel.close();
+				segmentId++;
+				channel = openSegment(segmentId);
+				rotatedSegmentId = segmentId;
+				writing.limit(limit);
+			}
+			write();
+			writing.clear();
+
+			if (channel.size() >= segmentSize) {
+				channel.close();
+				segmentId++;
+				channel = openSegment(segmentId);
+			}
+
+			if (batchSequence > durableSequence) {
+				durableSequence = batchSequence;
+				synchronized (durableMonitor) {
+					durableMonitor.notifyAll();
+				}
+			}
+			return segmentId;
+		}
+	}
+
+	/**
+	 * write and force writing up to its limit,if it has anything.
+	 */
+	private void write() throws IOException {
+		if (writing.hasRemaining()) {
+			while (writing.hasRemaining()) {
+				channel.write(writing);
+			}
+			channel.force(false);
+			commitCount++;
+		}
+	}
+
+	/**
+	 * force all the appended records,then start a new segment.records appended
+	 * after it returns are in the new segment or later ones.
+	 *
+	 * @return id of the new segment
+	 */
+	public long rotate() throws IOException {
+		synchronized (channelLock) {
+			markRotation();
+			return finishRotation();
+		}
+	}
+
+	/**
+	 * mark the end of the segment after the records appended so far,without
+	 * waiting for the disk,so it can be called under locks the appenders take.
+	 * the records appended after it are in the new segment or later ones.
+	 * finishRotation forces the segment and starts the new one. if a mark is not
+	 * finished yet,the earlier one is kept.
+	 *
+	 * @return sequence of the last record before the mark
+	 */
+	public long markRotation() {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("WriteAheadLog is closed");
+			}
+			if (rotationMark < 0) {
+				rotationMark = pending.position();
+			}
+			return appendedSequence;
+		}
+	}
+
+	/**
+	 * force the records before the rotation mark,and start the new segment,
+	 * unless the flusher did it already.
+	 *
+	 * @return id of the segment started at the mark
+	 */
+	public long finishRotation() throws IOException {
+		synchronized (channelLock) {
+			flush();
+			return rotatedSegmentId;
+		}
+	}
+
+	/**
+	 * @return number of fsyncs done
+	 */
+	public long getCommitCount() {
+		synchronized (channelLock) {
+			return commitCount;
+		}
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * delete the segments whose id is less than segmentId.
+	 */
+	public void deleteSegmentsBefore(long segmentId) throws IOException {
+		for (long id : segmentIds(directory)) {
+			if (id < segmentId) {
+				Files.deleteIfExists(segmentPath(directory, id));
+			}
+		}
+	}
+
+	/**
+	 * apply all the records of the segments in directory to target,in order.
+	 *
+	 * @return number of records applied
+	 */
+	public static <K, V> long replay(Path directory, KeyValueCodec<K, V> codec, Map<K, V> target)
+			throws IOException {
+		return replay(directory, codec, target, 0);
+	}
+
+	/**
+	 * apply the records of the segments whose id is at least fromSegmentId.
+	 */
+	public static <K, V> long replay(Path directory, KeyValueCodec<K, V> codec, Map<K, V> target,
+			long fromSegmentId) throws IOException {
+		long res = 0;
+		CRC32 crc = new CRC32();
+		for (long id : segmentIds(directory)) {
+			if (id < fromSegmentId) {
+				continue;
+			}
+			byte[] bytes = Files.readAllBytes(segmentPath(directory, id));
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+				int payloadSize = buffer.getInt();
+				int expectedCrc = buffer.getInt();
+				if (payloadSize <= 0 || payloadSize > buffer.remaining()) {
+					break;
+				}
+				crc.reset();
+				crc.update(bytes, buffer.position(), payloadSize);
+				if ((int) crc.getValue() != expectedCrc) {
+					break;
+				}
+				int end = buffer.position() + payloadSize;
+				apply(buffer, codec, target);
+				if (buffer.position() != end) {
+					throw new EOFException("corrupt record in " + segmentPath(directory, id));
+				}
+				res++;
+			}
+		}
+		return res;
+	}
+
+	static <K, V> void apply(ByteBuffer buffer, KeyValueCodec<K, V> codec, Map<K, V> target) {
+		byte type = buffer.get();
+		if (type == CLEAR) {
+			target.clear();
+			return;
+		}
+		int keySize = buffer.getInt();
+		K k = codec.readKey(buffer, keySize);
+		if (type == PUT) {
+			int valueSize = buffer.getInt();
+			target.put(k, codec.readValue(buffer, valueSize));
+		} else {
+			target.remove(k);
+		}
+	}
+
+	/**
+	 * force the pending records and close the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			this.notifyAll();
+		}
+		LockSupport.unpark(flusher);
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (channelLock) {
+			channel.close();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
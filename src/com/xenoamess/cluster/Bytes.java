@@ -0,0 +1,34 @@
+package com.xenoamess.cluster;
+
+import java.util.Arrays;
+
+/**
+ * a byte array as a key or a value of the HashTable of a ClusterNode,equal to
+ * another one of the same bytes.
+ */
+final class Bytes {
+	final byte[] bytes;
+	final int hash;
+
+	Bytes(byte[] bytes) {
+		this.bytes = bytes;
+		this.hash = Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Bytes)) {
+			return false;
+		}
+		Bytes other = (Bytes) o;
+		return hash == other.hash && Arrays.equals(bytes, other.bytes);
+	}
+}
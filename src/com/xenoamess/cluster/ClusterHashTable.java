@@ -0,0 +1,409 @@
+package com.xenoamess.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.xenoamess.KeyValueCodec;
+
+/**
+ * ClusterHashTable is the client of a HashTable partitioned over ClusterNodes,
+ * which may be in other jvms. a key belongs to the node of it on a HashRing
+ * with virtual nodes,and is sent to it,encoded by the codec,over the
+ * pipelined protocol of Protocol:the async methods only write the request,so
+ * a thread can have many requests on the wire.
+ * <p>
+ * addNode(address) puts a new node on the ring and moves to it the keys of
+ * the ranges it takes from the other nodes. the keys are scanned page by page
+ * on the nodes which lose them,filtered there by ring position,so only the
+ * moving keys are sent. while they move,the keys of the ranges are read from
+ * the new node and then from the old one,and written to the new node.
+ * <p>
+ * the ring is kept by the client. clients of the same nodes must be given the
+ * same node addresses in the same form(the ring is hashed from "host:port"),
+ * and only one client may add a node,while the others do not write.
+ */
+public class ClusterHashTable<K, V> implements Closeable {
+
+	/**
+	 * entries of a page of a move
+	 */
+	static final int SCAN_LIMIT = 1024;
+
+	final KeyValueCodec<K, V> codec;
+
+	volatile HashRing<NodeConnection> ring;
+
+	/**
+	 * the ring before the node joining,while the keys move to it.null when no
+	 * node is joining.
+	 */
+	volatile HashRing<NodeConnection> movingFrom = null;
+
+	/**
+	 * the node joining
+	 */
+	volatile NodeConnection joining = null;
+
+	/**
+	 * every call holds its read lock while it reads the ring and sends its
+	 * requests,and a call of a key which is moving holds it untill it is
+	 * answered. the ring is changed and a page of keys is moved holding its
+	 * write lock,so a call never sees a key in the middle of its move.
+	 */
+	final ReentrantReadWriteLock moveLock = new ReentrantReadWriteLock();
+
+	/**
+	 * held by addNode,so nodes join one by one
+	 */
+	final Object joinLock = new Object();
+
+	public ClusterHashTable(KeyValueCodec<K, V> codec, List<InetSocketAddress> nodes) throws IOException {
+		this(codec, HashRing.DEFAULT_VIRTUAL_NODES, nodes);
+	}
+
+	/**
+	 * @param nodes
+	 *            the nodes of the cluster,whose keys are already where the ring
+	 *            puts them(for example they are empty)
+	 */
+	public ClusterHashTable(KeyValueCodec<K, V> codec, int virtualNodes, List<InetSocketAddress> nodes)
+			throws IOException {
+		super();
+		if (codec == null) {
+			throw new NullPointerException();
+		}
+		this.codec = codec;
+		HashRing<NodeConnection> newRing = new HashRing<NodeConnection>(virtualNodes);
+		try {
+			for (InetSocketAddress address : nodes) {
+				NodeConnection node = new NodeConnection(address);
+				newRing = newRing.withNode(node, node.name);
+			}
+		} catch (IOException e) {
+			for (NodeConnection node : newRing.nodes()) {
+				node.close();
+			}
+			throw e;
+		}
+		this.ring = newRing;
+	}
+
+	byte[] encodeKey(K k) {
+		if (k == null) {
+			throw new NullPointerException();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(codec.keySize(k));
+		codec.writeKey(k, buffer);
+		return buffer.array();
+	}
+
+	byte[] encodeValue(V v) {
+		if (v == null) {
+			throw new NullPointerException();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(codec.valueSize(v));
+		codec.writeValue(v, buffer);
+		return buffer.array();
+	}
+
+	/**
+	 * @return the value in the payload of an answer,or null if it is absent
+	 */
+	V decodeValue(ByteBuffer payload) {
+		if (payload == null) {
+			return null;
+		}
+		int size = payload.getInt();
+		return codec.readValue(payload, size);
+	}
+
+	NodeConnection owner(byte[] key) {
+		NodeConnection res = ring.nodeFor(key);
+		if (res == null) {
+			throw new IllegalStateException("the cluster has no node");
+		}
+		return res;
+	}
+
+	/**
+	 * @return the node key is moving from,or null if it is not moving
+	 */
+	NodeConnection movingFrom(byte[] key, NodeConnection owner) {
+		HashRing<NodeConnection> from = movingFrom;
+		if (from == null) {
+			return null;
+		}
+		NodeConnection res = from.nodeFor(key);
+		return res == owner ? null : res;
+	}
+
+	/**
+	 * @return the future of the value of k,or null if absent
+	 */
+	public CompletableFuture<V> getAsync(K k) {
+		byte[] key = encodeKey(k);
+		moveLock.readLock().lock();
+		try {
+			NodeConnection owner = owner(key);
+			NodeConnection from = movingFrom(key, owner);
+			if (from == null) {
+				return owner.call(Protocol.GET, key).thenApply(this::decodeValue);
+			}
+			V res = await(owner.call(Protocol.GET, key).thenApply(this::decodeValue));
+			if (res == null) {
+				res = await(from.call(Protocol.GET, key).thenApply(this::decodeValue));
+			}
+			return CompletableFuture.completedFuture(res);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the future of the old value of k
+	 */
+	public CompletableFuture<V> putAsync(K k, V v) {
+		byte[] key = encodeKey(k);
+		byte[] value = encodeValue(v);
+		moveLock.readLock().lock();
+		try {
+			NodeConnection owner = owner(key);
+			NodeConnection from = movingFrom(key, owner);
+			if (from == null) {
+				return owner.call(Protocol.PUT, key, value).thenApply(this::decodeValue);
+			}
+			V res = await(owner.call(Protocol.PUT, key, value).thenApply(this::decodeValue));
+			V moved = await(from.call(Protocol.REMOVE, key).thenApply(this::decodeValue));
+			return CompletableFuture.completedFuture(res != null ? res : moved);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the future of the removed value of k
+	 */
+	public CompletableFuture<V> removeAsync(K k) {
+		byte[] key = encodeKey(k);
+		moveLock.readLock().lock();
+		try {
+			NodeConnection owner = owner(key);
+			NodeConnection from = movingFrom(key, owner);
+			if (from == null) {
+				return owner.call(Protocol.REMOVE, key).thenApply(this::decodeValue);
+			}
+			V res = await(owner.call(Protocol.REMOVE, key).thenApply(this::decodeValue));
+			V moved = await(from.call(Protocol.REMOVE, key).thenApply(this::decodeValue));
+			return CompletableFuture.completedFuture(res != null ? res : moved);
+		} finally {
+			moveLock.readLock().unlock();
+		}
+	}
+
+	public V get(K k) {
+		return await(getAsync(k));
+	}
+
+	public V put(K k, V v) {
+		return await(putAsync(k, v));
+	}
+
+	public V remove(K k) {
+		return await(removeAsync(k));
+	}
+
+	public boolean containsKey(K k) {
+		return get(k) != null;
+	}
+
+	/**
+	 * @return sum of the sizes of the nodes.while a node joins,a key may be
+	 *         counted on both of its nodes.
+	 */
+	public long size() {
+		List<CompletableFuture<ByteBuffer>> futures = new ArrayList<CompletableFuture<ByteBuffer>>();
+		for (NodeConnection node : ring.nodes()) {
+			futures.add(node.call(Protocol.SIZE, 0, buffer -> {
+			}));
+		}
+		long res = 0;
+		for (CompletableFuture<ByteBuffer> future : futures) {
+			res += await(future).getLong();
+		}
+		return res;
+	}
+
+	public List<InetSocketAddress> nodes() {
+		List<InetSocketAddress> res = new ArrayList<InetSocketAddress>();
+		for (NodeConnection node : ring.nodes()) {
+			res.add(node.address);
+		}
+		return res;
+	}
+
+	/**
+	 * connect a new node,put it on the ring and move to it the keys it takes
+	 * from the other nodes. it returns when they are moved. if a move fails,
+	 * the keys not moved are still read from their old nodes,and the next
+	 * addNode moves them first.
+	 */
+	public void addNode(InetSocketAddress address) throws IOException {
+		synchronized (joinLock) {
+			finishMove();
+			String name = NodeConnection.nameOf(address);
+			for (NodeConnection present : ring.nodes()) {
+				if (present.name.equals(name)) {
+					throw new IllegalArgumentException("node " + name + " is in the cluster");
+				}
+			}
+			NodeConnection node = new NodeConnection(address);
+			moveLock.writeLock().lock();
+			try {
+				HashRing<NodeConnection> before = ring;
+				movingFrom = before;
+				joining = node;
+				ring = before.withNode(node, node.name);
+			} finally {
+				moveLock.writeLock().unlock();
+			}
+			finishMove();
+		}
+	}
+
+	/**
+	 * move the keys of the ranges of joining from the nodes of movingFrom.
+	 */
+	void finishMove() throws IOException {
+		HashRing<NodeConnection> before = movingFrom;
+		if (before == null) {
+			return;
+		}
+		HashRing<NodeConnection> after = ring;
+		NodeConnection to = joining;
+		for (NodeConnection from : before.nodes()) {
+			long[] ranges = after.rangesMoved(before, to, from);
+			if (ranges.length > 0) {
+				move(from, to, ranges);
+			}
+		}
+		movingFrom = null;
+		joining = null;
+	}
+
+	/**
+	 * move the keys in ranges from node from to node to,a page at a time. the
+	 * pages come from a snapshot,so an entry is moved only if from still has
+	 * it unchanged:it is put to to if to has no newer value of it,and only when
+	 * all the puts of the page are answered it is removed from from. so if a
+	 * connection breaks in the middle of a page,its entries are still on from,
+	 * and the next move of the ranges puts them again.
+	 */
+	void move(NodeConnection from, NodeConnection to, long[] ranges) throws IOException {
+		boolean more = true;
+		boolean restart = true;
+		List<byte[]> keys = new ArrayList<byte[]>();
+		List<byte[]> values = new ArrayList<byte[]>();
+		List<CompletableFuture<ByteBuffer>> checks = new ArrayList<CompletableFuture<ByteBuffer>>();
+		List<Integer> moved = new ArrayList<Integer>();
+		List<CompletableFuture<ByteBuffer>> puts = new ArrayList<CompletableFuture<ByteBuffer>>();
+		List<CompletableFuture<ByteBuffer>> removes = new ArrayList<CompletableFuture<ByteBuffer>>();
+		while (more) {
+			moveLock.writeLock().lock();
+			try {
+				ByteBuffer page = awaitIO(scan(from, restart, ranges));
+				restart = false;
+				int count = page.getInt();
+				for (int i = 0; i < count; i++) {
+					keys.add(Protocol.getBytes(page));
+					values.add(Protocol.getBytes(page));
+				}
+				more = page.get() != 0;
+				for (int i = 0; i < count; i++) {
+					checks.add(from.call(Protocol.GET, keys.get(i)));
+				}
+				for (int i = 0; i < count; i++) {
+					ByteBuffer now = awaitIO(checks.get(i));
+					if (now != null && Arrays.equals(Protocol.getBytes(now), values.get(i))) {
+						moved.add(i);
+						puts.add(to.call(Protocol.PUT_IF_ABSENT, keys.get(i), values.get(i)));
+					}
+				}
+				for (CompletableFuture<ByteBuffer> put : puts) {
+					awaitIO(put);
+				}
+				for (int i : moved) {
+					removes.add(from.call(Protocol.REMOVE_IF, keys.get(i), values.get(i)));
+				}
+				for (CompletableFuture<ByteBuffer> remove : removes) {
+					awaitIO(remove);
+				}
+			} finally {
+				moveLock.writeLock().unlock();
+				keys.clear();
+				values.clear();
+				checks.clear();
+				moved.clear();
+				puts.clear();
+				removes.clear();
+			}
+		}
+	}
+
+	CompletableFuture<ByteBuffer> scan(NodeConnection from, boolean restart, long[] ranges) {
+		int rangeCount = restart ? ranges.length / 2 : 0;
+		return from.call(Protocol.SCAN, 1 + 4 + 4 + rangeCount * 16, buffer -> {
+			buffer.put((byte) (restart ? 1 : 0));
+			buffer.putInt(SCAN_LIMIT);
+			buffer.putInt(rangeCount);
+			for (int i = 0; i < rangeCount * 2; i++) {
+				buffer.putLong(ranges[i]);
+			}
+		});
+	}
+
+	/**
+	 * join future,throwing the cause of its failure:an UncheckedIOException if
+	 * the connection is broken.
+	 */
+	static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw new UncheckedIOException((IOException) cause);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+
+	static <T> T awaitIO(CompletableFuture<T> future) throws IOException {
+		try {
+			return await(future);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * close the connections.the nodes keep running.
+	 */
+	@Override
+	public void close() {
+		for (NodeConnection node : ring.nodes()) {
+			node.close();
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package com.xenoamess.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.xenoamess.HashTable;
+
+/**
+ * ClusterNode serves a node-local HashTable to ClusterHashTable clients over
+ * the binary protocol of Protocol. the keys and values are kept as bytes,so a
+ * node needs no codec and serves clients of any types.
+ * <p>
+ * one selector thread reads the requests of all the connections,runs them on
+ * the HashTable,and writes the answers of all the requests read at once in one
+ * write. a connection whose answers are not written yet is not read,so a
+ * client which does not read its answers does not make the node buffer
+ * without a bound.
+ */
+public class ClusterNode implements Closeable {
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * entries of a SCAN answer at most
+	 */
+	static final int MAX_SCAN_LIMIT = 1 << 16;
+
+	/**
+	 * the state of a connection
+	 */
+	static final class Connection {
+		final SocketChannel channel;
+
+		/**
+		 * bytes read and not processed,in write mode
+		 */
+		ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/**
+		 * answers not written,in write mode
+		 */
+		ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/**
+		 * the snapshot a SCAN walks and its ranges
+		 */
+		Iterator<Map.Entry<Bytes, Bytes>> scan = null;
+		long[] scanRanges = null;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void ensureOut(int size) {
+			if (out.remaining() < size) {
+				ByteBuffer newOut = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + size));
+				out.flip();
+				newOut.put(out);
+				out = newOut;
+			}
+		}
+	}
+
+	final HashTable<Bytes, Bytes> map = new HashTable<Bytes, Bytes>();
+	final ServerSocketChannel server;
+	final Selector selector;
+	final Thread thread;
+	volatile boolean closed = false;
+
+	ClusterNode(ServerSocketChannel server, Selector selector) {
+		super();
+		this.server = server;
+		this.selector = selector;
+		this.thread = new Thread(this::run, "ClusterNode-" + getAddress().getPort());
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * start a node listening on address.port 0 takes a free port,which
+	 * getAddress() tells.
+	 */
+	public static ClusterNode start(InetSocketAddress address) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		Selector selector = null;
+		try {
+			server.bind(address);
+			server.configureBlocking(false);
+			selector = Selector.open();
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			if (selector != null) {
+				selector.close();
+			}
+			throw e;
+		}
+		ClusterNode res = new ClusterNode(server, selector);
+		res.thread.start();
+		return res;
+	}
+
+	public InetSocketAddress getAddress() {
+		try {
+			return (InetSocketAddress) server.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return number of entries of this node
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							if (key.isReadable()) {
+								read(key);
+							}
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					} catch (IOException | RuntimeException e) {
+						// the connection is broken or sent a bad frame
+						closeConnection(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// the selector is closed
+		}
+	}
+
+	void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+	}
+
+	void closeConnection(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// closed anyway
+		}
+	}
+
+	void read(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		if (connection.channel.read(connection.in) < 0) {
+			closeConnection(key);
+			return;
+		}
+		ByteBuffer in = connection.in;
+		in.flip();
+		while (in.remaining() >= 4) {
+			int length = in.getInt(in.position());
+			if (length < 9 || length > Protocol.MAX_FRAME_SIZE) {
+				throw new IOException("bad frame length " + length);
+			}
+			if (in.remaining() < 4 + length) {
+				break;
+			}
+			int end = in.position() + 4 + length;
+			ByteBuffer frame = in.duplicate();
+			frame.position(in.position() + 4);
+			frame.limit(end);
+			process(connection, frame);
+			in.position(end);
+		}
+		in.compact();
+		if (in.position() == in.capacity()) {
+			// a frame larger than the buffer
+			ByteBuffer newIn = ByteBuffer.allocate(in.capacity() * 2);
+			in.flip();
+			newIn.put(in);
+			connection.in = newIn;
+		}
+		write(key);
+	}
+
+	void write(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		ByteBuffer out = connection.out;
+		out.flip();
+		connection.channel.write(out);
+		out.compact();
+		key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * run the request of frame,which is [long id][byte op][payload],and append
+	 * its answer to the out of connection.
+	 */
+	void process(Connection connection, ByteBuffer frame) {
+		long id = frame.getLong();
+		byte op = frame.get();
+		try {
+			switch (op) {
+			case Protocol.GET:
+				answerValue(connection, id, map.get(new Bytes(Protocol.getBytes(frame))));
+				break;
+			case Protocol.PUT:
+				answerValue(connection, id,
+						map.put(new Bytes(Protocol.getBytes(frame)), new Bytes(Protocol.getBytes(frame))));
+				break;
+			case Protocol.PUT_IF_ABSENT:
+				answerValue(connection, id,
+						map.putIfAbsent(new Bytes(Protocol.getBytes(frame)), new Bytes(Protocol.getBytes(frame))));
+				break;
+			case Protocol.REMOVE:
+				answerValue(connection, id, map.remove(new Bytes(Protocol.getBytes(frame))));
+				break;
+			case Protocol.REMOVE_IF: {
+				boolean removed = map.remove(new Bytes(Protocol.getBytes(frame)), new Bytes(Protocol.getBytes(frame)));
+				answer(connection, id, Protocol.OK, 1);
+				connection.out.put((byte) (removed ? 1 : 0));
+				break;
+			}
+			case Protocol.SIZE:
+				answer(connection, id, Protocol.OK, 8);
+				connection.out.putLong(map.size());
+				break;
+			case Protocol.SCAN:
+				scan(connection, id, frame);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown op " + op);
+			}
+		} catch (RuntimeException e) {
+			byte[] message = Protocol.utf8(e.toString());
+			answer(connection, id, Protocol.ERROR, Protocol.bytesSize(message));
+			Protocol.putBytes(connection.out, message);
+		}
+	}
+
+	/**
+	 * append the header of an answer whose payload is size bytes,and make room
+	 * for the payload.
+	 */
+	void answer(Connection connection, long id, byte status, int size) {
+		connection.ensureOut(Protocol.HEADER_SIZE + size);
+		connection.out.putInt(Protocol.HEADER_SIZE - 4 + size);
+		connection.out.putLong(id);
+		connection.out.put(status);
+	}
+
+	void answerValue(Connection connection, long id, Bytes value) {
+		if (value == null) {
+			answer(connection, id, Protocol.ABSENT, 0);
+			return;
+		}
+		answer(connection, id, Protocol.OK, Protocol.bytesSize(value.bytes));
+		Protocol.putBytes(connection.out, value.bytes);
+	}
+
+	void scan(Connection connection, long id, ByteBuffer frame) {
+		boolean restart = frame.get() != 0;
+		int limit = Math.min(frame.getInt(), MAX_SCAN_LIMIT);
+		int rangeCount = frame.getInt();
+		if (rangeCount < 0 || rangeCount * 16L > frame.remaining()) {
+			throw new IllegalArgumentException("bad range count " + rangeCount);
+		}
+		if (restart || connection.scan == null) {
+			long[] ranges = new long[rangeCount * 2];
+			for (int i = 0; i < ranges.length; i++) {
+				ranges[i] = frame.getLong();
+			}
+			connection.scan = map.entrySet().iterator();
+			connection.scanRanges = ranges;
+		}
+		// the payload is written after the header,whose length is set last
+		connection.ensureOut(Protocol.HEADER_SIZE + 4);
+		int start = connection.out.position();
+		answer(connection, id, Protocol.OK, 4);
+		int countPosition = connection.out.position();
+		connection.out.putInt(0);
+		int count = 0;
+		Iterator<Map.Entry<Bytes, Bytes>> iterator = connection.scan;
+		while (count < limit && iterator.hasNext()) {
+			Map.Entry<Bytes, Bytes> entry = iterator.next();
+			byte[] key = entry.getKey().bytes;
+			if (!Protocol.inRanges(HashRing.position(key, 0, key.length), connection.scanRanges)) {
+				continue;
+			}
+			byte[] value = entry.getValue().bytes;
+			connection.ensureOut(Protocol.bytesSize(key) + Protocol.bytesSize(value) + 1);
+			Protocol.putBytes(connection.out, key);
+			Protocol.putBytes(connection.out, value);
+			count++;
+		}
+		boolean more = iterator.hasNext();
+		if (!more) {
+			connection.scan = null;
+			connection.scanRanges = null;
+		}
+		connection.ensureOut(1);
+		connection.out.put((byte) (more ? 1 : 0));
+		connection.out.putInt(start, connection.out.position() - start - 4);
+		connection.out.putInt(countPosition, count);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (SelectionKey key : selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+		server.close();
+	}
+}
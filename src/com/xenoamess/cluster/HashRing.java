@@ -0,0 +1,160 @@
+package com.xenoamess.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HashRing is a consistent hash ring. each node is put on the ring at
+ * virtualNodes points,hashed from its name,and a key belongs to the node of
+ * the first point at or after the position of the key,so adding a node moves
+ * only the keys of the arcs before its points,about 1/n of them,and they come
+ * evenly from all the other nodes.
+ * <p>
+ * positions are 64 bit hashes of bytes,so they are the same in every jvm. a
+ * ring is immutable:withNode returns a new ring.
+ */
+public final class HashRing<N> {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	final int virtualNodes;
+
+	/**
+	 * the points of the ring,by position
+	 */
+	final TreeMap<Long, N> points;
+
+	/**
+	 * the nodes and their names,in the order they are added
+	 */
+	final LinkedHashMap<N, String> names;
+
+	public HashRing() {
+		this(DEFAULT_VIRTUAL_NODES);
+	}
+
+	public HashRing(int virtualNodes) {
+		this(virtualNodes, new TreeMap<Long, N>(), new LinkedHashMap<N, String>());
+		if (virtualNodes <= 0) {
+			throw new IllegalArgumentException("virtualNodes " + virtualNodes + " is not positive");
+		}
+	}
+
+	HashRing(int virtualNodes, TreeMap<Long, N> points, LinkedHashMap<N, String> names) {
+		super();
+		this.virtualNodes = virtualNodes;
+		this.points = points;
+		this.names = names;
+	}
+
+	/**
+	 * @return a ring with node added as name.points already taken by another
+	 *         node are kept by it.
+	 */
+	public HashRing<N> withNode(N node, String name) {
+		if (names.containsKey(node)) {
+			throw new IllegalArgumentException("node " + name + " is in the ring");
+		}
+		TreeMap<Long, N> newPoints = new TreeMap<Long, N>(points);
+		for (long position : pointsOf(name)) {
+			newPoints.putIfAbsent(position, node);
+		}
+		LinkedHashMap<N, String> newNames = new LinkedHashMap<N, String>(names);
+		newNames.put(node, name);
+		return new HashRing<N>(virtualNodes, newPoints, newNames);
+	}
+
+	/**
+	 * @return the positions of the virtual nodes of name
+	 */
+	long[] pointsOf(String name) {
+		long[] res = new long[virtualNodes];
+		for (int i = 0; i < virtualNodes; i++) {
+			byte[] bytes = (name + "#" + i).getBytes(StandardCharsets.UTF_8);
+			res[i] = position(bytes, 0, bytes.length);
+		}
+		return res;
+	}
+
+	/**
+	 * the position of bytes on the ring:FNV-1a 64,whose low bits are then
+	 * mixed into the high bits,since FNV-1a spreads the last bytes badly.
+	 */
+	public static long position(byte[] bytes, int offset, int length) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = offset; i < offset + length; i++) {
+			h ^= bytes[i] & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return the node of the key whose bytes are key,or null if the ring is
+	 *         empty
+	 */
+	public N nodeFor(byte[] key) {
+		return nodeAt(position(key, 0, key.length));
+	}
+
+	N nodeAt(long position) {
+		if (points.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, N> entry = points.ceilingEntry(position);
+		return entry != null ? entry.getValue() : points.firstEntry().getValue();
+	}
+
+	/**
+	 * @return the ranges(from,to] of the positions which belong to node in
+	 *         this ring and to from in the ring before,as from,to pairs
+	 */
+	long[] rangesMoved(HashRing<N> before, N node, N from) {
+		ArrayList<Long> res = new ArrayList<Long>();
+		for (Map.Entry<Long, N> point : points.entrySet()) {
+			if (point.getValue() != node || before.nodeAt(point.getKey()) != from) {
+				continue;
+			}
+			Long previous = points.lowerKey(point.getKey());
+			if (previous == null) {
+				previous = points.lastKey();
+			}
+			res.add(previous);
+			res.add(point.getKey());
+		}
+		long[] ranges = new long[res.size()];
+		for (int i = 0; i < ranges.length; i++) {
+			ranges[i] = res.get(i);
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return the nodes in the order they are added
+	 */
+	public List<N> nodes() {
+		return Collections.unmodifiableList(new ArrayList<N>(names.keySet()));
+	}
+
+	public String nameOf(N node) {
+		return names.get(node);
+	}
+
+	public boolean isEmpty() {
+		return names.isEmpty();
+	}
+
+	public int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,204 @@
+package com.xenoamess.cluster;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * the connection of a ClusterHashTable to a ClusterNode. requests are
+ * pipelined:a caller writes its request and gets a future at once,and a
+ * reader thread completes the futures in order as the answers come.
+ */
+final class NodeConnection implements Closeable {
+
+	/**
+	 * a request waiting for its answer
+	 */
+	static final class Pending {
+		final long id;
+		final CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+
+		Pending(long id) {
+			this.id = id;
+		}
+	}
+
+	final InetSocketAddress address;
+	final String name;
+	final SocketChannel channel;
+
+	/**
+	 * writers hold it,so the requests are written and queued in the same order
+	 */
+	final ReentrantLock writeLock = new ReentrantLock();
+	ByteBuffer out = ByteBuffer.allocate(ClusterNode.BUFFER_SIZE);
+	long nextId = 0;
+
+	final ConcurrentLinkedQueue<Pending> pendings = new ConcurrentLinkedQueue<Pending>();
+	final Thread reader;
+
+	/**
+	 * the error which broke the connection
+	 */
+	volatile IOException failure = null;
+
+	NodeConnection(InetSocketAddress address) throws IOException {
+		super();
+		this.address = address;
+		this.name = nameOf(address);
+		this.channel = SocketChannel.open(address);
+		this.channel.socket().setTcpNoDelay(true);
+		this.reader = new Thread(this::read, "NodeConnection-" + name);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * @return the name of the node at address on the ring
+	 */
+	static String nameOf(InetSocketAddress address) {
+		return address.getHostString() + ":" + address.getPort();
+	}
+
+	/**
+	 * send a request whose payload is written by payload.
+	 *
+	 * @return the future of the answer:its payload after the status,or null if
+	 *         the status is ABSENT
+	 */
+	CompletableFuture<ByteBuffer> call(byte op, int payloadSize, Consumer<ByteBuffer> payload) {
+		writeLock.lock();
+		try {
+			if (failure != null) {
+				return CompletableFuture.failedFuture(failure);
+			}
+			int size = Protocol.HEADER_SIZE + payloadSize;
+			if (out.capacity() < size) {
+				out = ByteBuffer.allocate(size);
+			}
+			out.clear();
+			out.putInt(size - 4);
+			Pending pending = new Pending(nextId++);
+			out.putLong(pending.id);
+			out.put(op);
+			payload.accept(out);
+			out.flip();
+			pendings.add(pending);
+			try {
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+			} catch (IOException e) {
+				fail(e);
+			}
+			if (failure != null) {
+				// the reader failed after the check,and may have missed pending
+				fail(failure);
+			}
+			return pending.future;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	CompletableFuture<ByteBuffer> call(byte op, byte[] key) {
+		return call(op, Protocol.bytesSize(key), buffer -> Protocol.putBytes(buffer, key));
+	}
+
+	CompletableFuture<ByteBuffer> call(byte op, byte[] key, byte[] value) {
+		return call(op, Protocol.bytesSize(key) + Protocol.bytesSize(value), buffer -> {
+			Protocol.putBytes(buffer, key);
+			Protocol.putBytes(buffer, value);
+		});
+	}
+
+	void read() {
+		ByteBuffer in = ByteBuffer.allocate(ClusterNode.BUFFER_SIZE);
+		try {
+			while (true) {
+				if (channel.read(in) < 0) {
+					throw new EOFException("node " + name + " closed the connection");
+				}
+				in.flip();
+				while (in.remaining() >= 4) {
+					int length = in.getInt(in.position());
+					if (length < 9 || length > Protocol.MAX_FRAME_SIZE) {
+						throw new IOException("bad frame length " + length + " from node " + name);
+					}
+					if (in.remaining() < 4 + length) {
+						break;
+					}
+					in.getInt();
+					byte[] frame = new byte[length];
+					in.get(frame);
+					complete(ByteBuffer.wrap(frame));
+				}
+				in.compact();
+				if (in.position() == in.capacity()) {
+					ByteBuffer newIn = ByteBuffer.allocate(in.capacity() * 2);
+					in.flip();
+					newIn.put(in);
+					in = newIn;
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	void complete(ByteBuffer frame) throws IOException {
+		long id = frame.getLong();
+		byte status = frame.get();
+		Pending pending = pendings.poll();
+		if (pending == null || pending.id != id) {
+			throw new IOException("answer " + id + " from node " + name + " is out of order");
+		}
+		switch (status) {
+		case Protocol.OK:
+			pending.future.complete(frame);
+			break;
+		case Protocol.ABSENT:
+			pending.future.complete(null);
+			break;
+		default:
+			pending.future.completeExceptionally(
+					new IllegalStateException("node " + name + " : " + Protocol.string(Protocol.getBytes(frame))));
+			break;
+		}
+	}
+
+	/**
+	 * break the connection:the waiting requests and the later ones fail with e.
+	 */
+	void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+			// closed anyway
+		}
+		Pending pending;
+		while ((pending = pendings.poll()) != null) {
+			pending.future.completeExceptionally(failure);
+		}
+	}
+
+	@Override
+	public void close() {
+		fail(new IOException("connection to node " + name + " is closed"));
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,98 @@
+package com.xenoamess.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * the binary protocol between ClusterHashTable and ClusterNode.
+ * <p>
+ * a request is [int length][long id][byte op][payload] and a response is [int
+ * length][long id][byte status][payload],where length is the number of bytes
+ * after it. a node answers the requests of a connection in their order,so a
+ * client can pipeline them:send many and read the answers as they come.
+ * <p>
+ * bytes are written as [int length][bytes]. the payloads are
+ *
+ * <pre>
+ * GET,REMOVE              key          -> OK value | ABSENT
+ * PUT,PUT_IF_ABSENT       key value    -> OK old value | ABSENT
+ * REMOVE_IF               key value    -> OK [byte removed]
+ * SIZE                                 -> OK [long size]
+ * SCAN                    [byte restart][int limit][int n]([long from][long to])*n
+ *                                      -> OK [int count](key value)*count[byte more]
+ * </pre>
+ *
+ * any request can be answered by ERROR [bytes message]. SCAN walks a snapshot
+ * of the node and returns the entries whose ring positions are in one of the
+ * ranges(from,to],limit entries at a time. restart takes a new snapshot.
+ */
+final class Protocol {
+
+	private Protocol() {
+	}
+
+	static final byte GET = 1;
+	static final byte PUT = 2;
+	static final byte PUT_IF_ABSENT = 3;
+	static final byte REMOVE = 4;
+	static final byte REMOVE_IF = 5;
+	static final byte SIZE = 6;
+	static final byte SCAN = 7;
+
+	static final byte OK = 0;
+	static final byte ABSENT = 1;
+	static final byte ERROR = 2;
+
+	/**
+	 * bytes of length,id and op/status
+	 */
+	static final int HEADER_SIZE = 4 + 8 + 1;
+
+	/**
+	 * the largest frame,so a broken peer can not make the other allocate
+	 * without a bound
+	 */
+	static final int MAX_FRAME_SIZE = 1 << 26;
+
+	static int bytesSize(byte[] bytes) {
+		return 4 + bytes.length;
+	}
+
+	static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	static byte[] getBytes(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("bad length " + length);
+		}
+		byte[] res = new byte[length];
+		buffer.get(res);
+		return res;
+	}
+
+	static byte[] utf8(String s) {
+		return String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String string(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return if position is in one of the ranges(from,to].a range whose from
+	 *         is not less than its to wraps around the ring.
+	 */
+	static boolean inRanges(long position, long[] ranges) {
+		for (int i = 0; i < ranges.length; i += 2) {
+			long from = ranges[i];
+			long to = ranges[i + 1];
+			if (from < to ? position > from && position <= to : position > from || position <= to) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
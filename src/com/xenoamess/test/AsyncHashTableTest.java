@@ -0,0 +1,209 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.xenoamess.AsyncHashTable;
+import com.xenoamess.HashTable;
+
+/*
+ * checks AsyncHashTable against a judger:calls of a key run in the order they
+ * are made,the calls of a batch on a table moved by a resize are run by the
+ * map,and a call which fails does not stop the calls after it.
+ */
+public class AsyncHashTableTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 16);
+	public static long TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * keys the weigher of failureTest refuses
+	 */
+	public static int REFUSED = (1 << 20);
+
+	public static Integer rand() {
+		return (int) (Math.random() * TEST_MAX);
+	}
+
+	static boolean equalsOrBothNull(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static Integer await(CompletableFuture<Integer> future) {
+		try {
+			return future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("the call is not completed", e);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/*
+	 * the calls are made without waiting,so they are batched,and the map starts
+	 * small,so it resizes under the batches. a call of a key sees the calls of
+	 * the key made before it.
+	 */
+	static void singleThreadTest() {
+		HashMap<Integer, Integer> judger = new HashMap<Integer, Integer>();
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		List<Integer> expected = new ArrayList<Integer>();
+		boolean findBug = false;
+		try (AsyncHashTable<Integer, Integer> tested = new AsyncHashTable<Integer, Integer>(
+				new HashTable<Integer, Integer>())) {
+			for (int i = 0; i < TEST_TURNS; i++) {
+				Integer key = rand();
+				Integer value = rand();
+				switch (i & 3) {
+				case 0:
+					futures.add(tested.getAsync(key));
+					expected.add(judger.get(key));
+					break;
+				case 1:
+					futures.add(tested.removeAsync(key));
+					expected.add(judger.remove(key));
+					break;
+				case 2:
+					futures.add(tested.computeAsync(key, (k, v) -> v == null ? value : v + value));
+					expected.add(judger.merge(key, value, Integer::sum));
+					break;
+				default:
+					futures.add(tested.putAsync(key, value));
+					expected.add(judger.put(key, value));
+					break;
+				}
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				if (!equalsOrBothNull(await(futures.get(i)), expected.get(i))) {
+					System.out.printf("turn %d : suspicious error found : call get wrong answer?\n", i);
+					findBug = true;
+					break;
+				}
+			}
+			if (!judger.equals(new HashMap<Integer, Integer>(tested.getMap()))) {
+				System.out.println("suspicious error found : map differs from judger at the end");
+				findBug = true;
+			}
+			System.out.println("nowPoolSize : " + tested.getMap().getNowPoolSize());
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleThreadTest ends");
+	}
+
+	/*
+	 * each thread owns its keys and counts them up by computeAsync,so at the end
+	 * each key holds the number of its calls.
+	 */
+	static void multipleThreadTest() throws InterruptedException {
+		boolean[] findBug = new boolean[1];
+		try (AsyncHashTable<Integer, Integer> tested = new AsyncHashTable<Integer, Integer>(
+				new HashTable<Integer, Integer>())) {
+			Thread[] threads = new Thread[TEST_THREADS];
+			for (int t = 0; t < TEST_THREADS; t++) {
+				final int index = t;
+				threads[t] = new Thread(() -> {
+					int[] counts = new int[TEST_MAX / TEST_THREADS];
+					List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+					List<Integer> expected = new ArrayList<Integer>();
+					for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+						int slot = rand() / TEST_THREADS;
+						Integer key = slot * TEST_THREADS + index;
+						futures.add(tested.computeAsync(key, (k, v) -> v == null ? 1 : v + 1));
+						expected.add(++counts[slot]);
+					}
+					for (int i = 0; i < futures.size(); i++) {
+						if (!equalsOrBothNull(await(futures.get(i)), expected.get(i))) {
+							System.out.printf("thread %d : suspicious error found : calls of a key out of order\n",
+									index);
+							findBug[0] = true;
+							break;
+						}
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			long total = 0;
+			for (Integer count : tested.getMap().values()) {
+				total += count;
+			}
+			if (total != (TEST_TURNS / TEST_THREADS) * TEST_THREADS) {
+				System.out.printf("suspicious error found : %d calls counted\n", total);
+				findBug[0] = true;
+			}
+		}
+		if (!findBug[0]) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest ends");
+	}
+
+	/*
+	 * a compute which throws,and a put the weigher refuses,fail only their own
+	 * calls,and leave the map as it was.
+	 */
+	static void failureTest() {
+		boolean findBug = false;
+		HashTable<Integer, Integer> map = new HashTable<Integer, Integer>(256, Long.MAX_VALUE,
+				(k, v) -> k >= REFUSED ? -1 : 1);
+		try (AsyncHashTable<Integer, Integer> tested = new AsyncHashTable<Integer, Integer>(map)) {
+			try {
+				for (int round = 0; round < 100; round++) {
+					CompletableFuture<Integer> before = tested.putAsync(round, round);
+					CompletableFuture<Integer> throwing = tested.computeAsync(round, (k, v) -> {
+						throw new ArithmeticException();
+					});
+					CompletableFuture<Integer> refused = tested.putAsync(REFUSED + round, round);
+					CompletableFuture<Integer> after = tested.putAsync(round, round + 1);
+					try {
+						await(throwing);
+						System.out.println("suspicious error found : a throwing compute succeeded");
+						findBug = true;
+					} catch (CompletionException e) {
+						// as expected
+					}
+					try {
+						await(refused);
+						System.out.println("suspicious error found : a put refused by the weigher succeeded");
+						findBug = true;
+					} catch (CompletionException e) {
+						// as expected
+					}
+					if (map.get(REFUSED + round) != null) {
+						System.out.printf("round %d : suspicious error found : a refused value is in the map\n", round);
+						findBug = true;
+					}
+					if (await(before) != null || !Integer.valueOf(round).equals(await(after))) {
+						System.out.printf("round %d : suspicious error found : calls around the failures differ\n",
+								round);
+						findBug = true;
+					}
+				}
+			} catch (RuntimeException e) {
+				// a stripe stopped by a failure never completes the calls after it
+				System.out.println("suspicious error found : " + e);
+				findBug = true;
+			}
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("failureTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		singleThreadTest();
+		multipleThreadTest();
+		failureTest();
+	}
+}
@@ -0,0 +1,271 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.xenoamess.ChangeEvent;
+import com.xenoamess.HashTable;
+
+/*
+ * checks the events of HashTable.changes():that they come in the order of
+ * their sequences,that the last event of each key is its value in the map,
+ * that a subscriber gets no more than it requested,and that a subscriber which
+ * never requests is cancelled when it overflows.
+ */
+public class ChangesTest {
+	public static int TEST_TURNS = (1 << 16);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 10);
+	public static long TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * more events than a subscription buffers
+	 */
+	public static int OVERFLOW_EVENTS = (1 << 17);
+
+	/**
+	 * most events the writers of orderTest get ahead of its subscriber,far less
+	 * than a subscription buffers,so it is not cancelled on a machine of few cpus
+	 */
+	public static int MAX_AHEAD = (1 << 14);
+
+	public static Integer rand() {
+		return (int) (Math.random() * TEST_MAX);
+	}
+
+	static class Recorder implements Flow.Subscriber<ChangeEvent<Integer, Integer>> {
+		final long initialRequest;
+		volatile Flow.Subscription subscription = null;
+		final ConcurrentLinkedQueue<ChangeEvent<Integer, Integer>> events = new ConcurrentLinkedQueue<ChangeEvent<Integer, Integer>>();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final AtomicInteger received = new AtomicInteger();
+
+		Recorder(long initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialRequest > 0) {
+				subscription.request(initialRequest);
+			}
+		}
+
+		@Override
+		public void onNext(ChangeEvent<Integer, Integer> item) {
+			events.add(item);
+			received.incrementAndGet();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error.set(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+		/**
+		 * wait untill count events are received or an error is
+		 */
+		boolean await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			while (events.size() < count && error.get() == null) {
+				if (System.currentTimeMillis() > deadline) {
+					return false;
+				}
+				Thread.sleep(1);
+			}
+			return events.size() >= count;
+		}
+	}
+
+	/*
+	 * writers change random keys,so the events of a key come from many threads.
+	 * ordered by sequence,the events of a key must chain old value to new
+	 * value,and end at its value in the map.
+	 */
+	static void orderTest() throws InterruptedException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		Recorder recorder = new Recorder(Long.MAX_VALUE);
+		tested.changes().subscribe(recorder);
+		// a clear first,so the events of every key start from absent
+		tested.put(-1, -1);
+		tested.clear();
+		Thread[] threads = new Thread[TEST_THREADS];
+		int[] changes = new int[TEST_THREADS];
+		AtomicInteger published = new AtomicInteger();
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS; i++) {
+					Integer key = rand();
+					if ((i & 3) != 0) {
+						tested.put(key, i);
+					} else if (tested.remove(key) == null) {
+						continue;
+					}
+					changes[index]++;
+					if (published.incrementAndGet() - recorder.received.get() > MAX_AHEAD) {
+						while (published.get() - recorder.received.get() > MAX_AHEAD / 2
+								&& recorder.error.get() == null) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int expected = 2;
+		for (int count : changes) {
+			expected += count;
+		}
+		boolean findBug = false;
+		if (!recorder.await(expected)) {
+			System.out.printf("suspicious error found : %d of %d events received,%s\n", recorder.events.size(),
+					expected, recorder.error.get());
+			findBug = true;
+		}
+		List<ChangeEvent<Integer, Integer>> events = new ArrayList<ChangeEvent<Integer, Integer>>(recorder.events);
+		if (events.size() > expected) {
+			System.out.printf("suspicious error found : %d events more than changes\n", events.size() - expected);
+			findBug = true;
+		}
+		if (events.size() >= 2 && (events.get(1).getType() != ChangeEvent.Type.CLEAR
+				|| events.get(1).getSequence() <= events.get(0).getSequence())) {
+			System.out.println("suspicious error found : clear is not after the put before it");
+			findBug = true;
+		}
+		int outOfOrder = 0;
+		for (int i = 1; i < events.size(); i++) {
+			if (events.get(i).getSequence() <= events.get(i - 1).getSequence()) {
+				outOfOrder++;
+			}
+		}
+		if (outOfOrder != 0) {
+			System.out.printf("suspicious error found : %d events delivered before an event of a smaller sequence\n",
+					outOfOrder);
+			findBug = true;
+		}
+		events.sort((a, b) -> Long.compare(a.getSequence(), b.getSequence()));
+		for (int i = 1; i < events.size(); i++) {
+			if (events.get(i).getSequence() == events.get(i - 1).getSequence()) {
+				System.out.printf("suspicious error found : sequence %d is repeated\n", events.get(i).getSequence());
+				findBug = true;
+				break;
+			}
+		}
+		HashMap<Integer, Integer> judger = new HashMap<Integer, Integer>();
+		for (ChangeEvent<Integer, Integer> event : events) {
+			if (event.getType() == ChangeEvent.Type.CLEAR) {
+				judger.clear();
+				continue;
+			}
+			Integer old = event.getNewValue() != null ? judger.put(event.getKey(), event.getNewValue())
+					: judger.remove(event.getKey());
+			if (old == null ? event.getOldValue() != null : !old.equals(event.getOldValue())) {
+				System.out.printf("suspicious error found : %s does not follow the change before it\n", event);
+				findBug = true;
+				break;
+			}
+		}
+		if (!judger.equals(new HashMap<Integer, Integer>(tested))) {
+			System.out.println("suspicious error found : the events do not end at the map");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.printf("%d events\n", events.size());
+		recorder.subscription.cancel();
+		System.out.println("orderTest ends");
+	}
+
+	/*
+	 * a subscriber gets only the events it requested,and the rest when it
+	 * requests more.
+	 */
+	static void backpressureTest() throws InterruptedException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		Recorder recorder = new Recorder(10);
+		tested.changes().subscribe(recorder);
+		for (int i = 0; i < 100; i++) {
+			tested.put(i, i);
+		}
+		boolean findBug = false;
+		recorder.await(10);
+		Thread.sleep(100);
+		if (recorder.events.size() != 10) {
+			System.out.printf("suspicious error found : %d events received,10 requested\n", recorder.events.size());
+			findBug = true;
+		}
+		recorder.subscription.request(90);
+		if (!recorder.await(100) || recorder.error.get() != null) {
+			System.out.printf("suspicious error found : %d events received after requesting them all\n",
+					recorder.events.size());
+			findBug = true;
+		}
+		int i = 0;
+		for (ChangeEvent<Integer, Integer> event : recorder.events) {
+			if (event.getKey() != i++) {
+				System.out.println("suspicious error found : events of one thread out of order");
+				findBug = true;
+				break;
+			}
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		recorder.subscription.cancel();
+		System.out.println("backpressureTest ends");
+	}
+
+	/*
+	 * a subscriber which never requests is cancelled with an
+	 * IllegalStateException when it is too far behind,and gets nothing after it.
+	 */
+	static void overflowTest() throws InterruptedException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		Recorder recorder = new Recorder(0);
+		tested.changes().subscribe(recorder);
+		for (int i = 0; i < OVERFLOW_EVENTS; i++) {
+			tested.put(i & (TEST_MAX - 1), i);
+		}
+		boolean findBug = false;
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (recorder.error.get() == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		if (!(recorder.error.get() instanceof IllegalStateException)) {
+			System.out.println("suspicious error found : overflow signalled " + recorder.error.get());
+			findBug = true;
+		}
+		recorder.subscription.request(Long.MAX_VALUE);
+		tested.put(0, 0);
+		Thread.sleep(100);
+		if (!recorder.events.isEmpty()) {
+			System.out.printf("suspicious error found : %d events after the cancel\n", recorder.events.size());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("overflowTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		orderTest();
+		backpressureTest();
+		overflowTest();
+	}
+}
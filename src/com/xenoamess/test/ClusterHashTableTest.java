@@ -0,0 +1,311 @@
+package com.xenoamess.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.xenoamess.KeyValueCodec;
+import com.xenoamess.cluster.ClusterHashTable;
+import com.xenoamess.cluster.ClusterNode;
+
+/*
+ * runs the nodes of a cluster on localhost,and checks a ClusterHashTable of
+ * them against a judger,before,while and after a node joins.
+ */
+public class ClusterHashTableTest {
+	public static int TEST_TURNS = (1 << 16);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 14);
+	public static int TEST_NODES = 3;
+
+	/**
+	 * bytes of requests the proxy of failedJoinTest passes to the joining node
+	 * before it breaks the connection,some pages of puts
+	 */
+	public static int CUT_BYTES = 29 * 2500;
+
+	public static Integer rand() {
+		return (int) (Math.random() * TEST_MAX);
+	}
+
+	static class IntCodec implements KeyValueCodec<Integer, Integer> {
+		@Override
+		public int keySize(Integer key) {
+			return 4;
+		}
+
+		@Override
+		public void writeKey(Integer key, ByteBuffer buffer) {
+			buffer.putInt(key);
+		}
+
+		@Override
+		public Integer readKey(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int valueSize(Integer value) {
+			return 4;
+		}
+
+		@Override
+		public void writeValue(Integer value, ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+
+		@Override
+		public Integer readValue(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+	}
+
+	static boolean equalsOrBothNull(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static boolean sameAs(ClusterHashTable<Integer, Integer> tested, Map<Integer, Integer> judger) {
+		if (tested.size() != judger.size()) {
+			return false;
+		}
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		for (int i = 0; i < TEST_MAX * TEST_THREADS; i++) {
+			futures.add(tested.getAsync(i));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			if (!equalsOrBothNull(futures.get(i).join(), judger.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void singleThreadTest(ClusterHashTable<Integer, Integer> tested) {
+		HashMap<Integer, Integer> judger = new HashMap<Integer, Integer>();
+		boolean findBug = false;
+		for (int i = 0; i < TEST_TURNS; i++) {
+			Integer key = rand();
+			Integer value = rand();
+			if (!equalsOrBothNull(tested.put(key, value), judger.put(key, value))) {
+				System.out.printf("turn %d : suspicious error found : 'put' get wrong answer?\n", i);
+				findBug = true;
+			}
+			key = rand();
+			if (!equalsOrBothNull(tested.remove(key), judger.remove(key))) {
+				System.out.printf("turn %d : suspicious error found : 'remove' get wrong answer?\n", i);
+				findBug = true;
+			}
+		}
+		if (!sameAs(tested, judger)) {
+			System.out.println("suspicious error found : cluster differs from judger at the end");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		for (Integer key : judger.keySet()) {
+			tested.remove(key);
+		}
+		System.out.println("singleThreadTest ends");
+	}
+
+	/*
+	 * each thread owns its own keys and writes them while a node joins,so at
+	 * the end the cluster must hold exactly the last value each thread put.
+	 */
+	static void joinTest(ClusterHashTable<Integer, Integer> tested, List<ClusterNode> nodes, ClusterNode joining)
+			throws InterruptedException, IOException {
+		ConcurrentHashMap<Integer, Integer> judger = new ConcurrentHashMap<Integer, Integer>();
+		for (int i = 0; i < TEST_MAX * TEST_THREADS; i++) {
+			tested.put(i, i);
+			judger.put(i, i);
+		}
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					Integer key = rand() * TEST_THREADS + index;
+					Integer value = rand();
+					if ((i & 3) != 0) {
+						tested.put(key, value);
+						judger.put(key, value);
+					} else {
+						tested.remove(key);
+						judger.remove(key);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		long start = System.nanoTime();
+		tested.addNode(joining.getAddress());
+		System.out.printf("node joined in %.3f s\n", (System.nanoTime() - start) / 1e9);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (sameAs(tested, judger)) {
+			System.out.println("no suspicious errors found.");
+		} else {
+			System.out.println("suspicious error found : cluster differs from judger after the join");
+		}
+		StringBuilder sizes = new StringBuilder();
+		for (ClusterNode node : nodes) {
+			sizes.append(' ').append(node.size());
+		}
+		System.out.println("entries of the nodes :" + sizes + " " + joining.size() + "(joined)");
+		System.out.println("joinTest ends");
+	}
+
+	/**
+	 * a proxy of a node for one connection,which breaks it after passing limit
+	 * bytes of requests
+	 */
+	static class CuttingProxy implements Runnable {
+		final ServerSocket server;
+		final InetSocketAddress target;
+		final int limit;
+
+		CuttingProxy(InetSocketAddress target, int limit) throws IOException {
+			this.server = new ServerSocket(0, 1, target.getAddress());
+			this.target = target;
+			this.limit = limit;
+		}
+
+		InetSocketAddress getAddress() {
+			return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+		}
+
+		@Override
+		public void run() {
+			try (ServerSocket listening = server;
+					Socket client = listening.accept();
+					Socket node = new Socket(target.getAddress(), target.getPort())) {
+				Thread answers = new Thread(() -> copy(node, client, Integer.MAX_VALUE));
+				answers.setDaemon(true);
+				answers.start();
+				copy(client, node, limit);
+			} catch (IOException e) {
+				// the connection is broken anyway
+			}
+		}
+
+		static void copy(Socket from, Socket to, int limit) {
+			byte[] buffer = new byte[4096];
+			try {
+				InputStream in = from.getInputStream();
+				OutputStream out = to.getOutputStream();
+				int passed = 0;
+				while (passed < limit) {
+					int read = in.read(buffer, 0, Math.min(buffer.length, limit - passed));
+					if (read < 0) {
+						break;
+					}
+					out.write(buffer, 0, read);
+					passed += read;
+				}
+			} catch (IOException e) {
+				// closed by the other side
+			}
+		}
+	}
+
+	/*
+	 * a node joins through a proxy which breaks the connection in the middle of
+	 * the move. the entries of the page being moved must stay on the old nodes,
+	 * so the old nodes and the joined node together still hold every entry.
+	 */
+	static void failedJoinTest() throws InterruptedException, IOException {
+		List<ClusterNode> nodes = new ArrayList<ClusterNode>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < TEST_NODES; i++) {
+			ClusterNode node = ClusterNode.start(new InetSocketAddress("127.0.0.1", 0));
+			nodes.add(node);
+			addresses.add(node.getAddress());
+		}
+		ClusterNode joining = ClusterNode.start(new InetSocketAddress("127.0.0.1", 0));
+		CuttingProxy proxy = new CuttingProxy(joining.getAddress(), CUT_BYTES);
+		Thread proxyThread = new Thread(proxy);
+		proxyThread.setDaemon(true);
+		proxyThread.start();
+		boolean findBug = false;
+		try (ClusterHashTable<Integer, Integer> tested = new ClusterHashTable<Integer, Integer>(new IntCodec(),
+				addresses)) {
+			int entries = TEST_MAX * TEST_THREADS;
+			for (int i = 0; i < entries; i++) {
+				tested.put(i, i);
+			}
+			try {
+				tested.addNode(proxy.getAddress());
+				System.out.println("suspicious error found : the join did not fail");
+				findBug = true;
+			} catch (IOException e) {
+				// as expected
+			}
+			long held = joining.size();
+			for (ClusterNode node : nodes) {
+				held += node.size();
+			}
+			if (held < entries) {
+				System.out.printf("suspicious error found : %d of %d entries left on the nodes\n", held, entries);
+				findBug = true;
+			}
+		} finally {
+			for (ClusterNode node : nodes) {
+				node.close();
+			}
+			joining.close();
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("failedJoinTest ends");
+	}
+
+	static void pipelineTest(ClusterHashTable<Integer, Integer> tested) {
+		long start = System.nanoTime();
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		for (int i = 0; i < TEST_TURNS; i++) {
+			futures.add(tested.putAsync(i, i));
+		}
+		for (CompletableFuture<Integer> future : futures) {
+			future.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d pipelined puts in %.3f s,%.0f ops/s\n", TEST_TURNS, seconds, TEST_TURNS / seconds);
+		System.out.println("pipelineTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException, IOException {
+		List<ClusterNode> nodes = new ArrayList<ClusterNode>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < TEST_NODES; i++) {
+			ClusterNode node = ClusterNode.start(new InetSocketAddress("127.0.0.1", 0));
+			nodes.add(node);
+			addresses.add(node.getAddress());
+		}
+		ClusterNode joining = ClusterNode.start(new InetSocketAddress("127.0.0.1", 0));
+		try (ClusterHashTable<Integer, Integer> tested = new ClusterHashTable<Integer, Integer>(new IntCodec(),
+				addresses)) {
+			singleThreadTest(tested);
+			joinTest(tested, nodes, joining);
+			pipelineTest(tested);
+		} finally {
+			for (ClusterNode node : nodes) {
+				node.close();
+			}
+			joining.close();
+		}
+		failedJoinTest();
+	}
+}
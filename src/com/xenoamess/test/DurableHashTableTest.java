@@ -0,0 +1,281 @@
+package com.xenoamess.test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import com.xenoamess.DurableHashTable;
+import com.xenoamess.HashTable;
+import com.xenoamess.KeyValueCodec;
+import com.xenoamess.WriteAheadLog;
+
+public class DurableHashTableTest {
+	public static int TEST_THREADS = 32;
+	public static int TEST_CLEARS = 20000;
+	public static long TIMEOUT_MILLIS = 30000;
+	public static int SNAPSHOT_ENTRIES = (1 << 18);
+	public static int CHECKPOINT_ENTRIES = (1 << 12);
+	public static int CHECKPOINT_TURNS = (1 << 16);
+	public static int CHECKPOINT_THREADS = 4;
+
+	/**
+	 * the largest pool a map can have,which init makes from MAX_POOL_SIZE
+	 */
+	public static int MAX_POOL = (1 << 17);
+
+	static class IntCodec implements KeyValueCodec<Integer, Integer> {
+		@Override
+		public int keySize(Integer key) {
+			return 4;
+		}
+
+		@Override
+		public void writeKey(Integer key, ByteBuffer buffer) {
+			buffer.putInt(key);
+		}
+
+		@Override
+		public Integer readKey(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int valueSize(Integer value) {
+			return 4;
+		}
+
+		@Override
+		public void writeValue(Integer value, ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+
+		@Override
+		public Integer readValue(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+	}
+
+	static void deleteRecursively(Path path) throws IOException {
+		try (Stream<Path> paths = Files.walk(path)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	/*
+	 * clear() takes every lock stripe,and the writers take a stripe and then the
+	 * lock of the map when their put resizes,so clear() must not hold the lock of
+	 * the map while it takes the stripes.
+	 */
+	static void clearTest() throws Exception {
+		Path directory = Files.createTempDirectory("durable-test");
+		DurableHashTable<Integer, Integer> tested = DurableHashTable.open(directory, new IntCodec(), 0,
+				TimeUnit.MICROSECONDS);
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; !stop.get(); i++) {
+					// growing keys,so the puts resize the map again after each clear
+					tested.put(i * TEST_THREADS + index, i);
+				}
+			});
+			threads[t].setDaemon(true);
+			threads[t].start();
+		}
+		Thread clearer = new Thread(() -> {
+			for (int i = 0; i < TEST_CLEARS; i++) {
+				tested.clear();
+			}
+		});
+		clearer.setDaemon(true);
+		clearer.start();
+
+		boolean findBug = false;
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		clearer.join(TIMEOUT_MILLIS);
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+		long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+		if (deadlocked != null) {
+			System.out.printf("suspicious error found : %d threads deadlocked\n", deadlocked.length);
+			findBug = true;
+		} else if (clearer.isAlive()) {
+			System.out.println("suspicious error found : clear did not finish");
+			findBug = true;
+		}
+		if (findBug) {
+			// the stuck threads hold the log
+			System.out.println("clearTest ends");
+			System.exit(1);
+		}
+		int size = tested.size();
+		tested.close();
+		DurableHashTable<Integer, Integer> replayed = DurableHashTable.open(directory, new IntCodec(), 0,
+				TimeUnit.MICROSECONDS);
+		if (replayed.size() != size) {
+			System.out.printf("suspicious error found : replayed size %d,size %d\n", replayed.size(), size);
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		replayed.close();
+		deleteRecursively(directory);
+		System.out.println("clearTest ends");
+	}
+
+	static boolean sameAs(HashTable<Integer, Integer> tested, HashTable<Integer, Integer> judger) {
+		if (tested.size() != judger.size()) {
+			return false;
+		}
+		for (Map.Entry<Integer, Integer> entry : judger.entrySet()) {
+			if (!entry.getValue().equals(tested.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * a map with the largest pool is saved by writeTo and loaded by readFrom.
+	 */
+	static void snapshotTest() throws IOException {
+		Path directory = Files.createTempDirectory("snapshot-test");
+		HashTable<Integer, Integer> judger = new HashTable<Integer, Integer>(1 << 16);
+		for (int i = 0; i < SNAPSHOT_ENTRIES; i++) {
+			judger.put(i, -i);
+		}
+		boolean findBug = false;
+		if (judger.getNowPoolSize() != MAX_POOL) {
+			System.out.printf("suspicious error found : pool %d,not %d\n", judger.getNowPoolSize(), MAX_POOL);
+			findBug = true;
+		}
+		Path path = directory.resolve("snapshot");
+		judger.writeTo(path, new IntCodec());
+		try {
+			HashTable<Integer, Integer> tested = HashTable.readFrom(path, new IntCodec());
+			if (tested.getNowPoolSize() != judger.getNowPoolSize() || !sameAs(tested, judger)) {
+				System.out.println("suspicious error found : loaded map differs");
+				findBug = true;
+			}
+		} catch (IOException e) {
+			System.out.println("suspicious error found : " + e);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		deleteRecursively(directory);
+		System.out.println("snapshotTest ends");
+	}
+
+	/*
+	 * a durable map with the largest pool is checkpointed and opened again from
+	 * the checkpoint.
+	 */
+	static void checkpointTest() throws IOException {
+		Path directory = Files.createTempDirectory("durable-test");
+		DurableHashTable<Integer, Integer> tested = DurableHashTable.open(directory, new IntCodec(), 0,
+				TimeUnit.MICROSECONDS, WriteAheadLog.DEFAULT_SEGMENT_SIZE, 1 << 16);
+		HashTable<Integer, Integer> judger = new HashTable<Integer, Integer>();
+		for (int i = 0; i < CHECKPOINT_ENTRIES; i++) {
+			tested.put(i, -i);
+			judger.put(i, -i);
+		}
+		boolean findBug = false;
+		tested.checkpoint();
+		tested.close();
+		try {
+			DurableHashTable<Integer, Integer> replayed = DurableHashTable.open(directory, new IntCodec(), 0,
+					TimeUnit.MICROSECONDS);
+			if (replayed.getNowPoolSize() != MAX_POOL || !sameAs(replayed, judger)) {
+				System.out.println("suspicious error found : map opened from the checkpoint differs");
+				findBug = true;
+			}
+			replayed.close();
+		} catch (IOException e) {
+			System.out.println("suspicious error found : " + e);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		deleteRecursively(directory);
+		System.out.println("checkpointTest ends");
+	}
+
+	/*
+	 * the writers put and remove their own keys while checkpoints mark the
+	 * rotation of the log under the lock stripes and force the segment after
+	 * them,and small segments rotate by their size meanwhile. the map opened
+	 * from the last checkpoint and the segments after it is the judgers.
+	 */
+	static void concurrentCheckpointTest() throws Exception {
+		Path directory = Files.createTempDirectory("durable-test");
+		DurableHashTable<Integer, Integer> tested = DurableHashTable.open(directory, new IntCodec(), 100,
+				TimeUnit.MICROSECONDS, 1 << 12, 1 << 8);
+		HashTable<Integer, Integer> judger = new HashTable<Integer, Integer>();
+		Thread[] threads = new Thread[CHECKPOINT_THREADS];
+		for (int t = 0; t < CHECKPOINT_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < CHECKPOINT_TURNS / CHECKPOINT_THREADS; i++) {
+					int key = (int) (Math.random() * (CHECKPOINT_ENTRIES / CHECKPOINT_THREADS)) * CHECKPOINT_THREADS
+							+ index;
+					if ((i & 3) == 0) {
+						tested.remove(key);
+						judger.remove(key);
+					} else {
+						tested.put(key, i);
+						judger.put(key, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		int checkpoints = 0;
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread thread : threads) {
+				running |= thread.isAlive();
+			}
+			tested.checkpoint();
+			checkpoints++;
+		}
+		tested.close();
+		boolean findBug = false;
+		try {
+			DurableHashTable<Integer, Integer> replayed = DurableHashTable.open(directory, new IntCodec(), 0,
+					TimeUnit.MICROSECONDS);
+			if (!sameAs(replayed, judger)) {
+				System.out.printf("suspicious error found : map opened after %d checkpoints differs\n", checkpoints);
+				findBug = true;
+			}
+			replayed.close();
+		} catch (IOException e) {
+			System.out.println("suspicious error found : " + e);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		deleteRecursively(directory);
+		System.out.println("concurrentCheckpointTest ends");
+	}
+
+	public static void main(String args[]) throws Exception {
+		snapshotTest();
+		checkpointTest();
+		concurrentCheckpointTest();
+		clearTest();
+	}
+}
@@ -0,0 +1,187 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.HashCounter;
+
+/*
+ * checks HashCounter under concurrent increments:that no count is lost,and
+ * that topK taken while the threads count is ordered,of distinct keys and of
+ * counts not over the final ones,and after them is the biggest counts. topK of
+ * a huge n gives all the keys.
+ */
+public class HashCounterTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 10);
+	public static int TOP = 16;
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * a skewed key,so some keys are counted far more than the others
+	 */
+	static int skewedKey() {
+		return rand(rand(TEST_MAX) + 1);
+	}
+
+	/**
+	 * @return a message if top is not ordered,of distinct keys and of counts
+	 *         within counts,or null
+	 */
+	static String check(List<Entry<Integer, Long>> top, int n, long[] counts) {
+		if (top.size() > n) {
+			return "topK of " + top.size() + " keys";
+		}
+		HashSet<Integer> keys = new HashSet<Integer>();
+		for (int i = 0; i < top.size(); i++) {
+			Entry<Integer, Long> entry = top.get(i);
+			if (!keys.add(entry.getKey())) {
+				return "key " + entry.getKey() + " twice in topK";
+			}
+			if (entry.getValue() <= 0 || entry.getValue() > counts[entry.getKey()]) {
+				return "key " + entry.getKey() + " of count " + entry.getValue() + " over " + counts[entry.getKey()];
+			}
+			if (i > 0 && top.get(i - 1).getValue() < entry.getValue()) {
+				return "topK not ordered at " + i;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the threads increment and add skewed keys,while the main thread takes
+	 * topK. the counts are the sums of the counts of the threads.
+	 */
+	static void multipleThreadTest() throws InterruptedException {
+		HashCounter<Integer> tested = new HashCounter<Integer>();
+		long[][] counted = new long[TEST_THREADS][TEST_MAX];
+		AtomicInteger running = new AtomicInteger(TEST_THREADS);
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					int key = skewedKey();
+					if ((i & 7) == 0) {
+						tested.add(key, 3);
+						counted[index][key] += 3;
+					} else {
+						tested.increment(key);
+						counted[index][key]++;
+					}
+				}
+				running.decrementAndGet();
+			});
+			threads[t].start();
+		}
+		// the counts of the end bound the counts topK sees meanwhile
+		List<List<Entry<Integer, Long>>> tops = new ArrayList<List<Entry<Integer, Long>>>();
+		AtomicBoolean done = new AtomicBoolean(false);
+		while (!done.get()) {
+			done.set(running.get() == 0);
+			tops.add(tested.topK(TOP));
+			Thread.yield();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long[] counts = new long[TEST_MAX];
+		long sum = 0;
+		int keys = 0;
+		for (int k = 0; k < TEST_MAX; k++) {
+			for (int t = 0; t < TEST_THREADS; t++) {
+				counts[k] += counted[t][k];
+			}
+			sum += counts[k];
+			if (counts[k] != 0) {
+				keys++;
+			}
+		}
+		boolean findBug = false;
+		int wrong = 0;
+		for (int k = 0; k < TEST_MAX; k++) {
+			if (tested.get(k) != counts[k]) {
+				wrong++;
+			}
+		}
+		if (wrong != 0 || tested.sum() != sum || tested.size() != keys) {
+			System.out.printf("suspicious error found : %d counts lost,sum %d of %d,%d keys of %d\n", wrong,
+					tested.sum(), sum, tested.size(), keys);
+			findBug = true;
+		}
+		for (List<Entry<Integer, Long>> top : tops) {
+			String error = check(top, TOP, counts);
+			if (error != null) {
+				System.out.println("suspicious error found : during the run " + error);
+				findBug = true;
+				break;
+			}
+		}
+		List<Long> biggest = new ArrayList<Long>();
+		for (long count : counts) {
+			biggest.add(count);
+		}
+		biggest.sort(Collections.reverseOrder());
+		List<Entry<Integer, Long>> top = tested.topK(TOP);
+		String error = check(top, TOP, counts);
+		for (int i = 0; error == null && i < TOP; i++) {
+			if (i >= top.size() || top.get(i).getValue() != (long) biggest.get(i)
+					|| counts[top.get(i).getKey()] != top.get(i).getValue()) {
+				error = "topK is not the biggest counts at " + i;
+			}
+		}
+		if (error != null) {
+			System.out.println("suspicious error found : after the run " + error);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest ends");
+	}
+
+	/*
+	 * topK of 0 is empty,and topK of a huge n is all the keys,without allocating
+	 * for n.
+	 */
+	static void hugeTopKTest() {
+		HashCounter<Integer> tested = new HashCounter<Integer>();
+		for (int k = 0; k < TEST_MAX; k++) {
+			tested.add(k, k + 1);
+		}
+		boolean findBug = false;
+		if (!tested.topK(0).isEmpty()) {
+			System.out.println("suspicious error found : topK(0) is not empty");
+			findBug = true;
+		}
+		try {
+			List<Entry<Integer, Long>> top = tested.topK(Integer.MAX_VALUE);
+			if (top.size() != TEST_MAX || top.get(0).getKey() != TEST_MAX - 1
+					|| top.get(TEST_MAX - 1).getValue() != 1) {
+				System.out.printf("suspicious error found : topK of all gave %d keys\n", top.size());
+				findBug = true;
+			}
+		} catch (RuntimeException | OutOfMemoryError e) {
+			System.out.println("suspicious error found : topK of all threw " + e);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("hugeTopKTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		multipleThreadTest();
+		hugeTopKTest();
+	}
+}
@@ -0,0 +1,249 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.xenoamess.HashMultimap;
+import com.xenoamess.HashTable;
+
+/*
+ * checks HashMultimap under concurrent puts,removes and gets,and
+ * HashTable.compute,on list tables and on tables transformed into skiplists by
+ * keys of the same hash.
+ */
+public class HashMultimapTest {
+	public static int TEST_TURNS = (1 << 16);
+	public static int TEST_THREADS = 4;
+	public static int TEST_KEYS = (1 << 10);
+	public static int TEST_VALUES = (1 << 4);
+
+	/**
+	 * keys of a hash.more than the transform limit,so their table is a skiplist
+	 */
+	public static int COLLIDING_KEYS = 64;
+
+	/**
+	 * a Comparable key whose hash is shared by COLLIDING_KEYS keys
+	 */
+	static final class Collider implements Comparable<Collider> {
+		final int id;
+
+		Collider(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id / COLLIDING_KEYS;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Collider && ((Collider) o).id == id;
+		}
+
+		@Override
+		public int compareTo(Collider o) {
+			return Integer.compare(id, o.id);
+		}
+
+		@Override
+		public String toString() {
+			return "Collider" + id;
+		}
+	}
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/*
+	 * the threads put and remove values of the same keys,each thread its own
+	 * values(v % TEST_THREADS is the thread),and check its values by a judger
+	 * of its own. a reader checks that a get is a set and does not change.
+	 */
+	static <K> void multipleThreadTest(String name, IntFunction<K> keys) throws InterruptedException {
+		HashMultimap<K, Integer> tested = new HashMultimap<K, Integer>();
+		AtomicInteger bugs = new AtomicInteger();
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread reader = new Thread(() -> {
+			while (!stop.get()) {
+				List<Integer> values = tested.get(keys.apply(rand(TEST_KEYS)));
+				List<Integer> copy = new ArrayList<Integer>(values);
+				if (new HashSet<Integer>(copy).size() != copy.size() || copy.contains(null)
+						|| !copy.equals(values)) {
+					bugs.incrementAndGet();
+				}
+			}
+		});
+		reader.start();
+		Thread[] threads = new Thread[TEST_THREADS];
+		List<Map<Integer, Set<Integer>>> judgers = new ArrayList<Map<Integer, Set<Integer>>>();
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			Map<Integer, Set<Integer>> judger = new HashMap<Integer, Set<Integer>>();
+			judgers.add(judger);
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS; i++) {
+					int key = rand(TEST_KEYS);
+					Integer value = rand(TEST_VALUES) * TEST_THREADS + index;
+					Set<Integer> values = judger.computeIfAbsent(key, k -> new HashSet<Integer>());
+					boolean judged;
+					boolean done;
+					if ((i & 1) == 0) {
+						judged = values.add(value);
+						done = tested.put(keys.apply(key), value);
+					} else {
+						judged = values.remove(value);
+						done = tested.remove(keys.apply(key), value);
+					}
+					if (judged != done) {
+						bugs.incrementAndGet();
+					}
+					if (values.isEmpty()) {
+						judger.remove(key);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		stop.set(true);
+		reader.join();
+		boolean findBug = false;
+		if (bugs.get() != 0) {
+			System.out.printf("suspicious error found : %d wrong answers\n", bugs.get());
+			findBug = true;
+		}
+		int size = 0;
+		int keySize = 0;
+		for (int key = 0; key < TEST_KEYS; key++) {
+			Set<Integer> values = new HashSet<Integer>();
+			for (Map<Integer, Set<Integer>> judger : judgers) {
+				values.addAll(judger.getOrDefault(key, new HashSet<Integer>()));
+			}
+			List<Integer> got = tested.get(keys.apply(key));
+			if (got.size() != values.size() || !values.equals(new HashSet<Integer>(got))
+					|| tested.containsKey(keys.apply(key)) == values.isEmpty()) {
+				System.out.printf("suspicious error found : values of key %d differ\n", key);
+				findBug = true;
+				break;
+			}
+			size += values.size();
+			keySize += values.isEmpty() ? 0 : 1;
+		}
+		if (tested.size() != size || tested.keySize() != keySize) {
+			System.out.printf("suspicious error found : size %d keySize %d,judger %d %d\n", tested.size(),
+					tested.keySize(), size, keySize);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest(" + name + ") ends");
+	}
+
+	/*
+	 * isEmpty of a new multimap,after a put,and after the value is removed.
+	 */
+	static void emptyTest() {
+		HashMultimap<Integer, Integer> tested = new HashMultimap<Integer, Integer>();
+		boolean findBug = false;
+		if (!tested.isEmpty()) {
+			System.out.println("suspicious error found : a new multimap is not empty");
+			findBug = true;
+		}
+		tested.put(1, 1);
+		if (tested.isEmpty()) {
+			System.out.println("suspicious error found : a multimap with a value is empty");
+			findBug = true;
+		}
+		tested.remove(1, 1);
+		if (!tested.isEmpty()) {
+			System.out.println("suspicious error found : a multimap whose values are removed is not empty");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("emptyTest ends");
+	}
+
+	/*
+	 * the threads count keys up by compute,on skiplist tables,and now and then
+	 * remove a key by compute,taking its count off the judger,so at the end
+	 * every key has the count of the judger.
+	 */
+	static void computeTest() throws InterruptedException {
+		HashTable<Collider, Integer> tested = new HashTable<Collider, Integer>();
+		AtomicInteger[] counts = new AtomicInteger[TEST_KEYS];
+		for (int i = 0; i < TEST_KEYS; i++) {
+			counts[i] = new AtomicInteger();
+		}
+		AtomicInteger removes = new AtomicInteger();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS; i++) {
+					int key = rand(TEST_KEYS);
+					if ((i & 7) != 0) {
+						tested.compute(new Collider(key), (k, v) -> v == null ? 1 : v + 1);
+						counts[key].getAndIncrement();
+					} else {
+						// the removed count,if any,is taken from the judger
+						Integer[] removed = new Integer[1];
+						tested.compute(new Collider(key), (k, v) -> {
+							removed[0] = v;
+							return null;
+						});
+						if (removed[0] != null) {
+							counts[key].getAndAdd(-removed[0]);
+							removes.getAndIncrement();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		boolean findBug = false;
+		int size = 0;
+		for (int key = 0; key < TEST_KEYS; key++) {
+			Integer value = tested.get(new Collider(key));
+			int count = counts[key].get();
+			if (count == 0 ? value != null : value == null || value != count) {
+				System.out.printf("suspicious error found : key %d is %s,judger %d\n", key, value, count);
+				findBug = true;
+				break;
+			}
+			size += count == 0 ? 0 : 1;
+		}
+		if (tested.size() != size) {
+			System.out.printf("suspicious error found : size %d,judger %d\n", tested.size(), size);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.printf("%d keys removed by compute\n", removes.get());
+		System.out.println("computeTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		emptyTest();
+		multipleThreadTest("spread keys", key -> key);
+		multipleThreadTest("colliding keys", Collider::new);
+		computeTest();
+	}
+}
@@ -0,0 +1,194 @@
+package com.xenoamess.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.HashCounter;
+import com.xenoamess.HashMultimap;
+import com.xenoamess.HashTable;
+import com.xenoamess.HashTableOptions;
+import com.xenoamess.HashTableSet;
+import com.xenoamess.HashingStrategy;
+import com.xenoamess.LoadingHashTable;
+
+/*
+ * checks HashTableOptions combining a hashing strategy,parking mode and a
+ * weight bound,on a HashTable and on the wrappers built on it. the keys are
+ * byte[] found by content,so each lookup is by a copy of the key put.
+ */
+public class HashTableOptionsTest {
+	public static int TEST_TURNS = (1 << 16);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 12);
+	public static long MAXIMUM_WEIGHT = (1 << 12);
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * a new byte[] of the content of i,so it is never the instance put
+	 */
+	static byte[] keyOf(int i) {
+		return new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i };
+	}
+
+	/**
+	 * the weight of a key:its last 3 bits,plus 1
+	 */
+	static int weigh(byte[] k) {
+		return (k[3] & 7) + 1;
+	}
+
+	/*
+	 * threads put,get and remove over a parking map of byte[] keys with a weight
+	 * bound. a value got must be of its key,and at the end totalWeight is the
+	 * weight of the entries,within maximumWeight.
+	 */
+	static void hashTableTest() throws InterruptedException {
+		HashTable<byte[], Integer> tested = new HashTable<byte[], Integer>(new HashTableOptions<byte[], Integer>()
+				.hashingStrategy(HashingStrategy.byteArray()).parking(true)
+				.maximumWeight(MAXIMUM_WEIGHT, (k, v) -> weigh(k)));
+		AtomicInteger bugs = new AtomicInteger();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					int key = rand(TEST_MAX);
+					if ((i & 3) == 0) {
+						tested.remove(keyOf(key));
+					} else if ((i & 3) == 1) {
+						tested.put(keyOf(key), key);
+					} else {
+						Integer v = tested.get(keyOf(key));
+						if (v != null && v != key) {
+							bugs.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long weight = 0;
+		for (byte[] k : tested.keySet()) {
+			weight += weigh(k);
+		}
+		boolean findBug = false;
+		if (!tested.isParking() || tested.getHashingStrategy() != HashingStrategy.byteArray()
+				|| tested.getMaximumWeight() != MAXIMUM_WEIGHT) {
+			System.out.println("suspicious error found : options not combined");
+			findBug = true;
+		}
+		if (bugs.get() != 0) {
+			System.out.printf("suspicious error found : %d values of other keys\n", bugs.get());
+			findBug = true;
+		}
+		if (tested.getTotalWeight() != weight || weight > MAXIMUM_WEIGHT) {
+			System.out.printf("suspicious error found : totalWeight %d,entries weigh %d\n", tested.getTotalWeight(),
+					weight);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("hashTableTest ends");
+	}
+
+	/*
+	 * the wrappers find byte[] keys by content,and stay within the weight bound.
+	 * the multimap counts off the values of the evicted keys.
+	 */
+	static void wrappersTest() {
+		boolean findBug = false;
+
+		HashTableSet<byte[]> set = new HashTableSet<byte[]>(new HashTableOptions<byte[], Object>()
+				.hashingStrategy(HashingStrategy.byteArray()).parking(true)
+				.maximumWeight(MAXIMUM_WEIGHT, (k, v) -> weigh(k)));
+		for (int i = 0; i < TEST_MAX; i++) {
+			set.add(keyOf(i));
+		}
+		int setWeight = 0;
+		for (byte[] k : set) {
+			setWeight += weigh(k);
+		}
+		int contained = 0;
+		for (int i = 0; i < TEST_MAX; i++) {
+			if (set.contains(keyOf(i))) {
+				contained++;
+			}
+		}
+		if (setWeight > MAXIMUM_WEIGHT || set.size() == 0 || contained != set.size()) {
+			System.out.printf("suspicious error found : set of %d keys weighs %d,%d found\n", set.size(), setWeight,
+					contained);
+			findBug = true;
+		}
+
+		HashCounter<byte[]> counter = new HashCounter<byte[]>(new HashTableOptions<byte[], Object>()
+				.hashingStrategy(HashingStrategy.byteArray()).parking(true));
+		for (int i = 0; i < TEST_TURNS; i++) {
+			counter.increment(keyOf(i & 15));
+		}
+		if (counter.size() != 16 || counter.get(keyOf(0)) != TEST_TURNS / 16) {
+			System.out.printf("suspicious error found : counter of %d keys,%d of key 0\n", counter.size(),
+					counter.get(keyOf(0)));
+			findBug = true;
+		}
+
+		HashMultimap<byte[], Integer> multimap = new HashMultimap<byte[], Integer>(
+				new HashTableOptions<byte[], List<Integer>>().hashingStrategy(HashingStrategy.byteArray())
+						.maximumWeight(MAXIMUM_WEIGHT, (k, values) -> values.size()));
+		for (int i = 0; i < TEST_TURNS; i++) {
+			multimap.put(keyOf(rand(TEST_MAX)), i);
+		}
+		int values = 0;
+		for (int i = 0; i < TEST_MAX; i++) {
+			values += multimap.get(keyOf(i)).size();
+		}
+		if (values != multimap.size() || values > MAXIMUM_WEIGHT) {
+			System.out.printf("suspicious error found : multimap of %d values,size %d\n", values, multimap.size());
+			findBug = true;
+		}
+
+		ConcurrentHashMap<String, AtomicInteger> loads = new ConcurrentHashMap<String, AtomicInteger>();
+		LoadingHashTable<byte[], String> cache = new LoadingHashTable<byte[], String>(k -> {
+			loads.computeIfAbsent(Arrays.toString(k), key -> new AtomicInteger()).incrementAndGet();
+			return Arrays.toString(k);
+		}, LoadingHashTable.NEVER, LoadingHashTable.NEVER, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool(),
+				new HashTableOptions<byte[], String>().hashingStrategy(HashingStrategy.byteArray()).parking(true)
+						.maximumWeight(MAXIMUM_WEIGHT, (k, v) -> weigh(k)));
+		int wrong = 0;
+		for (int i = 0; i < TEST_MAX; i++) {
+			if (!Arrays.toString(keyOf(i)).equals(cache.get(keyOf(i)))) {
+				wrong++;
+			}
+		}
+		int cached = 0;
+		for (int i = 0; i < TEST_MAX; i++) {
+			if (cache.getIfPresent(keyOf(i)) != null) {
+				cached++;
+			}
+		}
+		if (wrong != 0 || loads.size() != TEST_MAX || cached != cache.size() || cache.size() == TEST_MAX) {
+			System.out.printf("suspicious error found : %d wrong values,%d of %d values found\n", wrong, cached,
+					cache.size());
+			findBug = true;
+		}
+
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("wrappersTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		hashTableTest();
+		wrappersTest();
+	}
+}
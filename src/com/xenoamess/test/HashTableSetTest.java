@@ -0,0 +1,183 @@
+package com.xenoamess.test;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.xenoamess.HashTableSet;
+
+/*
+ * checks addAll and retainAll of HashTableSet while the set resizes under
+ * them,with keys spread over the tables and with keys of the same hash,whose
+ * tables are skiplists of KeyEntrys.
+ */
+public class HashTableSetTest {
+	public static int TEST_TURNS = (1 << 9);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 18);
+	public static int BATCH_SIZE = 256;
+
+	/**
+	 * keys of a hash in the colliding run
+	 */
+	public static int COLLIDING_KEYS = 16;
+
+	/**
+	 * a Comparable key whose hash is shared by COLLIDING_KEYS keys
+	 */
+	static final class Collider implements Comparable<Collider> {
+		final int id;
+
+		Collider(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id / COLLIDING_KEYS;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Collider && ((Collider) o).id == id;
+		}
+
+		@Override
+		public int compareTo(Collider o) {
+			return Integer.compare(id, o.id);
+		}
+	}
+
+	/**
+	 * the keys of the set but dropped,for retainAll.it is only asked contains.
+	 */
+	static final class AllBut<K> extends AbstractCollection<K> {
+		final Set<K> dropped;
+
+		AllBut(Set<K> dropped) {
+			this.dropped = dropped;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return !dropped.contains(o);
+		}
+
+		@Override
+		public Iterator<K> iterator() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int size() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/*
+	 * each thread adds and retains its own keys(id % TEST_THREADS is the
+	 * thread) in batches,and keeps them in a judger. the set starts with the
+	 * smallest pool,so it resizes while the batches run.
+	 */
+	static <K> void multipleThreadTest(String name, IntFunction<K> keys) throws InterruptedException {
+		HashTableSet<K> tested = new HashTableSet<K>();
+		AtomicInteger bugs = new AtomicInteger();
+		List<Set<K>> judgers = new ArrayList<Set<K>>();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			Set<K> judger = new HashSet<K>();
+			judgers.add(judger);
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS; i++) {
+					Set<K> batch = new HashSet<K>();
+					for (int j = 0; j < BATCH_SIZE; j++) {
+						batch.add(keys.apply(rand(TEST_MAX / TEST_THREADS) * TEST_THREADS + index));
+					}
+					boolean judged;
+					boolean done;
+					if ((i & 3) != 3) {
+						judged = judger.addAll(batch);
+						done = tested.addAll(batch);
+					} else {
+						judged = judger.removeAll(batch);
+						done = tested.retainAll(new AllBut<K>(batch));
+					}
+					if (judged != done) {
+						bugs.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		boolean findBug = false;
+		if (bugs.get() != 0) {
+			System.out.printf("suspicious error found : %d wrong answers\n", bugs.get());
+			findBug = true;
+		}
+		Set<K> judger = new HashSet<K>();
+		for (Set<K> one : judgers) {
+			judger.addAll(one);
+		}
+		if (tested.size() != judger.size() || !judger.equals(new HashSet<K>(tested))) {
+			System.out.printf("suspicious error found : size %d,judger %d\n", tested.size(), judger.size());
+			findBug = true;
+		}
+		for (K k : judger) {
+			if (!tested.contains(k)) {
+				System.out.println("suspicious error found : a key is not contained");
+				findBug = true;
+				break;
+			}
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest(" + name + ") ends");
+	}
+
+	/*
+	 * isEmpty of a new set,after an add,and after the key is removed,and
+	 * containsAll and equals,which AbstractSet answers by it.
+	 */
+	static void emptyTest() {
+		HashTableSet<Integer> tested = new HashTableSet<Integer>();
+		boolean findBug = false;
+		if (!tested.isEmpty() || !tested.equals(new HashSet<Integer>())) {
+			System.out.println("suspicious error found : a new set is not empty");
+			findBug = true;
+		}
+		tested.add(1);
+		if (tested.isEmpty() || !tested.containsAll(Set.of(1)) || !tested.equals(Set.of(1))) {
+			System.out.println("suspicious error found : a set with a key is empty");
+			findBug = true;
+		}
+		tested.remove(1);
+		if (!tested.isEmpty()) {
+			System.out.println("suspicious error found : a set whose key is removed is not empty");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("emptyTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		emptyTest();
+		multipleThreadTest("spread keys", key -> key);
+		multipleThreadTest("colliding keys", Collider::new);
+	}
+}
@@ -0,0 +1,223 @@
+package com.xenoamess.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.xenoamess.HashTable;
+import com.xenoamess.HashTableStats;
+import com.xenoamess.HashTableStatsMXBean;
+
+/*
+ * checks the stats of HashTable:that hits and misses count the gets of the
+ * users and not the probes of the map,that they add up under concurrent gets,
+ * and that the MXBean shows them and resets them.
+ */
+public class HashTableStatsTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 12);
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * @return a message if the stats are not hits and misses,or null
+	 */
+	static String check(HashTableStats stats, long hits, long misses) {
+		if (stats.getHits() != hits || stats.getMisses() != misses) {
+			return String.format("%d hits %d misses,expected %d %d", stats.getHits(), stats.getMisses(), hits,
+					misses);
+		}
+		return null;
+	}
+
+	/*
+	 * gets and getOrDefaults are counted one each. containsKey,remove,
+	 * putIfAbsent of null,ceilingKey,floorKey and the scans of the ordered views
+	 * look the keys up too,and are not counted.
+	 */
+	static void countersTest() {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		tested.enableOrderedIndex();
+		for (int i = 0; i < TEST_MAX; i += 2) {
+			tested.put(i, i);
+		}
+		boolean findBug = false;
+		String error = check(tested.getStats(), 0, 0);
+		if (error != null || tested.getStats().isEnabled()) {
+			System.out.println("suspicious error found : stats counted before enabled : " + error);
+			findBug = true;
+		}
+		tested.enableStats();
+		long hits = 0;
+		long misses = 0;
+		for (int i = 0; i < TEST_TURNS; i++) {
+			int key = rand(TEST_MAX);
+			if ((i & 1) == 0) {
+				tested.get(key);
+			} else {
+				tested.getOrDefault(key, -1);
+			}
+			if ((key & 1) == 0) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		error = check(tested.getStats(), hits, misses);
+		if (error != null) {
+			System.out.println("suspicious error found : gets counted wrong : " + error);
+			findBug = true;
+		}
+		for (int i = 0; i < TEST_MAX; i++) {
+			tested.containsKey(i);
+			tested.putIfAbsent(i, null);
+			tested.ceilingKey(i);
+			tested.floorKey(i);
+		}
+		SortedMap<Integer, Integer> view = tested.subMap(0, TEST_MAX);
+		view.firstKey();
+		view.lastKey();
+		for (Map.Entry<Integer, Integer> entry : view.entrySet()) {
+			entry.getValue();
+		}
+		for (int i = 1; i < TEST_MAX; i += 4) {
+			tested.remove(i);
+			tested.remove(i + 1);
+		}
+		error = check(tested.getStats(), hits, misses);
+		if (error != null) {
+			System.out.println("suspicious error found : probes of the map counted : " + error);
+			findBug = true;
+		}
+		// puts growing the pool,so it resizes
+		int poolSize = tested.getNowPoolSize();
+		for (int i = TEST_MAX; tested.getNowPoolSize() == poolSize; i++) {
+			tested.put(i, i);
+		}
+		HashTableStats stats = tested.getStats();
+		long tables = 0;
+		for (long count : stats.getChainLengthHistogram()) {
+			tables += count;
+		}
+		if (stats.getResizeCount() < 1 || stats.getResizeNanos() <= 0 || tables != stats.getPoolSize()
+				|| stats.getSize() != tested.size()) {
+			System.out.printf("suspicious error found : %d resizes,%d of %d tables,size %d of %d\n",
+					stats.getResizeCount(), tables, stats.getPoolSize(), stats.getSize(), tested.size());
+			findBug = true;
+		}
+		tested.disableStats();
+		tested.get(0);
+		error = check(tested.getStats(), 0, 0);
+		if (error != null || tested.getStats().isEnabled()) {
+			System.out.println("suspicious error found : stats counted after disabled : " + error);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("countersTest ends");
+	}
+
+	/*
+	 * the threads get while the others put and remove,so the counters are added
+	 * by many threads at once. at the end hits plus misses is the number of gets.
+	 */
+	static void multipleThreadTest() throws InterruptedException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		tested.enableStats();
+		long[] hits = new long[TEST_THREADS];
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					int key = rand(TEST_MAX);
+					if ((i & 3) == 0) {
+						tested.put(key, key);
+					} else if ((i & 3) == 1) {
+						tested.remove(key);
+					} else if (tested.get(key) != null) {
+						hits[index]++;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long allHits = 0;
+		for (long count : hits) {
+			allHits += count;
+		}
+		long gets = (TEST_TURNS / TEST_THREADS) / 2 * TEST_THREADS;
+		String error = check(tested.getStats(), allHits, gets - allHits);
+		if (error != null) {
+			System.out.println("suspicious error found : " + error);
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest ends");
+	}
+
+	/*
+	 * the registered MXBean shows the stats of the map,resets the counters,and
+	 * is gone once unregistered.
+	 */
+	static void mxBeanTest() throws JMException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		for (int i = 0; i < TEST_MAX; i++) {
+			tested.put(i, i);
+		}
+		ObjectName name = tested.registerStatsMXBean("HashTableStatsTest");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		boolean findBug = false;
+		try {
+			for (int i = 0; i < TEST_MAX * 4; i++) {
+				tested.get(i);
+			}
+			HashTableStatsMXBean bean = JMX.newMXBeanProxy(server, name, HashTableStatsMXBean.class);
+			if (!bean.isEnabled() || bean.getHits() != TEST_MAX || bean.getMisses() != TEST_MAX * 3
+					|| bean.getHitRate() != 0.25 || bean.getSize() != TEST_MAX
+					|| bean.getPoolSize() != tested.getNowPoolSize()) {
+				System.out.printf("suspicious error found : bean shows %d hits %d misses,size %d pool %d\n",
+						bean.getHits(), bean.getMisses(), bean.getSize(), bean.getPoolSize());
+				findBug = true;
+			}
+			if (!Long.valueOf(TEST_MAX).equals(server.getAttribute(name, "Hits"))) {
+				System.out.println("suspicious error found : attribute Hits is " + server.getAttribute(name, "Hits"));
+				findBug = true;
+			}
+			bean.resetCounters();
+			if (bean.getHits() != 0 || bean.getMisses() != 0 || !tested.isStatsEnabled()) {
+				System.out.printf("suspicious error found : %d hits %d misses after reset\n", bean.getHits(),
+						bean.getMisses());
+				findBug = true;
+			}
+		} finally {
+			server.unregisterMBean(name);
+		}
+		if (server.isRegistered(name)) {
+			System.out.println("suspicious error found : bean still registered");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("mxBeanTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException, JMException {
+		countersTest();
+		multipleThreadTest();
+		mxBeanTest();
+	}
+}
@@ -1,117 +1,106 @@
 package com.xenoamess.test;
 
-import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
 import com.xenoamess.HashTable;
 
+/**
+ * the threads put,get and remove random keys at full speed,recording every
+ * operation into their own HistoryRecorder. they run in rounds:at the end of a
+ * round they wait for each other,and the history of the round is checked by
+ * LinearizabilityChecker while the map is quiescent,then the recorders are
+ * reused. so the turns are not limited by memory,and billions of operations
+ * can be checked.
+ */
 public class HashTableTest {
-	public static int TEST_TURNS = (1 << 16);
+	public static long TEST_TURNS = (1 << 16);
 	public static int TEST_THREADS = 12;
 	public static int TEST_MAX = (1 << 16);
-	public static final String tester = "XenoAmess";
-	public static HashTable<Integer, Integer> testedHashTable;
 
-	public static boolean LOG = true;
+	/**
+	 * if the tested map runs in parking mode
+	 */
+	public static boolean PARKING = false;
 
-	public static Integer rand() {
-		return (int) (Math.random() * TEST_MAX);
-	}
+	/**
+	 * turns of a thread in a round
+	 */
+	public static int ROUND_TURNS = (1 << 16);
+	public static final String tester = "XenoAmess";
+	public static HashTable<Integer, Integer> testedHashTable;
 
-	static PrintStream printStream = null;
+	static HistoryRecorder[] recorders;
+	static LinearizabilityChecker checker;
 
-	static void init(String fileName) {
-		if (printStream != null) {
-			printStream.flush();
-			printStream.close();
-			printStream = null;
-		}
-		if (fileName == null) {
-			printStream = System.out;
-			return;
-		}
-		try {
-			printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(fileName)));
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-	}
+	/**
+	 * values of the keys at the start of the round
+	 */
+	static int[] before;
+	static int[] after;
+	static long rounds;
+	static long suspiciousErrors;
 
 	static void println(Object object) {
-		if (LOG)
-			printStream.println(object);
+		System.out.println(object);
 	}
 
 	static void printf(String format, Object... args) {
-		if (LOG)
-			printStream.printf(format, args);
+		System.out.printf(format, args);
 	}
 
-	static volatile int CNT;
-
-	static class Move {
-		int method;
-		Integer key;
-		Integer value;
-		Integer res;
-
-		public Move(int method, Integer key, Integer value, Integer res) {
-			this.method = method;
-			this.key = key;
-			this.value = value;
-			this.res = res;
-		}
+	/**
+	 * a value put is unique in a round,so a result tells which put it is from.
+	 */
+	static int valueOf(int threadIndex, long turn) {
+		return (threadIndex << 24) | (int) (turn & 0xffffff);
 	}
 
-	static ConcurrentLinkedDeque<Move> arr;
-
 	static class TestThread implements Runnable {
 		int index;
+		CyclicBarrier barrier;
 
-		TestThread(int index) {
+		TestThread(int index, CyclicBarrier barrier) {
 			super();
 			this.index = index;
+			this.barrier = barrier;
 		}
 
 		@Override
 		public void run() {
-			// TODO Auto-generated method stub
-			for (int i = 0; i < TEST_TURNS; i++) {
-				int key;
-				int value;
-
-				key = rand();
-				value = rand();
-				printf("thread %d , turns %d , before insert , arguments:%d %d\n", this.index, i, key, value);
-				arr.add(new Move(0, key, value, null));
-				testedHashTable.put(key, value);
-				// printf("thread %d , turns %d , after insert , arguments:%d %d\n",
-				// this.index, i, key, value);
-
-				key = rand();
-				// printf("thread %d , turns %d , before get , arguments:%d\n",
-				// this.index, i, key);
-				Integer res2 = testedHashTable.get(key);
-				printf("thread %d , turns %d , after get , arguments:%d , res=%d\n", this.index, i, key,
-						res2 == null ? -1 : res2.intValue());
-				arr.add(new Move(1, key, value, res2));
-
-				key = rand();
-				// printf("thread %d , turns %d , before delete , arguments:%d\n",
-				// this.index, i, key);
-				Integer res3 = testedHashTable.remove(key);
-				printf("thread %d , turns %d , after delete , arguments:%d , res=%d\n", this.index, i, key,
-						res3 == null ? -1 : res3.intValue());
-				arr.add(new Move(2, key, value, res3));
+			HistoryRecorder recorder = recorders[index];
+			SplittableRandom random = new SplittableRandom(index);
+			long i = 0;
+			while (i < TEST_TURNS) {
+				long roundEnd = Math.min(TEST_TURNS, i + ROUND_TURNS);
+				for (; i < roundEnd; i++) {
+					int key = random.nextInt(TEST_MAX);
+					int value = valueOf(index, i);
+					long invoke = System.nanoTime();
+					Integer res = testedHashTable.put(key, value);
+					recorder.record(HistoryRecorder.PUT, key, value, res, invoke, System.nanoTime());
+
+					key = random.nextInt(TEST_MAX);
+					invoke = System.nanoTime();
+					res = testedHashTable.get(key);
+					recorder.record(HistoryRecorder.GET, key, 0, res, invoke, System.nanoTime());
+
+					key = random.nextInt(TEST_MAX);
+					invoke = System.nanoTime();
+					res = testedHashTable.remove(key);
+					recorder.record(HistoryRecorder.REMOVE, key, 0, res, invoke, System.nanoTime());
+				}
+				try {
+					barrier.await();
+				} catch (InterruptedException | BrokenBarrierException e) {
+					e.printStackTrace();
+					return;
+				}
 			}
-
-			CNT--;
 		}
 	}
 
@@ -125,98 +114,104 @@ public class HashTableTest {
 		}.getClassName();
 		println("TestName: " + className);
 		println("Tester: " + tester);
+		println("Parking: " + PARKING);
 		println("");
 	}
 
-	static void multipleThreadTest() {
-		arr = new ConcurrentLinkedDeque<Move>();
-		CNT = TEST_THREADS;
-		testedHashTable = new HashTable<Integer, Integer>(64);
-		for (int i = 0; i < TEST_THREADS; i++) {
-			new Thread(new TestThread(i)).start();
-		}
-		while (CNT != 0) {
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	/**
+	 * run when every thread finished a round,so the map is quiescent.
+	 */
+	static void checkRound() {
+		int present = 0;
+		for (int key = 0; key < TEST_MAX; key++) {
+			Integer value = testedHashTable.get(key);
+			after[key] = value == null ? HistoryRecorder.ABSENT : value.intValue();
+			if (value != null) {
+				present++;
 			}
 		}
-		println("multipleThreadTest ends");
+		if (present != testedHashTable.size()) {
+			printf("round %d : suspicious error found : size is %d but %d keys are present\n", rounds,
+					testedHashTable.size(), present);
+			suspiciousErrors++;
+		}
+		List<String> violations = checker.check(recorders, before, after);
+		for (int i = 0; i < violations.size() && i < LinearizabilityChecker.MAX_REPORTED; i++) {
+			printf("round %d : suspicious error found : %s\n", rounds, violations.get(i));
+		}
+		suspiciousErrors += violations.size();
+		for (HistoryRecorder recorder : recorders) {
+			recorder.clear();
+		}
+		int[] swap = before;
+		before = after;
+		after = swap;
+		rounds++;
 	}
 
-	static void singleThreadTest() {
-		arr = new ConcurrentLinkedDeque<Move>();
-		CNT = 1;
-		testedHashTable = new HashTable<Integer, Integer>(64);
-		new Thread(new TestThread(0)).start();
-
-		while (CNT != 0) {
+	static void runTest(int threads) {
+		if (threads >= (1 << 7)) {
+			throw new IllegalArgumentException("too many threads for valueOf");
+		}
+		testedHashTable = new HashTable<Integer, Integer>(64, PARKING);
+		recorders = new HistoryRecorder[threads];
+		for (int i = 0; i < threads; i++) {
+			recorders[i] = new HistoryRecorder(ROUND_TURNS * 3);
+		}
+		checker = new LinearizabilityChecker(TEST_MAX);
+		before = new int[TEST_MAX];
+		after = new int[TEST_MAX];
+		Arrays.fill(before, HistoryRecorder.ABSENT);
+		rounds = 0;
+		suspiciousErrors = 0;
+
+		CyclicBarrier barrier = new CyclicBarrier(threads, HashTableTest::checkRound);
+		Thread[] testThreads = new Thread[threads];
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			testThreads[i] = new Thread(new TestThread(i, barrier));
+			testThreads[i].start();
+		}
+		for (Thread thread : testThreads) {
 			try {
-				Thread.sleep(50);
+				thread.join();
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
 		}
-		println("singleThreadTest ends");
-	}
-
-	static void findSuspiciousError() {
+		long nanos = System.nanoTime() - start;
+		printf("%d operations checked in %d rounds,%.1f s\n", checker.getCheckedOperations(), rounds, nanos / 1e9);
 		println("Size : " + testedHashTable.size());
 		println("nowPoolSize : " + testedHashTable.getNowPoolSize());
-		ConcurrentHashMap<Integer, Integer> judger = new ConcurrentHashMap<Integer, Integer>();
-		int i = 4;
-		boolean findBug = false;
-		for (Move move : arr) {
-			i++;
-			if (move.method == 0) {
-				judger.put(move.key, move.value);
-			} else if (move.method == 1) {
-				Integer res2 = judger.get(move.key);
-				if (((res2 == null) != (move.res == null)) || (res2 != null && !res2.equals(move.res))) {
-					printf("at Line %d : suspicious error found : 'get' get wrong answer?\n", i);
-					findBug = true;
-				}
-			} else if (move.method == 2) {
-				Integer res2 = judger.remove(move.key);
-				if (((res2 == null) != (move.res == null)) || (res2 != null && !res2.equals(move.res))) {
-					printf("at Line %d : suspicious error found : 'delete' get wrong answer?\n", i);
-					findBug = true;
-				}
-			}
-		}
-		if (!findBug) {
+		if (suspiciousErrors == 0) {
 			println("no suspicious errors found.");
+		} else {
+			println(suspiciousErrors + " suspicious errors found.");
 		}
-		println("findSuspiciousError ends");
 	}
 
-	public static void onExit() {
-		if (printStream != null) {
-			printStream.flush();
-			printStream.close();
-			printStream = null;
-		}
+	static void multipleThreadTest() {
+		runTest(TEST_THREADS);
+		println("multipleThreadTest ends");
 	}
 
-	public static void main(String args[]) {
-		// LOG = false;
+	static void singleThreadTest() {
+		runTest(1);
+		println("singleThreadTest ends");
+	}
 
-		init("singleThreadTest.txt");
-		// init(null);
+	/**
+	 * @param args
+	 *            turns of each thread of the long test,1<<20 if not given,and
+	 *            "parking" to test a map in parking mode
+	 */
+	public static void main(String args[]) {
+		PARKING = args.length > 1 && "parking".equals(args[1]);
 		printHead();
 		singleThreadTest();
-		findSuspiciousError();
-
-		init("multipleThreadTest.txt");
-		// init(null);
-		printHead();
 		multipleThreadTest();
-		findSuspiciousError();
 
-		TEST_TURNS = 1 << 20;
-		LOG = false;
+		TEST_TURNS = args.length > 0 ? Long.parseLong(args[0]) : 1 << 20;
 		multipleThreadTest();
-		onExit();
 	}
 }
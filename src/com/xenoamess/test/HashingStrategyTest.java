@@ -0,0 +1,156 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.xenoamess.HashTable;
+import com.xenoamess.HashingStrategy;
+
+/*
+ * checks the HashTables of the strategies of HashingStrategy:that byteArray()
+ * and charArray() find the keys by a copy of their content,and identity() by
+ * the instance only,also when the keys collide in one long list,which a
+ * natural map would transform into a skiplist. a table of such a strategy is
+ * never transformed,so identical Comparable keys stay apart.
+ */
+public class HashingStrategyTest {
+	/**
+	 * blocks of the colliding arrays,which give 1<<BLOCKS arrays
+	 */
+	public static int BLOCKS = 8;
+
+	/**
+	 * identical keys colliding in one table:over TRANSFORM_LIMIT and under
+	 * REHASH_THRESHOLD,so the table stays a list of the unseeded pool
+	 */
+	public static int IDENTITY_KEYS = 32;
+
+	/**
+	 * @return the i-th of the arrays of BLOCKS blocks {0,31} or {1,0},whose
+	 *         Arrays.hashCode are all the same
+	 */
+	static int[] collidingContent(int i) {
+		int[] res = new int[BLOCKS * 2];
+		for (int b = 0; b < BLOCKS; b++) {
+			if ((i >>> b & 1) == 0) {
+				res[b * 2 + 1] = 31;
+			} else {
+				res[b * 2] = 1;
+			}
+		}
+		return res;
+	}
+
+	static byte[] bytesOf(int[] content) {
+		byte[] res = new byte[content.length];
+		for (int i = 0; i < content.length; i++) {
+			res[i] = (byte) content[i];
+		}
+		return res;
+	}
+
+	static char[] charsOf(int[] content) {
+		char[] res = new char[content.length];
+		for (int i = 0; i < content.length; i++) {
+			res[i] = (char) content[i];
+		}
+		return res;
+	}
+
+	/**
+	 * @return number of colliding keys not found by a copy,or found as other
+	 *         keys,or not kept as the instance put
+	 */
+	static <K> int checkContent(HashingStrategy<K> strategy, IntFunction<K> keyOf) {
+		HashTable<K, Integer> tested = new HashTable<K, Integer>(64, strategy);
+		IdentityHashMap<K, Integer> put = new IdentityHashMap<K, Integer>();
+		int wrong = 0;
+		for (int i = 0; i < (1 << BLOCKS); i++) {
+			K k = keyOf.apply(i);
+			if (strategy.hash(k) != strategy.hash(keyOf.apply(0))) {
+				wrong++;
+			}
+			tested.put(k, i);
+			put.put(k, i);
+		}
+		for (int i = 0; i < (1 << BLOCKS); i++) {
+			Integer v = tested.get(keyOf.apply(i));
+			if (v == null || v != i) {
+				wrong++;
+			}
+		}
+		for (K k : tested.keySet()) {
+			if (!put.containsKey(k)) {
+				wrong++;
+			}
+		}
+		if (tested.size() != (1 << BLOCKS) || tested.getHashingStrategy() != strategy) {
+			wrong++;
+		}
+		return wrong;
+	}
+
+	/*
+	 * arrays of the same hash and different content are found by copies of
+	 * their content,and the keys are the arrays put.
+	 */
+	static void arrayTest() {
+		int wrong = checkContent(HashingStrategy.byteArray(), i -> bytesOf(collidingContent(i)));
+		wrong += checkContent(HashingStrategy.charArray(), i -> charsOf(collidingContent(i)));
+		if (wrong != 0) {
+			System.out.printf("suspicious error found : %d wrong keys\n", wrong);
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("arrayTest ends");
+	}
+
+	/*
+	 * equal Strings of different instances are different keys of identity(),
+	 * also IDENTITY_KEYS of them in one table,where a transform into a skiplist
+	 * ordering them by compareTo would make them one.
+	 */
+	static void identityTest() {
+		HashingStrategy<Object> strategy = HashingStrategy.identity();
+		HashTable<String, Integer> tested = new HashTable<String, Integer>(64, strategy);
+		int mask = tested.getNowPoolSize() - 1;
+		int table = -1;
+		List<String> keys = new ArrayList<String>();
+		while (keys.size() < IDENTITY_KEYS) {
+			String k = new String("key");
+			int h = strategy.hash(k);
+			// the same low bits,before and after spread
+			int index = (h & mask) | ((h >>> 16 & mask) << 16);
+			if (table == -1) {
+				table = index;
+			}
+			if (index == table) {
+				keys.add(k);
+			}
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			tested.put(keys.get(i), i);
+		}
+		int wrong = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			Integer v = tested.get(keys.get(i));
+			if (v == null || v != i) {
+				wrong++;
+			}
+		}
+		if (wrong != 0 || tested.size() != IDENTITY_KEYS || tested.get("key") != null
+				|| tested.getNowPoolSize() != mask + 1) {
+			System.out.printf("suspicious error found : %d wrong keys,size %d\n", wrong, tested.size());
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("identityTest ends");
+	}
+
+	public static void main(String args[]) {
+		arrayTest();
+		identityTest();
+	}
+}
@@ -0,0 +1,79 @@
+package com.xenoamess.test;
+
+/**
+ * HistoryRecorder records the operations of one thread on a map of int keys
+ * and int values. the operations are written into preallocated primitive ring
+ * arrays,so recording allocates nothing and costs about two nanoTime calls,and
+ * the tested map runs at full speed. the history is checked offline by
+ * LinearizabilityChecker.
+ * <p>
+ * the ring is reused:the owner thread must stop before capacity operations are
+ * recorded,untill the history is checked and clear() is called.
+ */
+public class HistoryRecorder {
+	public static final byte PUT = 0;
+	public static final byte GET = 1;
+	public static final byte REMOVE = 2;
+
+	/**
+	 * value of an absent key
+	 */
+	public static final int ABSENT = -1;
+
+	final long[] invokeTimes;
+	final long[] responseTimes;
+	final int[] keys;
+	final int[] arguments;
+	final int[] results;
+	final byte[] types;
+	final int mask;
+	int size = 0;
+
+	/**
+	 * @param capacity
+	 *            rounded up to a power of 2
+	 */
+	public HistoryRecorder(int capacity) {
+		int length = 1;
+		while (length < capacity) {
+			length <<= 1;
+		}
+		this.mask = length - 1;
+		this.invokeTimes = new long[length];
+		this.responseTimes = new long[length];
+		this.keys = new int[length];
+		this.arguments = new int[length];
+		this.results = new int[length];
+		this.types = new byte[length];
+	}
+
+	public void record(byte type, int key, int argument, Integer result, long invokeTime, long responseTime) {
+		int index = size++ & mask;
+		types[index] = type;
+		keys[index] = key;
+		arguments[index] = argument;
+		results[index] = result == null ? ABSENT : result.intValue();
+		invokeTimes[index] = invokeTime;
+		responseTimes[index] = responseTime;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return if more operations are recorded than the ring holds,so the oldest
+	 *         are lost
+	 */
+	public boolean overflowed() {
+		return size > mask + 1;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,347 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * LinearizabilityChecker checks the histories recorded by HistoryRecorders
+ * against a sequential map,offline.
+ * <p>
+ * a map is linearizable if every key is(the keys are independent),so the
+ * operations are grouped by key and each group is checked alone,with the
+ * search of Wing and Gong as improved by Lowe:try to linearize a pending
+ * operation whose call is before the first return left,and backtrack if the
+ * result differs from the sequential model. the configurations already seen
+ * are cached,so the search stays small.
+ * <p>
+ * a round starts and ends with the map quiescent. the value of each key before
+ * the round is the initial state of its model,and the value after the round is
+ * checked as one more get after every operation of the round.
+ */
+public class LinearizabilityChecker {
+
+	/**
+	 * times are relative to the first invoke of the round,and must fit in
+	 * TIME_BITS bits
+	 */
+	static final int TIME_BITS = 40;
+	static final long QUIESCENT_TIME = (1L << TIME_BITS) - 1;
+	static final int MAX_GROUP_SIZE = (1 << (63 - TIME_BITS - 1)) - 1;
+
+	/**
+	 * an event is time,then a bit of 0 for a call and 1 for a return,then
+	 * INDEX_BITS bits of the operation
+	 */
+	static final int INDEX_BITS = 63 - TIME_BITS - 1;
+	static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+	static final long RETURN_BIT = 1L << INDEX_BITS;
+
+	/**
+	 * print at most it histories of bad keys
+	 */
+	public static int MAX_REPORTED = 4;
+
+	final int keySpace;
+
+	int[] groupStarts;
+	int[] groupThreads = new int[0];
+	int[] groupIndexes = new int[0];
+
+	// the group being checked
+	long[] invokeTimes = new long[16];
+	long[] responseTimes = new long[16];
+	byte[] types = new byte[16];
+	int[] arguments = new int[16];
+	int[] results = new int[16];
+	long[] events = new long[32];
+	int[] next = new int[34];
+	int[] previous = new int[34];
+	int[] callNodes = new int[16];
+	int[] returnNodes = new int[16];
+	int[] stackOperations = new int[16];
+	int[] stackStates = new int[16];
+
+	long checkedOperations = 0;
+
+	/**
+	 * @param keySpace
+	 *            keys are in [0,keySpace)
+	 */
+	public LinearizabilityChecker(int keySpace) {
+		this.keySpace = keySpace;
+		this.groupStarts = new int[keySpace + 1];
+	}
+
+	public long getCheckedOperations() {
+		return checkedOperations;
+	}
+
+	/**
+	 * check one round.
+	 *
+	 * @param before
+	 *            value of every key before the round,or ABSENT
+	 * @param after
+	 *            value of every key after the round,or ABSENT
+	 * @return descriptions of the keys whose histories are not linearizable
+	 */
+	public List<String> check(HistoryRecorder[] recorders, int[] before, int[] after) {
+		List<String> res = new ArrayList<String>();
+		int total = 0;
+		long roundStart = Long.MAX_VALUE;
+		for (HistoryRecorder recorder : recorders) {
+			if (recorder.overflowed()) {
+				throw new IllegalStateException("recorder overflowed,the round is longer than its capacity");
+			}
+			total += recorder.size;
+			for (int i = 0; i < recorder.size; i++) {
+				roundStart = Math.min(roundStart, recorder.invokeTimes[i]);
+			}
+		}
+		group(recorders, total);
+
+		for (int key = 0; key < keySpace; key++) {
+			int start = groupStarts[key];
+			int size = groupStarts[key + 1] - start;
+			checkedOperations += size;
+			if (size == 0) {
+				if (before[key] != after[key]) {
+					res.add("key " + key + " : changed from " + before[key] + " to " + after[key]
+							+ " without operations");
+				}
+				continue;
+			}
+			load(recorders, start, size, roundStart, after[key]);
+			if (!linearizable(size + 1, before[key])) {
+				res.add(describe(key, size + 1, before[key]));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * counting sort the operations by key into groupThreads and groupIndexes.
+	 */
+	void group(HistoryRecorder[] recorders, int total) {
+		if (groupThreads.length < total) {
+			groupThreads = new int[total];
+			groupIndexes = new int[total];
+		}
+		Arrays.fill(groupStarts, 0);
+		for (HistoryRecorder recorder : recorders) {
+			for (int i = 0; i < recorder.size; i++) {
+				groupStarts[recorder.keys[i] + 1]++;
+			}
+		}
+		for (int key = 0; key < keySpace; key++) {
+			groupStarts[key + 1] += groupStarts[key];
+		}
+		int[] cursors = Arrays.copyOf(groupStarts, keySpace);
+		for (int t = 0; t < recorders.length; t++) {
+			HistoryRecorder recorder = recorders[t];
+			for (int i = 0; i < recorder.size; i++) {
+				int position = cursors[recorder.keys[i]]++;
+				groupThreads[position] = t;
+				groupIndexes[position] = i;
+			}
+		}
+	}
+
+	void ensureCapacity(int operations) {
+		if (invokeTimes.length >= operations) {
+			return;
+		}
+		int length = Math.max(operations, invokeTimes.length << 1);
+		invokeTimes = new long[length];
+		responseTimes = new long[length];
+		types = new byte[length];
+		arguments = new int[length];
+		results = new int[length];
+		events = new long[length << 1];
+		next = new int[(length << 1) + 2];
+		previous = new int[(length << 1) + 2];
+		callNodes = new int[length];
+		returnNodes = new int[length];
+		stackOperations = new int[length];
+		stackStates = new int[length];
+	}
+
+	/**
+	 * copy the group of a key,and the quiescent get after it,into the arrays of
+	 * the group being checked.
+	 */
+	void load(HistoryRecorder[] recorders, int start, int size, long roundStart, int after) {
+		if (size + 1 > MAX_GROUP_SIZE) {
+			throw new IllegalStateException("too many operations of a key in a round: " + size);
+		}
+		ensureCapacity(size + 1);
+		for (int i = 0; i < size; i++) {
+			HistoryRecorder recorder = recorders[groupThreads[start + i]];
+			int index = groupIndexes[start + i];
+			invokeTimes[i] = recorder.invokeTimes[index] - roundStart;
+			responseTimes[i] = recorder.responseTimes[index] - roundStart;
+			if (responseTimes[i] >= QUIESCENT_TIME) {
+				throw new IllegalStateException("round is too long");
+			}
+			types[i] = recorder.types[index];
+			arguments[i] = recorder.arguments[index];
+			results[i] = recorder.results[index];
+		}
+		invokeTimes[size] = QUIESCENT_TIME;
+		responseTimes[size] = QUIESCENT_TIME;
+		types[size] = HistoryRecorder.GET;
+		results[size] = after;
+	}
+
+	/**
+	 * @return the state after operation,or Integer.MIN_VALUE if its result is
+	 *         not the one of the model at state
+	 */
+	int apply(int operation, int state) {
+		if (results[operation] != state) {
+			return Integer.MIN_VALUE;
+		}
+		switch (types[operation]) {
+		case HistoryRecorder.PUT:
+			return arguments[operation];
+		case HistoryRecorder.REMOVE:
+			return HistoryRecorder.ABSENT;
+		default:
+			return state;
+		}
+	}
+
+	static final class Configuration {
+		final BitSet linearized;
+		final int state;
+
+		Configuration(BitSet linearized, int state) {
+			this.linearized = linearized;
+			this.state = state;
+		}
+
+		@Override
+		public int hashCode() {
+			return linearized.hashCode() * 31 + state;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Configuration)) {
+				return false;
+			}
+			Configuration other = (Configuration) o;
+			return state == other.state && linearized.equals(other.linearized);
+		}
+	}
+
+	/**
+	 * @return if the loaded group of size operations is linearizable from
+	 *         initial
+	 */
+	boolean linearizable(int size, int initial) {
+		// every call sorts before every return of the same time,so they are
+		// taken as overlapping
+		int eventCount = size << 1;
+		for (int i = 0; i < size; i++) {
+			events[i << 1] = (invokeTimes[i] << (INDEX_BITS + 1)) | i;
+			events[(i << 1) + 1] = (responseTimes[i] << (INDEX_BITS + 1)) | RETURN_BIT | i;
+		}
+		Arrays.sort(events, 0, eventCount);
+
+		// node 0 is the head,node eventCount+1 is the tail,node j+1 is events[j]
+		int tail = eventCount + 1;
+		for (int node = 0; node <= tail; node++) {
+			next[node] = node + 1;
+			previous[node] = node - 1;
+		}
+		for (int j = 0; j < eventCount; j++) {
+			int operation = (int) (events[j] & INDEX_MASK);
+			if ((events[j] & RETURN_BIT) == 0) {
+				callNodes[operation] = j + 1;
+			} else {
+				returnNodes[operation] = j + 1;
+			}
+		}
+
+		HashSet<Configuration> cache = new HashSet<Configuration>();
+		BitSet linearized = new BitSet(size);
+		int state = initial;
+		int depth = 0;
+		int node = next[0];
+		while (next[0] != tail) {
+			long event = events[node - 1];
+			int operation = (int) (event & INDEX_MASK);
+			if ((event & RETURN_BIT) == 0) {
+				int newState = apply(operation, state);
+				if (newState != Integer.MIN_VALUE) {
+					linearized.set(operation);
+					if (cache.add(new Configuration((BitSet) linearized.clone(), newState))) {
+						stackOperations[depth] = operation;
+						stackStates[depth] = state;
+						depth++;
+						state = newState;
+						lift(operation);
+						node = next[0];
+						continue;
+					}
+					linearized.clear(operation);
+				}
+				node = next[node];
+			} else {
+				// a pending operation returned before any linearization of it
+				// worked,so backtrack
+				if (depth == 0) {
+					return false;
+				}
+				depth--;
+				operation = stackOperations[depth];
+				state = stackStates[depth];
+				linearized.clear(operation);
+				unlift(operation);
+				node = next[callNodes[operation]];
+			}
+		}
+		return true;
+	}
+
+	void lift(int operation) {
+		unlink(callNodes[operation]);
+		unlink(returnNodes[operation]);
+	}
+
+	void unlift(int operation) {
+		relink(returnNodes[operation]);
+		relink(callNodes[operation]);
+	}
+
+	void unlink(int node) {
+		next[previous[node]] = next[node];
+		previous[next[node]] = previous[node];
+	}
+
+	void relink(int node) {
+		next[previous[node]] = node;
+		previous[next[node]] = node;
+	}
+
+	static final String[] TYPE_NAMES = { "put", "get", "remove" };
+
+	String describe(int key, int size, int initial) {
+		StringBuilder res = new StringBuilder("key " + key + " : not linearizable from " + initial
+				+ " , operations(invoke ns,response ns,operation,argument,result):");
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(invokeTimes[a], invokeTimes[b]));
+		for (int i : order) {
+			res.append(String.format("\n\t%d,%d,%s,%d,%d", invokeTimes[i], responseTimes[i], TYPE_NAMES[types[i]],
+					arguments[i], results[i]));
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,295 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.CacheLoader;
+import com.xenoamess.LoadingHashTable;
+
+/*
+ * checks LoadingHashTable:that concurrent misses of a key load it once,that
+ * getAll loads only the absent keys in one loadAll,that an expired entry is
+ * loaded again,that refresh-ahead returns the old value while it reloads,and
+ * that a put or invalidate during a load is not overwritten by it.
+ */
+public class LoadingHashTableTest {
+	public static int TEST_THREADS = 4;
+	public static int TEST_KEYS = (1 << 10);
+	public static long EXPIRE_MILLIS = 50;
+	public static long TIMEOUT_SECONDS = 30;
+
+	/**
+	 * runs each task on a thread of its own
+	 */
+	static final Executor THREADS = task -> {
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
+	};
+
+	/**
+	 * a loader counting its calls for each key.the value of k is k*2,and odd
+	 * keys have no value.
+	 */
+	static class CountingLoader implements CacheLoader<Integer, Integer> {
+		final ConcurrentHashMap<Integer, AtomicInteger> loads = new ConcurrentHashMap<Integer, AtomicInteger>();
+		final AtomicInteger loadAlls = new AtomicInteger();
+
+		int loadsOf(Integer k) {
+			AtomicInteger res = loads.get(k);
+			return res == null ? 0 : res.get();
+		}
+
+		@Override
+		public Integer load(Integer k) throws Exception {
+			loads.computeIfAbsent(k, key -> new AtomicInteger()).incrementAndGet();
+			// slow enough that the other threads miss meanwhile
+			Thread.sleep(1);
+			return (k & 1) == 0 ? k * 2 : null;
+		}
+
+		@Override
+		public Map<Integer, Integer> loadAll(Collection<? extends Integer> keys) throws Exception {
+			loadAlls.incrementAndGet();
+			Map<Integer, Integer> res = new HashMap<Integer, Integer>();
+			for (Integer k : keys) {
+				loads.computeIfAbsent(k, key -> new AtomicInteger()).incrementAndGet();
+				if ((k & 1) == 0) {
+					res.put(k, k * 2);
+				}
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * a loader whose loads wait for release,so a test can change the cache
+	 * while a load runs
+	 */
+	static class BlockingLoader implements CacheLoader<Integer, String> {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public String load(Integer k) throws Exception {
+			started.countDown();
+			release.await();
+			return "loaded";
+		}
+	}
+
+	/*
+	 * the threads get the same keys at once,and each key is loaded once.
+	 */
+	static void singleFlightTest() throws InterruptedException {
+		CountingLoader loader = new CountingLoader();
+		LoadingHashTable<Integer, Integer> tested = new LoadingHashTable<Integer, Integer>(loader);
+		AtomicInteger bugs = new AtomicInteger();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int k = 0; k < TEST_KEYS; k++) {
+					Integer v = (k & 3) == 0 ? tested.getAsync(k).join() : tested.get(k);
+					if ((k & 1) == 0 ? v == null || v != k * 2 : v != null) {
+						bugs.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int loadedTwice = 0;
+		for (int k = 0; k < TEST_KEYS; k += 2) {
+			if (loader.loadsOf(k) != 1) {
+				loadedTwice++;
+			}
+		}
+		boolean findBug = false;
+		if (bugs.get() != 0 || tested.size() != TEST_KEYS / 2) {
+			System.out.printf("suspicious error found : %d wrong values,size %d\n", bugs.get(), tested.size());
+			findBug = true;
+		}
+		if (loadedTwice != 0) {
+			System.out.printf("suspicious error found : %d keys not loaded exactly once\n", loadedTwice);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleFlightTest ends");
+	}
+
+	/*
+	 * getAll returns the present keys without loading them,and loads the absent
+	 * ones in one loadAll. keys without values are absent from the result.
+	 */
+	static void getAllTest() {
+		CountingLoader loader = new CountingLoader();
+		LoadingHashTable<Integer, Integer> tested = new LoadingHashTable<Integer, Integer>(loader);
+		for (int k = 0; k < TEST_KEYS; k += 4) {
+			tested.put(k, -k);
+		}
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int k = 0; k < TEST_KEYS; k++) {
+			keys.add(k);
+			keys.add(k);
+		}
+		Map<Integer, Integer> res = tested.getAll(keys);
+		boolean findBug = false;
+		for (int k = 0; k < TEST_KEYS; k++) {
+			Integer expected = null;
+			if ((k & 3) == 0) {
+				expected = -k;
+			} else if ((k & 1) == 0) {
+				expected = k * 2;
+			}
+			Integer v = res.get(k);
+			if (expected == null ? v != null || res.containsKey(k) : !expected.equals(v)) {
+				System.out.printf("suspicious error found : key %d got %s,expected %s\n", k, v, expected);
+				findBug = true;
+				break;
+			}
+			if (loader.loadsOf(k) != ((k & 3) == 0 ? 0 : 1)) {
+				System.out.printf("suspicious error found : key %d loaded %d times\n", k, loader.loadsOf(k));
+				findBug = true;
+				break;
+			}
+		}
+		if (loader.loadAlls.get() != 1) {
+			System.out.printf("suspicious error found : %d loadAll calls\n", loader.loadAlls.get());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("getAllTest ends");
+	}
+
+	/*
+	 * an entry older than expireAfterWrite is not returned,but loaded again.
+	 */
+	static void expiryTest() throws InterruptedException {
+		CountingLoader loader = new CountingLoader();
+		LoadingHashTable<Integer, Integer> tested = new LoadingHashTable<Integer, Integer>(loader,
+				LoadingHashTable.NEVER, EXPIRE_MILLIS, TimeUnit.MILLISECONDS, THREADS);
+		tested.get(0);
+		boolean findBug = false;
+		if (tested.getIfPresent(0) == null || loader.loadsOf(0) != 1) {
+			System.out.println("suspicious error found : fresh entry not present");
+			findBug = true;
+		}
+		Thread.sleep(EXPIRE_MILLIS * 2);
+		if (tested.getIfPresent(0) != null) {
+			System.out.println("suspicious error found : expired entry returned");
+			findBug = true;
+		}
+		Integer v = tested.get(0);
+		if (v == null || v != 0 || loader.loadsOf(0) != 2) {
+			System.out.printf("suspicious error found : got %s after %d loads\n", v, loader.loadsOf(0));
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("expiryTest ends");
+	}
+
+	/*
+	 * an entry older than refreshAfterWrite is returned as it is,and reloaded
+	 * meanwhile by reload with the old value.
+	 */
+	static void refreshAheadTest() throws Exception {
+		AtomicInteger reloads = new AtomicInteger();
+		CacheLoader<Integer, Integer> loader = new CacheLoader<Integer, Integer>() {
+			@Override
+			public Integer load(Integer k) {
+				return 0;
+			}
+
+			@Override
+			public Integer reload(Integer k, Integer oldValue) {
+				reloads.incrementAndGet();
+				return oldValue + 1;
+			}
+		};
+		LoadingHashTable<Integer, Integer> tested = new LoadingHashTable<Integer, Integer>(loader, EXPIRE_MILLIS,
+				LoadingHashTable.NEVER, TimeUnit.MILLISECONDS, THREADS);
+		boolean findBug = false;
+		if (tested.get(0) != 0) {
+			System.out.println("suspicious error found : first load is not 0");
+			findBug = true;
+		}
+		Thread.sleep(EXPIRE_MILLIS * 2);
+		Integer old = tested.get(0);
+		long deadline = System.currentTimeMillis() + TIMEOUT_SECONDS * 1000;
+		while (tested.getIfPresent(0) == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		if (old != 0 || tested.get(0) != 1 || reloads.get() != 1) {
+			System.out.printf("suspicious error found : got %s then %s after %d reloads\n", old, tested.get(0),
+					reloads.get());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("refreshAheadTest ends");
+	}
+
+	/*
+	 * a put during a load,and an invalidate during a refresh,are newer than the
+	 * loaded values,so the loaded values are dropped.
+	 */
+	static void raceTest() throws Exception {
+		boolean findBug = false;
+		BlockingLoader loader = new BlockingLoader();
+		LoadingHashTable<Integer, String> tested = new LoadingHashTable<Integer, String>(loader,
+				LoadingHashTable.NEVER, LoadingHashTable.NEVER, TimeUnit.MILLISECONDS, THREADS);
+		CompletableFuture<String> load = tested.getAsync(0);
+		loader.started.await();
+		tested.put(0, "put");
+		loader.release.countDown();
+		load.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (!"put".equals(tested.getIfPresent(0))) {
+			System.out.println("suspicious error found : a load overwrote a put : " + tested.getIfPresent(0));
+			findBug = true;
+		}
+
+		loader = new BlockingLoader();
+		tested = new LoadingHashTable<Integer, String>(loader, LoadingHashTable.NEVER, LoadingHashTable.NEVER,
+				TimeUnit.MILLISECONDS, THREADS);
+		tested.put(0, "old");
+		CompletableFuture<String> refresh = tested.refresh(0);
+		loader.started.await();
+		tested.invalidate(0);
+		loader.release.countDown();
+		refresh.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (tested.getIfPresent(0) != null) {
+			System.out.println("suspicious error found : a refresh brought back an invalidated key");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("raceTest ends");
+	}
+
+	public static void main(String args[]) throws Exception {
+		singleFlightTest();
+		getAllTest();
+		expiryTest();
+		refreshAheadTest();
+		raceTest();
+	}
+}
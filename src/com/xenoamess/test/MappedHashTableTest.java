@@ -0,0 +1,207 @@
+package com.xenoamess.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.KeyValueCodec;
+import com.xenoamess.MappedHashTable;
+
+/*
+ * checks MappedHashTable against a judger,across a reopen,and readers walking
+ * the records while a writer puts,removes and clears.
+ */
+public class MappedHashTableTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_MAX = (1 << 12);
+	public static int TEST_READERS = 4;
+	public static int CLEAR_TURNS = (1 << 10);
+
+	/**
+	 * few buckets and a small file,so the chains are long and the file grows
+	 */
+	public static int BUCKET_COUNT = 64;
+	public static long INIT_CAPACITY = 1 << 12;
+
+	static class IntStringCodec implements KeyValueCodec<Integer, String> {
+		@Override
+		public int keySize(Integer key) {
+			return 4;
+		}
+
+		@Override
+		public void writeKey(Integer key, ByteBuffer buffer) {
+			buffer.putInt(key);
+		}
+
+		@Override
+		public Integer readKey(ByteBuffer buffer, int size) {
+			return buffer.getInt();
+		}
+
+		@Override
+		public int valueSize(String value) {
+			return value.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		@Override
+		public void writeValue(String value, ByteBuffer buffer) {
+			buffer.put(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public String readValue(ByteBuffer buffer, int size) {
+			byte[] bytes = new byte[size];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * a value of k of a random length,starting with k,so a reader can tell it
+	 * belongs to k
+	 */
+	static String valueOf(int k) {
+		StringBuilder res = new StringBuilder().append(k).append(':');
+		for (int i = rand(32); i > 0; i--) {
+			res.append((char) ('a' + rand(26)));
+		}
+		return res.toString();
+	}
+
+	static boolean sameAs(MappedHashTable<Integer, String> tested, HashMap<Integer, String> judger) {
+		return tested.size() == judger.size() && judger.equals(new HashMap<Integer, String>(tested));
+	}
+
+	/*
+	 * random puts,removes and gets against a judger,a clear in the middle,and a
+	 * reopen at the end.
+	 */
+	static void singleThreadTest() throws IOException {
+		Path directory = Files.createTempDirectory("mapped-test");
+		Path path = directory.resolve("map");
+		HashMap<Integer, String> judger = new HashMap<Integer, String>();
+		boolean findBug = false;
+		MappedHashTable<Integer, String> tested = MappedHashTable.open(path, new IntStringCodec(), BUCKET_COUNT,
+				INIT_CAPACITY);
+		for (int i = 0; i < TEST_TURNS; i++) {
+			Integer key = rand(TEST_MAX);
+			String res;
+			String judged;
+			switch (i % 3) {
+			case 0:
+				String value = valueOf(key);
+				res = tested.put(key, value);
+				judged = judger.put(key, value);
+				break;
+			case 1:
+				res = tested.remove(key);
+				judged = judger.remove(key);
+				break;
+			default:
+				res = tested.get(key);
+				judged = judger.get(key);
+				break;
+			}
+			if (res == null ? judged != null : !res.equals(judged)) {
+				System.out.printf("turn %d : suspicious error found : got %s,judger %s\n", i, res, judged);
+				findBug = true;
+				break;
+			}
+			if (i == TEST_TURNS / 2) {
+				tested.clear();
+				judger.clear();
+				if (!tested.isEmpty() || tested.get(key) != null) {
+					System.out.println("suspicious error found : map not empty after clear");
+					findBug = true;
+					break;
+				}
+			}
+		}
+		if (!sameAs(tested, judger)) {
+			System.out.println("suspicious error found : map differs from judger");
+			findBug = true;
+		}
+		long deadBytes = tested.getDeadBytes();
+		tested.close();
+		MappedHashTable<Integer, String> reopened = MappedHashTable.open(path, new IntStringCodec());
+		if (reopened.getBucketCount() != BUCKET_COUNT || reopened.getDeadBytes() != deadBytes
+				|| !sameAs(reopened, judger)) {
+			System.out.println("suspicious error found : reopened map differs from judger");
+			findBug = true;
+		}
+		reopened.close();
+		DurableHashTableTest.deleteRecursively(directory);
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleThreadTest ends");
+	}
+
+	/*
+	 * a writer puts values of random lengths,removes and now and then clears,
+	 * while readers get without locks. a value read must belong to its key,so a
+	 * reader never reads a record written over the one it found.
+	 */
+	static void multipleThreadTest() throws IOException, InterruptedException {
+		Path directory = Files.createTempDirectory("mapped-test");
+		MappedHashTable<Integer, String> tested = MappedHashTable.open(directory.resolve("map"),
+				new IntStringCodec(), BUCKET_COUNT, INIT_CAPACITY);
+		AtomicInteger bugs = new AtomicInteger();
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] readers = new Thread[TEST_READERS];
+		for (int t = 0; t < TEST_READERS; t++) {
+			readers[t] = new Thread(() -> {
+				while (!stop.get()) {
+					int key = rand(TEST_MAX);
+					try {
+						String value = tested.get(key);
+						if (value != null && !value.startsWith(key + ":")) {
+							bugs.incrementAndGet();
+						}
+					} catch (RuntimeException e) {
+						bugs.incrementAndGet();
+					}
+				}
+			});
+			readers[t].start();
+		}
+		for (int i = 0; i < TEST_TURNS; i++) {
+			int key = rand(TEST_MAX);
+			if ((i & 3) != 3) {
+				tested.put(key, valueOf(key));
+			} else {
+				tested.remove(key);
+			}
+			if (i % CLEAR_TURNS == 0) {
+				tested.clear();
+			}
+		}
+		stop.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (bugs.get() != 0) {
+			System.out.printf("suspicious error found : %d values read of other keys\n", bugs.get());
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		tested.close();
+		DurableHashTableTest.deleteRecursively(directory);
+		System.out.println("multipleThreadTest ends");
+	}
+
+	public static void main(String args[]) throws IOException, InterruptedException {
+		singleThreadTest();
+		multipleThreadTest();
+	}
+}
@@ -0,0 +1,166 @@
+package com.xenoamess.test;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.HashTable;
+
+/*
+ * checks the ordered index of HashTable:its views and ceilingKey/floorKey
+ * against a TreeMap,and that clear() does not lose the keys put meanwhile.
+ */
+public class OrderedIndexTest {
+	public static int TEST_TURNS = (1 << 16);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 12);
+	public static int TEST_CLEARS = 2000;
+	public static int CLEAR_THREADS = 16;
+	public static int CLEAR_KEYS = 64;
+
+	public static Integer rand() {
+		return (int) (Math.random() * TEST_MAX);
+	}
+
+	static boolean sameAs(SortedMap<Integer, Integer> tested, SortedMap<Integer, Integer> judger) {
+		if (tested.size() != judger.size() || tested.isEmpty() != judger.isEmpty()) {
+			return false;
+		}
+		if (!new ArrayList<Object>(tested.entrySet()).equals(new ArrayList<Object>(judger.entrySet()))) {
+			return false;
+		}
+		if (!judger.isEmpty()
+				&& (!tested.firstKey().equals(judger.firstKey()) || !tested.lastKey().equals(judger.lastKey()))) {
+			return false;
+		}
+		if (judger.isEmpty()) {
+			try {
+				tested.firstKey();
+				return false;
+			} catch (NoSuchElementException e) {
+				// as judger
+			}
+		}
+		return true;
+	}
+
+	static boolean equalsOrBothNull(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static void singleThreadTest() {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		TreeMap<Integer, Integer> judger = new TreeMap<Integer, Integer>();
+		boolean findBug = false;
+		for (int i = 0; i < TEST_TURNS; i++) {
+			if (i == TEST_TURNS / 4) {
+				// the index is built from the entries already in the map
+				tested.enableOrderedIndex();
+			}
+			Integer key = rand();
+			Integer value = rand();
+			tested.put(key, value);
+			judger.put(key, value);
+			key = rand();
+			tested.remove(key);
+			judger.remove(key);
+			if (i < TEST_TURNS / 4 || (i & 0xff) != 0) {
+				continue;
+			}
+			Integer from = rand();
+			Integer to = from + rand() / 4;
+			if (!sameAs(tested.orderedMap(), judger)) {
+				System.out.printf("turn %d : suspicious error found : orderedMap differs\n", i);
+				findBug = true;
+			}
+			if (!sameAs(tested.subMap(from, to), judger.subMap(from, to))) {
+				System.out.printf("turn %d : suspicious error found : subMap(%d,%d) differs\n", i, from, to);
+				findBug = true;
+			}
+			if (!sameAs(tested.headMap(to), judger.headMap(to))) {
+				System.out.printf("turn %d : suspicious error found : headMap(%d) differs\n", i, to);
+				findBug = true;
+			}
+			if (!sameAs(tested.tailMap(from), judger.tailMap(from))) {
+				System.out.printf("turn %d : suspicious error found : tailMap(%d) differs\n", i, from);
+				findBug = true;
+			}
+			if (!sameAs(tested.tailMap(from).headMap(to), judger.tailMap(from).headMap(to))) {
+				System.out.printf("turn %d : suspicious error found : view of view differs\n", i);
+				findBug = true;
+			}
+			if (!equalsOrBothNull(tested.ceilingKey(from), judger.ceilingKey(from))
+					|| !equalsOrBothNull(tested.floorKey(from), judger.floorKey(from))) {
+				System.out.printf("turn %d : suspicious error found : ceilingKey/floorKey(%d) differs\n", i, from);
+				findBug = true;
+			}
+			if (!equalsOrBothNull(tested.orderedMap().get(from), judger.get(from))
+					|| !equalsOrBothNull(tested.subMap(from, to).get(to), null)) {
+				System.out.printf("turn %d : suspicious error found : get of a view differs\n", i);
+				findBug = true;
+			}
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleThreadTest ends");
+	}
+
+	/*
+	 * writers put a few keys again and again while the map is cleared,so at the
+	 * end every key of the map must be in the index,and no put may fail on the
+	 * pool clear is setting.
+	 */
+	static void clearTest() throws InterruptedException {
+		HashTable<Integer, Integer> tested = new HashTable<Integer, Integer>();
+		tested.enableOrderedIndex();
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[CLEAR_THREADS];
+		for (int t = 0; t < CLEAR_THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; !stop.get(); i++) {
+					tested.put((int) (Math.random() * CLEAR_KEYS), i);
+				}
+			});
+			threads[t].setUncaughtExceptionHandler((thread, e) -> {
+				failures.incrementAndGet();
+				e.printStackTrace();
+			});
+			threads[t].start();
+		}
+		for (int i = 0; i < TEST_CLEARS; i++) {
+			tested.clear();
+			Thread.yield();
+		}
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		boolean findBug = false;
+		if (failures.get() != 0) {
+			System.out.printf("suspicious error found : %d writers failed\n", failures.get());
+			findBug = true;
+		}
+		TreeSet<Integer> judger = new TreeSet<Integer>(tested.keySet());
+		TreeSet<Integer> indexed = new TreeSet<Integer>(tested.orderedMap().keySet());
+		if (!judger.equals(indexed)) {
+			judger.removeAll(indexed);
+			System.out.printf("suspicious error found : %d keys of the map are not in the index\n", judger.size());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("clearTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		singleThreadTest();
+		clearTest();
+	}
+}
@@ -0,0 +1,135 @@
+package com.xenoamess.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.xenoamess.PersistentHashTable;
+
+public class PersistentHashTableTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 8;
+	public static int TEST_MAX = (1 << 12);
+
+	public static Integer rand() {
+		return (int) (Math.random() * TEST_MAX);
+	}
+
+	/*
+	 * key whose hashcode collides a lot,so CollisionNode is used too.
+	 */
+	static class CollidingKey {
+		final int value;
+
+		CollidingKey(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return value & 0xff;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+		}
+	}
+
+	static boolean sameAs(Map<?, ?> tested, Map<?, ?> judger) {
+		if (tested.size() != judger.size()) {
+			return false;
+		}
+		int count = 0;
+		for (Map.Entry<?, ?> entry : tested.entrySet()) {
+			count++;
+			if (!entry.getValue().equals(judger.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return count == judger.size();
+	}
+
+	static void singleThreadTest() {
+		PersistentHashTable<CollidingKey, Integer> tested = new PersistentHashTable<CollidingKey, Integer>();
+		HashMap<CollidingKey, Integer> judger = new HashMap<CollidingKey, Integer>();
+		PersistentHashTable.Snapshot<CollidingKey, Integer> snapshot = null;
+		HashMap<CollidingKey, Integer> snapshotJudger = null;
+		boolean findBug = false;
+
+		for (int i = 0; i < TEST_TURNS; i++) {
+			CollidingKey key = new CollidingKey(rand());
+			Integer value = rand();
+			if (!equalsOrBothNull(tested.put(key, value), judger.put(key, value))) {
+				System.out.printf("turn %d : suspicious error found : 'put' get wrong answer?\n", i);
+				findBug = true;
+			}
+			key = new CollidingKey(rand());
+			if (!equalsOrBothNull(tested.remove(key), judger.remove(key))) {
+				System.out.printf("turn %d : suspicious error found : 'remove' get wrong answer?\n", i);
+				findBug = true;
+			}
+			if ((i & 0xffff) == 0) {
+				if (snapshot != null && !sameAs(snapshot, snapshotJudger)) {
+					System.out.printf("turn %d : suspicious error found : snapshot changed?\n", i);
+					findBug = true;
+				}
+				snapshot = tested.snapshot();
+				snapshotJudger = new HashMap<CollidingKey, Integer>(judger);
+			}
+		}
+		if (!sameAs(tested, judger)) {
+			System.out.println("suspicious error found : map differs from judger at the end");
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleThreadTest ends");
+	}
+
+	static boolean equalsOrBothNull(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/*
+	 * each thread owns its own keys,so at the end the map must hold exactly the
+	 * last value each thread put,however the CAS of the threads interleave.
+	 */
+	static void multipleThreadTest() throws InterruptedException {
+		PersistentHashTable<Integer, Integer> tested = new PersistentHashTable<Integer, Integer>();
+		ConcurrentHashMap<Integer, Integer> judger = new ConcurrentHashMap<Integer, Integer>();
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					Integer key = rand() * TEST_THREADS + index;
+					Integer value = rand();
+					if ((i & 1) == 0) {
+						tested.put(key, value);
+						judger.put(key, value);
+					} else {
+						tested.remove(key);
+						judger.remove(key);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (sameAs(tested, judger)) {
+			System.out.println("no suspicious errors found.");
+		} else {
+			System.out.println("suspicious error found : map differs from judger at the end");
+		}
+		System.out.println("multipleThreadTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		singleThreadTest();
+		multipleThreadTest();
+	}
+}
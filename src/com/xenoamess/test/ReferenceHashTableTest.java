@@ -0,0 +1,196 @@
+package com.xenoamess.test;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.xenoamess.ReferenceHashTable;
+import com.xenoamess.ReferenceHashTable.Strength;
+
+/*
+ * checks ReferenceHashTable against the gc:that weak keys are found by
+ * identity and not by equals,and that the entries whose weak keys,weak values
+ * or soft values are reclaimed are purged,while the entries still referenced
+ * stay. the tests drop half of the references,run the gc and poll the map
+ * untill it is purged.
+ */
+public class ReferenceHashTableTest {
+	public static int TEST_KEYS = (1 << 12);
+	public static long TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * a key equal to the keys of the same id,so a weak key found by equals would
+	 * be found by a copy
+	 */
+	static final class Key {
+		final int id;
+
+		Key(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).id == id;
+		}
+	}
+
+	/**
+	 * a value of its own instance,which the gc can reclaim
+	 */
+	static final class Value {
+		final int id;
+
+		Value(int id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * run the gc and purge untill the map has size entries,or the timeout.
+	 *
+	 * @return if the map has size entries
+	 */
+	static boolean awaitPurged(ReferenceHashTable<?, ?> tested, int size, Runnable purge) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (tested.size() != size && System.currentTimeMillis() < deadline) {
+			System.gc();
+			Thread.sleep(1);
+			purge.run();
+		}
+		return tested.size() == size;
+	}
+
+	/**
+	 * fill the heap untill a soft reference is cleared,which the jvm does to all
+	 * the softly reachable objects before an OutOfMemoryError.
+	 */
+	static void pressMemory() {
+		SoftReference<Object> probe = new SoftReference<Object>(new Object());
+		List<long[]> filler = new ArrayList<long[]>();
+		try {
+			while (probe.get() != null) {
+				filler.add(new long[1 << 20]);
+			}
+		} catch (OutOfMemoryError e) {
+			// the soft references are cleared by now
+		}
+		filler.clear();
+	}
+
+	/*
+	 * weak keys are found by the instance put,not by an equal copy,and two equal
+	 * keys are two entries. the entries of the dropped keys are purged by
+	 * cleanUp,and the kept keys keep their values.
+	 */
+	static void weakKeyTest() throws InterruptedException {
+		ReferenceHashTable<Key, Integer> tested = new ReferenceHashTable<Key, Integer>(Strength.WEAK, Strength.STRONG);
+		boolean findBug = false;
+		Key key = new Key(-1);
+		Key copy = new Key(-1);
+		tested.put(key, 1);
+		tested.put(copy, 2);
+		Integer byKey = tested.get(key);
+		Integer byCopy = tested.get(copy);
+		if (tested.size() != 2 || byKey == null || byKey != 1 || byCopy == null || byCopy != 2
+				|| tested.get(new Key(-1)) != null) {
+			System.out.printf("suspicious error found : equal keys got %s %s,size %d\n", byKey, byCopy, tested.size());
+			findBug = true;
+		}
+		tested.clear();
+
+		List<Key> kept = new ArrayList<Key>();
+		for (int i = 0; i < TEST_KEYS; i++) {
+			Key k = new Key(i);
+			tested.put(k, i);
+			if ((i & 1) == 0) {
+				kept.add(k);
+			}
+		}
+		if (!awaitPurged(tested, kept.size(), tested::cleanUp)) {
+			System.out.printf("suspicious error found : %d entries,%d keys kept\n", tested.size(), kept.size());
+			findBug = true;
+		}
+		int wrong = 0;
+		for (Key k : kept) {
+			Integer v = tested.get(k);
+			if (v == null || v != k.id) {
+				wrong++;
+			}
+		}
+		IdentityHashMap<Key, Boolean> keySet = new IdentityHashMap<Key, Boolean>();
+		for (Key k : tested.keySet()) {
+			keySet.put(k, true);
+		}
+		for (Key k : kept) {
+			keySet.remove(k);
+		}
+		if (wrong != 0 || !keySet.isEmpty()) {
+			System.out.printf("suspicious error found : %d kept keys wrong,%d keys not kept\n", wrong, keySet.size());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("weakKeyTest ends");
+	}
+
+	/*
+	 * the entries of the dropped values are purged bit by bit by the removes,and
+	 * the kept values are still found. softly,the values are reclaimed only
+	 * under memory pressure.
+	 */
+	static void valueTest(Strength valueStrength) throws InterruptedException {
+		ReferenceHashTable<Integer, Value> tested = new ReferenceHashTable<Integer, Value>(Strength.STRONG,
+				valueStrength);
+		List<Value> kept = new ArrayList<Value>();
+		for (int i = 0; i < TEST_KEYS; i++) {
+			Value v = new Value(i);
+			tested.put(i, v);
+			if ((i & 1) == 0) {
+				kept.add(v);
+			}
+		}
+		boolean findBug = false;
+		if (valueStrength == Strength.SOFT) {
+			System.gc();
+			if (tested.keySet().size() != TEST_KEYS) {
+				System.out.printf("suspicious error found : %d soft values reclaimed without memory pressure\n",
+						TEST_KEYS - tested.keySet().size());
+				findBug = true;
+			}
+			pressMemory();
+		}
+		if (!awaitPurged(tested, kept.size(), () -> tested.remove(-1))) {
+			System.out.printf("suspicious error found : %d entries,%d values kept\n", tested.size(), kept.size());
+			findBug = true;
+		}
+		int wrong = 0;
+		for (int i = 0; i < TEST_KEYS; i++) {
+			Value v = tested.get(i);
+			if ((i & 1) == 0 ? v != kept.get(i >>> 1) : v != null) {
+				wrong++;
+			}
+		}
+		if (wrong != 0) {
+			System.out.printf("suspicious error found : %d keys got wrong values\n", wrong);
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("valueTest(" + valueStrength + ") ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		weakKeyTest();
+		valueTest(Strength.WEAK);
+		valueTest(Strength.SOFT);
+	}
+}
@@ -0,0 +1,205 @@
+package com.xenoamess.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xenoamess.HashTable;
+
+/*
+ * checks a HashTable against judgers while it is rehashed under the threads:
+ * automatically,when not Comparable keys crafted to collide make one list
+ * table far longer than the others,and explicitly by enableSeededHashing.
+ * each thread owns the keys of its index,so its judger knows every answer of
+ * them,and it reads the keys of the others too,whose values must be of their
+ * keys.
+ */
+public class RehashTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 4;
+	/**
+	 * few enough keys that the pool stays of 1<<9 tables
+	 */
+	public static int TEST_MAX = (1 << 8);
+
+	/**
+	 * colliding keys,all in table 0 of an unseeded pool of up to 1<<9 tables
+	 */
+	public static int COLLIDERS = (1 << 7);
+
+	/**
+	 * times the explicit test seeds the map again
+	 */
+	public static int EXPLICIT_REHASHES = 8;
+
+	/**
+	 * a key which is not Comparable,so its table is never transformed into a
+	 * skiplist. the first TEST_MAX keys hash to their ids,and the colliders
+	 * after them have hashCodes without low bits,even after spread,so the
+	 * colliders of different hashCodes share a table untill the map is seeded.
+	 */
+	static final class Key {
+		final int id;
+
+		Key(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id < TEST_MAX ? id : (id - TEST_MAX) << 25;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).id == id;
+		}
+	}
+
+	static Key keyOf(int i) {
+		return new Key(i);
+	}
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * a key of index t of the first max keys
+	 */
+	static int ownKey(int t, int max) {
+		return rand(max / TEST_THREADS) * TEST_THREADS + t;
+	}
+
+	/**
+	 * the threads put,remove and get their own keys against their judgers,and
+	 * get the keys of the others. after colliderTurn turns they use the
+	 * colliders too. during the run rehash is called,if it is not null.
+	 *
+	 * @return number of suspicious errors
+	 */
+	static int run(HashTable<Key, Integer> tested, int colliderTurn, Runnable rehash) throws InterruptedException {
+		AtomicInteger bugs = new AtomicInteger();
+		AtomicBoolean running = new AtomicBoolean(true);
+		@SuppressWarnings("unchecked")
+		Map<Integer, Integer>[] judgers = new Map[TEST_THREADS];
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			final int index = t;
+			judgers[t] = new HashMap<Integer, Integer>();
+			threads[t] = new Thread(() -> {
+				Map<Integer, Integer> judger = judgers[index];
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					int keys = i < colliderTurn ? TEST_MAX : TEST_MAX + COLLIDERS;
+					int key = ownKey(index, keys);
+					Integer res;
+					Integer judged;
+					switch (i & 3) {
+					case 0:
+						res = tested.remove(keyOf(key));
+						judged = judger.remove(key);
+						break;
+					case 1:
+					case 2:
+						Integer value = key * 64 + (i & 63);
+						res = tested.put(keyOf(key), value);
+						judged = judger.put(key, value);
+						break;
+					default:
+						res = tested.get(keyOf(key));
+						judged = judger.get(key);
+						int other = rand(keys);
+						Integer otherValue = tested.get(keyOf(other));
+						if (otherValue != null && otherValue / 64 != other) {
+							bugs.incrementAndGet();
+						}
+						break;
+					}
+					if (res == null ? judged != null : !res.equals(judged)) {
+						bugs.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		Thread rehasher = null;
+		if (rehash != null) {
+			rehasher = new Thread(() -> {
+				for (int i = 0; i < EXPLICIT_REHASHES && running.get(); i++) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+					rehash.run();
+				}
+			});
+			rehasher.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		running.set(false);
+		if (rehasher != null) {
+			rehasher.join();
+		}
+		int res = bugs.get();
+		if (res != 0) {
+			System.out.printf("suspicious error found : %d answers differ from the judgers\n", res);
+		}
+		HashMap<Key, Integer> judged = new HashMap<Key, Integer>();
+		for (Map<Integer, Integer> judger : judgers) {
+			for (Map.Entry<Integer, Integer> entry : judger.entrySet()) {
+				judged.put(keyOf(entry.getKey()), entry.getValue());
+			}
+		}
+		if (tested.size() != judged.size() || !judged.equals(new HashMap<Key, Integer>(tested))) {
+			System.out.printf("suspicious error found : map of %d keys differs from judgers of %d\n", tested.size(),
+					judged.size());
+			res++;
+		}
+		return res;
+	}
+
+	/*
+	 * the colliders join in the middle of the run,so the map requests a rehash
+	 * and seeds itself while the threads work.
+	 */
+	static void automaticRehashTest(boolean parking) throws InterruptedException {
+		HashTable<Key, Integer> tested = new HashTable<Key, Integer>(64, parking);
+		int bugs = run(tested, TEST_TURNS / TEST_THREADS / 2, null);
+		if (!tested.isSeededHashing()) {
+			System.out.println("suspicious error found : the colliding keys did not rehash the map");
+			bugs++;
+		}
+		if (bugs == 0) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("automaticRehashTest(parking " + parking + ") ends");
+	}
+
+	/*
+	 * the map is seeded again and again by enableSeededHashing while the threads
+	 * work.
+	 */
+	static void explicitRehashTest(boolean parking) throws InterruptedException {
+		HashTable<Key, Integer> tested = new HashTable<Key, Integer>(64, parking);
+		int bugs = run(tested, TEST_TURNS, tested::enableSeededHashing);
+		if (!tested.isSeededHashing()) {
+			System.out.println("suspicious error found : the map is not seeded");
+			bugs++;
+		}
+		if (bugs == 0) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("explicitRehashTest(parking " + parking + ") ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		automaticRehashTest(false);
+		automaticRehashTest(true);
+		explicitRehashTest(false);
+		explicitRehashTest(true);
+	}
+}
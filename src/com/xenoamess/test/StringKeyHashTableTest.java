@@ -0,0 +1,169 @@
+package com.xenoamess.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.xenoamess.StringKeyHashTable;
+
+/*
+ * checks that StringKeyHashTable finds a key by a CharSequence and by a slice
+ * of its UTF-8 bytes alike,the bytes being those of String.getBytes(UTF_8):
+ * for supplementary characters,for unpaired surrogates(which become '?'),and
+ * for keys spread over the buckets while the map resizes. the judger is keyed
+ * by the Strings decoded from those bytes,so keys of the same bytes are one.
+ */
+public class StringKeyHashTableTest {
+	public static int TEST_KEYS = (1 << 14);
+	public static int MAX_KEY_LENGTH = 8;
+
+	/**
+	 * chars of each kind:ascii,2 bytes,3 bytes,the halves of supplementary
+	 * characters,and surrogates left unpaired
+	 */
+	static final String[] PIECES = { "a", "Z", "0", "\u00e9", "\u07ff", "\u4e2d", "\uffff", "\ud83d\ude00",
+			"\udbff\udfff", "\ud800", "\udc00", "\ud83d\ud83d", "\ude00\ud83d" };
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	static String randomKey() {
+		StringBuilder res = new StringBuilder();
+		int length = rand(MAX_KEY_LENGTH) + 1;
+		for (int i = 0; i < length; i++) {
+			res.append(PIECES[rand(PIECES.length)]);
+		}
+		return res.toString();
+	}
+
+	/**
+	 * @return the String of the UTF-8 bytes of key,which every key of the same
+	 *         bytes maps to
+	 */
+	static String canonical(String key) {
+		return new String(key.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return a message if key is not found as value by all the ways,or null
+	 */
+	static String check(StringKeyHashTable<Integer> tested, String key, Integer value) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] buffer = new byte[bytes.length + 7];
+		System.arraycopy(bytes, 0, buffer, 3, bytes.length);
+		Integer byString = tested.get(key);
+		Integer byBuilder = tested.get(new StringBuilder(key));
+		Integer byBytes = tested.get(buffer, 3, bytes.length);
+		if (value == null ? byString != null || byBuilder != null || byBytes != null
+				: !value.equals(byString) || !value.equals(byBuilder) || !value.equals(byBytes)) {
+			return String.format("key %s got %s %s %s,expected %s", escape(key), byString, byBuilder, byBytes, value);
+		}
+		return null;
+	}
+
+	static String escape(String key) {
+		StringBuilder res = new StringBuilder();
+		for (int i = 0; i < key.length(); i++) {
+			res.append(String.format("\\u%04x", (int) key.charAt(i)));
+		}
+		return res.toString();
+	}
+
+	/*
+	 * the keys are put by Strings and by byte slices in turn,and looked up all
+	 * the ways each time the map doubled,so the keys are checked across the
+	 * resizes. then half of them are removed,and the rest are checked again.
+	 */
+	static void agreementTest() {
+		StringKeyHashTable<Integer> tested = new StringKeyHashTable<Integer>();
+		HashMap<String, Integer> judger = new HashMap<String, Integer>();
+		HashMap<String, String> keys = new HashMap<String, String>();
+		String error = null;
+		for (int i = 0; i < TEST_KEYS && error == null; i++) {
+			String key = randomKey();
+			if ((i & 1) == 0) {
+				tested.put(key, i);
+			} else {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				byte[] buffer = new byte[bytes.length + 5];
+				System.arraycopy(bytes, 0, buffer, 5, bytes.length);
+				tested.put(buffer, 5, bytes.length, i);
+			}
+			judger.put(canonical(key), i);
+			keys.put(canonical(key), key);
+			if ((i & (i + 1)) == 0) {
+				for (Map.Entry<String, String> entry : keys.entrySet()) {
+					error = check(tested, entry.getValue(), judger.get(entry.getKey()));
+					if (error != null) {
+						break;
+					}
+				}
+			}
+		}
+		int removed = 0;
+		for (Map.Entry<String, String> entry : keys.entrySet()) {
+			if (error != null) {
+				break;
+			}
+			if ((removed++ & 1) == 0) {
+				Integer res = tested.remove(entry.getValue());
+				Integer judged = judger.remove(entry.getKey());
+				if (!judged.equals(res)) {
+					error = String.format("key %s removed %s,expected %s", escape(entry.getValue()), res, judged);
+				}
+			}
+		}
+		for (Map.Entry<String, String> entry : keys.entrySet()) {
+			if (error != null) {
+				break;
+			}
+			error = check(tested, entry.getValue(), judger.get(entry.getKey()));
+		}
+		if (error == null && (tested.size() != judger.size() || !judger.equals(new HashMap<String, Integer>(tested)))) {
+			error = String.format("map of %d keys differs from judger of %d", tested.size(), judger.size());
+		}
+		if (error != null) {
+			System.out.println("suspicious error found : " + error);
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("agreementTest ends");
+	}
+
+	/*
+	 * a null value is not put,and does not remove the key.
+	 */
+	static void nullValueTest() {
+		StringKeyHashTable<Integer> tested = new StringKeyHashTable<Integer>();
+		tested.put("key", 1);
+		int thrown = 0;
+		try {
+			tested.put("key", null);
+		} catch (NullPointerException e) {
+			thrown++;
+		}
+		try {
+			tested.put(new StringBuilder("key"), null);
+		} catch (NullPointerException e) {
+			thrown++;
+		}
+		try {
+			tested.put("key".getBytes(StandardCharsets.UTF_8), 0, 3, null);
+		} catch (NullPointerException e) {
+			thrown++;
+		}
+		Integer v = tested.get("key");
+		if (thrown != 3 || v == null || v != 1 || tested.size() != 1) {
+			System.out.printf("suspicious error found : %d puts of null threw,key got %s\n", thrown, v);
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("nullValueTest ends");
+	}
+
+	public static void main(String args[]) {
+		agreementTest();
+		nullValueTest();
+	}
+}
@@ -0,0 +1,209 @@
+package com.xenoamess.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.xenoamess.HashTable;
+
+/*
+ * checks the weight bound of HashTable:totalWeight is the sum of the weights
+ * of the entries and stays under maximumWeight,a value the weigher refuses is
+ * not put,and a weigher whose answer changes does not skew totalWeight. the
+ * keys are spread over list tables,or share hashes so their tables are
+ * skiplists.
+ */
+public class WeightedHashTableTest {
+	public static int TEST_TURNS = (1 << 18);
+	public static int TEST_THREADS = 4;
+	public static int TEST_MAX = (1 << 12);
+	public static long MAXIMUM_WEIGHT = (1 << 14);
+
+	/**
+	 * keys of a hash in the colliding runs
+	 */
+	public static int COLLIDING_KEYS = 16;
+
+	/**
+	 * a Comparable key whose hash is shared by COLLIDING_KEYS keys
+	 */
+	static final class Collider implements Comparable<Collider> {
+		final int id;
+
+		Collider(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id / COLLIDING_KEYS;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Collider && ((Collider) o).id == id;
+		}
+
+		@Override
+		public int compareTo(Collider o) {
+			return Integer.compare(id, o.id);
+		}
+	}
+
+	static int rand(int max) {
+		return (int) (Math.random() * max);
+	}
+
+	/**
+	 * the weight of a value:its last 4 bits,plus 1.negative values are refused.
+	 */
+	static int weigh(Integer value) {
+		return value < 0 ? -1 : (value & 15) + 1;
+	}
+
+	static <K> long weightOf(HashTable<K, Integer> tested) {
+		long res = 0;
+		for (Map.Entry<K, Integer> entry : tested.entrySet()) {
+			res += weigh(entry.getValue());
+		}
+		return res;
+	}
+
+	/*
+	 * puts and removes against a judger with an unbounded weight,and checks
+	 * totalWeight after each. a refused put,of a new key or over an old one,
+	 * leaves the map as it was.
+	 */
+	static <K> void singleThreadTest(String name, IntFunction<K> keys) {
+		HashTable<K, Integer> tested = new HashTable<K, Integer>(256, HashTable.UNBOUNDED_WEIGHT,
+				(k, v) -> weigh(v));
+		HashMap<Integer, Integer> judger = new HashMap<Integer, Integer>();
+		long judgerWeight = 0;
+		boolean findBug = false;
+		for (int i = 0; i < TEST_TURNS; i++) {
+			int key = rand(TEST_MAX);
+			Integer old;
+			Integer judged;
+			if ((i & 3) == 3) {
+				old = tested.remove(keys.apply(key));
+				judged = judger.remove(key);
+				if (judged != null) {
+					judgerWeight -= weigh(judged);
+				}
+			} else if ((i & 3) == 2) {
+				try {
+					tested.put(keys.apply(key), -1 - i);
+					System.out.printf("turn %d : suspicious error found : a refused put succeeded\n", i);
+					findBug = true;
+					break;
+				} catch (IllegalStateException e) {
+					// as expected
+				}
+				old = tested.get(keys.apply(key));
+				judged = judger.get(key);
+			} else {
+				Integer value = rand(TEST_MAX);
+				old = tested.put(keys.apply(key), value);
+				judged = judger.put(key, value);
+				judgerWeight += weigh(value) - (judged == null ? 0 : weigh(judged));
+			}
+			if (old == null ? judged != null : !old.equals(judged)) {
+				System.out.printf("turn %d : suspicious error found : key %d was %s,judger %s\n", i, key, old, judged);
+				findBug = true;
+				break;
+			}
+			if (tested.size() != judger.size() || tested.getTotalWeight() != judgerWeight) {
+				System.out.printf("turn %d : suspicious error found : size %d weight %d,judger %d %d\n", i,
+						tested.size(), tested.getTotalWeight(), judger.size(), judgerWeight);
+				findBug = true;
+				break;
+			}
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("singleThreadTest(" + name + ") ends");
+	}
+
+	/*
+	 * the threads put and remove over a bounded map,so it evicts all the time.
+	 * at the end totalWeight is no more than maximumWeight,and is the sum of the
+	 * weights of the entries.
+	 */
+	static <K> void multipleThreadTest(String name, IntFunction<K> keys) throws InterruptedException {
+		HashTable<K, Integer> tested = new HashTable<K, Integer>(256, MAXIMUM_WEIGHT, (k, v) -> weigh(v));
+		Thread[] threads = new Thread[TEST_THREADS];
+		for (int t = 0; t < TEST_THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < TEST_TURNS / TEST_THREADS; i++) {
+					K key = keys.apply(rand(TEST_MAX));
+					if ((i & 3) != 3) {
+						tested.put(key, rand(TEST_MAX));
+					} else {
+						tested.remove(key);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		boolean findBug = false;
+		long weight = weightOf(tested);
+		if (tested.getTotalWeight() > MAXIMUM_WEIGHT || tested.getTotalWeight() != weight) {
+			System.out.printf("suspicious error found : totalWeight %d,entries weigh %d,maximumWeight %d\n",
+					tested.getTotalWeight(), weight, MAXIMUM_WEIGHT);
+			findBug = true;
+		}
+		for (K key : tested.keySet()) {
+			tested.remove(key);
+		}
+		if (tested.size() != 0 || tested.getTotalWeight() != 0) {
+			System.out.printf("suspicious error found : size %d,totalWeight %d after removing all\n", tested.size(),
+					tested.getTotalWeight());
+			findBug = true;
+		}
+		if (!findBug) {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("multipleThreadTest(" + name + ") ends");
+	}
+
+	/*
+	 * a weigher whose answer grows each time it is asked.the map keeps the
+	 * weight each entry is put with,so removing every entry brings totalWeight
+	 * back to 0.
+	 */
+	static void unstableWeigherTest() {
+		AtomicInteger asked = new AtomicInteger();
+		HashTable<Collider, Integer> tested = new HashTable<Collider, Integer>(256, HashTable.UNBOUNDED_WEIGHT,
+				(k, v) -> asked.incrementAndGet());
+		for (int i = 0; i < TEST_TURNS; i++) {
+			Collider key = new Collider(rand(TEST_MAX));
+			if ((i & 1) == 0) {
+				tested.put(key, i);
+			} else {
+				tested.remove(key);
+			}
+		}
+		for (Collider key : tested.keySet()) {
+			tested.remove(key);
+		}
+		if (tested.getTotalWeight() != 0) {
+			System.out.printf("suspicious error found : totalWeight %d after removing all\n", tested.getTotalWeight());
+		} else {
+			System.out.println("no suspicious errors found.");
+		}
+		System.out.println("unstableWeigherTest ends");
+	}
+
+	public static void main(String args[]) throws InterruptedException {
+		singleThreadTest("spread keys", key -> key);
+		singleThreadTest("colliding keys", Collider::new);
+		multipleThreadTest("spread keys", key -> key);
+		multipleThreadTest("colliding keys", Collider::new);
+		unstableWeigherTest();
+	}
+}